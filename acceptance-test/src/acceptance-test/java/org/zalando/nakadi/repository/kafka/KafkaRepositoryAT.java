@@ -1,8 +1,10 @@
 package org.zalando.nakadi.repository.kafka;
 
 import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.common.PartitionInfo;
 import org.echocat.jomon.runtime.concurrent.RetryForSpecifiedTimeStrategy;
 import org.hamcrest.Matchers;
@@ -56,6 +58,10 @@ public class KafkaRepositoryAT extends BaseAT {
     private static final int KAFKA_REQUEST_TIMEOUT = 30000;
     private static final int KAFKA_DELIVERY_TIMEOUT = 30000;
     private static final int KAFKA_MAX_BLOCK_TIMEOUT = 5000;
+    private static final int KAFKA_PRODUCER_POOL_SIZE = 1;
+    private static final long KAFKA_SHARED_READER_WINDOW_BYTES = 0;
+    private static final long KAFKA_SHARED_READER_TOTAL_BYTES = 0;
+    private static final int KAFKA_PUBLISHING_COMPLETION_THREADS = 1;
     private static final int KAFKA_BATCH_SIZE = 1048576;
     private static final long KAFKA_BUFFER_MEMORY = KAFKA_BATCH_SIZE * 10L;
     private static final int KAFKA_LINGER_MS = 0;
@@ -102,7 +108,9 @@ public class KafkaRepositoryAT extends BaseAT {
 
         kafkaSettings = new KafkaSettings(KAFKA_REQUEST_TIMEOUT, KAFKA_BATCH_SIZE, KAFKA_BUFFER_MEMORY,
                 KAFKA_LINGER_MS, KAFKA_ENABLE_AUTO_COMMIT, KAFKA_MAX_REQUEST_SIZE,
-                KAFKA_DELIVERY_TIMEOUT, KAFKA_MAX_BLOCK_TIMEOUT);
+                KAFKA_DELIVERY_TIMEOUT, KAFKA_MAX_BLOCK_TIMEOUT, KAFKA_PRODUCER_POOL_SIZE,
+                KAFKA_SHARED_READER_WINDOW_BYTES, KAFKA_SHARED_READER_TOTAL_BYTES,
+                KAFKA_PUBLISHING_COMPLETION_THREADS);
         zookeeperSettings = new ZookeeperSettings(ZK_SESSION_TIMEOUT, ZK_CONNECTION_TIMEOUT, ZK_MAX_IN_FLIGHT_REQUESTS);
         kafkaHelper = new KafkaTestHelper(KAFKA_URL);
         defaultTopicConfig = new NakadiTopicConfig(DEFAULT_PARTITION_COUNT, DEFAULT_CLEANUP_POLICY,
@@ -260,10 +268,9 @@ public class KafkaRepositoryAT extends BaseAT {
         final KafkaFactory factory = Mockito.mock(KafkaFactory.class);
         Mockito.when(factory.getConsumer()).thenReturn(consumer);
         final KafkaLocationManager kafkaLocationManager = Mockito.mock(KafkaLocationManager.class);
-        Mockito
-                .doReturn(kafkaHelper.createProducer())
-                .when(factory)
-                .takeProducer();
+        final Producer<String, byte[]> producer = kafkaHelper.createBinaryProducer();
+        Mockito.doReturn(producer).when(factory).takeProducer();
+        Mockito.doReturn(producer).when(factory).takeProducer(any(), any());
 
         return new KafkaTopicRepository.Builder()
                 .setKafkaZookeeper(kafkaZookeeper)
@@ -274,6 +281,7 @@ public class KafkaRepositoryAT extends BaseAT {
                 .setKafkaTopicConfigFactory(kafkaTopicConfigFactory)
                 .setKafkaLocationManager(kafkaLocationManager)
                 .setMetricRegistry(new MetricRegistry())
+                .setPublishingCompletionExecutor(MoreExecutors.directExecutor())
                 .build();
     }
 
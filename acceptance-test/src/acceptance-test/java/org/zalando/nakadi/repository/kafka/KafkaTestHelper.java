@@ -38,6 +38,12 @@ public class KafkaTestHelper {
         return new KafkaProducer<>(createKafkaProperties());
     }
 
+    public KafkaProducer<String, byte[]> createBinaryProducer() {
+        final Properties props = createKafkaProperties();
+        props.put("value.serializer", "org.apache.kafka.common.serialization.ByteArraySerializer");
+        return new KafkaProducer<>(props);
+    }
+
     private Properties createKafkaProperties() {
         final Properties props = new Properties();
         props.put("bootstrap.servers", kafkaUrl);
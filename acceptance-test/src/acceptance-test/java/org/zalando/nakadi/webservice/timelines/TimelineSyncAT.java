@@ -113,6 +113,55 @@ public class TimelineSyncAT extends BaseAT {
         TestUtils.waitFor(() -> Assert.assertTrue(updated.get()));
     }
 
+    @Test
+    public void testTimelineUpdateIsNotBlockedByPublishToOtherEventType() throws Exception {
+        final TimelineSync t1 = createTimelineSync();
+        final TimelineSync t2 = createTimelineSync();
+        final String busyEventType = UUID.randomUUID().toString();
+        final String otherEventType = UUID.randomUUID().toString();
+        final AtomicBoolean updated = new AtomicBoolean(false);
+
+        try (Closeable ignored = t1.workWithEventType(busyEventType, TimeUnit.SECONDS.toMillis(1))) {
+            new Thread(() -> {
+                try {
+                    t2.startTimelineUpdate(busyEventType, TimeUnit.SECONDS.toMillis(30));
+                    updated.set(true);
+                } catch (final InterruptedException ex) {
+                    throw new RuntimeException(ex);
+                }
+            }, "timeline_update").start();
+            // Timeline of other event type is updated while busy event type is still waiting for its publisher
+            t2.startTimelineUpdate(otherEventType, TimeUnit.SECONDS.toMillis(5));
+            t2.finishTimelineUpdate(otherEventType, TimeUnit.SECONDS.toMillis(5));
+            Assert.assertEquals(false, updated.get());
+        }
+        TestUtils.waitFor(() -> Assert.assertTrue(updated.get()));
+        t2.finishTimelineUpdate(busyEventType, TimeUnit.SECONDS.toMillis(5));
+    }
+
+    @Test
+    public void testAcknowledgementsAreRemovedWhenTimelineUpdateIsFinished() throws Exception {
+        final TimelineSync t1 = createTimelineSync();
+        final TimelineSync t2 = createTimelineSync();
+        final String eventType = UUID.randomUUID().toString();
+
+        t1.startTimelineUpdate(eventType, TimeUnit.SECONDS.toMillis(5));
+        Assert.assertNotNull(CURATOR.checkExists().forPath("/nakadi/timelines/acks/" + eventType));
+        t2.finishTimelineUpdate(eventType, TimeUnit.SECONDS.toMillis(5));
+
+        Assert.assertNull(CURATOR.checkExists().forPath("/nakadi/timelines/acks/" + eventType));
+    }
+
+    @Test(timeout = 10_000)
+    public void testTimelineUpdateIsFinishedWithNodeRegisteredWhileLocked() throws Exception {
+        final TimelineSync t1 = createTimelineSync();
+        final String eventType = UUID.randomUUID().toString();
+
+        t1.startTimelineUpdate(eventType, TimeUnit.SECONDS.toMillis(5));
+        createTimelineSync();
+        t1.finishTimelineUpdate(eventType, TimeUnit.SECONDS.toMillis(5));
+    }
+
     @Test
     public void testPublishPauseOnTimelineUpdate() throws InterruptedException, IOException {
         final TimelineSync t1 = createTimelineSync();
@@ -133,7 +182,7 @@ public class TimelineSyncAT extends BaseAT {
         Assert.assertEquals(false, lockTaken.get());
 
         // Now release event type
-        t1.finishTimelineUpdate(eventType);
+        t1.finishTimelineUpdate(eventType, TimeUnit.SECONDS.toMillis(5));
         Assert.assertEquals(true, lockTaken.get());
     }
 
@@ -180,13 +229,13 @@ public class TimelineSyncAT extends BaseAT {
         Assert.assertEquals(0, l1.getData().size());
         Assert.assertEquals(0, l2.getData().size());
 
-        t1.finishTimelineUpdate(eventType1);
+        t1.finishTimelineUpdate(eventType1, TimeUnit.SECONDS.toMillis(5));
         // Wait for listeners
         TestUtils.waitFor(() -> Assert.assertEquals(1, l1.getData().size()), TimeUnit.SECONDS.toMillis(1));
         Assert.assertEquals(new Integer(1), l1.getData().get(eventType1));
         Assert.assertEquals(0, l2.getData().size());
 
-        t1.finishTimelineUpdate(eventType2);
+        t1.finishTimelineUpdate(eventType2, TimeUnit.SECONDS.toMillis(5));
         Assert.assertEquals(1, l1.getData().size());
         Assert.assertEquals(Integer.valueOf(1), l1.getData().get(eventType1));
         Assert.assertEquals(1, l2.getData().size());
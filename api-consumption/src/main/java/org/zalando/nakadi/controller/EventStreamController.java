@@ -46,6 +46,7 @@ import org.zalando.nakadi.service.EventStreamConfig;
 import org.zalando.nakadi.service.EventStreamFactory;
 import org.zalando.nakadi.service.EventStreamChecks;
 import org.zalando.nakadi.service.EventTypeChangeListener;
+import org.zalando.nakadi.service.StreamCompression;
 import org.zalando.nakadi.service.timeline.TimelineService;
 import org.zalando.nakadi.util.FlowIdUtils;
 import org.zalando.nakadi.view.Cursor;
@@ -94,6 +95,7 @@ public class EventStreamController {
     private final EventTypeChangeListener eventTypeChangeListener;
     private final Long maxMemoryUsageBytes;
     private final EventTypeCache eventTypeCache;
+    private final StreamCompression streamCompression;
 
     @Autowired
     public EventStreamController(final EventTypeCache eventTypeCache,
@@ -107,6 +109,7 @@ public class EventStreamController {
                                  final CursorConverter cursorConverter,
                                  final AuthorizationValidator authorizationValidator,
                                  final EventTypeChangeListener eventTypeChangeListener,
+                                 final StreamCompression streamCompression,
                                  @Value("${nakadi.stream.maxStreamMemoryBytes}") final Long maxMemoryUsageBytes) {
         this.timelineService = timelineService;
         this.jsonMapper = jsonMapper;
@@ -120,6 +123,7 @@ public class EventStreamController {
         this.eventTypeChangeListener = eventTypeChangeListener;
         this.eventTypeCache = eventTypeCache;
         this.maxMemoryUsageBytes = maxMemoryUsageBytes;
+        this.streamCompression = streamCompression;
     }
 
     @VisibleForTesting
@@ -197,12 +201,18 @@ public class EventStreamController {
             final HttpServletRequest request, final HttpServletResponse response, final Client client) {
         final String flowId = FlowIdUtils.peek();
 
-        return outputStream -> {
+        return responseStream -> {
             FlowIdUtils.push(flowId);
+            final OutputStream outputStream = streamCompression.compress(request, response, responseStream);
 
             if (eventStreamChecks.isConsumptionBlocked(Collections.singleton(eventTypeName), client.getClientId())) {
-                writeProblemResponse(response, outputStream,
-                        Problem.valueOf(FORBIDDEN, "Application or event type is blocked"));
+                // compressed stream has to be finished, otherwise the response is cut and the deflater is not freed
+                try {
+                    writeProblemResponse(response, outputStream,
+                            Problem.valueOf(FORBIDDEN, "Application or event type is blocked"));
+                } finally {
+                    outputStream.close();
+                }
                 return;
             }
 
@@ -31,8 +31,10 @@ import org.zalando.nakadi.repository.db.SubscriptionDbRepository;
 import org.zalando.nakadi.security.Client;
 import org.zalando.nakadi.service.ClosedConnectionsCrutch;
 import org.zalando.nakadi.service.EventStreamChecks;
+import org.zalando.nakadi.service.StreamCompression;
 import org.zalando.nakadi.service.SubscriptionValidationService;
 import org.zalando.nakadi.service.TracingService;
+import org.zalando.nakadi.service.subscription.NonBlockingOutputStream;
 import org.zalando.nakadi.service.subscription.StreamParameters;
 import org.zalando.nakadi.service.subscription.SubscriptionOutput;
 import org.zalando.nakadi.service.subscription.SubscriptionStreamer;
@@ -42,6 +44,7 @@ import org.zalando.nakadi.view.UserStreamParameters;
 import org.zalando.problem.Problem;
 
 import javax.annotation.Nullable;
+import javax.servlet.AsyncContext;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
@@ -64,6 +67,8 @@ import static org.zalando.problem.Status.UNPROCESSABLE_ENTITY;
 @RestController
 public class SubscriptionStreamController {
     public static final String CONSUMERS_COUNT_METRIC_NAME = "consumers";
+    // amount of data not yet sent to a client after which the stream stops reading new events
+    private static final int MAX_PENDING_OUTPUT_BYTES = 1024 * 1024;
     private static final Logger LOG = LoggerFactory.getLogger(SubscriptionStreamController.class);
 
     private final SubscriptionStreamerFactory subscriptionStreamerFactory;
@@ -74,6 +79,7 @@ public class SubscriptionStreamController {
     private final MetricRegistry metricRegistry;
     private final SubscriptionDbRepository subscriptionDbRepository;
     private final SubscriptionValidationService subscriptionValidationService;
+    private final StreamCompression streamCompression;
 
     @Autowired
     public SubscriptionStreamController(final SubscriptionStreamerFactory subscriptionStreamerFactory,
@@ -83,7 +89,8 @@ public class SubscriptionStreamController {
                                         final EventStreamChecks eventStreamChecks,
                                         @Qualifier("perPathMetricRegistry") final MetricRegistry metricRegistry,
                                         final SubscriptionDbRepository subscriptionDbRepository,
-                                        final SubscriptionValidationService subscriptionValidationService) {
+                                        final SubscriptionValidationService subscriptionValidationService,
+                                        final StreamCompression streamCompression) {
         this.subscriptionStreamerFactory = subscriptionStreamerFactory;
         this.jsonMapper = objectMapper;
         this.closedConnectionsCrutch = closedConnectionsCrutch;
@@ -92,6 +99,7 @@ public class SubscriptionStreamController {
         this.metricRegistry = metricRegistry;
         this.subscriptionDbRepository = subscriptionDbRepository;
         this.subscriptionValidationService = subscriptionValidationService;
+        this.streamCompression = streamCompression;
     }
 
     class SubscriptionOutputImpl implements SubscriptionOutput {
@@ -160,6 +168,26 @@ public class SubscriptionStreamController {
             return this.out;
         }
 
+        @Override
+        public boolean isWritePending() {
+            return false;
+        }
+
+    }
+
+    class NonBlockingSubscriptionOutput extends SubscriptionOutputImpl {
+        private final NonBlockingOutputStream responseStream;
+
+        NonBlockingSubscriptionOutput(final HttpServletResponse response, final OutputStream out,
+                                      final NonBlockingOutputStream responseStream) {
+            super(response, out);
+            this.responseStream = responseStream;
+        }
+
+        @Override
+        public boolean isWritePending() {
+            return responseStream.isWritePending();
+        }
     }
 
     @RequestMapping(value = "/subscriptions/{subscription_id}/events", method = RequestMethod.POST)
@@ -191,7 +219,7 @@ public class SubscriptionStreamController {
             final HttpServletRequest request, final HttpServletResponse response, final Client client) {
         final UserStreamParameters userParameters = new UserStreamParameters(batchLimit, streamLimit, batchTimespan,
                 batchTimeout, streamTimeout, streamKeepAliveLimit, maxUncommittedEvents, ImmutableList.of(),
-                commitTimeout);
+                commitTimeout, ImmutableList.of(), ImmutableList.of());
 
         final StreamParameters streamParameters = StreamParameters.of(userParameters,
                 nakadiSettings.getMaxCommitTimeout(), client);
@@ -209,8 +237,15 @@ public class SubscriptionStreamController {
                                          final Span parentSubscriptionSpan) {
         final String flowId = FlowIdUtils.peek();
 
-        return outputStream -> {
+        if (subscriptionStreamerFactory.isEventLoopEnabled()) {
+            streamNonBlocking(subscriptionId, request, response, client, streamParameters, parentSubscriptionSpan);
+            // response is completed by the stream itself
+            return null;
+        }
+
+        return responseStream -> {
             FlowIdUtils.push(flowId);
+            final OutputStream outputStream = streamCompression.compress(request, response, responseStream);
             final String metricName = metricNameForSubscription(subscriptionId, CONSUMERS_COUNT_METRIC_NAME);
             final Counter consumerCounter = metricRegistry.counter(metricName);
             consumerCounter.inc();
@@ -241,6 +276,71 @@ public class SubscriptionStreamController {
         };
     }
 
+    /**
+     * Streams on the shared event loop, writing the output with Servlet 3.1 non-blocking I/O, so that neither
+     * servlet threads nor async request threads are occupied while the stream is alive.
+     */
+    private void streamNonBlocking(final String subscriptionId,
+                                   final HttpServletRequest request,
+                                   final HttpServletResponse response,
+                                   final Client client,
+                                   final StreamParameters streamParameters,
+                                   final Span parentSubscriptionSpan) {
+        final Counter consumerCounter = metricRegistry.counter(
+                metricNameForSubscription(subscriptionId, CONSUMERS_COUNT_METRIC_NAME));
+        consumerCounter.inc();
+        final AsyncContext asyncContext = request.startAsync();
+        // stream lifetime is controlled by stream parameters
+        asyncContext.setTimeout(0);
+        NonBlockingOutputStream responseStream = null;
+        try {
+            final AtomicBoolean connectionReady = closedConnectionsCrutch.listenForConnectionClose(request);
+            responseStream = new NonBlockingOutputStream(asyncContext, connectionReady, MAX_PENDING_OUTPUT_BYTES);
+            final OutputStream outputStream = streamCompression.compress(request, response, responseStream);
+            final SubscriptionOutputImpl output =
+                    new NonBlockingSubscriptionOutput(response, outputStream, responseStream);
+            try {
+                if (eventStreamChecks.isSubscriptionConsumptionBlocked(subscriptionId, client.getClientId())) {
+                    writeProblemResponse(response, outputStream,
+                            Problem.valueOf(FORBIDDEN, "Application or event type is blocked"));
+                    closeStream(outputStream, consumerCounter);
+                    return;
+                }
+                final Subscription subscription = subscriptionDbRepository.getSubscription(subscriptionId);
+                subscriptionValidationService.validatePartitionsToStream(subscription,
+                        streamParameters.getPartitions());
+                final SubscriptionStreamer streamer = subscriptionStreamerFactory.build(subscription,
+                        streamParameters, output, connectionReady, parentSubscriptionSpan, client.getClientId());
+                streamer.streamAsync().whenComplete((ignore, ex) -> {
+                    if (null != ex) {
+                        LOG.error("Streaming with " + streamer + " failed", ex);
+                    }
+                    closeStream(outputStream, consumerCounter);
+                });
+            } catch (final RuntimeException e) {
+                output.onException(e);
+                closeStream(outputStream, consumerCounter);
+            }
+        } catch (final IOException e) {
+            LOG.error("Failed to start non-blocking streaming", e);
+            if (null == responseStream) {
+                asyncContext.complete();
+            }
+            closeStream(responseStream, consumerCounter);
+        }
+    }
+
+    private void closeStream(@Nullable final OutputStream outputStream, final Counter consumerCounter) {
+        consumerCounter.dec();
+        if (null != outputStream) {
+            try {
+                outputStream.close();
+            } catch (final IOException e) {
+                LOG.warn("Failed to close stream output: {}", e.getMessage());
+            }
+        }
+    }
+
     private void writeProblemResponse(final HttpServletResponse response,
                                       final OutputStream outputStream,
                                       final Problem problem) throws IOException {
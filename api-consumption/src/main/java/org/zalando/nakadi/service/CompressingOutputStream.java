@@ -0,0 +1,69 @@
+package org.zalando.nakadi.service;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip output stream of a single event stream. Every flush is a sync flush, so that each batch that is flushed by
+ * the stream reaches the client as a complete block and the latency of the stream is kept. Amounts of raw and
+ * compressed data are reported on flush, compression ratio of the stream is reported on close.
+ */
+public class CompressingOutputStream extends GZIPOutputStream {
+
+    private final Meter rawBytes;
+    private final Meter compressedBytes;
+    private final Histogram ratio;
+    private long reportedRawBytes;
+    private long reportedCompressedBytes;
+    private boolean closed;
+
+    public CompressingOutputStream(final OutputStream out, final int bufferSize, final Meter rawBytes,
+                                   final Meter compressedBytes, final Histogram ratio) throws IOException {
+        super(out, bufferSize, true);
+        this.rawBytes = rawBytes;
+        this.compressedBytes = compressedBytes;
+        this.ratio = ratio;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (closed) {
+            return;
+        }
+        super.flush();
+        reportBytes();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            finish();
+            reportBytes();
+            if (def.getBytesRead() > 0) {
+                // percentage of the original size that was sent to the client
+                ratio.update(def.getBytesWritten() * 100 / def.getBytesRead());
+            }
+        } finally {
+            // deflater is released and the underlying stream is closed even if the client is already gone
+            closed = true;
+            def.end();
+            out.close();
+        }
+    }
+
+    private void reportBytes() {
+        final long raw = def.getBytesRead();
+        final long compressed = def.getBytesWritten();
+        rawBytes.mark(raw - reportedRawBytes);
+        compressedBytes.mark(compressed - reportedCompressedBytes);
+        reportedRawBytes = raw;
+        reportedCompressedBytes = compressed;
+    }
+}
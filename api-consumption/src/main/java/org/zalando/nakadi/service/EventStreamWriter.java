@@ -1,6 +1,6 @@
 package org.zalando.nakadi.service;
 
-import org.zalando.nakadi.domain.ConsumedEvent;
+import org.zalando.nakadi.service.subscription.EventProjection;
 import org.zalando.nakadi.view.Cursor;
 import org.zalando.nakadi.view.SubscriptionCursor;
 
@@ -23,6 +23,12 @@ public interface EventStreamWriter {
      */
     int writeBatch(OutputStream os, Cursor cursor, List<byte[]> events) throws IOException;
 
-    int writeSubscriptionBatch(OutputStream os, SubscriptionCursor cursor, List<ConsumedEvent> events,
-                               Optional<String> metadata) throws IOException;
+    /**
+     * Writes batch of subscription stream to stream
+     *
+     * @param projection Projection that is applied to every event before it is written
+     * @return count of bytes written
+     */
+    int writeSubscriptionBatch(OutputStream os, SubscriptionCursor cursor, List<byte[]> events,
+                               Optional<String> metadata, Optional<EventProjection> projection) throws IOException;
 }
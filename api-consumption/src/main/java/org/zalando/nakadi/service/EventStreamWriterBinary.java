@@ -1,12 +1,13 @@
 package org.zalando.nakadi.service;
 
 import org.springframework.stereotype.Component;
-import org.zalando.nakadi.domain.ConsumedEvent;
+import org.zalando.nakadi.service.subscription.EventProjection;
 import org.zalando.nakadi.view.Cursor;
 import org.zalando.nakadi.view.SubscriptionCursor;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -52,31 +53,26 @@ class EventStreamWriterBinary implements EventStreamWriter {
     public int writeBatch(final OutputStream os, final Cursor cursor, final List<byte[]> events) throws IOException {
         int byteCount = B_FIXED_BYTE_COUNT;
 
-        os.write(B_CURSOR_PARTITION_BEGIN);
         final byte[] partition = cursor.getPartition().getBytes(UTF_8);
-        os.write(partition);
         byteCount += partition.length;
-        os.write(B_OFFSET_BEGIN);
         final byte[] offset = cursor.getOffset().getBytes(UTF_8);
-        os.write(offset);
         byteCount += offset.length;
+        for (final byte[] event : events) {
+            byteCount += event.length;
+        }
 
-        os.write(B_CURSOR_PARTITION_END);
+        final BatchBuffer batch = BatchBuffer.acquire(byteCount + events.size());
+        batch.put(B_CURSOR_PARTITION_BEGIN).put(partition).put(B_OFFSET_BEGIN).put(offset);
+        batch.put(B_CURSOR_PARTITION_END);
         if (!events.isEmpty()) {
-            os.write(B_EVENTS_ARRAY_BEGIN);
+            batch.put(B_EVENTS_ARRAY_BEGIN);
             for (int i = 0; i < events.size(); i++) {
-                final byte[] event = events.get(i);
-                os.write(event);
-                byteCount += event.length;
-                if (i < (events.size() - 1)) {
-                    os.write(B_COMMA_DELIM);
-                } else {
-                    os.write(B_CLOSE_BRACKET);
-                }
+                batch.put(events.get(i));
+                batch.put(i < (events.size() - 1) ? B_COMMA_DELIM : B_CLOSE_BRACKET);
             }
         }
-        os.write(B_CLOSE_CURLY_BRACKET);
-        os.write(B_BATCH_SEPARATOR);
+        batch.put(B_CLOSE_CURLY_BRACKET).put(B_BATCH_SEPARATOR);
+        batch.writeTo(os);
 
         os.flush();
 
@@ -85,59 +81,99 @@ class EventStreamWriterBinary implements EventStreamWriter {
 
     @Override
     public int writeSubscriptionBatch(final OutputStream os, final SubscriptionCursor cursor,
-                                      final List<ConsumedEvent> events,
-                                      final Optional<String> metadata) throws IOException {
+                                      final List<byte[]> events,
+                                      final Optional<String> metadata,
+                                      final Optional<EventProjection> projection) throws IOException {
         int byteCount = B_FIXED_BYTE_COUNT_SUBSCRIPTION;
 
-        os.write(B_CURSOR_PARTITION_BEGIN);
         final byte[] partition = cursor.getPartition().getBytes(UTF_8);
-        os.write(partition);
         byteCount += partition.length;
-        os.write(B_OFFSET_BEGIN);
         final byte[] offset = cursor.getOffset().getBytes(UTF_8);
-        os.write(offset);
         byteCount += offset.length;
-
-        os.write(B_EVENT_TYPE_BEGIN);
         final byte[] eventType = cursor.getEventType().getBytes(UTF_8);
-        os.write(eventType);
         byteCount += eventType.length;
-
-        os.write(B_CURSOR_TOKEN_BEGIN);
         final byte[] cursorToken = cursor.getCursorToken().getBytes(UTF_8);
-        os.write(cursorToken);
         byteCount += cursorToken.length;
+        final List<byte[]> payloads = projection.isPresent() ? projectEvents(events, projection.get()) : events;
+        for (final byte[] payload : payloads) {
+            byteCount += payload.length;
+        }
+        final byte[] debug = metadata.map(value -> value.getBytes(UTF_8)).orElse(null);
+        if (null != debug) {
+            byteCount += B_DEBUG_BEGIN.length + debug.length + B_DEBUG_END.length;
+        }
 
-        os.write(B_CURSOR_PARTITION_END);
+        final BatchBuffer batch = BatchBuffer.acquire(byteCount + events.size());
+        batch.put(B_CURSOR_PARTITION_BEGIN).put(partition).put(B_OFFSET_BEGIN).put(offset);
+        batch.put(B_EVENT_TYPE_BEGIN).put(eventType).put(B_CURSOR_TOKEN_BEGIN).put(cursorToken);
+        batch.put(B_CURSOR_PARTITION_END);
         if (!events.isEmpty()) {
-            os.write(B_EVENTS_ARRAY_BEGIN);
-            for (int i = 0; i < events.size(); i++) {
-                final byte[] event = events.get(i).getEvent();
-                os.write(event);
-                byteCount += event.length;
-                if (i < (events.size() - 1)) {
-                    os.write(B_COMMA_DELIM);
-                } else {
-                    os.write(B_CLOSE_BRACKET);
-                }
+            batch.put(B_EVENTS_ARRAY_BEGIN);
+            for (int i = 0; i < payloads.size(); i++) {
+                batch.put(payloads.get(i));
+                batch.put(i < (payloads.size() - 1) ? B_COMMA_DELIM : B_CLOSE_BRACKET);
             }
         }
-        if (metadata.isPresent()) {
-            os.write(B_DEBUG_BEGIN);
-            byteCount += B_DEBUG_BEGIN.length;
-
-            final byte[] debug = metadata.get().getBytes(UTF_8);
-            os.write(debug);
-            byteCount += debug.length;
-
-            os.write(B_DEBUG_END);
-            byteCount += B_DEBUG_END.length;
+        if (null != debug) {
+            batch.put(B_DEBUG_BEGIN).put(debug).put(B_DEBUG_END);
         }
-        os.write(B_CLOSE_CURLY_BRACKET);
-        os.write(B_BATCH_SEPARATOR);
+        batch.put(B_CLOSE_CURLY_BRACKET).put(B_BATCH_SEPARATOR);
+        batch.writeTo(os);
 
         os.flush();
 
         return byteCount;
     }
+
+    private static List<byte[]> projectEvents(final List<byte[]> events, final EventProjection projection) {
+        final List<byte[]> payloads = new ArrayList<>(events.size());
+        for (final byte[] event : events) {
+            payloads.add(projection.project(event));
+        }
+        return payloads;
+    }
+
+    /**
+     * Buffer that is reused by the thread to assemble a batch, so that the batch is passed to the output stream with
+     * a single write instead of a write per fragment and per event.
+     */
+    private static final class BatchBuffer {
+        private static final int INITIAL_SIZE = 64 * 1024;
+        // buffers that grew bigger than that for a huge batch are not kept for the next batches
+        private static final int MAX_POOLED_SIZE = 1024 * 1024;
+        private static final ThreadLocal<BatchBuffer> POOL = ThreadLocal.withInitial(BatchBuffer::new);
+
+        private byte[] data = new byte[INITIAL_SIZE];
+        private int size;
+
+        private static BatchBuffer acquire(final int capacity) {
+            final BatchBuffer buffer = POOL.get();
+            buffer.size = 0;
+            if (buffer.data.length < capacity) {
+                buffer.data = new byte[capacity];
+            }
+            return buffer;
+        }
+
+        private BatchBuffer put(final byte[] bytes) {
+            System.arraycopy(bytes, 0, data, size, bytes.length);
+            size += bytes.length;
+            return this;
+        }
+
+        private BatchBuffer put(final byte b) {
+            data[size++] = b;
+            return this;
+        }
+
+        private void writeTo(final OutputStream os) throws IOException {
+            try {
+                os.write(data, 0, size);
+            } finally {
+                if (data.length > MAX_POOLED_SIZE) {
+                    data = new byte[INITIAL_SIZE];
+                }
+            }
+        }
+    }
 }
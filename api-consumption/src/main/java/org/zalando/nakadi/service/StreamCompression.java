@@ -0,0 +1,120 @@
+package org.zalando.nakadi.service;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Suppliers;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Negotiates compression of event streams. Streams are compressed with gzip if the client accepts it, unless the CPU
+ * load of the node is above the configured budget: in that case new streams are sent with identity encoding, as the
+ * encoding of a stream can not be changed once the stream is started.
+ */
+@Component
+public class StreamCompression {
+
+    private static final String GZIP = "gzip";
+    private static final int BUFFER_SIZE = 8192;
+
+    private final boolean enabled;
+    private final double maxCpuLoad;
+    private final DoubleSupplier cpuLoad;
+    private final Meter rawBytes;
+    private final Meter compressedBytes;
+    private final Histogram ratio;
+    private final Meter fallbacks;
+
+    @Autowired
+    public StreamCompression(@Value("${nakadi.stream.compression.enabled}") final boolean enabled,
+                             @Value("${nakadi.stream.compression.maxCpuLoad}") final double maxCpuLoad,
+                             final MetricRegistry metricRegistry) {
+        this(enabled, maxCpuLoad, cachedCpuLoad(), metricRegistry);
+    }
+
+    @VisibleForTesting
+    StreamCompression(final boolean enabled, final double maxCpuLoad, final DoubleSupplier cpuLoad,
+                      final MetricRegistry metricRegistry) {
+        this.enabled = enabled;
+        this.maxCpuLoad = maxCpuLoad;
+        this.cpuLoad = cpuLoad;
+        this.rawBytes = metricRegistry.meter("nakadi.stream.compression.raw_bytes");
+        this.compressedBytes = metricRegistry.meter("nakadi.stream.compression.compressed_bytes");
+        this.ratio = metricRegistry.histogram("nakadi.stream.compression.ratio");
+        this.fallbacks = metricRegistry.meter("nakadi.stream.compression.fallbacks");
+    }
+
+    /**
+     * Chooses encoding of the stream and sets response headers accordingly, so it must be called before anything is
+     * written to the response.
+     *
+     * @return stream to write the data of the stream to, it must be closed when the stream is over
+     */
+    public OutputStream compress(final HttpServletRequest request, final HttpServletResponse response,
+                                 final OutputStream out) throws IOException {
+        if (!enabled) {
+            return out;
+        }
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (!acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING))) {
+            return out;
+        }
+        if (cpuLoad.getAsDouble() > maxCpuLoad) {
+            fallbacks.mark();
+            return out;
+        }
+        response.setHeader(HttpHeaders.CONTENT_ENCODING, GZIP);
+        return new CompressingOutputStream(out, BUFFER_SIZE, rawBytes, compressedBytes, ratio);
+    }
+
+    @VisibleForTesting
+    static boolean acceptsGzip(final String acceptEncoding) {
+        if (null == acceptEncoding) {
+            return false;
+        }
+        for (final String coding : acceptEncoding.split(",")) {
+            final String[] parts = coding.split(";");
+            if (GZIP.equalsIgnoreCase(parts[0].trim())) {
+                return parts.length == 1 || !isZeroQuality(parts[1]);
+            }
+        }
+        return false;
+    }
+
+    private static boolean isZeroQuality(final String parameter) {
+        final String[] nameValue = parameter.split("=");
+        if (nameValue.length != 2 || !"q".equalsIgnoreCase(nameValue[0].trim())) {
+            return false;
+        }
+        try {
+            return Double.parseDouble(nameValue[1].trim()) == 0;
+        } catch (final NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static DoubleSupplier cachedCpuLoad() {
+        final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        // cpu load is measured between invocations, so it is not asked for every stream
+        final com.google.common.base.Supplier<Double> load = Suppliers.memoizeWithExpiration(() -> {
+            if (os instanceof com.sun.management.OperatingSystemMXBean) {
+                return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuLoad();
+            }
+            return os.getSystemLoadAverage() / os.getAvailableProcessors();
+        }, 1, TimeUnit.SECONDS);
+        return load::get;
+    }
+}
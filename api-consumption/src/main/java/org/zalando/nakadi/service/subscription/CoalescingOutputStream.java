@@ -0,0 +1,74 @@
+package org.zalando.nakadi.service.subscription;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream that postpones flushes of the underlying stream, so that the batches of several partitions that are
+ * streamed together are pushed to the client at once. Data is flushed by {@link #flushCoalesced()} or by
+ * {@link #flush()} once the oldest data that was not flushed is older than max latency.
+ */
+public class CoalescingOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private final long maxLatencyMs;
+    private final Meter flushes;
+    private final Histogram bytesPerFlush;
+    private long unflushedBytes;
+    private long firstUnflushedAt;
+
+    public CoalescingOutputStream(final OutputStream out, final long maxLatencyMs, final Meter flushes,
+                                  final Histogram bytesPerFlush) {
+        this.out = out;
+        this.maxLatencyMs = maxLatencyMs;
+        this.flushes = flushes;
+        this.bytesPerFlush = bytesPerFlush;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        out.write(b);
+        onWritten(1);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        out.write(b, off, len);
+        onWritten(len);
+    }
+
+    private void onWritten(final int bytes) {
+        if (unflushedBytes == 0) {
+            firstUnflushedAt = System.currentTimeMillis();
+        }
+        unflushedBytes += bytes;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (unflushedBytes > 0 && System.currentTimeMillis() - firstUnflushedAt >= maxLatencyMs) {
+            flushCoalesced();
+        }
+    }
+
+    /**
+     * Flushes everything that was written so far.
+     */
+    public void flushCoalesced() throws IOException {
+        if (unflushedBytes > 0) {
+            out.flush();
+            flushes.mark();
+            bytesPerFlush.update(unflushedBytes);
+            unflushedBytes = 0;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        // underlying stream belongs to the request, it is only flushed here
+        flushCoalesced();
+    }
+}
@@ -0,0 +1,99 @@
+package org.zalando.nakadi.service.subscription;
+
+import org.json.JSONException;
+import org.zalando.nakadi.domain.StrictJsonParser;
+import org.zalando.nakadi.exceptions.runtime.JsonPathAccessException;
+import org.zalando.nakadi.exceptions.runtime.WrongStreamParametersException;
+import org.zalando.nakadi.util.JsonPathAccess;
+import org.zalando.nakadi.view.StreamFilter;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Server-side filter of a stream. Event is streamed only if all the conditions match it, events that do not match are
+ * not sent to the client and are committed automatically. Only the objects on the paths of conditions are decoded.
+ */
+public class EventFilter {
+
+    private final List<Condition> conditions;
+
+    private EventFilter(final List<Condition> conditions) {
+        this.conditions = conditions;
+    }
+
+    public boolean matches(final byte[] event) {
+        final JsonPathAccess jsonPath;
+        try {
+            jsonPath = new JsonPathAccess(StrictJsonParser.parseLazyObject(event));
+        } catch (final JSONException e) {
+            // events are validated on publishing, anything unexpected is given to the client rather than lost
+            return true;
+        }
+        for (final Condition condition : conditions) {
+            if (!condition.matches(jsonPath)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static EventFilter of(final List<StreamFilter> filters) throws WrongStreamParametersException {
+        final List<Condition> conditions = filters.stream()
+                .map(EventFilter::toCondition)
+                .collect(Collectors.toList());
+        return new EventFilter(conditions);
+    }
+
+    private static Condition toCondition(final StreamFilter filter) throws WrongStreamParametersException {
+        if (null == filter.getPath() || JsonPathAccess.tokenize(filter.getPath()).isEmpty()) {
+            throw new WrongStreamParametersException("path of filter can not be empty");
+        }
+        if (filter.getValues().isEmpty()) {
+            throw new WrongStreamParametersException("values of filter " + filter.getPath() + " can not be empty");
+        }
+        // json null is matched by "null", the same way as it is represented by org.json
+        final Set<String> values = filter.getValues().stream()
+                .map(String::valueOf)
+                .collect(Collectors.toSet());
+        // numbers are compared by value, as 5, 5.0 and 5e0 are the same number written differently
+        final Set<BigDecimal> numbers = new TreeSet<>();
+        for (final String value : values) {
+            try {
+                numbers.add(new BigDecimal(value));
+            } catch (final NumberFormatException e) {
+                // not a number, matched by string only
+            }
+        }
+        return new Condition(filter.getPath(), values, numbers);
+    }
+
+    private static class Condition {
+        private final String path;
+        private final Set<String> values;
+        private final Set<BigDecimal> numbers;
+
+        private Condition(final String path, final Set<String> values, final Set<BigDecimal> numbers) {
+            this.path = path;
+            this.values = values;
+            this.numbers = numbers;
+        }
+
+        private boolean matches(final JsonPathAccess jsonPath) {
+            final Object value;
+            try {
+                value = jsonPath.get(path);
+            } catch (final JsonPathAccessException e) {
+                return false;
+            }
+            if (value instanceof Number) {
+                // TreeSet looks up with compareTo, that ignores the scale of BigDecimal
+                return numbers.contains(new BigDecimal(value.toString()));
+            }
+            return values.contains(value.toString());
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package org.zalando.nakadi.service.subscription;
+
+import org.json.JSONException;
+import org.zalando.nakadi.domain.LazyJsonObject;
+import org.zalando.nakadi.domain.StrictJsonParser;
+import org.zalando.nakadi.exceptions.runtime.WrongStreamParametersException;
+import org.zalando.nakadi.util.JsonPathAccess;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Projection of streamed events to the fields that are requested by the client. Selected fields are copied from the
+ * original event byte by byte, in the order they appear in the event, so that neither the event nor the selected
+ * values have to be decoded. Fields that are not present in the event are omitted.
+ */
+public class EventProjection {
+
+    private final Map<String, Field> fields;
+
+    private EventProjection(final Map<String, Field> fields) {
+        this.fields = fields;
+    }
+
+    public byte[] project(final byte[] event) {
+        final LazyJsonObject object;
+        try {
+            object = StrictJsonParser.parseLazyObject(event);
+        } catch (final JSONException e) {
+            // events are validated on publishing, anything unexpected is given to the client as it is
+            return event;
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(event.length, 512));
+        writeObject(object, fields, out);
+        return out.toByteArray();
+    }
+
+    private static void writeObject(final LazyJsonObject object, final Map<String, Field> fields,
+                                    final ByteArrayOutputStream out) {
+        out.write('{');
+        boolean first = true;
+        for (int i = 0; i < object.length(); ++i) {
+            final Field field = fields.get(object.nameAt(i));
+            if (null == field) {
+                continue;
+            }
+            if (field.isWhole()) {
+                first = writeSeparator(first, out);
+                object.writeField(i, out);
+            } else {
+                final Object value = object.valueAt(i);
+                if (value instanceof LazyJsonObject) {
+                    first = writeSeparator(first, out);
+                    object.writeFieldName(i, out);
+                    writeObject((LazyJsonObject) value, field.nested, out);
+                }
+            }
+        }
+        out.write('}');
+    }
+
+    private static boolean writeSeparator(final boolean first, final ByteArrayOutputStream out) {
+        if (!first) {
+            out.write(',');
+        }
+        return false;
+    }
+
+    public static EventProjection of(final List<String> paths) throws WrongStreamParametersException {
+        final Map<String, Field> fields = new HashMap<>();
+        for (final String path : paths) {
+            final List<String> names = null == path ? null : JsonPathAccess.tokenize(path);
+            if (null == names || names.isEmpty()) {
+                throw new WrongStreamParametersException("path of projection can not be empty");
+            }
+            Map<String, Field> current = fields;
+            for (int i = 0; i < names.size(); ++i) {
+                final Field field = current.computeIfAbsent(names.get(i), name -> new Field());
+                if (i == names.size() - 1) {
+                    // the whole value is selected, even if some of its fields were selected separately
+                    field.nested.clear();
+                    field.whole = true;
+                } else if (field.isWhole()) {
+                    break;
+                }
+                current = field.nested;
+            }
+        }
+        return new EventProjection(fields);
+    }
+
+    private static class Field {
+        private final Map<String, Field> nested = new HashMap<>();
+        private boolean whole;
+
+        private boolean isWhole() {
+            return whole;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package org.zalando.nakadi.service.subscription;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Output stream that writes to servlet output stream in non-blocking mode (Servlet 3.1). Written data is kept in
+ * memory and is sent either right away or by the container as soon as the client is able to receive more data, so
+ * that the thread that writes never waits for a slow client. Closing the stream completes the request once all the
+ * data is sent.
+ */
+public class NonBlockingOutputStream extends OutputStream implements WriteListener {
+
+    private final AsyncContext asyncContext;
+    private final ServletOutputStream out;
+    private final AtomicBoolean connectionReady;
+    private final int maxPendingBytes;
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private boolean flushRequested;
+    private boolean closed;
+    private boolean completed;
+    private IOException error;
+
+    /**
+     * @param connectionReady flag that is reset when the client connection fails
+     * @param maxPendingBytes amount of data not sent to the client, after which the writer is asked to pause
+     */
+    public NonBlockingOutputStream(final AsyncContext asyncContext, final AtomicBoolean connectionReady,
+                                   final int maxPendingBytes) throws IOException {
+        this.asyncContext = asyncContext;
+        this.out = asyncContext.getResponse().getOutputStream();
+        this.connectionReady = connectionReady;
+        this.maxPendingBytes = maxPendingBytes;
+        this.out.setWriteListener(this);
+    }
+
+    @Override
+    public synchronized void write(final int b) throws IOException {
+        checkNotFailed();
+        pending.write(b);
+    }
+
+    @Override
+    public synchronized void write(final byte[] b, final int off, final int len) throws IOException {
+        checkNotFailed();
+        pending.write(b, off, len);
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        checkNotFailed();
+        flushRequested = true;
+        sendPending();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (null != error) {
+            return;
+        }
+        flushRequested = true;
+        sendPending();
+    }
+
+    public synchronized boolean isWritePending() {
+        return pending.size() > maxPendingBytes;
+    }
+
+    @Override
+    public synchronized void onWritePossible() throws IOException {
+        if (null == error) {
+            sendPending();
+        }
+    }
+
+    @Override
+    public synchronized void onError(final Throwable t) {
+        error = t instanceof IOException ? (IOException) t : new IOException(t);
+        connectionReady.set(false);
+        pending.reset();
+        completeRequest();
+    }
+
+    private void sendPending() throws IOException {
+        try {
+            // once isReady() returns false, container calls onWritePossible() when the client is able to receive
+            // more data
+            while (out.isReady()) {
+                if (pending.size() > 0) {
+                    final byte[] data = pending.toByteArray();
+                    pending.reset();
+                    out.write(data);
+                } else if (flushRequested) {
+                    flushRequested = false;
+                    out.flush();
+                } else {
+                    if (closed) {
+                        completeRequest();
+                    }
+                    return;
+                }
+            }
+        } catch (final IOException e) {
+            onError(e);
+            throw e;
+        }
+    }
+
+    private void completeRequest() {
+        if (!completed) {
+            completed = true;
+            asyncContext.complete();
+        }
+    }
+
+    private void checkNotFailed() throws IOException {
+        if (null != error) {
+            throw error;
+        }
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package org.zalando.nakadi.service.subscription;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Node-wide budget of memory for the events that subscription streams have read from kafka, but have not sent to
+ * the clients yet. Every stream holds a lease and reports the amount of events it keeps in memory. The budget is
+ * shared equally between the streams of the node: a stream that keeps more than its share stops reading from kafka
+ * until it sends enough events, so that a burst of streams can not run the node out of memory.
+ */
+@Component
+public class StreamMemoryPool {
+
+    private final long totalBytes;
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final AtomicInteger leases = new AtomicInteger();
+    private final Meter throttles;
+
+    @Autowired
+    public StreamMemoryPool(@Value("${nakadi.stream.memoryPool.totalBytes}") final long totalBytes,
+                            final MetricRegistry metricRegistry) {
+        this.totalBytes = totalBytes;
+        this.throttles = metricRegistry.meter("nakadi.stream.memory_pool.throttles");
+        metricRegistry.register("nakadi.stream.memory_pool.used_bytes", (Gauge<Long>) usedBytes::get);
+        metricRegistry.register("nakadi.stream.memory_pool.streams", (Gauge<Integer>) leases::get);
+        metricRegistry.register("nakadi.stream.memory_pool.utilization", new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(usedBytes.get(), totalBytes);
+            }
+        });
+    }
+
+    public boolean isEnabled() {
+        return totalBytes > 0;
+    }
+
+    public Lease acquireLease() {
+        leases.incrementAndGet();
+        return new Lease();
+    }
+
+    long getShareBytes() {
+        return totalBytes / Math.max(1, leases.get());
+    }
+
+    long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    /**
+     * Part of the pool that is used by one stream. Lease is used only by the tasks of the stream, that are executed
+     * one by one, so only the totals of the pool are shared between threads.
+     */
+    public class Lease {
+        private long bytes;
+        private boolean throttled;
+        private boolean released;
+
+        private Lease() {
+        }
+
+        public void setBytes(final long bytesInMemory) {
+            if (released) {
+                return;
+            }
+            usedBytes.addAndGet(bytesInMemory - bytes);
+            bytes = bytesInMemory;
+        }
+
+        /**
+         * Tells if the stream keeps more than its share of the pool, share is recalculated every time, as it
+         * depends on the number of streams of the node.
+         */
+        public boolean isOverShare() {
+            final boolean overShare = isEnabled() && !released && bytes > getShareBytes();
+            if (overShare && !throttled) {
+                throttles.mark();
+            }
+            throttled = overShare;
+            return overShare;
+        }
+
+        public void release() {
+            if (released) {
+                return;
+            }
+            released = true;
+            usedBytes.addAndGet(-bytes);
+            bytes = 0;
+            leases.decrementAndGet();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package org.zalando.nakadi.service.subscription;
 
+import org.zalando.nakadi.domain.ConsumedEvent;
 import org.zalando.nakadi.domain.EventTypePartition;
 import org.zalando.nakadi.exceptions.runtime.WrongStreamParametersException;
 import org.zalando.nakadi.security.Client;
@@ -49,6 +50,12 @@ public class StreamParameters {
 
     private final List<EventTypePartition> partitions;
 
+    // Applies to stream. Events that do not match the filter are not sent to the client and are autocommitted.
+    private final Optional<EventFilter> eventFilter;
+
+    // Applies to stream. Only the selected fields of events are sent to the client.
+    private final Optional<EventProjection> eventProjection;
+
     private StreamParameters(
             final UserStreamParameters userParameters,
             final long maxCommitTimeout,
@@ -69,6 +76,10 @@ public class StreamParameters {
         this.batchKeepAliveIterations = userParameters.getStreamKeepAliveLimit().filter(v -> v != 0);
         this.partitions = userParameters.getPartitions();
         this.consumingClient = consumingClient;
+        this.eventFilter = userParameters.getFilters().isEmpty() ?
+                Optional.empty() : Optional.of(EventFilter.of(userParameters.getFilters()));
+        this.eventProjection = userParameters.getProjection().isEmpty() ?
+                Optional.empty() : Optional.of(EventProjection.of(userParameters.getProjection()));
 
         final long commitTimeout = userParameters.getCommitTimeoutSeconds().orElse(maxCommitTimeout);
         if (commitTimeout > maxCommitTimeout) {
@@ -91,6 +102,14 @@ public class StreamParameters {
         return batchKeepAliveIterations.map(it -> keepAlive.allMatch(v -> v >= it)).orElse(false);
     }
 
+    public boolean isFilteredOut(final ConsumedEvent event) {
+        return eventFilter.map(filter -> !filter.matches(event.getEvent())).orElse(false);
+    }
+
+    public Optional<EventProjection> getEventProjection() {
+        return eventProjection;
+    }
+
     public Client getConsumingClient() {
         return consumingClient;
     }
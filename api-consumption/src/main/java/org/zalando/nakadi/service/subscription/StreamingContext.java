@@ -37,7 +37,10 @@ import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -47,6 +50,8 @@ import java.util.stream.Collectors;
 public class StreamingContext implements SubscriptionStreamer {
 
     public static final State DEAD_STATE = new DummyState();
+    // number of tasks of a stream executed in a row on event loop, before giving the thread to other streams
+    private static final int MAX_TASKS_PER_TURN = 64;
 
     private final StreamParameters parameters;
     private final Session session;
@@ -77,6 +82,13 @@ public class StreamingContext implements SubscriptionStreamer {
     private final long kpiCollectionFrequencyMs;
 
     private final long streamMemoryLimitBytes;
+    private final StreamMemoryPool streamMemoryPool;
+    private final long maxFlushLatencyMs;
+
+    private final StreamingEventLoop eventLoop;
+    private final AtomicBoolean tasksScheduled = new AtomicBoolean(false);
+    private final CompletableFuture<Void> streamFinished = new CompletableFuture<>();
+    private volatile Executor streamExecutor;
 
     private State currentState = new DummyState();
     private ZkSubscription<List<String>> sessionListSubscription;
@@ -111,8 +123,11 @@ public class StreamingContext implements SubscriptionStreamer {
         this.kpiDataStreamedEventType = builder.kpiDataStremedEventType;
         this.kpiCollectionFrequencyMs = builder.kpiCollectionFrequencyMs;
         this.streamMemoryLimitBytes = builder.streamMemoryLimitBytes;
+        this.streamMemoryPool = builder.streamMemoryPool;
         this.currentSpan = builder.currentSpan;
         this.cursorOperationsService = builder.cursorOperationsService;
+        this.eventLoop = builder.eventLoop;
+        this.maxFlushLatencyMs = builder.maxFlushLatencyMs;
     }
 
     public Span getCurrentSpan() {
@@ -187,6 +202,37 @@ public class StreamingContext implements SubscriptionStreamer {
         }
     }
 
+    @Override
+    public CompletableFuture<Void> streamAsync() {
+        return streamAsync(new StartingState());
+    }
+
+    CompletableFuture<Void> streamAsync(final State firstState) {
+        Preconditions.checkState(null != eventLoop, "Event loop is not configured for the stream");
+        final Closeable shutdownHook = ShutdownHooks.addHook(this::onNodeShutdown);
+        eventLoop.onStreamStarted();
+        streamFinished.whenComplete((ignore, ex) -> {
+            eventLoop.onStreamFinished();
+            try {
+                shutdownHook.close();
+            } catch (final IOException e) {
+                log.error("Failed to delete shutdown hook for subscription {}. This method should not throw any " +
+                        "exception", getSubscription(), e);
+            }
+        });
+        streamExecutor = eventLoop.createStreamExecutor();
+        switchState(firstState);
+        return streamFinished;
+    }
+
+    /**
+     * Tells if tasks of the stream are executed on the shared event loop. Tasks that are executed on event loop
+     * should not wait for data, but rather schedule themselves to be executed later.
+     */
+    public boolean isOnEventLoop() {
+        return null != streamExecutor;
+    }
+
     public AutocommitSupport getAutocommitSupport() {
         return autocommitSupport;
     }
@@ -204,17 +250,61 @@ public class StreamingContext implements SubscriptionStreamer {
         while (currentState != DEAD_STATE) {
             // Wait forever
             final Runnable task = taskQueue.poll(1, TimeUnit.HOURS);
+            if (task != null) {
+                runTask(task);
+            }
+        }
+    }
+
+    private void runTask(final Runnable task) {
+        try {
+            task.run();
+        } catch (final NakadiRuntimeException ex) {
+            log.error("Failed to process task " + task + ", will rethrow original error", ex);
+            switchStateImmediately(new CleanupState(ex.getException()));
+        } catch (final RuntimeException ex) {
+            log.error("Failed to process task " + task + ", code carefully!", ex);
+            switchStateImmediately(new CleanupState(ex));
+        }
+    }
+
+    /**
+     * Makes sure that queued tasks are going to be executed on event loop. At most one execution is scheduled at
+     * a time, which keeps the tasks of the stream serial, the same way as if they were executed by a single thread.
+     */
+    private void scheduleTasksExecution() {
+        if (tasksScheduled.compareAndSet(false, true)) {
             try {
-                if (task != null) {
-                    task.run();
+                streamExecutor.execute(this::runQueuedTasks);
+            } catch (final RejectedExecutionException ex) {
+                tasksScheduled.set(false);
+                log.error("Event loop rejected tasks of the stream, stream is terminated", ex);
+                streamFinished.completeExceptionally(ex);
+            }
+        }
+    }
+
+    private void runQueuedTasks() {
+        try {
+            for (int i = 0; i < MAX_TASKS_PER_TURN && currentState != DEAD_STATE; ++i) {
+                final Runnable task = taskQueue.poll();
+                if (null == task) {
+                    break;
                 }
-            } catch (final NakadiRuntimeException ex) {
-                log.error("Failed to process task " + task + ", will rethrow original error", ex);
-                switchStateImmediately(new CleanupState(ex.getException()));
-            } catch (final RuntimeException ex) {
-                log.error("Failed to process task " + task + ", code carefully!", ex);
-                switchStateImmediately(new CleanupState(ex));
+                runTask(task);
             }
+        } catch (final Error e) {
+            streamFinished.completeExceptionally(e);
+            throw e;
+        } finally {
+            tasksScheduled.set(false);
+        }
+        if (currentState == DEAD_STATE) {
+            taskQueue.clear();
+            streamFinished.complete(null);
+        } else if (!taskQueue.isEmpty()) {
+            // tasks that were added while the flag was still set would be lost otherwise
+            scheduleTasksExecution();
         }
     }
 
@@ -282,6 +372,9 @@ public class StreamingContext implements SubscriptionStreamer {
 
     public void addTask(final Runnable task) {
         taskQueue.offer(task);
+        if (null != streamExecutor) {
+            scheduleTasksExecution();
+        }
     }
 
     public void scheduleTask(final Runnable task, final long timeout, final TimeUnit unit) {
@@ -371,6 +464,14 @@ public class StreamingContext implements SubscriptionStreamer {
         return streamMemoryLimitBytes;
     }
 
+    public StreamMemoryPool getStreamMemoryPool() {
+        return streamMemoryPool;
+    }
+
+    public long getMaxFlushLatencyMs() {
+        return maxFlushLatencyMs;
+    }
+
     public static final class Builder {
         private SubscriptionOutput out;
         private StreamParameters parameters;
@@ -396,7 +497,10 @@ public class StreamingContext implements SubscriptionStreamer {
         private String kpiDataStremedEventType;
         private long kpiCollectionFrequencyMs;
         private long streamMemoryLimitBytes;
+        private StreamMemoryPool streamMemoryPool;
         private Span currentSpan;
+        private StreamingEventLoop eventLoop;
+        private long maxFlushLatencyMs;
 
         public Builder setCurrentSpan(final Span span) {
             this.currentSpan = span;
@@ -413,6 +517,11 @@ public class StreamingContext implements SubscriptionStreamer {
             return this;
         }
 
+        public Builder setStreamMemoryPool(final StreamMemoryPool streamMemoryPool) {
+            this.streamMemoryPool = streamMemoryPool;
+            return this;
+        }
+
         public Builder setCursorComparator(final Comparator<NakadiCursor> comparator) {
             this.cursorComparator = comparator;
             return this;
@@ -523,6 +632,16 @@ public class StreamingContext implements SubscriptionStreamer {
             return this;
         }
 
+        public Builder setMaxFlushLatencyMs(final long maxFlushLatencyMs) {
+            this.maxFlushLatencyMs = maxFlushLatencyMs;
+            return this;
+        }
+
+        public Builder setEventLoop(final StreamingEventLoop eventLoop) {
+            this.eventLoop = eventLoop;
+            return this;
+        }
+
         public StreamingContext build() {
             return new StreamingContext(this);
         }
@@ -0,0 +1,65 @@
+package org.zalando.nakadi.service.subscription;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.concurrent.DelegatingSecurityContextExecutor;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Small pool of threads that runs the tasks of all the subscription streams of the node. Tasks of one stream are
+ * executed one by one (see {@link StreamingContext}), but streams do not own a thread while they are waiting for
+ * events, timers or zookeeper notifications, so that the number of streams is not limited by the number of threads.
+ */
+@Component
+public class StreamingEventLoop {
+
+    private final int threads;
+    private final ExecutorService executor;
+    private final AtomicInteger activeStreams = new AtomicInteger();
+
+    @Autowired
+    public StreamingEventLoop(@Value("${nakadi.stream.eventLoop.threads}") final int threads,
+                              final MetricRegistry metricRegistry) {
+        this.threads = threads;
+        this.executor = threads > 0 ? Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("streaming-event-loop-%d").setDaemon(true).build()) : null;
+        metricRegistry.register("nakadi.stream.event_loop.streams", (Gauge<Integer>) activeStreams::get);
+    }
+
+    public boolean isEnabled() {
+        return threads > 0;
+    }
+
+    /**
+     * Creates executor for the tasks of a stream that is started by the current thread. Tasks are executed with the
+     * security context of the current thread, as authorization checks of the stream rely on it.
+     */
+    Executor createStreamExecutor() {
+        return new DelegatingSecurityContextExecutor(executor, SecurityContextHolder.getContext());
+    }
+
+    void onStreamStarted() {
+        activeStreams.incrementAndGet();
+    }
+
+    void onStreamFinished() {
+        activeStreams.decrementAndGet();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (null != executor) {
+            executor.shutdown();
+        }
+    }
+}
@@ -9,4 +9,10 @@ public interface SubscriptionOutput {
     void onException(Exception ex);
 
     OutputStream getOutputStream();
+
+    /**
+     * Tells that the data that was written to the output is still not sent to the client, so that writing more data
+     * would only pile it up in memory.
+     */
+    boolean isWritePending();
 }
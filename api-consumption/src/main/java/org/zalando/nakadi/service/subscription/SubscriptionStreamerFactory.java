@@ -51,6 +51,9 @@ public class SubscriptionStreamerFactory {
     private final String kpiDataStreamedEventType;
     private final long kpiCollectionFrequencyMs;
     private final long streamMemoryLimitBytes;
+    private final long maxFlushLatencyMs;
+    private final StreamingEventLoop eventLoop;
+    private final StreamMemoryPool streamMemoryPool;
 
     @Autowired
     public SubscriptionStreamerFactory(
@@ -69,7 +72,10 @@ public class SubscriptionStreamerFactory {
             final EventStreamChecks eventStreamChecks,
             @Value("${nakadi.kpi.event-types.nakadiDataStreamed}") final String kpiDataStreamedEventType,
             @Value("${nakadi.kpi.config.stream-data-collection-frequency-ms}") final long kpiCollectionFrequencyMs,
-            @Value("${nakadi.subscription.maxStreamMemoryBytes}") final long streamMemoryLimitBytes) {
+            @Value("${nakadi.subscription.maxStreamMemoryBytes}") final long streamMemoryLimitBytes,
+            @Value("${nakadi.stream.flush.maxLatencyMs}") final long maxFlushLatencyMs,
+            final StreamingEventLoop eventLoop,
+            final StreamMemoryPool streamMemoryPool) {
         this.timelineService = timelineService;
         this.cursorTokenService = cursorTokenService;
         this.objectMapper = objectMapper;
@@ -86,6 +92,17 @@ public class SubscriptionStreamerFactory {
         this.kpiDataStreamedEventType = kpiDataStreamedEventType;
         this.kpiCollectionFrequencyMs = kpiCollectionFrequencyMs;
         this.streamMemoryLimitBytes = streamMemoryLimitBytes;
+        this.maxFlushLatencyMs = maxFlushLatencyMs;
+        this.eventLoop = eventLoop;
+        this.streamMemoryPool = streamMemoryPool;
+    }
+
+    /**
+     * Tells if streams should be started with {@link SubscriptionStreamer#streamAsync()}, so that they are executed
+     * on the shared event loop instead of the thread of the request.
+     */
+    public boolean isEventLoopEnabled() {
+        return eventLoop.isEnabled();
     }
 
     public SubscriptionStreamer build(
@@ -113,6 +130,8 @@ public class SubscriptionStreamerFactory {
         return new StreamingContext.Builder()
                 .setOut(output)
                 .setStreamMemoryLimitBytes(streamMemoryLimitBytes)
+                .setStreamMemoryPool(streamMemoryPool)
+                .setMaxFlushLatencyMs(maxFlushLatencyMs)
                 .setParameters(streamParameters)
                 .setSession(session)
                 .setTimer(executorService)
@@ -136,6 +155,7 @@ public class SubscriptionStreamerFactory {
                 .setKpiDataStremedEventType(kpiDataStreamedEventType)
                 .setKpiCollectionFrequencyMs(kpiCollectionFrequencyMs)
                 .setCurrentSpan(streamSpan)
+                .setEventLoop(eventLoop.isEnabled() ? eventLoop : null)
                 .build();
     }
 
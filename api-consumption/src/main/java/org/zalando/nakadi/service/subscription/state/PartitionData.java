@@ -5,6 +5,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.zalando.nakadi.domain.ConsumedEvent;
 import org.zalando.nakadi.domain.NakadiCursor;
+import org.zalando.nakadi.domain.Timeline;
+import org.zalando.nakadi.repository.kafka.KafkaCursor;
 import org.zalando.nakadi.service.CursorOperationsService;
 import org.zalando.nakadi.service.subscription.zk.ZkSubscription;
 import org.zalando.nakadi.view.SubscriptionCursorWithoutToken;
@@ -12,14 +14,15 @@ import org.zalando.nakadi.view.SubscriptionCursorWithoutToken;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.function.Predicate;
 
 class PartitionData {
+    private static final int INITIAL_CAPACITY = 64;
+    // buffers that grew bigger than that are not kept once all the events are sent
+    private static final int MAX_RETAINED_CAPACITY = 1024;
+
     private final Comparator<NakadiCursor> comparator;
     private final ZkSubscription<SubscriptionCursorWithoutToken> subscription;
-    private final List<ConsumedEvent> nakadiEvents = new LinkedList<>();
     private final Logger log;
     private final CursorOperationsService cursorOperationsService;
 
@@ -31,6 +34,15 @@ class PartitionData {
     private long bytesInMemory;
     final long batchTimespanMillis;
 
+    // Events that are not sent yet are kept in a ring buffer of payloads with parallel arrays of their positions and
+    // timestamps, cursors are created only for the positions that are actually needed.
+    private byte[][] events = new byte[INITIAL_CAPACITY][];
+    private long[] offsets = new long[INITIAL_CAPACITY];
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private Timeline[] timelines = new Timeline[INITIAL_CAPACITY];
+    private int head;
+    private int size;
+
     @VisibleForTesting
     PartitionData(final Comparator<NakadiCursor> comparator,
                   final ZkSubscription<SubscriptionCursorWithoutToken> subscription,
@@ -85,10 +97,10 @@ class PartitionData {
     }
 
     @Nullable
-    List<ConsumedEvent> takeEventsToStream(final long currentTimeMillis,
-                                           final int batchSize, final long batchTimeoutMillis,
-                                           final boolean streamTimeoutReached) {
-        final boolean countReached = (nakadiEvents.size() >= batchSize) && batchSize > 0;
+    List<byte[]> takeEventsToStream(final long currentTimeMillis,
+                                    final int batchSize, final long batchTimeoutMillis,
+                                    final boolean streamTimeoutReached) {
+        final boolean countReached = (size >= batchSize) && batchSize > 0;
         final boolean timeReached = (currentTimeMillis - lastSendMillis) >= batchTimeoutMillis;
 
         if (batchTimespanMillis > 0 && lastRecordTimestamp() >= batchWindowEndTimestamp()) {
@@ -101,7 +113,7 @@ class PartitionData {
         } else if (streamTimeoutReached) {
             lastSendMillis = currentTimeMillis;
             batchWindowStartTimestamp = lastSendMillis;
-            final List<ConsumedEvent> extractedEvents = extractCount(batchSize);
+            final List<byte[]> extractedEvents = extractCount(batchSize);
             return extractedEvents.isEmpty() ? null : extractedEvents;
         } else {
             return null;
@@ -109,34 +121,37 @@ class PartitionData {
     }
 
     private long batchWindowEndTimestamp() {
-        if (batchWindowStartTimestamp == 0 && !nakadiEvents.isEmpty()) {
-            batchWindowStartTimestamp = nakadiEvents.get(0).getTimestamp();
+        if (batchWindowStartTimestamp == 0 && size > 0) {
+            batchWindowStartTimestamp = timestamps[head];
         }
 
         return batchWindowStartTimestamp + batchTimespanMillis;
     }
 
     private long lastRecordTimestamp() {
-        if (nakadiEvents.size() > 0) {
-            return nakadiEvents.get(nakadiEvents.size() - 1).getTimestamp();
+        if (size > 0) {
+            return timestamps[index(size - 1)];
         } else {
             return 0;
         }
     }
 
-    private List<ConsumedEvent> extractTimespan(final long batchWindowEndTimestamp) {
+    private List<byte[]> extractTimespan(final long batchWindowEndTimestamp) {
         // extract at least one. This condition is necessary in case the event that triggers the extract is outside
         // the window but it's the only event to be streamed.
-        final List<ConsumedEvent> events = extract((taken) -> {
-            return nakadiEvents.get(0).getTimestamp() < batchWindowEndTimestamp || taken == 0;
-        });
+        int count = Math.min(size, 1);
+        while (count < size && timestamps[index(count)] < batchWindowEndTimestamp) {
+            ++count;
+        }
+        final long lastTimestamp = count > 0 ? timestamps[index(count - 1)] : 0L;
+        final List<byte[]> extracted = extract(count);
 
         // needed to fast forward the window start in case there are no events for an extended period of time
-        if (!events.isEmpty()) {
-            batchWindowStartTimestamp = Math.max(batchWindowEndTimestamp, events.get(events.size() - 1).getTimestamp());
+        if (!extracted.isEmpty()) {
+            batchWindowStartTimestamp = Math.max(batchWindowEndTimestamp, lastTimestamp);
         }
 
-        return events;
+        return extracted;
     }
 
     NakadiCursor getSentOffset() {
@@ -155,19 +170,17 @@ class PartitionData {
         return bytesInMemory;
     }
 
-    private List<ConsumedEvent> extractCount(final int count) {
-        return extract((i) -> i < count);
+    private List<byte[]> extractCount(final int count) {
+        return extract(Math.max(0, Math.min(count, size)));
     }
 
-    private List<ConsumedEvent> extract(final Predicate<Integer> condition) {
-        final List<ConsumedEvent> result = new ArrayList<>();
-        for (int i = 0; !nakadiEvents.isEmpty() && condition.test(i); ++i) {
-            final ConsumedEvent event = nakadiEvents.remove(0);
-            bytesInMemory -= event.getEvent().length;
-            result.add(event);
-        }
-        if (!result.isEmpty()) {
-            this.sentOffset = result.get(result.size() - 1).getPosition();
+    private List<byte[]> extract(final int count) {
+        final List<byte[]> result = new ArrayList<>(count);
+        if (count > 0) {
+            this.sentOffset = positionAt(count - 1);
+            for (int i = 0; i < count; ++i) {
+                result.add(removeFirst());
+            }
             this.keepAliveInARow = 0;
         } else {
             this.keepAliveInARow += 1;
@@ -175,8 +188,8 @@ class PartitionData {
         return result;
     }
 
-    public List<ConsumedEvent> extractMaxEvents(final long currentTimeMillis, final int count) {
-        final List<ConsumedEvent> result = extractCount(count);
+    public List<byte[]> extractMaxEvents(final long currentTimeMillis, final int count) {
+        final List<byte[]> result = extractCount(count);
         if (!result.isEmpty()) {
             lastSendMillis = currentTimeMillis;
         }
@@ -235,22 +248,89 @@ class PartitionData {
             seekKafka = true;
             commitOffset = offset;
             sentOffset = commitOffset;
-            nakadiEvents.clear();
-            bytesInMemory = 0L;
+            clearEvents();
             committed = 0;
         }
-        while (!nakadiEvents.isEmpty() && comparator.compare(nakadiEvents.get(0).getPosition(), commitOffset) <= 0) {
-            final ConsumedEvent evt = nakadiEvents.remove(0);
-            bytesInMemory -= evt.getEvent().length;
+        final long committedOffset = KafkaCursor.toKafkaOffset(commitOffset.getOffset());
+        while (size > 0 && isFirstCommitted(committedOffset)) {
+            removeFirst();
         }
         return new CommitResult(seekKafka, committed);
     }
 
     void addEvent(final ConsumedEvent event) {
-        nakadiEvents.add(event);
+        if (size == events.length) {
+            resize(events.length * 2);
+        }
+        final int idx = index(size);
+        final NakadiCursor position = event.getPosition();
+        events[idx] = event.getEvent();
+        offsets[idx] = KafkaCursor.toKafkaOffset(position.getOffset());
+        timestamps[idx] = event.getTimestamp();
+        timelines[idx] = position.getTimeline();
+        ++size;
         bytesInMemory += event.getEvent().length;
     }
 
+    private int index(final int position) {
+        return (head + position) % events.length;
+    }
+
+    private NakadiCursor positionAt(final int position) {
+        final int idx = index(position);
+        return NakadiCursor.of(timelines[idx], commitOffset.getPartition(), KafkaCursor.toNakadiOffset(offsets[idx]));
+    }
+
+    private boolean isFirstCommitted(final long committedOffset) {
+        // offsets are comparable within the same timeline, otherwise cursors are compared
+        if (timelines[head].getOrder() == commitOffset.getTimeline().getOrder()) {
+            return offsets[head] <= committedOffset;
+        }
+        return comparator.compare(positionAt(0), commitOffset) <= 0;
+    }
+
+    private byte[] removeFirst() {
+        final byte[] event = events[head];
+        events[head] = null;
+        timelines[head] = null;
+        head = (head + 1) % events.length;
+        --size;
+        bytesInMemory -= event.length;
+        if (size == 0 && events.length > MAX_RETAINED_CAPACITY) {
+            clearEvents();
+        }
+        return event;
+    }
+
+    private void clearEvents() {
+        events = new byte[INITIAL_CAPACITY][];
+        offsets = new long[INITIAL_CAPACITY];
+        timestamps = new long[INITIAL_CAPACITY];
+        timelines = new Timeline[INITIAL_CAPACITY];
+        head = 0;
+        size = 0;
+        bytesInMemory = 0L;
+    }
+
+    private void resize(final int capacity) {
+        final byte[][] newEvents = new byte[capacity][];
+        final long[] newOffsets = new long[capacity];
+        final long[] newTimestamps = new long[capacity];
+        final Timeline[] newTimelines = new Timeline[capacity];
+        for (int i = 0; i < size; ++i) {
+            final int idx = index(i);
+            newEvents[i] = events[idx];
+            newOffsets[i] = offsets[idx];
+            newTimestamps[i] = timestamps[idx];
+            newTimelines[i] = timelines[idx];
+        }
+        events = newEvents;
+        offsets = newOffsets;
+        timestamps = newTimestamps;
+        timelines = newTimelines;
+        head = 0;
+    }
+
     boolean isCommitted() {
         return comparator.compare(sentOffset, commitOffset) <= 0;
     }
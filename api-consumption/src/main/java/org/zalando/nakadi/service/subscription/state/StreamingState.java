@@ -20,8 +20,10 @@ import org.zalando.nakadi.repository.EventConsumer;
 import org.zalando.nakadi.security.Client;
 import org.zalando.nakadi.service.TracingService;
 import org.zalando.nakadi.service.publishing.NakadiKpiPublisher;
+import org.zalando.nakadi.service.subscription.CoalescingOutputStream;
 import org.zalando.nakadi.service.subscription.IdleStreamWatcher;
 import org.zalando.nakadi.service.subscription.LogPathBuilder;
+import org.zalando.nakadi.service.subscription.StreamMemoryPool;
 import org.zalando.nakadi.service.subscription.model.Partition;
 import org.zalando.nakadi.service.subscription.zk.ZkSubscription;
 import org.zalando.nakadi.service.subscription.zk.ZkSubscriptionClient;
@@ -30,6 +32,7 @@ import org.zalando.nakadi.view.SubscriptionCursorWithoutToken;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
@@ -53,13 +56,17 @@ class StreamingState extends State {
     // The reasons for that if there are two partitions (p0, p1) and p0 is reassigned, if p1 is working
     // correctly, and p0 is not receiving any updates - reassignment won't complete.
     private final Map<EventTypePartition, Long> releasingPartitions = new HashMap<>();
+    // Partitions that keep more than their part of stream memory limit are not fetched until they are drained.
+    private final Set<EventTypePartition> pausedPartitions = new HashSet<>();
     private ZkSubscription<ZkSubscriptionClient.Topology> topologyChangeSubscription;
     private EventConsumer.ReassignableEventConsumer eventConsumer;
     private boolean pollPaused;
+    private StreamMemoryPool.Lease memoryLease;
     private long committedEvents;
     private long sentEvents;
     private long batchesSent;
     private Meter bytesSentMeterPerSubscription;
+    private CoalescingOutputStream output;
     private Map<String, StreamKpiData> kpiDataPerEventType;
     private long lastKpiEventSent;
     // Uncommitted offsets are calculated right on exiting from Streaming state.
@@ -78,6 +85,8 @@ class StreamingState extends State {
     private long lastCommitMillis;
 
     private static final long AUTOCOMMIT_INTERVAL_SECONDS = 5;
+    private static final String FLUSHES_METRIC_NAME = "nakadi.stream.flushes";
+    private static final String BYTES_PER_FLUSH_METRIC_NAME = "nakadi.stream.bytes_per_flush";
 
     /**
      * 1. Collects names and prepares to send metrics for bytes streamed
@@ -92,11 +101,17 @@ class StreamingState extends State {
      */
     @Override
     public void onEnter() {
+        memoryLease = getContext().getStreamMemoryPool().acquireLease();
         final String kafkaFlushedBytesMetricName = MetricUtils.metricNameForHiLAStream(
                 this.getContext().getParameters().getConsumingClient().getClientId(),
                 this.getContext().getSubscription().getId()
         );
         bytesSentMeterPerSubscription = this.getContext().getMetricRegistry().meter(kafkaFlushedBytesMetricName);
+        output = new CoalescingOutputStream(
+                getOut().getOutputStream(),
+                getContext().getMaxFlushLatencyMs(),
+                getContext().getMetricRegistry().meter(FLUSHES_METRIC_NAME),
+                getContext().getMetricRegistry().histogram(BYTES_PER_FLUSH_METRIC_NAME));
 
         lastKpiEventSent = System.currentTimeMillis();
         kpiDataPerEventType = this.getContext().getSubscription().getEventTypes().stream()
@@ -181,6 +196,7 @@ class StreamingState extends State {
     private void sendMetadata(final String metadata) {
         offsets.entrySet().stream().findFirst()
                 .ifPresent(pk -> flushData(pk.getKey(), Collections.emptyList(), Optional.of(metadata)));
+        flushOutput();
     }
 
     private long getLastCommitMillis() {
@@ -217,17 +233,27 @@ class StreamingState extends State {
             return;
         }
 
-        if (eventConsumer.getAssignment().isEmpty() || pollPaused) {
-            // Small optimization not to waste CPU while not yet assigned to any partitions
+        if (eventConsumer.getAssignment().isEmpty() || pollPaused || getOut().isWritePending()
+                || memoryLease.isOverShare() || pausedPartitions.containsAll(eventConsumer.getAssignment())) {
+            // Small optimization not to waste CPU while not yet assigned to any partitions. Streams that keep more
+            // than their share of memory do not read from kafka until they send events to the client.
             scheduleTask(this::pollDataFromKafka, getKafkaPollTimeout(), TimeUnit.MILLISECONDS);
             return;
         }
-        final List<ConsumedEvent> events = eventConsumer.readEvents();
+        final boolean onEventLoop = getContext().isOnEventLoop();
+        // Event loop thread is shared with other streams, so it is not blocked waiting for events
+        final List<ConsumedEvent> events = onEventLoop ? eventConsumer.readEvents(0) : eventConsumer.readEvents();
         events.forEach(this::rememberEvent);
         if (!events.isEmpty()) {
+            updateMemoryLease();
+            updatePausedPartitions();
             addTask(this::streamToOutput);
         }
 
+        if (onEventLoop && events.isEmpty()) {
+            scheduleTask(this::pollDataFromKafka, getKafkaPollTimeout(), TimeUnit.MILLISECONDS);
+            return;
+        }
         // Yep, no timeout. All waits are in kafka.
         // It works because only one pollDataFromKafka task is present in queue each time. Poll process will stop
         // when this state will be changed to any other state.
@@ -237,7 +263,7 @@ class StreamingState extends State {
     private void rememberEvent(final ConsumedEvent event) {
         final PartitionData pd = offsets.get(event.getPosition().getEventTypePartition());
         if (null != pd) {
-            if (getContext().isConsumptionBlocked(event)) {
+            if (getContext().isConsumptionBlocked(event) || getParameters().isFilteredOut(event)) {
                 getContext().getAutocommitSupport().addSkippedEvent(event.getPosition());
             } else {
                 pd.addEvent(event);
@@ -245,6 +271,43 @@ class StreamingState extends State {
         }
     }
 
+    private void updateMemoryLease() {
+        memoryLease.setBytes(offsets.values().stream().mapToLong(PartitionData::getBytesInMemory).sum());
+    }
+
+    /**
+     * Pauses fetching of the partitions that keep more than their part of the stream memory limit, and resumes them
+     * when at least half of it is sent. Partitions are paused before the stream reaches its memory limit, so that
+     * batches are not cut because of a single hot partition.
+     */
+    private void updatePausedPartitions() {
+        if (offsets.isEmpty()) {
+            return;
+        }
+        final long partitionLimitBytes = getContext().getStreamMemoryLimitBytes() / offsets.size();
+        final List<EventTypePartition> toPause = new ArrayList<>();
+        final List<EventTypePartition> toResume = new ArrayList<>();
+        for (final Map.Entry<EventTypePartition, PartitionData> e : offsets.entrySet()) {
+            final long bytesInMemory = e.getValue().getBytesInMemory();
+            if (pausedPartitions.contains(e.getKey())) {
+                if (bytesInMemory <= partitionLimitBytes / 2) {
+                    toResume.add(e.getKey());
+                }
+            } else if (bytesInMemory > partitionLimitBytes) {
+                toPause.add(e.getKey());
+            }
+        }
+        if (!toPause.isEmpty()) {
+            getLog().debug("Pausing partitions {}, limit per partition: {} bytes", toPause, partitionLimitBytes);
+            eventConsumer.pause(toPause);
+            pausedPartitions.addAll(toPause);
+        }
+        if (!toResume.isEmpty()) {
+            eventConsumer.resume(toResume);
+            pausedPartitions.removeAll(toResume);
+        }
+    }
+
     private long getMessagesAllowedToSend() {
         final long unconfirmed = offsets.values().stream().mapToLong(PartitionData::getUnconfirmed).sum();
         final long limit = getParameters().maxUncommittedMessages - unconfirmed;
@@ -275,7 +338,7 @@ class StreamingState extends State {
         boolean sentSomething = false;
 
         for (final Map.Entry<EventTypePartition, PartitionData> e : offsets.entrySet()) {
-            List<ConsumedEvent> toSend;
+            List<byte[]> toSend;
             while (null != (toSend = e.getValue().takeEventsToStream(
                     currentTimeMillis,
                     Math.min(getParameters().batchLimitEvents, messagesAllowedToSend),
@@ -300,7 +363,7 @@ class StreamingState extends State {
             ).get(); // There is always at least 1 item in list
 
             long deltaSize = heaviestPartition.getValue().getBytesInMemory();
-            final List<ConsumedEvent> events = heaviestPartition.getValue().extractMaxEvents(currentTimeMillis,
+            final List<byte[]> events = heaviestPartition.getValue().extractMaxEvents(currentTimeMillis,
                     (int) getMessagesAllowedToSend());
             deltaSize -= heaviestPartition.getValue().getBytesInMemory();
 
@@ -323,6 +386,10 @@ class StreamingState extends State {
         if (wasCommitted && sentSomething) {
             this.lastCommitMillis = System.currentTimeMillis();
         }
+        // batches of all the partitions are pushed to the client at once
+        flushOutput();
+        updateMemoryLease();
+        updatePausedPartitions();
         pollPaused = getMessagesAllowedToSend() <= 0;
         if (!offsets.isEmpty() &&
                 getParameters().isKeepAliveLimitReached(offsets.values().stream()
@@ -355,7 +422,7 @@ class StreamingState extends State {
                         .put("bytes_streamed", bytes));
     }
 
-    private void flushData(final EventTypePartition pk, final List<ConsumedEvent> data,
+    private void flushData(final EventTypePartition pk, final List<byte[]> data,
                            final Optional<String> metadata) {
         try {
             final NakadiCursor sentOffset = offsets.get(pk).getSentOffset();
@@ -364,10 +431,11 @@ class StreamingState extends State {
                     getContext().getCursorTokenService().generateToken());
 
             final int batchSize = getContext().getWriter().writeSubscriptionBatch(
-                    getOut().getOutputStream(),
+                    output,
                     cursor,
                     data,
-                    metadata);
+                    metadata,
+                    getParameters().getEventProjection());
 
             bytesSentMeterPerSubscription.mark(batchSize);
 
@@ -382,6 +450,15 @@ class StreamingState extends State {
         }
     }
 
+    private void flushOutput() {
+        try {
+            output.flushCoalesced();
+        } catch (final IOException e) {
+            getLog().warn("Failed to flush data to output: {}", e.getMessage());
+            shutdownGracefully("Failed to write data to output");
+        }
+    }
+
     public void logExtendedCommitInformation() {
         // We need to log situation when commit timeout was reached, and check that current committed offset is the
         // same as it is in zk.
@@ -421,6 +498,9 @@ class StreamingState extends State {
 
     @Override
     public void onExit() {
+        if (null != memoryLease) {
+            memoryLease.release();
+        }
         uncommittedOffsets = offsets.entrySet().stream()
                 .filter(e -> !e.getValue().isCommitted())
                 .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().getSentOffset()));
@@ -598,12 +678,13 @@ class StreamingState extends State {
             }
         }
         final Set<EventTypePartition> currentAssignment = eventConsumer.getAssignment();
+        final boolean reassign = !currentAssignment.equals(newAssignment);
 
         getLog().info("Changing kafka assignment from {} to {}",
                 Arrays.deepToString(currentAssignment.toArray()),
                 Arrays.deepToString(newAssignment.toArray()));
 
-        if (!currentAssignment.equals(newAssignment)) {
+        if (reassign) {
             try {
                 final Map<EventTypePartition, NakadiCursor> beforeFirst = getBeforeFirstCursors(newAssignment);
                 final List<NakadiCursor> cursors = newAssignment.stream()
@@ -621,6 +702,13 @@ class StreamingState extends State {
                 throw new NakadiRuntimeException(ex);
             }
         }
+        if (forceSeek || reassign) {
+            // consumer may forget paused partitions when it is reassigned, so they are paused once again
+            pausedPartitions.retainAll(newAssignment);
+            if (!pausedPartitions.isEmpty()) {
+                eventConsumer.pause(new ArrayList<>(pausedPartitions));
+            }
+        }
     }
 
     private Map<EventTypePartition, NakadiCursor> getBeforeFirstCursors(final Set<EventTypePartition> newAssignment) {
@@ -725,6 +813,7 @@ class StreamingState extends State {
     private void removeFromStreaming(final EventTypePartition key) {
         getLog().info("Removing partition {} from streaming", key);
         releasingPartitions.remove(key);
+        pausedPartitions.remove(key);
         final PartitionData data = offsets.remove(key);
         getAutocommit().removePartition(key);
         if (null != data) {
@@ -42,6 +42,7 @@ import org.zalando.nakadi.service.EventStreamChecks;
 import org.zalando.nakadi.service.EventStreamConfig;
 import org.zalando.nakadi.service.EventStreamFactory;
 import org.zalando.nakadi.service.EventTypeChangeListener;
+import org.zalando.nakadi.service.StreamCompression;
 import org.zalando.nakadi.service.converter.CursorConverterImpl;
 import org.zalando.nakadi.service.timeline.TimelineService;
 import org.zalando.nakadi.util.ThreadUtils;
@@ -166,7 +167,7 @@ public class EventStreamControllerTest {
                 eventTypeCache, timelineService, OBJECT_MAPPER, eventStreamFactoryMock, metricRegistry,
                 streamMetrics, crutch, eventStreamChecks,
                 new CursorConverterImpl(eventTypeCache, timelineService), authorizationValidator,
-                eventTypeChangeListener, null);
+                eventTypeChangeListener, new StreamCompression(false, 1, metricRegistry), null);
 
         settings = mock(SecuritySettings.class);
         when(settings.getAuthMode()).thenReturn(OFF);
@@ -457,6 +458,17 @@ public class EventStreamControllerTest {
         assertThat(contentTypeCaptor.getValue(), equalTo("application/x-json-stream"));
     }
 
+    @Test
+    public void whenConsumptionIsBlockedThenStreamIsClosed() throws Exception {
+        when(eventStreamChecks.isConsumptionBlocked(any(), any())).thenReturn(true);
+        final OutputStream outputStream = mock(OutputStream.class);
+
+        createStreamingResponseBody().writeTo(outputStream);
+
+        verify(responseMock).setStatus(FORBIDDEN.getStatusCode());
+        verify(outputStream, times(1)).close();
+    }
+
     @Test
     public void testAccessDenied() throws Exception {
         Mockito.doThrow(AccessDeniedException.class).when(authorizationValidator)
@@ -15,7 +15,7 @@ public class SubscriptionOutputImplTest {
     @Test
     public void testProblemRaisedForConflictException() {
         final SubscriptionStreamController ssc =
-                new SubscriptionStreamController(null, new ObjectMapper(), null, null, null, null, null, null);
+                new SubscriptionStreamController(null, new ObjectMapper(), null, null, null, null, null, null, null);
 
         final SubscriptionStreamController.SubscriptionOutputImpl impl =
                 ssc.new SubscriptionOutputImpl(
@@ -511,11 +511,11 @@ public class EventStreamTest {
     public void testWriteStreamInfoWhenPresent() {
         final ByteArrayOutputStream baos = new ByteArrayOutputStream();
         final SubscriptionCursor cursor = new SubscriptionCursor("11", "000000000000000012", "event-type", "token-id");
-        final ArrayList<ConsumedEvent> events = Lists.newArrayList(
-                new ConsumedEvent("{\"a\":\"b\"}".getBytes(), mock(NakadiCursor.class), 0, null));
+        final List<byte[]> events = Lists.newArrayList("{\"a\":\"b\"}".getBytes());
 
         try {
-            eventStreamWriter.writeSubscriptionBatch(baos, cursor, events, Optional.of("something"));
+            eventStreamWriter.writeSubscriptionBatch(baos, cursor, events, Optional.of("something"),
+                    Optional.empty());
             final JSONObject batch = new JSONObject(baos.toString());
 
             final JSONObject cursorM = batch.getJSONObject("cursor");
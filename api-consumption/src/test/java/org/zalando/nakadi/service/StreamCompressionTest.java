@@ -0,0 +1,78 @@
+package org.zalando.nakadi.service;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+public class StreamCompressionTest {
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+
+    @Test
+    public void whenClientAcceptsGzipThenStreamIsCompressed() throws IOException {
+        final StreamCompression compression = new StreamCompression(true, 0.8, () -> 0.1, metricRegistry);
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        final OutputStream out = compression.compress(request("gzip, deflate"), response, body);
+        out.write("{\"events\":[]}\n".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+
+        // everything that is flushed can be read by the client before the stream is over
+        final byte[] flushed = new byte[14];
+        final InputStream in = new GZIPInputStream(new ByteArrayInputStream(body.toByteArray()));
+        Assert.assertEquals(14, in.read(flushed));
+        Assert.assertEquals("{\"events\":[]}\n", new String(flushed, StandardCharsets.UTF_8));
+        Assert.assertEquals("gzip", response.getHeader("Content-Encoding"));
+
+        out.close();
+        Assert.assertEquals(1, metricRegistry.histogram("nakadi.stream.compression.ratio").getCount());
+        Assert.assertEquals(14, metricRegistry.meter("nakadi.stream.compression.raw_bytes").getCount());
+    }
+
+    @Test
+    public void whenCpuLoadIsAboveBudgetThenStreamIsNotCompressed() throws IOException {
+        final StreamCompression compression = new StreamCompression(true, 0.8, () -> 0.9, metricRegistry);
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        Assert.assertSame(body, compression.compress(request("gzip"), response, body));
+        Assert.assertNull(response.getHeader("Content-Encoding"));
+        Assert.assertEquals(1, metricRegistry.meter("nakadi.stream.compression.fallbacks").getCount());
+    }
+
+    @Test
+    public void whenClientDoesNotAcceptGzipThenStreamIsNotCompressed() throws IOException {
+        final StreamCompression compression = new StreamCompression(true, 0.8, () -> 0.1, metricRegistry);
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        Assert.assertSame(body, compression.compress(request(null), new MockHttpServletResponse(), body));
+    }
+
+    @Test
+    public void testAcceptEncodingIsParsed() {
+        Assert.assertTrue(StreamCompression.acceptsGzip("gzip"));
+        Assert.assertTrue(StreamCompression.acceptsGzip("deflate, GZIP;q=0.5"));
+        Assert.assertFalse(StreamCompression.acceptsGzip("gzip;q=0"));
+        Assert.assertFalse(StreamCompression.acceptsGzip("deflate, br"));
+        Assert.assertFalse(StreamCompression.acceptsGzip(null));
+    }
+
+    private static MockHttpServletRequest request(final String acceptEncoding) {
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        if (null != acceptEncoding) {
+            request.addHeader("Accept-Encoding", acceptEncoding);
+        }
+        return request;
+    }
+}
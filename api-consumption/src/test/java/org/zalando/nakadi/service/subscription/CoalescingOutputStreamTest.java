@@ -0,0 +1,54 @@
+package org.zalando.nakadi.service.subscription;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.UniformReservoir;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class CoalescingOutputStreamTest {
+
+    private final OutputStream out = mock(OutputStream.class);
+    private final Meter flushes = new Meter();
+    private final Histogram bytesPerFlush = new Histogram(new UniformReservoir());
+
+    @Test
+    public void whenFlushedWithinLatencyThenFlushIsPostponed() throws IOException {
+        final CoalescingOutputStream stream = new CoalescingOutputStream(out, 60_000, flushes, bytesPerFlush);
+        stream.write(new byte[10], 0, 10);
+        stream.flush();
+        stream.write(new byte[5], 0, 5);
+        stream.flush();
+        verify(out, never()).flush();
+
+        stream.flushCoalesced();
+        verify(out, times(1)).flush();
+        Assert.assertEquals(1, flushes.getCount());
+        Assert.assertEquals(15, bytesPerFlush.getSnapshot().getMax());
+    }
+
+    @Test
+    public void whenLatencyIsReachedThenDataIsFlushed() throws IOException {
+        final CoalescingOutputStream stream = new CoalescingOutputStream(out, 0, flushes, bytesPerFlush);
+        stream.write(new byte[10], 0, 10);
+        stream.flush();
+        verify(out, times(1)).flush();
+    }
+
+    @Test
+    public void whenNothingIsWrittenThenNothingIsFlushed() throws IOException {
+        final CoalescingOutputStream stream = new CoalescingOutputStream(out, 0, flushes, bytesPerFlush);
+        stream.flush();
+        stream.flushCoalesced();
+        verify(out, never()).flush();
+        Assert.assertEquals(0, flushes.getCount());
+    }
+}
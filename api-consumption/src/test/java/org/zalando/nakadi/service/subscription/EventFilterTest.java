@@ -0,0 +1,83 @@
+package org.zalando.nakadi.service.subscription;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Test;
+import org.zalando.nakadi.exceptions.runtime.WrongStreamParametersException;
+import org.zalando.nakadi.view.StreamFilter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class EventFilterTest {
+
+    private static final byte[] EVENT = ("{\"metadata\":{\"eid\":\"1\"},\"status\":\"shipped\",\"amount\":10," +
+            "\"customer\":{\"country\":\"DE\",\"vip\":true,\"tag\":null}}").getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void whenAllConditionsMatchThenEventMatches() {
+        final EventFilter filter = EventFilter.of(ImmutableList.of(
+                new StreamFilter("status", ImmutableList.of("created", "shipped")),
+                new StreamFilter("customer.country", ImmutableList.of("DE"))));
+        Assert.assertTrue(filter.matches(EVENT));
+    }
+
+    @Test
+    public void whenAnyConditionDoesNotMatchThenEventDoesNotMatch() {
+        final EventFilter filter = EventFilter.of(ImmutableList.of(
+                new StreamFilter("status", ImmutableList.of("shipped")),
+                new StreamFilter("customer.country", ImmutableList.of("NL"))));
+        Assert.assertFalse(filter.matches(EVENT));
+    }
+
+    @Test
+    public void whenPathDoesNotExistThenEventDoesNotMatch() {
+        Assert.assertFalse(EventFilter.of(ImmutableList.of(new StreamFilter("customer.city", ImmutableList.of("x"))))
+                .matches(EVENT));
+        Assert.assertFalse(EventFilter.of(ImmutableList.of(new StreamFilter("status.x", ImmutableList.of("x"))))
+                .matches(EVENT));
+    }
+
+    @Test
+    public void whenValueIsNotStringThenItIsComparedByStringRepresentation() {
+        Assert.assertTrue(EventFilter.of(ImmutableList.of(
+                new StreamFilter("amount", ImmutableList.of("10")),
+                new StreamFilter("customer.vip", ImmutableList.of("true")),
+                new StreamFilter("customer.tag", Arrays.asList((String) null)))).matches(EVENT));
+    }
+
+    @Test
+    public void whenValueIsNumberThenItIsComparedByValue() {
+        final byte[] event = "{\"amount\":5,\"price\":2.50,\"count\":100}".getBytes(StandardCharsets.UTF_8);
+        Assert.assertTrue(EventFilter.of(ImmutableList.of(
+                new StreamFilter("amount", ImmutableList.of("5.0")),
+                new StreamFilter("price", ImmutableList.of("2.5")),
+                new StreamFilter("count", ImmutableList.of("1e2")))).matches(event));
+        Assert.assertFalse(EventFilter.of(ImmutableList.of(new StreamFilter("amount", ImmutableList.of("5.01"))))
+                .matches(event));
+        Assert.assertFalse(EventFilter.of(ImmutableList.of(new StreamFilter("amount", ImmutableList.of("five"))))
+                .matches(event));
+    }
+
+    @Test
+    public void whenValueIsNumericStringThenItIsComparedAsString() {
+        Assert.assertFalse(EventFilter.of(ImmutableList.of(new StreamFilter("code", ImmutableList.of("5"))))
+                .matches("{\"code\":\"5.0\"}".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void whenEventIsMalformedThenItIsNotFilteredOut() {
+        Assert.assertTrue(EventFilter.of(ImmutableList.of(new StreamFilter("status", ImmutableList.of("x"))))
+                .matches("{\"status\":".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test(expected = WrongStreamParametersException.class)
+    public void whenFilterHasNoValuesThenException() {
+        EventFilter.of(ImmutableList.of(new StreamFilter("status", null)));
+    }
+
+    @Test(expected = WrongStreamParametersException.class)
+    public void whenFilterHasNoPathThenException() {
+        EventFilter.of(ImmutableList.of(new StreamFilter(null, ImmutableList.of("x"))));
+    }
+}
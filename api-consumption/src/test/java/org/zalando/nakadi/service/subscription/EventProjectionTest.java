@@ -0,0 +1,46 @@
+package org.zalando.nakadi.service.subscription;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Test;
+import org.zalando.nakadi.exceptions.runtime.WrongStreamParametersException;
+
+import java.nio.charset.StandardCharsets;
+
+public class EventProjectionTest {
+
+    private static final String EVENT = "{\"metadata\":{\"eid\":\"e1\",\"occurred_at\":\"2020-01-01T00:00:00Z\"}," +
+            "\"order_number\":42, \"status\" : \"shipped\",\"items\":[{\"sku\":\"a\"}],\"customer\":null}";
+
+    @Test
+    public void whenFieldsAreSelectedThenTheyAreCopiedInOriginalOrder() {
+        final EventProjection projection = EventProjection.of(
+                ImmutableList.of("status", "metadata.eid", "order_number"));
+        Assert.assertEquals("{\"metadata\":{\"eid\":\"e1\"},\"order_number\":42,\"status\" : \"shipped\"}",
+                project(projection, EVENT));
+    }
+
+    @Test
+    public void whenWholeObjectIsSelectedThenNestedSelectionIsIgnored() {
+        final EventProjection projection = EventProjection.of(
+                ImmutableList.of("metadata.eid", "metadata", "items"));
+        Assert.assertEquals("{\"metadata\":{\"eid\":\"e1\",\"occurred_at\":\"2020-01-01T00:00:00Z\"}," +
+                "\"items\":[{\"sku\":\"a\"}]}", project(projection, EVENT));
+    }
+
+    @Test
+    public void whenFieldIsMissingOrIsNotObjectThenItIsOmitted() {
+        final EventProjection projection = EventProjection.of(
+                ImmutableList.of("metadata.partition", "customer.name", "unknown", "customer"));
+        Assert.assertEquals("{\"metadata\":{},\"customer\":null}", project(projection, EVENT));
+    }
+
+    @Test(expected = WrongStreamParametersException.class)
+    public void whenPathIsEmptyThenException() {
+        EventProjection.of(ImmutableList.of(""));
+    }
+
+    private static String project(final EventProjection projection, final String event) {
+        return new String(projection.project(event.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,53 @@
+package org.zalando.nakadi.service.subscription;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StreamMemoryPoolTest {
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+
+    @Test
+    public void whenStreamKeepsMoreThanItsShareThenItIsOverShare() {
+        final StreamMemoryPool pool = new StreamMemoryPool(1000, metricRegistry);
+        final StreamMemoryPool.Lease first = pool.acquireLease();
+        first.setBytes(600);
+        Assert.assertFalse(first.isOverShare());
+
+        // share of the first stream shrinks as soon as another stream joins
+        final StreamMemoryPool.Lease second = pool.acquireLease();
+        Assert.assertTrue(first.isOverShare());
+        Assert.assertFalse(second.isOverShare());
+        Assert.assertEquals(1, metricRegistry.meter("nakadi.stream.memory_pool.throttles").getCount());
+
+        first.setBytes(400);
+        Assert.assertFalse(first.isOverShare());
+        Assert.assertEquals(400, pool.getUsedBytes());
+    }
+
+    @Test
+    public void whenLeaseIsReleasedThenMemoryAndShareAreReturnedToPool() {
+        final StreamMemoryPool pool = new StreamMemoryPool(1000, metricRegistry);
+        final StreamMemoryPool.Lease first = pool.acquireLease();
+        final StreamMemoryPool.Lease second = pool.acquireLease();
+        first.setBytes(300);
+        second.setBytes(200);
+        Assert.assertEquals(500, pool.getShareBytes());
+
+        second.release();
+        second.release();
+        second.setBytes(100);
+        Assert.assertEquals(300, pool.getUsedBytes());
+        Assert.assertEquals(1000, pool.getShareBytes());
+        Assert.assertEquals(1, metricRegistry.getGauges().get("nakadi.stream.memory_pool.streams").getValue());
+    }
+
+    @Test
+    public void whenPoolIsDisabledThenStreamIsNeverOverShare() {
+        final StreamMemoryPool pool = new StreamMemoryPool(0, metricRegistry);
+        final StreamMemoryPool.Lease lease = pool.acquireLease();
+        lease.setBytes(Long.MAX_VALUE / 2);
+        Assert.assertFalse(lease.isOverShare());
+    }
+}
@@ -107,7 +107,8 @@ public class StreamParametersTest {
                                                           final Client client) throws WrongStreamParametersException {
         final UserStreamParameters userParams = new UserStreamParameters(batchLimitEvents, streamLimitEvents,
                 batchTimespan, batchTimeoutSeconds, streamTimeoutSeconds, batchKeepAliveIterations,
-                maxUncommittedMessages, ImmutableList.of(), commitTimeoutSeconds);
+                maxUncommittedMessages, ImmutableList.of(), commitTimeoutSeconds, ImmutableList.of(),
+                ImmutableList.of());
         return StreamParameters.of(userParams, commitTimeoutSeconds, client);
     }
 }
@@ -1,5 +1,6 @@
 package org.zalando.nakadi.service.subscription;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableList;
 import io.opentracing.Span;
 import org.junit.Assert;
@@ -16,7 +17,12 @@ import org.zalando.nakadi.util.ThreadUtils;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
@@ -27,6 +33,11 @@ import static org.mockito.Mockito.when;
 
 public class StreamingContextTest {
     private static StreamingContext createTestContext(final Consumer<Exception> onException) throws IOException {
+        return createTestContext(onException, null);
+    }
+
+    private static StreamingContext createTestContext(final Consumer<Exception> onException,
+                                                      final StreamingEventLoop eventLoop) throws IOException {
         final SubscriptionOutput output = new SubscriptionOutput() {
             @Override
             public void onInitialized(final String ignore) {
@@ -43,6 +54,11 @@ public class StreamingContextTest {
             public OutputStream getOutputStream() {
                 return null;
             }
+
+            @Override
+            public boolean isWritePending() {
+                return false;
+            }
         };
 
         // Mocks
@@ -65,6 +81,7 @@ public class StreamingContextTest {
                 .setObjectMapper(null)
                 .setEventStreamChecks(null)
                 .setCurrentSpan(span)
+                .setEventLoop(eventLoop)
                 .build();
     }
 
@@ -96,6 +113,50 @@ public class StreamingContextTest {
         Assert.assertSame(killerException, caughtException.get());
     }
 
+    @Test
+    public void whenStreamingOnEventLoopThenTasksAreExecutedOneByOne() throws Exception {
+        final AtomicReference<Exception> caughtException = new AtomicReference<>(null);
+        final RuntimeException killerException = new RuntimeException();
+        final StreamingEventLoop eventLoop = new StreamingEventLoop(2, new MetricRegistry());
+        final StreamingContext ctx = createTestContext(caughtException::set, eventLoop);
+
+        final CompletableFuture<Void> streamFinished = ctx.streamAsync(new State() {
+            @Override
+            public void onEnter() {
+            }
+        });
+        final AtomicInteger runningTasks = new AtomicInteger();
+        final AtomicInteger executedTasks = new AtomicInteger();
+        final AtomicBoolean tasksOverlapped = new AtomicBoolean(false);
+        final List<Thread> producers = new ArrayList<>();
+        for (int i = 0; i < 4; ++i) {
+            producers.add(new Thread(() -> {
+                for (int j = 0; j < 250; ++j) {
+                    ctx.addTask(() -> {
+                        if (runningTasks.incrementAndGet() > 1) {
+                            tasksOverlapped.set(true);
+                        }
+                        executedTasks.incrementAndGet();
+                        runningTasks.decrementAndGet();
+                    });
+                }
+            }));
+        }
+        producers.forEach(Thread::start);
+        for (final Thread producer : producers) {
+            producer.join();
+        }
+        ctx.addTask(() -> {
+            throw killerException;
+        });
+
+        streamFinished.get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(1000, executedTasks.get());
+        Assert.assertFalse(tasksOverlapped.get());
+        Assert.assertSame(killerException, caughtException.get());
+        eventLoop.shutdown();
+    }
+
     @Test
     public void stateBaseMethodsMustBeCalledOnSwitching() throws InterruptedException, IOException {
         final StreamingContext ctx = createTestContext(null);
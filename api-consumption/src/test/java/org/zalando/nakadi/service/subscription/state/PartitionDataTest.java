@@ -81,6 +81,42 @@ public class PartitionDataTest {
         }
     }
 
+    @Test
+    public void eventsShouldBeStreamedInOrderWhenBufferWrapsAndGrows() {
+        final PartitionData pd = new PartitionData(COMP, null, createCursor(100L), System.currentTimeMillis(),
+                new CursorOperationsService(timelineService));
+        for (long i = 0; i < 50; ++i) {
+            pd.addEvent(new ConsumedEvent(("test_" + i).getBytes(), createCursor(100L + i + 1), 0, null));
+        }
+        assertEquals(30, pd.takeEventsToStream(currentTimeMillis(), 30, 0L, false).size());
+        assertEquals(130L, Long.parseLong(pd.getSentOffset().getOffset()));
+        // buffer of 64 events wraps and then grows
+        for (long i = 50; i < 200; ++i) {
+            pd.addEvent(new ConsumedEvent(("test_" + i).getBytes(), createCursor(100L + i + 1), 0, null));
+        }
+        final List<byte[]> data = pd.takeEventsToStream(currentTimeMillis(), 1000, 0L, false);
+        assertEquals(170, data.size());
+        for (int i = 0; i < data.size(); ++i) {
+            assertEquals("test_" + (i + 30), new String(data.get(i)));
+        }
+        assertEquals(300L, Long.parseLong(pd.getSentOffset().getOffset()));
+        assertEquals(0L, pd.getBytesInMemory());
+    }
+
+    @Test
+    public void committedEventsShouldBeRemoved() {
+        final PartitionData pd = new PartitionData(COMP, null, createCursor(100L), System.currentTimeMillis(),
+                new CursorOperationsService(timelineService));
+        for (long i = 0; i < 10; ++i) {
+            pd.addEvent(new ConsumedEvent("test".getBytes(), createCursor(100L + i + 1), 0, null));
+        }
+        pd.onCommitOffset(createCursor(105L));
+        assertEquals(20L, pd.getBytesInMemory());
+        final List<byte[]> data = pd.takeEventsToStream(currentTimeMillis(), 1000, 0L, false);
+        assertEquals(5, data.size());
+        assertEquals(110L, Long.parseLong(pd.getSentOffset().getOffset()));
+    }
+
     @Test
     public void keepAliveCountShouldIncreaseOnEachEmptyCall() {
         final PartitionData pd = new PartitionData(COMP, null, createCursor(100L), System.currentTimeMillis(),
@@ -107,7 +143,7 @@ public class PartitionDataTest {
         for (int i = 0; i < 100; ++i) {
             pd.addEvent(new ConsumedEvent("test".getBytes(), createCursor(i + 100L + 1), 0, null));
         }
-        List<ConsumedEvent> data = pd.takeEventsToStream(currentTime, 1000, timeout, false);
+        List<byte[]> data = pd.takeEventsToStream(currentTime, 1000, timeout, false);
         assertNull(data);
         assertEquals(0, pd.getKeepAliveInARow());
 
@@ -140,7 +176,7 @@ public class PartitionDataTest {
             pd.addEvent(new ConsumedEvent("test".getBytes(), createCursor(i + 100L + 1), 0, null));
         }
         assertNull(pd.takeEventsToStream(currentTimeMillis(), 1000, timeout, false));
-        final List<ConsumedEvent> eventsToStream = pd.takeEventsToStream(currentTimeMillis(), 99, timeout, false);
+        final List<byte[]> eventsToStream = pd.takeEventsToStream(currentTimeMillis(), 99, timeout, false);
         assertNotNull(eventsToStream);
         assertEquals(99, eventsToStream.size());
     }
@@ -7,6 +7,7 @@ import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.zalando.nakadi.domain.ConsumedEvent;
 import org.zalando.nakadi.domain.CursorError;
 import org.zalando.nakadi.domain.EventTypePartition;
 import org.zalando.nakadi.domain.NakadiCursor;
@@ -25,6 +26,7 @@ import org.zalando.nakadi.security.Client;
 import org.zalando.nakadi.service.CursorConverter;
 import org.zalando.nakadi.service.CursorOperationsService;
 import org.zalando.nakadi.service.subscription.StreamParameters;
+import org.zalando.nakadi.service.subscription.StreamMemoryPool;
 import org.zalando.nakadi.service.subscription.StreamParametersTest;
 import org.zalando.nakadi.service.subscription.StreamingContext;
 import org.zalando.nakadi.service.subscription.SubscriptionOutput;
@@ -35,16 +37,24 @@ import org.zalando.nakadi.service.subscription.zk.ZkSubscriptionClient;
 import org.zalando.nakadi.service.timeline.TimelineService;
 import org.zalando.nakadi.view.SubscriptionCursorWithoutToken;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -54,6 +64,8 @@ public class StreamingStateTest {
     private StreamingState state;
 
     private static final String SESSION_ID = "ssid";
+    private static final EventTypePartition P0 = new EventTypePartition("t", "0");
+    private static final EventTypePartition P1 = new EventTypePartition("t", "1");
     @Mock
     private ZkSubscriptionClient zkMock;
     @Mock
@@ -112,6 +124,7 @@ public class StreamingStateTest {
         when(contextMock.getParameters()).thenReturn(spMock);
 
         when(contextMock.getAutocommitSupport()).thenReturn(autocommitSupport);
+        when(contextMock.getStreamMemoryPool()).thenReturn(new StreamMemoryPool(0, new MetricRegistry()));
 
         state.setContext(contextMock);
     }
@@ -229,4 +242,94 @@ public class StreamingStateTest {
         verify(offsetSubscription, times(1)).close();
         verify(offsetSubscription, times(1)).getData();
     }
+
+    @Test
+    public void whenPartitionKeepsMoreThanItsPartOfMemoryThenItIsPausedUntilHalfIsLeft() throws Exception {
+        final Timeline timeline = prepareStreaming(P0, P1);
+
+        // 2 partitions share 100 bytes, 60 bytes of the first one are above its part
+        when(contextMock.getStreamMemoryLimitBytes()).thenReturn(100L);
+        when(eventConsumer.readEvents()).thenReturn(events(timeline, "0", 3));
+        state.pollDataFromKafka();
+        verify(eventConsumer, times(1)).pause(Collections.singletonList(P0));
+
+        // 60 bytes are below the part of 100 bytes, but above its half
+        when(contextMock.getStreamMemoryLimitBytes()).thenReturn(200L);
+        when(eventConsumer.readEvents()).thenReturn(events(timeline, "1", 1));
+        state.pollDataFromKafka();
+        verify(eventConsumer, never()).resume(any());
+
+        when(contextMock.getStreamMemoryLimitBytes()).thenReturn(400L);
+        state.pollDataFromKafka();
+        verify(eventConsumer, times(1)).resume(Collections.singletonList(P0));
+    }
+
+    @Test
+    public void whenConsumerIsReassignedThenPausedPartitionsArePausedAgain() throws Exception {
+        final Timeline timeline = prepareStreaming(P0, P1);
+        when(contextMock.getStreamMemoryLimitBytes()).thenReturn(100L);
+        when(eventConsumer.readEvents()).thenReturn(events(timeline, "0", 3));
+        state.pollDataFromKafka();
+        verify(eventConsumer, times(1)).pause(Collections.singletonList(P0));
+
+        // commit in future makes the consumer to be reassigned from scratch
+        when(cursorConverter.convert(any(SubscriptionCursorWithoutToken.class)))
+                .thenReturn(NakadiCursor.of(timeline, "1", "5"));
+        state.offsetChanged(P1);
+
+        verify(eventConsumer, times(1)).reassign(Collections.emptyList());
+        verify(eventConsumer, times(2)).pause(Collections.singletonList(P0));
+    }
+
+    /**
+     * Assigns the partitions to the stream, the consumer behaves like the real one and reports the partitions it
+     * was reassigned to.
+     */
+    @SuppressWarnings("unchecked")
+    private Timeline prepareStreaming(final EventTypePartition... partitions) throws Exception {
+        final Set<EventTypePartition> assignment = new HashSet<>();
+        doAnswer(invocation -> {
+            assignment.clear();
+            ((Collection<NakadiCursor>) invocation.getArguments()[0])
+                    .forEach(cursor -> assignment.add(cursor.getEventTypePartition()));
+            return null;
+        }).when(eventConsumer).reassign(any());
+        when(eventConsumer.getAssignment()).thenAnswer(invocation -> new HashSet<>(assignment));
+        when(zkMock.subscribeForOffsetChanges(any(), any())).thenReturn(mock(ZkSubscription.class));
+        when(subscription.getEventTypes()).thenReturn(Collections.singleton("t"));
+
+        final Storage storage = mock(Storage.class);
+        when(storage.getType()).thenReturn(Storage.Type.KAFKA);
+        final Timeline timeline = new Timeline("t", 0, storage, "t", new Date());
+        when(timelineService.getActiveTimelinesOrdered(eq("t"))).thenReturn(Collections.singletonList(timeline));
+        final TopicRepository topicRepository = mock(TopicRepository.class);
+        when(timelineService.getTopicRepository(eq(timeline))).thenReturn(topicRepository);
+        final List<PartitionStatistics> stats = new ArrayList<>();
+        for (final EventTypePartition partition : partitions) {
+            final PartitionStatistics partitionStats = mock(PartitionStatistics.class);
+            when(partitionStats.getBeforeFirst())
+                    .thenReturn(NakadiCursor.of(timeline, partition.getPartition(), "0"));
+            stats.add(partitionStats);
+        }
+        when(topicRepository.loadTopicStatistics(any())).thenReturn(stats);
+
+        state.onEnter();
+        when(cursorConverter.convert(any(SubscriptionCursorWithoutToken.class)))
+                .thenReturn(NakadiCursor.of(timeline, "0", "0"), NakadiCursor.of(timeline, "1", "0"));
+        state.refreshTopologyUnlocked(Arrays.stream(partitions)
+                .map(p -> new Partition(p.getEventType(), p.getPartition(), SESSION_ID, null,
+                        Partition.State.ASSIGNED))
+                .toArray(Partition[]::new));
+        return timeline;
+    }
+
+    // every event takes 20 bytes
+    private static List<ConsumedEvent> events(final Timeline timeline, final String partition, final int count) {
+        final List<ConsumedEvent> events = new ArrayList<>();
+        for (int i = 1; i <= count; ++i) {
+            events.add(new ConsumedEvent("{\"e\":\"0123456789ab\"}".getBytes(),
+                    NakadiCursor.of(timeline, partition, String.valueOf(i)), 0, null));
+        }
+        return events;
+    }
 }
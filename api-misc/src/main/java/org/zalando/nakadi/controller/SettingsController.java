@@ -11,6 +11,7 @@ import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.context.request.NativeWebRequest;
 import org.zalando.nakadi.domain.FeatureWrapper;
 import org.zalando.nakadi.domain.ItemsWrapper;
+import org.zalando.nakadi.domain.PublishingQuota;
 import org.zalando.nakadi.domain.ResourceAuthorization;
 import org.zalando.nakadi.exceptions.runtime.ForbiddenOperationException;
 import org.zalando.nakadi.exceptions.runtime.ValidationException;
@@ -18,6 +19,7 @@ import org.zalando.nakadi.plugin.api.authz.AuthorizationService;
 import org.zalando.nakadi.service.AdminService;
 import org.zalando.nakadi.service.BlacklistService;
 import org.zalando.nakadi.service.FeatureToggleService;
+import org.zalando.nakadi.service.PublishingQuotaService;
 
 import javax.validation.Valid;
 
@@ -30,14 +32,17 @@ public class SettingsController {
     private final BlacklistService blacklistService;
     private final FeatureToggleService featureToggleService;
     private final AdminService adminService;
+    private final PublishingQuotaService quotaService;
 
     @Autowired
     public SettingsController(final BlacklistService blacklistService,
                               final FeatureToggleService featureToggleService,
-                              final AdminService adminService) {
+                              final AdminService adminService,
+                              final PublishingQuotaService quotaService) {
         this.blacklistService = blacklistService;
         this.featureToggleService = featureToggleService;
         this.adminService = adminService;
+        this.quotaService = quotaService;
     }
 
     @RequestMapping(path = "/blacklist", method = RequestMethod.GET)
@@ -72,6 +77,43 @@ public class SettingsController {
         return ResponseEntity.noContent().build();
     }
 
+    @RequestMapping(path = "/quotas", method = RequestMethod.GET)
+    public ResponseEntity<?> getQuotas() throws ForbiddenOperationException {
+        if (!adminService.isAdmin(AuthorizationService.Operation.READ)) {
+            throw new ForbiddenOperationException("Admin privileges are required to perform this operation");
+        }
+        return ResponseEntity.ok(quotaService.getQuotas());
+    }
+
+    @RequestMapping(value = "/quotas/{quota_type}/{name}", method = RequestMethod.PUT)
+    public ResponseEntity setQuota(@PathVariable("quota_type") final PublishingQuotaService.Type quotaType,
+                                   @PathVariable("name") final String name,
+                                   @Valid @RequestBody final PublishingQuota quota,
+                                   final Errors errors,
+                                   final NativeWebRequest request)
+            throws ValidationException, ForbiddenOperationException {
+        if (!adminService.isAdmin(AuthorizationService.Operation.WRITE)) {
+            throw new ForbiddenOperationException("Admin privileges are required to perform this operation");
+        }
+        if (errors.hasErrors()) {
+            throw new ValidationException(errors);
+        }
+        quotaService.setQuota(name, quotaType, quota);
+        return ResponseEntity.noContent().build();
+    }
+
+    @RequestMapping(value = "/quotas/{quota_type}/{name}", method = RequestMethod.DELETE)
+    public ResponseEntity deleteQuota(@PathVariable("quota_type") final PublishingQuotaService.Type quotaType,
+                                      @PathVariable("name") final String name,
+                                      final NativeWebRequest request)
+            throws ForbiddenOperationException {
+        if (!adminService.isAdmin(AuthorizationService.Operation.WRITE)) {
+            throw new ForbiddenOperationException("Admin privileges are required to perform this operation");
+        }
+        quotaService.deleteQuota(name, quotaType);
+        return ResponseEntity.noContent().build();
+    }
+
     @RequestMapping(path = "/features", method = RequestMethod.GET)
     public ResponseEntity<?> getFeatures()
             throws ForbiddenOperationException {
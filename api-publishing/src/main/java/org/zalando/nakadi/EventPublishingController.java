@@ -1,8 +1,8 @@
 package org.zalando.nakadi;
 
-import com.google.common.base.Charsets;
 import io.opentracing.Span;
 import io.opentracing.tag.Tags;
+import org.json.JSONException;
 import org.json.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -12,39 +12,62 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.zalando.nakadi.domain.EventPublishResult;
 import org.zalando.nakadi.domain.EventPublishingStatus;
+import org.zalando.nakadi.domain.Feature;
+import org.zalando.nakadi.domain.NdjsonBatchReader;
 import org.zalando.nakadi.exceptions.runtime.AccessDeniedException;
 import org.zalando.nakadi.exceptions.runtime.BlockedException;
 import org.zalando.nakadi.exceptions.runtime.EventTypeTimeoutException;
 import org.zalando.nakadi.exceptions.runtime.InternalNakadiException;
+import org.zalando.nakadi.exceptions.runtime.MalformedUtf8Exception;
 import org.zalando.nakadi.exceptions.runtime.NoSuchEventTypeException;
 import org.zalando.nakadi.exceptions.runtime.ServiceTemporarilyUnavailableException;
+import org.zalando.nakadi.exceptions.runtime.TooManyRequestsException;
 import org.zalando.nakadi.metrics.EventTypeMetricRegistry;
 import org.zalando.nakadi.metrics.EventTypeMetrics;
 import org.zalando.nakadi.security.Client;
 import org.zalando.nakadi.service.BlacklistService;
+import org.zalando.nakadi.service.FeatureToggleService;
+import org.zalando.nakadi.service.PublishingQuotaService;
 import org.zalando.nakadi.service.publishing.EventPublisher;
 import org.zalando.nakadi.service.publishing.NakadiKpiPublisher;
+import org.zalando.nakadi.service.publishing.PublishingAdmissionControl;
 import org.zalando.nakadi.service.TracingService;
 
 import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static org.springframework.http.ResponseEntity.status;
 import static org.springframework.web.bind.annotation.RequestMethod.POST;
+import static org.zalando.problem.Status.BAD_REQUEST;
 import static org.zalando.problem.Status.INTERNAL_SERVER_ERROR;
 import static org.zalando.problem.Status.NOT_FOUND;
+import static org.zalando.problem.Status.SERVICE_UNAVAILABLE;
+import static org.zalando.problem.Status.TOO_MANY_REQUESTS;
+import static org.zalando.problem.Status.UNPROCESSABLE_ENTITY;
 
 @RestController
 public class EventPublishingController {
 
+    private static final String APPLICATION_NDJSON = "application/x-ndjson";
+
     private final EventPublisher publisher;
     private final EventTypeMetricRegistry eventTypeMetricRegistry;
     private final BlacklistService blacklistService;
     private final NakadiKpiPublisher nakadiKpiPublisher;
     private final String kpiBatchPublishedEventType;
+    private final FeatureToggleService featureToggleService;
+    private final PublishingAdmissionControl admissionControl;
+    private final PublishingQuotaService quotaService;
+    private final int ndjsonChunkEvents;
+    private final int ndjsonChunkBytes;
+    private final long asyncTimeoutMs;
 
     @Autowired
     public EventPublishingController(final EventPublisher publisher,
@@ -52,89 +75,208 @@ public class EventPublishingController {
                                      final BlacklistService blacklistService,
                                      final NakadiKpiPublisher nakadiKpiPublisher,
                                      @Value("${nakadi.kpi.event-types.nakadiBatchPublished}") final
-                                     String kpiBatchPublishedEventType) {
+                                     String kpiBatchPublishedEventType,
+                                     final FeatureToggleService featureToggleService,
+                                     final PublishingAdmissionControl admissionControl,
+                                     final PublishingQuotaService quotaService,
+                                     @Value("${nakadi.publishing.ndjson.chunk-events:1000}")
+                                     final int ndjsonChunkEvents,
+                                     @Value("${nakadi.publishing.ndjson.chunk-bytes:1048576}")
+                                     final int ndjsonChunkBytes,
+                                     @Value("${nakadi.publishing.async.timeout-ms:40000}")
+                                     final long asyncTimeoutMs) {
         this.publisher = publisher;
         this.eventTypeMetricRegistry = eventTypeMetricRegistry;
         this.blacklistService = blacklistService;
         this.nakadiKpiPublisher = nakadiKpiPublisher;
         this.kpiBatchPublishedEventType = kpiBatchPublishedEventType;
+        this.featureToggleService = featureToggleService;
+        this.admissionControl = admissionControl;
+        this.quotaService = quotaService;
+        this.ndjsonChunkEvents = ndjsonChunkEvents;
+        this.ndjsonChunkBytes = ndjsonChunkBytes;
+        this.asyncTimeoutMs = asyncTimeoutMs;
     }
 
     @RequestMapping(value = "/event-types/{eventTypeName}/events", method = POST)
-    public ResponseEntity postEvents(@PathVariable final String eventTypeName,
-                                     @RequestBody final String eventsAsString,
-                                     final HttpServletRequest request,
-                                     final Client client)
+    public DeferredResult<ResponseEntity> postEvents(@PathVariable final String eventTypeName,
+                                                     @RequestBody final byte[] events,
+                                                     final HttpServletRequest request,
+                                                     final Client client)
             throws AccessDeniedException, BlockedException, ServiceTemporarilyUnavailableException,
             InternalNakadiException, EventTypeTimeoutException, NoSuchEventTypeException {
-        return postEventsWithMetrics(eventTypeName, eventsAsString, request, client, false);
+        return postEventsWithMetrics(eventTypeName, events, request, client, false);
 
     }
 
+    /**
+     * Publishes newline delimited json events. The body is not buffered: it is read and published in chunks while it
+     * is being uploaded, so the time to the first write to the storage does not depend on the size of the batch.
+     */
+    @RequestMapping(value = "/event-types/{eventTypeName}/events", method = POST, consumes = APPLICATION_NDJSON)
+    public ResponseEntity postEventsStream(@PathVariable final String eventTypeName,
+                                           final HttpServletRequest request,
+                                           final Client client)
+            throws IOException, AccessDeniedException, BlockedException, ServiceTemporarilyUnavailableException,
+            InternalNakadiException, EventTypeTimeoutException, NoSuchEventTypeException {
+        if (blacklistService.isProductionBlocked(eventTypeName, client.getClientId())) {
+            throw new BlockedException("Application or event type is blocked");
+        }
+        final EventTypeMetrics eventTypeMetrics = eventTypeMetricRegistry.metricsFor(eventTypeName);
+        // size of the body is not known in advance if it is uploaded with chunked encoding
+        final long contentLength = request.getContentLengthLong();
+        final PublishingAdmissionControl.Admission admission;
+        try {
+            quotaService.checkQuota(eventTypeName, client.getClientId(), Math.max(0, contentLength));
+            // only one chunk of the body is kept in memory at a time
+            admission = admissionControl.admit(contentLength < 0 ?
+                    ndjsonChunkBytes : Math.min(contentLength, ndjsonChunkBytes));
+        } catch (final TooManyRequestsException exception) {
+            eventTypeMetrics.incrementResponseCount(TOO_MANY_REQUESTS.getStatusCode());
+            throw exception;
+        }
+        final long startingNanos = System.nanoTime();
+        try {
+            final Span publishingSpan = TracingService.extractSpan(request, "publish_events")
+                    .setTag("event_type", eventTypeName)
+                    .setTag(Tags.SPAN_KIND_PRODUCER, client.getClientId());
+            final NdjsonBatchReader reader =
+                    new NdjsonBatchReader(request.getInputStream(), ndjsonChunkEvents, ndjsonChunkBytes);
+            final EventPublishResult result = publisher.publishStream(reader, eventTypeName, publishingSpan);
+
+            final int eventCount = result.getResponses().size();
+            final int totalSizeBytes = (int) Math.min(Integer.MAX_VALUE, reader.getBytesRead());
+            if (reader.getBytesRead() > contentLength) {
+                // body was uploaded with chunked encoding or compressed, so it was not charged in full
+                quotaService.chargeBytes(eventTypeName, client.getClientId(),
+                        reader.getBytesRead() - Math.max(0, contentLength));
+            }
+            quotaService.chargeEvents(eventTypeName, client.getClientId(), eventCount);
+            reportMetrics(eventTypeMetrics, result, totalSizeBytes, eventCount);
+            reportSLOs(startingNanos, totalSizeBytes, eventCount, result, eventTypeName, client);
+
+            final ResponseEntity response = response(result);
+            eventTypeMetrics.incrementResponseCount(response.getStatusCode().value());
+            return response;
+        } catch (final NoSuchEventTypeException exception) {
+            eventTypeMetrics.incrementResponseCount(NOT_FOUND.getStatusCode());
+            throw exception;
+        } catch (final MalformedUtf8Exception exception) {
+            eventTypeMetrics.incrementResponseCount(UNPROCESSABLE_ENTITY.getStatusCode());
+            throw exception;
+        } catch (final JSONException exception) {
+            eventTypeMetrics.incrementResponseCount(BAD_REQUEST.getStatusCode());
+            throw exception;
+        } catch (final EventTypeTimeoutException exception) {
+            eventTypeMetrics.incrementResponseCount(SERVICE_UNAVAILABLE.getStatusCode());
+            throw exception;
+        } catch (final RuntimeException | IOException ex) {
+            eventTypeMetrics.incrementResponseCount(INTERNAL_SERVER_ERROR.getStatusCode());
+            throw ex;
+        } finally {
+            admission.release();
+            eventTypeMetrics.updateTiming(startingNanos, System.nanoTime());
+        }
+    }
+
     @RequestMapping(value = "/event-types/{eventTypeName}/deleted-events", method = POST)
-    public ResponseEntity deleteEvents(@PathVariable final String eventTypeName,
-                                       @RequestBody final String eventsAsString,
-                                       final HttpServletRequest request,
-                                       final Client client) {
-        return postEventsWithMetrics(eventTypeName, eventsAsString, request, client, true);
+    public DeferredResult<ResponseEntity> deleteEvents(@PathVariable final String eventTypeName,
+                                                       @RequestBody final byte[] events,
+                                                       final HttpServletRequest request,
+                                                       final Client client) {
+        return postEventsWithMetrics(eventTypeName, events, request, client, true);
 
     }
 
-    private ResponseEntity postEventsWithMetrics(final String eventTypeName,
-                                                 final String eventsAsString,
-                                                 final HttpServletRequest request,
-                                                 final Client client,
-                                                 final boolean delete) {
+    private DeferredResult<ResponseEntity> postEventsWithMetrics(final String eventTypeName,
+                                                                 final byte[] events,
+                                                                 final HttpServletRequest request,
+                                                                 final Client client,
+                                                                 final boolean delete) {
         if (blacklistService.isProductionBlocked(eventTypeName, client.getClientId())) {
             throw new BlockedException("Application or event type is blocked");
         }
         final EventTypeMetrics eventTypeMetrics = eventTypeMetricRegistry.metricsFor(eventTypeName);
+        final PublishingAdmissionControl.Admission admission;
         try {
-            final ResponseEntity response = postEventInternal(
-                    eventTypeName, eventsAsString, eventTypeMetrics, client, request, delete);
-            eventTypeMetrics.incrementResponseCount(response.getStatusCode().value());
-            return response;
+            quotaService.checkQuota(eventTypeName, client.getClientId(), events.length);
+            admission = admissionControl.admit(events.length);
+        } catch (final TooManyRequestsException exception) {
+            eventTypeMetrics.incrementResponseCount(TOO_MANY_REQUESTS.getStatusCode());
+            throw exception;
+        }
+        // timeout of the container may be shorter than the time kafka takes to deliver or to fail the batch
+        final DeferredResult<ResponseEntity> deferredResult = new DeferredResult<>(asyncTimeoutMs);
+        try {
+            postEventInternal(eventTypeName, events, eventTypeMetrics, client, request, delete)
+                    .whenComplete((response, ex) -> {
+                        admission.release();
+                        if (null == ex) {
+                            eventTypeMetrics.incrementResponseCount(response.getStatusCode().value());
+                            deferredResult.setResult(response);
+                        } else {
+                            eventTypeMetrics.incrementResponseCount(INTERNAL_SERVER_ERROR.getStatusCode());
+                            deferredResult.setErrorResult(ex instanceof CompletionException ? ex.getCause() : ex);
+                        }
+                    });
+            return deferredResult;
         } catch (final NoSuchEventTypeException exception) {
+            admission.release();
             eventTypeMetrics.incrementResponseCount(NOT_FOUND.getStatusCode());
             throw exception;
         } catch (final RuntimeException ex) {
+            admission.release();
             eventTypeMetrics.incrementResponseCount(INTERNAL_SERVER_ERROR.getStatusCode());
             throw ex;
         }
     }
 
-    private ResponseEntity postEventInternal(final String eventTypeName,
-                                             final String eventsAsString,
-                                             final EventTypeMetrics eventTypeMetrics,
-                                             final Client client,
-                                             final HttpServletRequest request,
-                                             final boolean delete)
+    /**
+     * With async publishing enabled the request thread is released as soon as the events are sent to the storage,
+     * the response is completed from the callbacks of the storage.
+     */
+    private CompletableFuture<ResponseEntity> postEventInternal(final String eventTypeName,
+                                                                final byte[] events,
+                                                                final EventTypeMetrics eventTypeMetrics,
+                                                                final Client client,
+                                                                final HttpServletRequest request,
+                                                                final boolean delete)
             throws AccessDeniedException, ServiceTemporarilyUnavailableException, InternalNakadiException,
             EventTypeTimeoutException, NoSuchEventTypeException {
         final long startingNanos = System.nanoTime();
+        final int totalSizeBytes = events.length;
+        final CompletableFuture<EventPublishResult> publishing;
         try {
-            final int totalSizeBytes = eventsAsString.getBytes(Charsets.UTF_8).length;
             final Span publishingSpan = TracingService.extractSpan(request, "publish_events")
                     .setTag("event_type", eventTypeName)
                     .setTag("slo_bucket", TracingService.getSLOBucket(totalSizeBytes))
                     .setTag(Tags.SPAN_KIND_PRODUCER, client.getClientId());
 
-            final EventPublishResult result;
-            if (delete) {
-                result = publisher.delete(eventsAsString, eventTypeName, publishingSpan);
+            if (featureToggleService.isFeatureEnabled(Feature.ASYNC_PUBLISHING)) {
+                publishing = delete ?
+                        publisher.deleteAsync(events, eventTypeName, publishingSpan) :
+                        publisher.publishAsync(events, eventTypeName, publishingSpan);
+            } else if (delete) {
+                publishing = CompletableFuture.completedFuture(
+                        publisher.delete(events, eventTypeName, publishingSpan));
             } else {
-                result = publisher.publish(eventsAsString, eventTypeName, publishingSpan);
+                publishing = CompletableFuture.completedFuture(
+                        publisher.publish(events, eventTypeName, publishingSpan));
             }
+        } catch (final RuntimeException e) {
+            eventTypeMetrics.updateTiming(startingNanos, System.nanoTime());
+            throw e;
+        }
 
+        return publishing.thenApply(result -> {
             final int eventCount = result.getResponses().size();
+            quotaService.chargeEvents(eventTypeName, client.getClientId(), eventCount);
 
             reportMetrics(eventTypeMetrics, result, totalSizeBytes, eventCount);
             reportSLOs(startingNanos, totalSizeBytes, eventCount, result, eventTypeName, client);
 
             return response(result);
-        } finally {
-            eventTypeMetrics.updateTiming(startingNanos, System.nanoTime());
-        }
+        }).whenComplete((response, ex) -> eventTypeMetrics.updateTiming(startingNanos, System.nanoTime()));
     }
 
     private void reportSLOs(final long startingNanos, final int totalSizeBytes, final int eventCount,
@@ -1,6 +1,7 @@
 package org.zalando.nakadi;
 
 import org.json.JSONException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -8,9 +9,11 @@ import org.springframework.web.context.request.NativeWebRequest;
 import org.zalando.nakadi.exceptions.runtime.EnrichmentException;
 import org.zalando.nakadi.exceptions.runtime.EventTypeTimeoutException;
 import org.zalando.nakadi.exceptions.runtime.InvalidPartitionKeyFieldsException;
+import org.zalando.nakadi.exceptions.runtime.MalformedUtf8Exception;
 import org.zalando.nakadi.exceptions.runtime.NakadiBaseException;
 import org.zalando.nakadi.exceptions.runtime.PartitioningException;
 import org.zalando.nakadi.exceptions.runtime.PublishEventOwnershipException;
+import org.zalando.nakadi.exceptions.runtime.TooManyRequestsException;
 import org.zalando.problem.Problem;
 import org.zalando.problem.Status;
 import org.zalando.problem.spring.web.advice.AdviceTrait;
@@ -38,6 +41,13 @@ public class EventPublishingExceptionHandler implements AdviceTrait {
         return create(Problem.valueOf(Status.BAD_REQUEST), request);
     }
 
+    @ExceptionHandler(MalformedUtf8Exception.class)
+    public ResponseEntity<Problem> handleMalformedUtf8Exception(final MalformedUtf8Exception exception,
+                                                                final NativeWebRequest request) {
+        AdviceTrait.LOG.debug(exception.getMessage());
+        return create(Problem.valueOf(Status.UNPROCESSABLE_ENTITY, exception.getMessage()), request);
+    }
+
     @ExceptionHandler({EnrichmentException.class,
             PartitioningException.class,
             InvalidPartitionKeyFieldsException.class})
@@ -53,5 +63,13 @@ public class EventPublishingExceptionHandler implements AdviceTrait {
         AdviceTrait.LOG.debug(exception.getMessage());
         return create(Problem.valueOf(Status.FORBIDDEN, exception.getMessage()), request);
     }
-}
 
+    @ExceptionHandler(TooManyRequestsException.class)
+    public ResponseEntity<Problem> handleTooManyRequestsException(final TooManyRequestsException exception,
+                                                                  final NativeWebRequest request) {
+        AdviceTrait.LOG.debug(exception.getMessage());
+        final HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(exception.getRetryAfterSeconds()));
+        return create(exception, Problem.valueOf(Status.TOO_MANY_REQUESTS, exception.getMessage()), request, headers);
+    }
+}
@@ -8,8 +8,10 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
+import org.springframework.http.converter.ByteArrayHttpMessageConverter;
 import org.springframework.http.converter.StringHttpMessageConverter;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.zalando.nakadi.EventPublishingController;
@@ -20,30 +22,41 @@ import org.zalando.nakadi.domain.BatchItemResponse;
 import org.zalando.nakadi.domain.EventPublishResult;
 import org.zalando.nakadi.domain.EventPublishingStatus;
 import org.zalando.nakadi.domain.EventPublishingStep;
+import org.zalando.nakadi.domain.Feature;
+import org.zalando.nakadi.domain.NdjsonBatchReader;
 import org.zalando.nakadi.exceptions.runtime.EventTypeTimeoutException;
 import org.zalando.nakadi.exceptions.runtime.InternalNakadiException;
+import org.zalando.nakadi.exceptions.runtime.MalformedUtf8Exception;
 import org.zalando.nakadi.exceptions.runtime.NoSuchEventTypeException;
+import org.zalando.nakadi.exceptions.runtime.TooManyRequestsException;
 import org.zalando.nakadi.metrics.EventTypeMetricRegistry;
 import org.zalando.nakadi.metrics.EventTypeMetrics;
 import org.zalando.nakadi.plugin.api.authz.AuthorizationService;
 import org.zalando.nakadi.security.ClientResolver;
 import org.zalando.nakadi.service.BlacklistService;
+import org.zalando.nakadi.service.FeatureToggleService;
+import org.zalando.nakadi.service.PublishingQuotaService;
 import org.zalando.nakadi.service.publishing.EventPublisher;
 import org.zalando.nakadi.service.publishing.NakadiKpiPublisher;
+import org.zalando.nakadi.service.publishing.PublishingAdmissionControl;
 import org.zalando.nakadi.utils.TestUtils;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Supplier;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.standaloneSetup;
 import static org.zalando.nakadi.config.SecuritySettings.AuthMode.OFF;
@@ -69,6 +82,10 @@ public class EventPublishingControllerTest {
     private NakadiKpiPublisher kpiPublisher;
     private BlacklistService blacklistService;
     private AuthorizationService authorizationService;
+    private FeatureToggleService featureToggleService;
+    private PublishingAdmissionControl admissionControl;
+    private PublishingAdmissionControl.Admission admission;
+    private PublishingQuotaService quotaService;
 
     @Before
     public void setUp() {
@@ -82,15 +99,24 @@ public class EventPublishingControllerTest {
         Mockito.when(settings.getAuthMode()).thenReturn(OFF);
         Mockito.when(settings.getAdminClientId()).thenReturn("adminClientId");
 
+        featureToggleService = Mockito.mock(FeatureToggleService.class);
+
         blacklistService = Mockito.mock(BlacklistService.class);
         Mockito.when(blacklistService.isProductionBlocked(any(), any())).thenReturn(false);
 
+        admissionControl = Mockito.mock(PublishingAdmissionControl.class);
+        admission = Mockito.mock(PublishingAdmissionControl.Admission.class);
+        Mockito.when(admissionControl.admit(anyLong())).thenReturn(admission);
+        quotaService = Mockito.mock(PublishingQuotaService.class);
+
         final EventPublishingController controller =
                 new EventPublishingController(publisher, eventTypeMetricRegistry, blacklistService, kpiPublisher,
-                        "kpiEventTypeName");
+                        "kpiEventTypeName", featureToggleService, admissionControl, quotaService, 1000, 1048576,
+                        40000);
 
         mockMvc = standaloneSetup(controller)
-                .setMessageConverters(new StringHttpMessageConverter(), TestUtils.JACKSON_2_HTTP_MESSAGE_CONVERTER)
+                .setMessageConverters(new ByteArrayHttpMessageConverter(), new StringHttpMessageConverter(),
+                        TestUtils.JACKSON_2_HTTP_MESSAGE_CONVERTER)
                 .setCustomArgumentResolvers(new ClientResolver(settings, authorizationService))
                 .setControllerAdvice(new NakadiProblemExceptionHandler(), new EventPublishingExceptionHandler())
                 .build();
@@ -103,7 +129,7 @@ public class EventPublishingControllerTest {
         Mockito
                 .doReturn(result)
                 .when(publisher)
-                .publish(any(String.class), eq(TOPIC), any());
+                .publish(any(byte[].class), eq(TOPIC), any());
 
         postBatch(TOPIC, EVENT_BATCH)
                 .andExpect(status().isOk())
@@ -115,18 +141,19 @@ public class EventPublishingControllerTest {
 
         Mockito.doThrow(new JSONException("Error"))
                 .when(publisher)
-                .publish(any(String.class), eq(TOPIC), any());
+                .publish(any(byte[].class), eq(TOPIC), any());
 
         postBatch(TOPIC, "invalid json array").andExpect(status().isBadRequest());
     }
 
     @Test
     public void whenEventPublishTimeoutThen503() throws Exception {
-        Mockito.when(publisher.publish(any(), any(), any())).thenThrow(new EventTypeTimeoutException(""));
+        Mockito.when(publisher.publish(any(byte[].class), any(), any())).thenThrow(new EventTypeTimeoutException(""));
 
         postBatch(TOPIC, EVENT_BATCH)
                 .andExpect(content().contentType("application/problem+json"))
                 .andExpect(status().isServiceUnavailable());
+        Mockito.verify(admission).release();
     }
 
     @Test
@@ -136,7 +163,7 @@ public class EventPublishingControllerTest {
         Mockito
                 .doReturn(result)
                 .when(publisher)
-                .publish(any(String.class), eq(TOPIC), any());
+                .publish(any(byte[].class), eq(TOPIC), any());
 
         postBatch(TOPIC, EVENT_BATCH)
                 .andExpect(status().isUnprocessableEntity())
@@ -150,7 +177,7 @@ public class EventPublishingControllerTest {
         Mockito
                 .doReturn(result)
                 .when(publisher)
-                .publish(any(String.class), eq(TOPIC), any());
+                .publish(any(byte[].class), eq(TOPIC), any());
 
         postBatch(TOPIC, EVENT_BATCH)
                 .andExpect(status().isMultiStatus())
@@ -162,7 +189,7 @@ public class EventPublishingControllerTest {
         Mockito
                 .doThrow(new NoSuchEventTypeException("topic not found"))
                 .when(publisher)
-                .publish(any(String.class), eq(TOPIC), any());
+                .publish(any(byte[].class), eq(TOPIC), any());
 
         postBatch(TOPIC, EVENT_BATCH)
                 .andExpect(content().contentType("application/problem+json"))
@@ -189,6 +216,139 @@ public class EventPublishingControllerTest {
         assertThat(eventTypeMetrics.getResponseCount(500), equalTo(1L));
     }
 
+    @Test
+    public void whenAsyncPublishingThenResponseIsSetOnCompletion() throws Exception {
+        final EventPublishResult result = new EventPublishResult(SUBMITTED, null, submittedResponses(1));
+        final CompletableFuture<EventPublishResult> publishing = new CompletableFuture<>();
+        Mockito.when(featureToggleService.isFeatureEnabled(Feature.ASYNC_PUBLISHING)).thenReturn(true);
+        Mockito.when(publisher.publishAsync(any(byte[].class), eq(TOPIC), any())).thenReturn(publishing);
+
+        final MvcResult mvcResult = mockMvc.perform(post("/event-types/" + TOPIC + "/events")
+                .contentType(APPLICATION_JSON)
+                .content(EVENT_BATCH))
+                .andReturn();
+        assertThat(mvcResult.getRequest().isAsyncStarted(), equalTo(true));
+        Mockito.verify(kpiPublisher, Mockito.never()).publish(any(), any());
+        Mockito.verify(admission, Mockito.never()).release();
+
+        publishing.complete(result);
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(content().string(""));
+        Mockito.verify(publisher, Mockito.never()).publish(any(), any(), any());
+        Mockito.verify(admission).release();
+    }
+
+    @Test
+    public void whenNdjsonIsPostedThenItIsPublishedAsStream() throws Exception {
+        final EventPublishResult result = new EventPublishResult(SUBMITTED, null, submittedResponses(2));
+        Mockito.when(publisher.publishStream(any(NdjsonBatchReader.class), eq(TOPIC), any())).thenReturn(result);
+
+        mockMvc.perform(post("/event-types/" + TOPIC + "/events")
+                .contentType("application/x-ndjson")
+                .content("{\"payload\": \"1\"}\n{\"payload\": \"2\"}\n"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(""));
+        Mockito.verify(publisher, Mockito.never()).publish(any(), any(), any());
+        Mockito.verify(quotaService).chargeEvents(TOPIC, "adminClientId", 2);
+        Mockito.verify(admission).release();
+    }
+
+    @Test
+    public void whenNdjsonIsPartiallySubmittedThen207() throws Exception {
+        final EventPublishResult result = new EventPublishResult(FAILED, PUBLISHING, responses());
+        Mockito.when(publisher.publishStream(any(NdjsonBatchReader.class), eq(TOPIC), any())).thenReturn(result);
+
+        mockMvc.perform(post("/event-types/" + TOPIC + "/events")
+                .contentType("application/x-ndjson")
+                .content("{\"payload\": \"1\"}\n"))
+                .andExpect(status().isMultiStatus())
+                .andExpect(content().string(TestUtils.JSON_TEST_HELPER.matchesObject(responses())));
+    }
+
+    @Test
+    public void whenNdjsonIsMalformedThen400IsReported() throws Exception {
+        Mockito.when(publisher.publishStream(any(NdjsonBatchReader.class), eq(TOPIC), any()))
+                .thenThrow(new JSONException("Error"));
+
+        mockMvc.perform(post("/event-types/" + TOPIC + "/events")
+                .contentType("application/x-ndjson")
+                .content("{\"payload\": \n"))
+                .andExpect(status().isBadRequest());
+
+        final EventTypeMetrics eventTypeMetrics = eventTypeMetricRegistry.metricsFor(TOPIC);
+        assertThat(eventTypeMetrics.getResponseCount(400), equalTo(1L));
+        assertThat(eventTypeMetrics.getResponseCount(500), equalTo(0L));
+        Mockito.verify(admission).release();
+    }
+
+    @Test
+    public void whenNdjsonHasMalformedUtf8Then422IsReported() throws Exception {
+        Mockito.when(publisher.publishStream(any(NdjsonBatchReader.class), eq(TOPIC), any()))
+                .thenThrow(new MalformedUtf8Exception("Malformed utf-8 sequence at pos 13"));
+
+        mockMvc.perform(post("/event-types/" + TOPIC + "/events")
+                .contentType("application/x-ndjson")
+                .content("{\"payload\": \"1\"}\n"))
+                .andExpect(status().isUnprocessableEntity());
+
+        final EventTypeMetrics eventTypeMetrics = eventTypeMetricRegistry.metricsFor(TOPIC);
+        assertThat(eventTypeMetrics.getResponseCount(422), equalTo(1L));
+        assertThat(eventTypeMetrics.getResponseCount(400), equalTo(0L));
+        Mockito.verify(admission).release();
+    }
+
+    @Test
+    public void whenPostBodyHasMalformedUtf8Then422() throws Exception {
+        Mockito.doThrow(new MalformedUtf8Exception("Malformed utf-8 sequence at pos 13"))
+                .when(publisher)
+                .publish(any(byte[].class), eq(TOPIC), any());
+
+        postBatch(TOPIC, EVENT_BATCH).andExpect(status().isUnprocessableEntity());
+    }
+
+    @Test
+    public void whenQuotaIsExceededThen429() throws Exception {
+        Mockito.doThrow(new TooManyRequestsException("quota exceeded", 2))
+                .when(quotaService).checkQuota(eq(TOPIC), eq("adminClientId"), anyLong());
+
+        postBatch(TOPIC, EVENT_BATCH)
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "2"));
+        Mockito.verify(admissionControl, Mockito.never()).admit(anyLong());
+        Mockito.verify(publisher, Mockito.never()).publish(any(), any(), any());
+    }
+
+    @Test
+    public void publishedEventsAreChargedToQuota() throws Exception {
+        final EventPublishResult result = new EventPublishResult(SUBMITTED, null, submittedResponses(3));
+        Mockito.doReturn(result).when(publisher).publish(any(byte[].class), eq(TOPIC), any());
+
+        postBatch(TOPIC, EVENT_BATCH).andExpect(status().isOk());
+        Mockito.verify(quotaService).chargeEvents(TOPIC, "adminClientId", 3);
+    }
+
+    @Test
+    public void whenNodeIsOverloadedThen429() throws Exception {
+        Mockito.when(admissionControl.admit(anyLong())).thenThrow(new TooManyRequestsException("overloaded", 5));
+
+        postBatch(TOPIC, EVENT_BATCH)
+                .andExpect(content().contentType("application/problem+json"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "5"));
+        Mockito.verify(publisher, Mockito.never()).publish(any(), any(), any());
+    }
+
+    @Test
+    public void whenAsyncPublishingFailsThen500() throws Exception {
+        final CompletableFuture<EventPublishResult> publishing = new CompletableFuture<>();
+        publishing.completeExceptionally(new InternalNakadiException("failed"));
+        Mockito.when(featureToggleService.isFeatureEnabled(Feature.ASYNC_PUBLISHING)).thenReturn(true);
+        Mockito.when(publisher.publishAsync(any(byte[].class), eq(TOPIC), any())).thenReturn(publishing);
+
+        postBatch(TOPIC, EVENT_BATCH).andExpect(status().isInternalServerError());
+    }
+
     @Test
     public void publishedEventsKPIReported() throws Exception {
         final EventPublishResult success = new EventPublishResult(SUBMITTED, null, submittedResponses(3));
@@ -255,6 +415,8 @@ public class EventPublishingControllerTest {
                 .contentType(APPLICATION_JSON)
                 .content(batch);
 
-        return mockMvc.perform(requestBuilder);
+        final ResultActions resultActions = mockMvc.perform(requestBuilder);
+        final MvcResult result = resultActions.andReturn();
+        return result.getRequest().isAsyncStarted() ? mockMvc.perform(asyncDispatch(result)) : resultActions;
     }
 }
@@ -1,6 +1,7 @@
 package org.zalando.nakadi.config;
 
 import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.gzip.GzipHandler;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.springframework.beans.factory.annotation.Value;
@@ -9,8 +10,17 @@ import org.springframework.boot.context.embedded.jetty.JettyServerCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.regex.Pattern;
+
 @Configuration
 public class JettyConfig {
+    private static final Pattern SUBSCRIPTION_STREAM_PATH = Pattern.compile("^/subscriptions/[^/]+/events$");
+    private static final Pattern EVENT_TYPE_STREAM_PATH = Pattern.compile("^/event-types/[^/]+/events$");
+
     @Bean
     public JettyEmbeddedServletContainerFactory jettyEmbeddedServletContainerFactory(
             @Value("${server.port:8080}") final String port,
@@ -25,7 +35,18 @@ public class JettyConfig {
             threadPool.setMinThreads(Integer.valueOf(minThreads));
             threadPool.setIdleTimeout(Integer.valueOf(idleTimeout));
 
-            final GzipHandler gzipHandler = new GzipHandler();
+            final GzipHandler gzipHandler = new GzipHandler() {
+                @Override
+                public void handle(final String target, final Request baseRequest, final HttpServletRequest request,
+                                   final HttpServletResponse response) throws IOException, ServletException {
+                    if (isEventStream(target, request)) {
+                        // streams negotiate their compression on their own, see StreamCompression
+                        getHandler().handle(target, baseRequest, request, response);
+                    } else {
+                        super.handle(target, baseRequest, request, response);
+                    }
+                }
+            };
             gzipHandler.addIncludedMethods(HttpMethod.POST.asString());
             gzipHandler.setHandler(server.getHandler());
             gzipHandler.setSyncFlush(true);
@@ -33,4 +54,9 @@ public class JettyConfig {
         });
         return factory;
     }
+
+    private static boolean isEventStream(final String target, final HttpServletRequest request) {
+        return SUBSCRIPTION_STREAM_PATH.matcher(target).matches() ||
+                (HttpMethod.GET.is(request.getMethod()) && EVENT_TYPE_STREAM_PATH.matcher(target).matches());
+    }
 }
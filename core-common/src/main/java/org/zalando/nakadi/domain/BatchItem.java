@@ -1,6 +1,6 @@
 package org.zalando.nakadi.domain;
 
-import org.json.JSONObject;
+import org.json.JSONException;
 import org.zalando.nakadi.plugin.api.authz.AuthorizationAttribute;
 import org.zalando.nakadi.plugin.api.authz.AuthorizationService;
 import org.zalando.nakadi.plugin.api.authz.Resource;
@@ -13,15 +13,18 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 public class BatchItem implements Resource<BatchItem> {
 
     public enum Injection {
         METADATA("metadata");
         public final String name;
+        private final byte[] nameBytes;
 
         Injection(final String name) {
             this.name = name;
+            this.nameBytes = name.getBytes(StandardCharsets.UTF_8);
         }
     }
 
@@ -58,12 +61,13 @@ public class BatchItem implements Resource<BatchItem> {
     private static final EmptyInjectionConfiguration CONFIG_NO_COMMA = new EmptyInjectionConfiguration(1, false);
 
     private final BatchItemResponse response;
-    private final String rawEvent;
-    private final JSONObject event;
+    private final byte[] data;
+    private final int offset;
+    private final LazyJsonObject event;
     private final EmptyInjectionConfiguration emptyInjectionConfiguration;
     private final InjectionConfiguration[] injections;
-    private String[] injectionValues;
-    private final List<Integer> skipCharacters;
+    private byte[][] injectionValues;
+    private final int[] skipCharacters;
     private String partition;
     private String brokerId;
     private String eventKey;
@@ -74,27 +78,104 @@ public class BatchItem implements Resource<BatchItem> {
             final String rawEvent,
             final EmptyInjectionConfiguration emptyInjectionConfiguration,
             final InjectionConfiguration[] injections,
-            final List<Integer> skipCharacters) {
-        this.rawEvent = rawEvent;
+            final int[] skipCharacters) {
+        this(rawEvent.getBytes(StandardCharsets.UTF_8), StrictJsonParser.parseLazyObject(rawEvent),
+                emptyInjectionConfiguration, injections, skipCharacters);
+    }
+
+    private BatchItem(
+            final byte[] rawEvent,
+            final LazyJsonObject event,
+            final EmptyInjectionConfiguration emptyInjectionConfiguration,
+            final InjectionConfiguration[] injections,
+            final int[] skipCharacters) {
+        this(rawEvent, 0, rawEvent.length, event, emptyInjectionConfiguration, injections, skipCharacters);
+    }
+
+    /**
+     * Creates batch item that is referencing utf-8 encoded event stored in {@code data} starting from {@code offset}
+     * and having {@code length} bytes, {@code event} is the already parsed representation of the same bytes. All the
+     * positions in injections and skip characters are relative to {@code offset}, skip characters are sorted.
+     */
+    public BatchItem(
+            final byte[] data,
+            final int offset,
+            final int length,
+            final LazyJsonObject event,
+            final EmptyInjectionConfiguration emptyInjectionConfiguration,
+            final InjectionConfiguration[] injections,
+            final int[] skipCharacters) {
+        this.data = data;
+        this.offset = offset;
         this.skipCharacters = skipCharacters;
-        this.event = StrictJsonParser.parseObject(rawEvent);
-        this.eventSize = rawEvent.getBytes(StandardCharsets.UTF_8).length;
+        this.event = event;
+        this.eventSize = length;
         this.emptyInjectionConfiguration = emptyInjectionConfiguration;
         this.injections = injections;
         this.response = new BatchItemResponse();
-        Optional.ofNullable(this.event.optJSONObject("metadata"))
+        Optional.ofNullable(this.event.optObject("metadata"))
                 .map(e -> e.optString("eid", null))
                 .ifPresent(this.response::setEid);
     }
 
     public void inject(final Injection type, final String value) {
+        inject(type, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Injects metadata that consists of the fields of the original metadata object, except the ones listed in
+     * {@code replacedFields}, followed by {@code appendedFields}. Appended fields should be already encoded as
+     * {@code "name":value}. The original fields are copied from the event as is, so metadata is neither decoded nor
+     * encoded again.
+     *
+     * @throws JSONException if event has no metadata object
+     */
+    public void injectMetadataFields(final Set<String> replacedFields, final byte[]... appendedFields)
+            throws JSONException {
+        final LazyJsonObject metadata = event.getObject(Injection.METADATA.name);
+        final EventOutput sizeCounter = new EventOutput(null);
+        writeMetadataFields(sizeCounter, metadata, replacedFields, appendedFields);
+        final EventOutput result = new EventOutput(new byte[sizeCounter.position]);
+        writeMetadataFields(result, metadata, replacedFields, appendedFields);
+        inject(Injection.METADATA, result.buffer);
+    }
+
+    private void inject(final Injection type, final byte[] value) {
         if (null == injectionValues) {
-            injectionValues = new String[Injection.values().length];
+            injectionValues = new byte[Injection.values().length][];
         }
         injectionValues[type.ordinal()] = value;
     }
 
-    public JSONObject getEvent() {
+    private void writeMetadataFields(final EventOutput out, final LazyJsonObject metadata,
+                                     final Set<String> replacedFields, final byte[][] appendedFields) {
+        // positions in lazy object are the positions in the buffer it was parsed from, that starts with the event
+        final int eventStart = event.startPosition();
+        boolean empty = true;
+        int currentSkipPosition = 0;
+        out.put((byte) '{');
+        for (int i = 0; i < metadata.length(); ++i) {
+            if (replacedFields.contains(metadata.nameAt(i))) {
+                continue;
+            }
+            if (!empty) {
+                out.put((byte) ',');
+            }
+            currentSkipPosition = appendWithSkip(out, metadata.fieldStartAt(i) - eventStart,
+                    metadata.valueEndAt(i) - eventStart, currentSkipPosition);
+            empty = false;
+        }
+        for (final byte[] field : appendedFields) {
+            if (!empty) {
+                out.put((byte) ',');
+            }
+            out.put(field, 0, field.length);
+            empty = false;
+        }
+        out.put((byte) '}');
+    }
+
+    public LazyJsonObject getEvent() {
         return this.event;
     }
 
@@ -185,19 +266,32 @@ public class BatchItem implements Resource<BatchItem> {
     }
 
     public String dumpEventToString() {
+        return new String(dumpEventToBytes(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Serializes event with all the injections applied and skip characters removed directly to utf-8 bytes, that
+     * can be sent to kafka as is. The output size is calculated upfront, so the only allocation is the result array.
+     */
+    public byte[] dumpEventToBytes() {
+        if (null == injectionValues && skipCharacters.length == 0) {
+            return Arrays.copyOfRange(data, offset, offset + eventSize);
+        }
+        final EventOutput sizeCounter = new EventOutput(null);
+        dumpEventTo(sizeCounter);
+        final EventOutput result = new EventOutput(new byte[sizeCounter.position]);
+        dumpEventTo(result);
+        return result.buffer;
+    }
+
+    private void dumpEventTo(final EventOutput out) {
         if (null == injectionValues) {
-            if (skipCharacters.isEmpty()) {
-                return rawEvent;
-            } else {
-                final StringBuilder sb = new StringBuilder();
-                appendWithSkip(sb, 0, rawEvent.length(), 0);
-                return sb.toString();
-            }
+            appendWithSkip(out, 0, eventSize, 0);
+            return;
         }
         boolean nonComaAdded = false;
         int lastMainEventUsedPosition = 0;
         int currentSkipPosition = 0;
-        final StringBuilder sb = new StringBuilder();
         final Injection[] sortedInjections = Arrays.copyOf(Injection.values(), Injection.values().length);
         Arrays.sort(sortedInjections, Comparator.comparing(injection -> {
             final InjectionConfiguration config = injections[injection.ordinal()];
@@ -205,7 +299,7 @@ public class BatchItem implements Resource<BatchItem> {
         }));
 
         for (final Injection injectionKey : sortedInjections) {
-            final String injectionValue = injectionValues[injectionKey.ordinal()];
+            final byte[] injectionValue = injectionValues[injectionKey.ordinal()];
             if (injectionValue == null) {
                 continue;
             }
@@ -221,50 +315,80 @@ public class BatchItem implements Resource<BatchItem> {
             }
 
             if (positionStart > lastMainEventUsedPosition) {
-                currentSkipPosition = appendWithSkip(sb, lastMainEventUsedPosition, positionStart, currentSkipPosition);
+                currentSkipPosition = appendWithSkip(
+                        out, lastMainEventUsedPosition, positionStart, currentSkipPosition);
                 lastMainEventUsedPosition = positionEnd;
             }
-            sb.append('\"').append(injectionKey.name).append("\":");
-            sb.append(injectionValue);
+            out.put((byte) '"');
+            out.put(injectionKey.nameBytes, 0, injectionKey.nameBytes.length);
+            out.put((byte) '"');
+            out.put((byte) ':');
+            out.put(injectionValue, 0, injectionValue.length);
             if (config == null) {
                 if (!emptyInjectionConfiguration.addComma) {
                     // Well, really rare case, but we are trying to load brain, so cover it as well
                     if (nonComaAdded) {
-                        sb.append(',');
+                        out.put((byte) ',');
                     } else {
                         nonComaAdded = true;
                     }
                 } else {
-                    sb.append(',');
+                    out.put((byte) ',');
                 }
             }
         }
-        if (lastMainEventUsedPosition < rawEvent.length()) {
-            appendWithSkip(sb, lastMainEventUsedPosition, rawEvent.length(), currentSkipPosition);
+        if (lastMainEventUsedPosition < eventSize) {
+            appendWithSkip(out, lastMainEventUsedPosition, eventSize, currentSkipPosition);
         }
-        return sb.toString();
     }
 
-    private int appendWithSkip(final StringBuilder sb, final int from, final int to, final int currentSkipPosition) {
+    private int appendWithSkip(final EventOutput out, final int from, final int to, final int currentSkipPosition) {
         int currentPos = from;
         int idx;
-        for (idx = currentSkipPosition; idx < skipCharacters.size(); ++idx) {
-            final int currentSkipIdx = skipCharacters.get(idx);
+        for (idx = currentSkipPosition; idx < skipCharacters.length; ++idx) {
+            final int currentSkipIdx = skipCharacters[idx];
             if (currentSkipIdx < from) {
                 continue;
             }
-            if (currentSkipIdx > to) {
+            if (currentSkipIdx >= to) {
                 break;
             }
             if (currentSkipIdx > currentPos) {
-                sb.append(rawEvent, currentPos, currentSkipIdx);
+                out.put(data, offset + currentPos, currentSkipIdx - currentPos);
             }
             currentPos = currentSkipIdx + 1;
         }
         if (to > currentPos) {
-            sb.append(rawEvent, currentPos, to);
+            out.put(data, offset + currentPos, to - currentPos);
         }
         return idx;
     }
 
+    /**
+     * Destination for event serialization. In case if buffer is not provided, it is only counting the amount of
+     * bytes written.
+     */
+    private static class EventOutput {
+        private final byte[] buffer;
+        private int position;
+
+        private EventOutput(@Nullable final byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        private void put(final byte value) {
+            if (null != buffer) {
+                buffer[position] = value;
+            }
+            ++position;
+        }
+
+        private void put(final byte[] source, final int from, final int length) {
+            if (null != buffer) {
+                System.arraycopy(source, from, buffer, position, length);
+            }
+            position += length;
+        }
+    }
+
 }
@@ -40,6 +40,11 @@ public class ConsumedEvent implements Resource<ConsumedEvent> {
         return timestamp;
     }
 
+    @Nullable
+    public EventOwnerHeader getOwner() {
+        return owner;
+    }
+
     @Override
     public boolean equals(final Object o) {
         if (this == o) {
@@ -17,7 +17,8 @@ public enum Feature {
     FORCE_SUBSCRIPTION_AUTHZ("force_subscription_authz"),
     REPARTITIONING("repartitioning"),
     EVENT_OWNER_SELECTOR_AUTHZ("event_owner_selector_authz"),
-    ACCESS_LOG_ENABLED("access_log_enabled");
+    ACCESS_LOG_ENABLED("access_log_enabled"),
+    ASYNC_PUBLISHING("async_publishing");
 
     private final String id;
 
@@ -0,0 +1,164 @@
+package org.zalando.nakadi.domain;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Read-only json object backed by utf-8 encoded bytes that were already validated by {@link StrictJsonParser}.
+ * Object keeps only names of its fields and offsets of their values in the original buffer, values are decoded on
+ * first access. Nested objects are represented with {@link LazyJsonObject} as well, arrays are decoded to
+ * {@link org.json.JSONArray}, other values are decoded the same way as {@link StrictJsonParser} does it, so
+ * {@code toString()} of any value is equal to the one of org.json representation.
+ */
+public class LazyJsonObject {
+
+    private final byte[] data;
+    private final int from;
+    private final int to;
+    private final String[] names;
+    private final int[] fieldStarts;
+    private final int[] valueStarts;
+    private final int[] valueEnds;
+    private final int size;
+    private Object[] values;
+    private JSONObject materialized;
+
+    LazyJsonObject(final byte[] data, final int from, final int to, final String[] names, final int[] fieldStarts,
+                   final int[] valueStarts, final int[] valueEnds, final int size) {
+        this.data = data;
+        this.from = from;
+        this.to = to;
+        this.names = names;
+        this.fieldStarts = fieldStarts;
+        this.valueStarts = valueStarts;
+        this.valueEnds = valueEnds;
+        this.size = size;
+    }
+
+    public int length() {
+        return size;
+    }
+
+    public boolean has(final String name) {
+        return indexOf(name) >= 0;
+    }
+
+    /**
+     * Returns value of the field, or null if there is no such field. json null is represented as
+     * {@link JSONObject#NULL}.
+     */
+    @Nullable
+    public Object opt(final String name) {
+        final int idx = indexOf(name);
+        return idx < 0 ? null : valueAt(idx);
+    }
+
+    /**
+     * Name of the field with index {@code idx}, fields are indexed in the order they appear in the event.
+     */
+    public String nameAt(final int idx) {
+        return names[idx];
+    }
+
+    public Object valueAt(final int idx) {
+        if (null == values) {
+            values = new Object[size];
+        }
+        if (null == values[idx]) {
+            values[idx] = StrictJsonParser.decodeValue(data, valueStarts[idx], valueEnds[idx]);
+        }
+        return values[idx];
+    }
+
+    /**
+     * Position in the original buffer of the opening quote of the name of the field with index {@code idx}.
+     */
+    int fieldStartAt(final int idx) {
+        return fieldStarts[idx];
+    }
+
+    /**
+     * Position in the original buffer right after the value of the field with index {@code idx}.
+     */
+    int valueEndAt(final int idx) {
+        return valueEnds[idx];
+    }
+
+    /**
+     * Writes the field with index {@code idx} exactly as it appears in the original buffer: quoted name, name-value
+     * separator and value.
+     */
+    public void writeField(final int idx, final ByteArrayOutputStream out) {
+        out.write(data, fieldStarts[idx], valueEnds[idx] - fieldStarts[idx]);
+    }
+
+    /**
+     * Writes quoted name of the field with index {@code idx} and name-value separator exactly as they appear in the
+     * original buffer.
+     */
+    public void writeFieldName(final int idx, final ByteArrayOutputStream out) {
+        out.write(data, fieldStarts[idx], valueStarts[idx] - fieldStarts[idx]);
+    }
+
+    /**
+     * Position in the original buffer of the opening curly bracket of the object.
+     */
+    int startPosition() {
+        return from;
+    }
+
+    @Nullable
+    public LazyJsonObject optObject(final String name) {
+        final Object value = opt(name);
+        return value instanceof LazyJsonObject ? (LazyJsonObject) value : null;
+    }
+
+    public String optString(final String name, final String defaultValue) {
+        final Object value = opt(name);
+        return null == value || JSONObject.NULL.equals(value) ? defaultValue : value.toString();
+    }
+
+    public LazyJsonObject getObject(final String name) throws JSONException {
+        final Object value = opt(name);
+        if (value instanceof LazyJsonObject) {
+            return (LazyJsonObject) value;
+        }
+        throw new JSONException("JSONObject[" + JSONObject.quote(name) + "] is not a JSONObject.");
+    }
+
+    public String getString(final String name) throws JSONException {
+        final Object value = opt(name);
+        if (value instanceof String) {
+            return (String) value;
+        }
+        throw new JSONException("JSONObject[" + JSONObject.quote(name) + "] not a string.");
+    }
+
+    /**
+     * Builds org.json representation of the object. It is expensive and should be used only in case if the whole
+     * tree is required.
+     */
+    public JSONObject toJSONObject() {
+        if (null == materialized) {
+            materialized = StrictJsonParser.materializeObject(data, from, to);
+        }
+        return materialized;
+    }
+
+    @Override
+    public String toString() {
+        return toJSONObject().toString();
+    }
+
+    private int indexOf(final String name) {
+        for (int i = 0; i < size; ++i) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
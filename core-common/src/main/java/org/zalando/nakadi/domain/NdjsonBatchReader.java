@@ -0,0 +1,140 @@
+package org.zalando.nakadi.domain;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads newline delimited json (one event per line) in chunks, so that the events are processed while the rest of
+ * the batch is still being uploaded, and only one chunk of the batch is kept in memory. Every chunk has its own
+ * buffer, batch items of a chunk are referencing it. Empty lines are ignored.
+ */
+public class NdjsonBatchReader {
+
+    private static final int READ_SIZE = 8192;
+
+    private final InputStream in;
+    private final int maxChunkEvents;
+    private final int maxChunkBytes;
+    private byte[] leftover = new byte[0];
+    private boolean endOfStream;
+    private long bytesRead;
+    private long lineNumber;
+
+    /**
+     * @param in             utf-8 encoded events, one event per line
+     * @param maxChunkEvents maximum number of events in one chunk
+     * @param maxChunkBytes  size of the chunk after which no more lines are added to it, a chunk always contains at
+     *                       least one event, so it may be bigger if the event is bigger
+     */
+    public NdjsonBatchReader(final InputStream in, final int maxChunkEvents, final int maxChunkBytes) {
+        this.in = in;
+        this.maxChunkEvents = Math.max(1, maxChunkEvents);
+        this.maxChunkBytes = Math.max(1, maxChunkBytes);
+    }
+
+    /**
+     * Reads the next chunk of events. A chunk ends before a malformed line, the line is reported by the next call with
+     * {@link JSONException}, after which the reading may go on from the line that follows it.
+     *
+     * @return batch items in the same order as they are present in the stream, empty list if the stream is over
+     */
+    public List<BatchItem> next() throws IOException, JSONException {
+        List<BatchItem> chunk;
+        do {
+            if (endOfStream && leftover.length == 0) {
+                return Collections.emptyList();
+            }
+            chunk = readChunk();
+        } while (chunk.isEmpty());
+        return chunk;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    private List<BatchItem> readChunk() throws IOException, JSONException {
+        byte[] data = Arrays.copyOf(leftover, Math.max(maxChunkBytes, leftover.length) + READ_SIZE);
+        int length = leftover.length;
+        int lineStart = 0;
+        int scanned = 0;
+        final List<BatchItem> chunk = new ArrayList<>();
+        while (chunk.size() < maxChunkEvents && lineStart < maxChunkBytes) {
+            final int lineEnd = indexOfNewLine(data, scanned, length);
+            if (lineEnd >= 0 || endOfStream) {
+                final int to = lineEnd >= 0 ? lineEnd : length;
+                try {
+                    addLine(chunk, data, lineStart, to);
+                } catch (final JSONException e) {
+                    if (!chunk.isEmpty()) {
+                        // events before the malformed line are returned, the line is reported by the next call
+                        --lineNumber;
+                        break;
+                    }
+                    // reading goes on from the line that follows the malformed one
+                    leftover = Arrays.copyOfRange(data, Math.min(to + 1, length), length);
+                    throw e;
+                }
+                if (lineEnd < 0) {
+                    lineStart = length;
+                    break;
+                }
+                lineStart = lineEnd + 1;
+                scanned = lineStart;
+            } else {
+                scanned = length;
+                if (length == data.length) {
+                    // line is longer than the buffer, items that are already parsed keep referencing the old one
+                    data = Arrays.copyOf(data, data.length * 2);
+                }
+                final int read = in.read(data, length, data.length - length);
+                if (read < 0) {
+                    endOfStream = true;
+                } else {
+                    length += read;
+                    bytesRead += read;
+                }
+            }
+        }
+        leftover = Arrays.copyOfRange(data, lineStart, length);
+        return chunk;
+    }
+
+    private void addLine(final List<BatchItem> chunk, final byte[] data, final int from, final int to) {
+        ++lineNumber;
+        int start = from;
+        while (start < to && BatchFactory.isEmptyCharacter(data[start])) {
+            ++start;
+        }
+        if (start == to) {
+            return;
+        }
+        final BatchItem item;
+        try {
+            item = StrictJsonParser.parseBatchItem(data, start, to);
+        } catch (final JSONException e) {
+            throw new JSONException("Failed to parse event at line " + lineNumber + ": " + e.getMessage());
+        }
+        for (int pos = start + item.getEventSize(); pos < to; ++pos) {
+            if (!BatchFactory.isEmptyCharacter(data[pos])) {
+                throw new JSONException("Illegal character after the event at line " + lineNumber);
+            }
+        }
+        chunk.add(item);
+    }
+
+    private static int indexOfNewLine(final byte[] data, final int from, final int to) {
+        for (int i = from; i < to; ++i) {
+            if (data[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,34 @@
+package org.zalando.nakadi.domain;
+
+import javax.annotation.Nullable;
+import javax.validation.constraints.Min;
+
+/**
+ * Rate limits of publishing, the limit that is not set is not enforced.
+ */
+public class PublishingQuota {
+    @Nullable
+    @Min(1)
+    private Long eventsPerSecond;
+    @Nullable
+    @Min(1)
+    private Long bytesPerSecond;
+
+    public PublishingQuota() {
+    }
+
+    public PublishingQuota(@Nullable final Long eventsPerSecond, @Nullable final Long bytesPerSecond) {
+        this.eventsPerSecond = eventsPerSecond;
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    @Nullable
+    public Long getEventsPerSecond() {
+        return eventsPerSecond;
+    }
+
+    @Nullable
+    public Long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+}
@@ -5,63 +5,103 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.zalando.nakadi.exceptions.runtime.MalformedUtf8Exception;
 
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Strict json parser working over utf-8 encoded bytes. Apart from plain parsing it is able to collect all the
+ * information that is needed to build {@link BatchItem} (object boundaries, positions of whitespaces and positions of
+ * injectable fields) while parsing, so that event is traversed only once. Events are not converted to org.json
+ * tree while parsing, instead they are validated and represented with {@link LazyJsonObject}.
+ */
 public class StrictJsonParser {
 
     private static final Logger LOG = LoggerFactory.getLogger(StrictJsonParser.class);
 
     private static final String POSSIBLE_NUMBER_DIGITS = "0123456789-+.Ee";
+    private static final int MAX_SAFE_LONG_DIGITS = 18;
+    private static final int DUPLICATES_LINEAR_SEARCH_LIMIT = 32;
 
-    private static class StringTokenizer {
+    private static class ByteTokenizer {
 
         private int currentPosition;
-        private final String value;
+        private final byte[] value;
+        private final int startIndex;
         private final int endIndex;
+        @Nullable
+        private int[] skipPositions;
+        private int skipPositionsCount;
 
-        StringTokenizer(final String value, final int from, final int to) {
+        ByteTokenizer(final byte[] value, final int from, final int to, final boolean collectSkipPositions) {
             this.value = value;
+            this.startIndex = from;
             this.currentPosition = from;
             this.endIndex = to;
+            this.skipPositions = collectSkipPositions ? new int[16] : null;
         }
 
         boolean hasNext() {
             return currentPosition < endIndex;
         }
 
-        char next() {
+        byte next() {
             if (currentPosition >= endIndex) {
                 throw new JSONException("Unexpected end of data at pos " + currentPosition);
             }
-            return value.charAt(currentPosition++);
+            return value[currentPosition++];
         }
 
         int getCurrentPosition() {
             return currentPosition;
         }
 
-        String next(final int count) {
-            if (currentPosition + count >= endIndex) {
+        boolean nextMatches(final String expected) {
+            if (currentPosition + expected.length() > endIndex) {
                 throw new JSONException("Unexpected end of data at pos " + currentPosition);
             }
-            currentPosition += count;
-            return value.substring(currentPosition - count, currentPosition);
+            for (int i = 0; i < expected.length(); ++i) {
+                if (value[currentPosition + i] != expected.charAt(i)) {
+                    return false;
+                }
+            }
+            currentPosition += expected.length();
+            return true;
         }
 
-        char nextUnskippable() {
+        byte nextUnskippable() {
             for (; ; ) {
-                final char value = next();
+                final byte value = next();
                 if (isEmptyCharacter(value)) {
+                    if (null != skipPositions) {
+                        addSkipPosition(currentPosition - 1 - startIndex);
+                    }
                     continue;
                 }
                 return value;
             }
         }
 
+        private void addSkipPosition(final int position) {
+            if (skipPositionsCount == skipPositions.length) {
+                skipPositions = Arrays.copyOf(skipPositions, skipPositions.length * 2);
+            }
+            skipPositions[skipPositionsCount++] = position;
+        }
+
+        int[] getSkipPositions() {
+            return Arrays.copyOf(skipPositions, skipPositionsCount);
+        }
+
         void back() {
             this.currentPosition--;
         }
 
-        static boolean isEmptyCharacter(final char c) {
+        static boolean isEmptyCharacter(final byte c) {
             return (c == ' ' || c == '\t' || c == '\n' || c == '\r');
         }
     }
@@ -72,7 +112,8 @@ public class StrictJsonParser {
 
     public static JSONObject parse(final String value, final boolean allowMore) throws JSONException {
         try {
-            return (JSONObject) parse(value, 0, value.length(), allowMore);
+            final byte[] data = value.getBytes(StandardCharsets.UTF_8);
+            return (JSONObject) parse(data, 0, data.length, allowMore);
         } catch (final JSONException e) {
             // temporary logging
             LOG.debug("[STRICT_JSON_FAIL] Failed to parse json with strict parser: {} Error message: {}",
@@ -81,25 +122,85 @@ public class StrictJsonParser {
         }
     }
 
-    private static Object parse(final String value, final int startIdx, final int endIdx, final boolean allowMore)
+    /**
+     * Parses single event starting at {@code from} (that should point to opening curly bracket) and ending not
+     * further than {@code to}. Along with the parsed object collects positions of whitespaces outside of strings and
+     * positions of top-level fields that can be replaced by {@link BatchItem.Injection}.
+     *
+     * @return batch item referencing {@code data}, size of the item is the length of parsed object
+     */
+    static BatchItem parseBatchItem(final byte[] data, final int from, final int to) throws JSONException {
+        final ByteTokenizer tokenizer = new ByteTokenizer(data, from, to, true);
+        if (tokenizer.next() != '{') {
+            throw syntaxError("Event should be an object", tokenizer);
+        }
+        final BatchItem.InjectionConfiguration[] injections =
+                new BatchItem.InjectionConfiguration[BatchItem.Injection.values().length];
+        final LazyJsonObject event = readLazyObjectTillTheEnd(tokenizer, injections);
+        return new BatchItem(
+                data,
+                from,
+                tokenizer.getCurrentPosition() - from,
+                event,
+                BatchItem.EmptyInjectionConfiguration.build(1, event.length() > 0),
+                injections,
+                tokenizer.getSkipPositions());
+    }
+
+    /**
+     * Parses json object to lazy representation. The whole object is validated, but only top-level fields are
+     * indexed, nested values are decoded on access.
+     */
+    public static LazyJsonObject parseLazyObject(final String value) throws JSONException {
+        return parseLazyObject(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Same as {@link #parseLazyObject(String)}, for utf-8 encoded json.
+     */
+    public static LazyJsonObject parseLazyObject(final byte[] data) throws JSONException {
+        final ByteTokenizer tokenizer = new ByteTokenizer(data, 0, data.length, false);
+        if (tokenizer.nextUnskippable() != '{') {
+            throw syntaxError("Expected object", tokenizer);
+        }
+        return readLazyObjectTillTheEnd(tokenizer, null);
+    }
+
+    static JSONObject materializeObject(final byte[] data, final int from, final int to) {
+        return (JSONObject) parse(data, from, to, true);
+    }
+
+    /**
+     * Decodes already validated value stored in {@code data} between {@code from} and {@code to}.
+     */
+    static Object decodeValue(final byte[] data, final int from, final int to) {
+        final ByteTokenizer tokenizer = new ByteTokenizer(data, from, to, false);
+        if (data[from] == '{') {
+            tokenizer.next();
+            return readLazyObjectTillTheEnd(tokenizer, null);
+        }
+        return parse(tokenizer);
+    }
+
+    private static Object parse(final byte[] value, final int startIdx, final int endIdx, final boolean allowMore)
             throws JSONException {
-        final StringTokenizer stringTokenizer = new StringTokenizer(value, startIdx, endIdx);
-        final Object result = parse(stringTokenizer);
+        final ByteTokenizer tokenizer = new ByteTokenizer(value, startIdx, endIdx, false);
+        final Object result = parse(tokenizer);
         if (!allowMore) {
-            final char unexpectedValue;
+            final byte unexpectedValue;
             try {
-                unexpectedValue = stringTokenizer.nextUnskippable();
+                unexpectedValue = tokenizer.nextUnskippable();
             } catch (JSONException ignore) {
                 return result;
             }
-            throw syntaxError("Unexpected symbol '" + unexpectedValue + "'", stringTokenizer);
+            throw syntaxError("Unexpected symbol '" + (char) unexpectedValue + "'", tokenizer);
         } else {
             return result;
         }
     }
 
-    private static Object parse(final StringTokenizer tokenizer) {
-        final char value = tokenizer.nextUnskippable();
+    private static Object parse(final ByteTokenizer tokenizer) {
+        final byte value = tokenizer.nextUnskippable();
         switch (value) {
             case '{':
                 return readObjectTillTheEnd(tokenizer);
@@ -118,39 +219,48 @@ public class StrictJsonParser {
         }
     }
 
-    private static Object readFalseTillTheEnd(final StringTokenizer tokenizer) {
-        if (tokenizer.next(4).equals("alse")) {
+    private static Object readFalseTillTheEnd(final ByteTokenizer tokenizer) {
+        if (tokenizer.nextMatches("alse")) {
             return Boolean.FALSE;
         } else {
             throw syntaxError("Expected false value", tokenizer);
         }
     }
 
-    private static Object readTrueTillTheEnd(final StringTokenizer tokenizer) {
-        if (tokenizer.next(3).equals("rue")) {
+    private static Object readTrueTillTheEnd(final ByteTokenizer tokenizer) {
+        if (tokenizer.nextMatches("rue")) {
             return Boolean.TRUE;
         } else {
             throw syntaxError("Expected true value", tokenizer);
         }
     }
 
-    private static Object readNumberTillTheEnd(final char value, final StringTokenizer tokenizer) {
-        if (POSSIBLE_NUMBER_DIGITS.indexOf(value) < 0) {
-            throw syntaxError("Unexpected symbol '" + value + "'", tokenizer);
+    private static boolean isNumberCharacter(final byte value) {
+        return value >= 0 && POSSIBLE_NUMBER_DIGITS.indexOf(value) >= 0;
+    }
+
+    private static Object readNumberTillTheEnd(final byte value, final ByteTokenizer tokenizer) {
+        if (!isNumberCharacter(value)) {
+            throw syntaxError("Unexpected symbol '" + (char) value + "'", tokenizer);
         }
         final int start = tokenizer.getCurrentPosition() - 1;
         while (tokenizer.hasNext()) {
-            if (POSSIBLE_NUMBER_DIGITS.indexOf(tokenizer.next()) < 0) {
+            if (!isNumberCharacter(tokenizer.next())) {
                 tokenizer.back();
                 break;
             }
         }
         final int finish = tokenizer.getCurrentPosition();
-        final String stringNumber = tokenizer.value.substring(start, finish);
+        final String stringNumber = new String(tokenizer.value, start, finish - start, StandardCharsets.US_ASCII);
 
         if (stringNumber.indexOf('.') > -1 || stringNumber.indexOf('e') > -1
                 || stringNumber.indexOf('E') > -1 || "-0".equals(stringNumber)) {
-            final Double d = Double.valueOf(stringNumber);
+            final Double d;
+            try {
+                d = Double.valueOf(stringNumber);
+            } catch (NumberFormatException e) {
+                throw syntaxError("Can not parse number '" + stringNumber + "'", tokenizer);
+            }
             if (!d.isInfinite() && !d.isNaN()) {
                 return d;
             } else {
@@ -169,12 +279,12 @@ public class StrictJsonParser {
         }
     }
 
-    private static Object readObjectTillTheEnd(final StringTokenizer tokenizer) {
+    private static Object readObjectTillTheEnd(final ByteTokenizer tokenizer) {
         final JSONObject result = new JSONObject();
         boolean finished = false;
         boolean allowObjectEnd = true;
         while (!finished) {
-            final char nameStart = tokenizer.nextUnskippable();
+            final byte nameStart = tokenizer.nextUnskippable();
             if (nameStart == '}') {
                 if (!allowObjectEnd) {
                     throw syntaxError("Not allowed to finish object with comma", tokenizer);
@@ -182,20 +292,20 @@ public class StrictJsonParser {
                 finished = true;
             } else {
                 if (nameStart != '"') {
-                    throw syntaxError("Unexpected symbol '" + nameStart + "'", tokenizer);
+                    throw syntaxError("Unexpected symbol '" + (char) nameStart + "'", tokenizer);
                 }
                 final String name = readStringTillTheEnd(tokenizer);
-                final char separator = tokenizer.nextUnskippable();
+                final byte separator = tokenizer.nextUnskippable();
                 if (separator != ':') {
                     throw syntaxError("Waiting for name-value separator : while parsing object", tokenizer);
                 }
                 final Object value = parse(tokenizer);
                 result.putOnce(name, value);
-                final char nextToken = tokenizer.nextUnskippable();
+                final byte nextToken = tokenizer.nextUnskippable();
                 if (nextToken == '}') {
                     finished = true;
                 } else if (nextToken != ',') {
-                    throw syntaxError("Unexpected symbol '" + nextToken + "' while parsing object", tokenizer);
+                    throw syntaxError("Unexpected symbol '" + (char) nextToken + "' while parsing object", tokenizer);
                 }
             }
             allowObjectEnd = false;
@@ -203,17 +313,183 @@ public class StrictJsonParser {
         return result;
     }
 
-    private static Object readNullTillTheEnd(final StringTokenizer tokenizer) {
-        if (!tokenizer.next(3).equals("ull")) {
+    /**
+     * Reads object fields till the closing bracket, indexing names and positions of values without decoding them.
+     * Values are still validated.
+     *
+     * @param injections in case if provided, positions of fields matching injection names will be stored there,
+     *                   relative to the start of the tokenizer.
+     */
+    private static LazyJsonObject readLazyObjectTillTheEnd(
+            final ByteTokenizer tokenizer,
+            @Nullable final BatchItem.InjectionConfiguration[] injections) {
+        final int objectStart = tokenizer.getCurrentPosition() - 1;
+        String[] names = new String[8];
+        int[] fieldStarts = new int[8];
+        int[] valueStarts = new int[8];
+        int[] valueEnds = new int[8];
+        int size = 0;
+        Set<String> uniqueNames = null;
+        boolean finished = false;
+        boolean allowObjectEnd = true;
+        while (!finished) {
+            final byte nameStart = tokenizer.nextUnskippable();
+            if (nameStart == '}') {
+                if (!allowObjectEnd) {
+                    throw syntaxError("Not allowed to finish object with comma", tokenizer);
+                }
+                finished = true;
+            } else {
+                if (nameStart != '"') {
+                    throw syntaxError("Unexpected symbol '" + (char) nameStart + "'", tokenizer);
+                }
+                final int fieldStart = tokenizer.getCurrentPosition() - 1;
+                final String name = readStringTillTheEnd(tokenizer);
+                final byte separator = tokenizer.nextUnskippable();
+                if (separator != ':') {
+                    throw syntaxError("Waiting for name-value separator : while parsing object", tokenizer);
+                }
+                final int valueStart = skipValue(tokenizer);
+                if (size == names.length) {
+                    names = Arrays.copyOf(names, size * 2);
+                    fieldStarts = Arrays.copyOf(fieldStarts, size * 2);
+                    valueStarts = Arrays.copyOf(valueStarts, size * 2);
+                    valueEnds = Arrays.copyOf(valueEnds, size * 2);
+                }
+                // Linear search is cheaper for the most of the events, switching to set only for the big ones
+                if (size == DUPLICATES_LINEAR_SEARCH_LIMIT) {
+                    uniqueNames = new HashSet<>(Arrays.asList(names).subList(0, size));
+                }
+                if (null != uniqueNames ? !uniqueNames.add(name) : containsName(names, size, name)) {
+                    throw new JSONException("Duplicate key \"" + name + "\"");
+                }
+                names[size] = name;
+                fieldStarts[size] = fieldStart;
+                valueStarts[size] = valueStart;
+                valueEnds[size] = tokenizer.getCurrentPosition();
+                ++size;
+                if (null != injections) {
+                    registerInjection(injections, name, fieldStart, tokenizer);
+                }
+                final byte nextToken = tokenizer.nextUnskippable();
+                if (nextToken == '}') {
+                    finished = true;
+                } else if (nextToken != ',') {
+                    throw syntaxError("Unexpected symbol '" + (char) nextToken + "' while parsing object", tokenizer);
+                }
+            }
+            allowObjectEnd = false;
+        }
+        return new LazyJsonObject(tokenizer.value, objectStart, tokenizer.getCurrentPosition(),
+                names, fieldStarts, valueStarts, valueEnds, size);
+    }
+
+    private static boolean containsName(final String[] names, final int size, final String name) {
+        for (int i = 0; i < size; ++i) {
+            if (names[i].equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Validates the next value without decoding it.
+     *
+     * @return position of the first character of the value
+     */
+    private static int skipValue(final ByteTokenizer tokenizer) {
+        final byte value = tokenizer.nextUnskippable();
+        final int valueStart = tokenizer.getCurrentPosition() - 1;
+        switch (value) {
+            case '{':
+                readLazyObjectTillTheEnd(tokenizer, null);
+                break;
+            case '[':
+                skipArrayTillTheEnd(tokenizer);
+                break;
+            case '"':
+                skipStringTillTheEnd(tokenizer);
+                break;
+            case 'n':
+                readNullTillTheEnd(tokenizer);
+                break;
+            case 't':
+                readTrueTillTheEnd(tokenizer);
+                break;
+            case 'f':
+                readFalseTillTheEnd(tokenizer);
+                break;
+            default:
+                skipNumberTillTheEnd(value, tokenizer);
+        }
+        return valueStart;
+    }
+
+    private static void skipArrayTillTheEnd(final ByteTokenizer tokenizer) {
+        final byte possibleEnd = tokenizer.nextUnskippable();
+        if (possibleEnd == ']') {
+            return;
+        }
+        tokenizer.back();
+        boolean finished = false;
+        while (!finished) {
+            skipValue(tokenizer);
+            final byte separator = tokenizer.nextUnskippable();
+            if (separator == ']') {
+                finished = true;
+            } else if (separator != ',') {
+                throw syntaxError("Unexpected separator '" + (char) separator + "'", tokenizer);
+            }
+        }
+    }
+
+    private static void skipNumberTillTheEnd(final byte value, final ByteTokenizer tokenizer) {
+        final int start = tokenizer.getCurrentPosition() - 1;
+        boolean simpleInteger = value >= '0' && value <= '9' || value == '-';
+        while (tokenizer.hasNext()) {
+            final byte next = tokenizer.next();
+            if (!isNumberCharacter(next)) {
+                tokenizer.back();
+                break;
+            }
+            simpleInteger &= next >= '0' && next <= '9';
+        }
+        final int digits = tokenizer.getCurrentPosition() - start - (value == '-' ? 1 : 0);
+        // Short integers are always valid, so there is no need to spend time on decoding them
+        if (!simpleInteger || digits < 1 || digits > MAX_SAFE_LONG_DIGITS) {
+            tokenizer.currentPosition = start + 1;
+            readNumberTillTheEnd(value, tokenizer);
+        }
+    }
+
+    private static void registerInjection(
+            final BatchItem.InjectionConfiguration[] injections,
+            final String name,
+            final int fieldStart,
+            final ByteTokenizer tokenizer) {
+        for (final BatchItem.Injection type : BatchItem.Injection.values()) {
+            if (type.name.equals(name)) {
+                injections[type.ordinal()] = new BatchItem.InjectionConfiguration(
+                        type,
+                        fieldStart - tokenizer.startIndex,
+                        tokenizer.getCurrentPosition() - tokenizer.startIndex);
+                return;
+            }
+        }
+    }
+
+    private static Object readNullTillTheEnd(final ByteTokenizer tokenizer) {
+        if (!tokenizer.nextMatches("ull")) {
             throw syntaxError("Expected null value", tokenizer);
         }
         return JSONObject.NULL;
     }
 
-    private static Object readArrayTillTheEnd(final StringTokenizer tokenizer) {
+    private static Object readArrayTillTheEnd(final ByteTokenizer tokenizer) {
         // 1. Check if it is empty array.
         final JSONArray result = new JSONArray();
-        final char possibleEnd = tokenizer.nextUnskippable();
+        final byte possibleEnd = tokenizer.nextUnskippable();
         if (possibleEnd == ']') {
             return result;
         }
@@ -221,31 +497,82 @@ public class StrictJsonParser {
         boolean finished = false;
         while (!finished) {
             result.put(parse(tokenizer));
-            final char separator = tokenizer.nextUnskippable();
+            final byte separator = tokenizer.nextUnskippable();
             if (separator == ']') {
                 finished = true;
             } else if (separator != ',') {
-                throw syntaxError("Unexpected separator '" + separator + "'", tokenizer);
+                throw syntaxError("Unexpected separator '" + (char) separator + "'", tokenizer);
             }
         }
         return result;
     }
 
-    private static JSONException syntaxError(final String message, final StringTokenizer tokenizer) {
+    private static JSONException syntaxError(final String message, final ByteTokenizer tokenizer) {
         return new JSONException(message + " at pos " + tokenizer.currentPosition);
     }
 
-    private static String readStringTillTheEnd(final StringTokenizer tokenizer) {
-        final StringBuilder sb = new StringBuilder();
+    private static void skipStringTillTheEnd(final ByteTokenizer tokenizer) {
+        boolean finished = false;
+        while (!finished) {
+            final byte c = tokenizer.next();
+            switch (c) {
+                case 0:
+                case '\n':
+                case '\r':
+                    throw syntaxError("Unterminated string", tokenizer);
+                case '\\':
+                    switch (tokenizer.next()) {
+                        case 'b':
+                        case 't':
+                        case 'n':
+                        case 'f':
+                        case 'r':
+                        case '"':
+                        case '\'':
+                        case '\\':
+                        case '/':
+                            break;
+                        case 'u':
+                            for (int i = 0; i < 4; ++i) {
+                                if (Character.digit(tokenizer.next(), 16) < 0) {
+                                    throw syntaxError("Illegal codepoint", tokenizer);
+                                }
+                            }
+                            break;
+                        default:
+                            throw syntaxError("Illegal escape.", tokenizer);
+                    }
+                    break;
+                case '"':
+                    finished = true;
+                    break;
+                default:
+                    if (c < 0) {
+                        skipUtf8Sequence(c, tokenizer);
+                    }
+                    break;
+            }
+        }
+    }
+
+    private static String readStringTillTheEnd(final ByteTokenizer tokenizer) {
+        // Bytes between escape sequences are decoded in chunks. Escape sequences are starting with ascii backslash,
+        // that can not be a part of multibyte utf-8 character, so chunks are always containing complete characters.
+        StringBuilder sb = null;
+        int chunkStart = tokenizer.getCurrentPosition();
         boolean finished = false;
         while (!finished) {
-            char c = tokenizer.next();
+            byte c = tokenizer.next();
             switch (c) {
                 case 0:
                 case '\n':
                 case '\r':
                     throw syntaxError("Unterminated string", tokenizer);
                 case '\\':
+                    if (null == sb) {
+                        sb = new StringBuilder();
+                    }
+                    appendChunk(sb, tokenizer, chunkStart, tokenizer.getCurrentPosition() - 1);
                     c = tokenizer.next();
                     switch (c) {
                         case 'b':
@@ -264,7 +591,13 @@ public class StrictJsonParser {
                             sb.append('\r');
                             break;
                         case 'u':
-                            final String codepoint = tokenizer.next(4);
+                            final int codepointStart = tokenizer.getCurrentPosition();
+                            if (codepointStart + 4 > tokenizer.endIndex) {
+                                throw syntaxError("Unexpected end of data", tokenizer);
+                            }
+                            final String codepoint = new String(
+                                    tokenizer.value, codepointStart, 4, StandardCharsets.US_ASCII);
+                            tokenizer.currentPosition += 4;
                             try {
                                 sb.append((char) Integer.parseInt(codepoint, 16));
                             } catch (NumberFormatException e) {
@@ -275,20 +608,78 @@ public class StrictJsonParser {
                         case '\'':
                         case '\\':
                         case '/':
-                            sb.append(c);
+                            sb.append((char) c);
                             break;
                         default:
                             throw syntaxError("Illegal escape.", tokenizer);
                     }
+                    chunkStart = tokenizer.getCurrentPosition();
                     break;
                 case '"':
                     finished = true;
                     break;
                 default:
-                    sb.append(c); // TODO: Possible optimization
+                    if (c < 0) {
+                        skipUtf8Sequence(c, tokenizer);
+                    }
+                    break;
             }
         }
+        final int chunkEnd = tokenizer.getCurrentPosition() - 1;
+        if (null == sb) {
+            return new String(tokenizer.value, chunkStart, chunkEnd - chunkStart, StandardCharsets.UTF_8);
+        }
+        appendChunk(sb, tokenizer, chunkStart, chunkEnd);
         return sb.toString();
     }
 
+    /**
+     * Validates multibyte utf-8 character which lead byte was just read, so that bytes that are published as is are
+     * guaranteed to be decoded to the same value that was validated. Overlong encodings, surrogates and codepoints
+     * above U+10FFFF are rejected in the same way as {@link java.nio.charset.CharsetDecoder} does.
+     */
+    private static void skipUtf8Sequence(final byte lead, final ByteTokenizer tokenizer) {
+        final int leadValue = lead & 0xFF;
+        final int continuationBytes;
+        int codepoint;
+        if (leadValue >= 0xC2 && leadValue <= 0xDF) {
+            continuationBytes = 1;
+            codepoint = leadValue & 0x1F;
+        } else if (leadValue >= 0xE0 && leadValue <= 0xEF) {
+            continuationBytes = 2;
+            codepoint = leadValue & 0x0F;
+        } else if (leadValue >= 0xF0 && leadValue <= 0xF4) {
+            continuationBytes = 3;
+            codepoint = leadValue & 0x07;
+        } else {
+            throw malformedUtf8(tokenizer);
+        }
+        for (int i = 0; i < continuationBytes; ++i) {
+            final byte continuation = tokenizer.next();
+            if ((continuation & 0xC0) != 0x80) {
+                throw malformedUtf8(tokenizer);
+            }
+            codepoint = (codepoint << 6) | (continuation & 0x3F);
+        }
+        final boolean valid = continuationBytes == 1
+                || (continuationBytes == 2 && codepoint >= 0x800
+                && (codepoint < Character.MIN_SURROGATE || codepoint > Character.MAX_SURROGATE))
+                || (continuationBytes == 3 && codepoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT
+                && codepoint <= Character.MAX_CODE_POINT);
+        if (!valid) {
+            throw malformedUtf8(tokenizer);
+        }
+    }
+
+    private static MalformedUtf8Exception malformedUtf8(final ByteTokenizer tokenizer) {
+        return new MalformedUtf8Exception("Malformed utf-8 sequence at pos " + tokenizer.currentPosition);
+    }
+
+    private static void appendChunk(
+            final StringBuilder sb, final ByteTokenizer tokenizer, final int from, final int to) {
+        if (to > from) {
+            sb.append(new String(tokenizer.value, from, to - from, StandardCharsets.UTF_8));
+        }
+    }
+
 }
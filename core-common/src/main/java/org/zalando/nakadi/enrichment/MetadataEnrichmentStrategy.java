@@ -1,53 +1,148 @@
 package org.zalando.nakadi.enrichment;
 
+import com.google.common.collect.ImmutableSet;
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
 import org.joda.time.DateTimeZone;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.zalando.nakadi.domain.BatchItem;
 import org.zalando.nakadi.domain.EventType;
+import org.zalando.nakadi.domain.LazyJsonObject;
 import org.zalando.nakadi.exceptions.runtime.EnrichmentException;
 import org.zalando.nakadi.util.FlowIdUtils;
 
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Sets received_at, event_type, flow_id (if it is not provided), partition and version of the event metadata. The
+ * original metadata fields are copied as is, and the enriched fields are appended as pre-encoded fragments: the ones
+ * that depend on event type are encoded once per event type, received_at is encoded once per millisecond.
+ */
 public class MetadataEnrichmentStrategy implements EnrichmentStrategy {
+
+    private static final String FLOW_ID = "flow_id";
+    private static final Set<String> ENRICHED_FIELDS =
+            ImmutableSet.of("received_at", "event_type", "partition", "version");
+    private static final Set<String> ENRICHED_FIELDS_WITH_FLOW_ID = ImmutableSet.<String>builder()
+            .addAll(ENRICHED_FIELDS).add(FLOW_ID).build();
+
+    private final ConcurrentMap<String, EventTypeFields> eventTypeFields = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, byte[]> partitionFields = new ConcurrentHashMap<>();
+    private volatile CachedField<Long> receivedAtField = new CachedField<>(null, null);
+    private volatile CachedField<String> flowIdField = new CachedField<>(null, null);
+
     @Override
     public void enrich(final BatchItem batchItem, final EventType eventType) throws EnrichmentException {
         try {
-            final JSONObject metadata = batchItem
-                    .getEvent()
-                    .getJSONObject(BatchItem.Injection.METADATA.name);
-
-            setReceivedAt(metadata);
-            setEventTypeName(metadata, eventType);
-            setFlowId(metadata);
-            setPartition(metadata, batchItem);
-            setVersion(metadata, eventType);
-            batchItem.inject(BatchItem.Injection.METADATA, metadata.toString());
+            // only the names of metadata fields are decoded, the rest of the event stays untouched
+            final LazyJsonObject metadata = batchItem.getEvent().getObject(BatchItem.Injection.METADATA.name);
+            final byte[] eventTypeField = getEventTypeFields(eventType);
+            final byte[] partitionField = getPartitionField(batchItem.getPartition());
+            if ("".equals(metadata.optString(FLOW_ID, ""))) {
+                final byte[] flowIdField = getFlowIdField(FlowIdUtils.peek());
+                batchItem.injectMetadataFields(ENRICHED_FIELDS_WITH_FLOW_ID,
+                        nonNull(getReceivedAtField(), eventTypeField, flowIdField, partitionField));
+            } else {
+                batchItem.injectMetadataFields(ENRICHED_FIELDS,
+                        nonNull(getReceivedAtField(), eventTypeField, partitionField));
+            }
         } catch (final JSONException e) {
             throw new EnrichmentException("enrichment error", e);
         }
     }
 
-    private void setVersion(final JSONObject metadata, final EventType eventType) {
-        metadata.put("version", eventType.getSchema().getVersion().toString());
+    private byte[] getReceivedAtField() {
+        final long now = DateTimeUtils.currentTimeMillis();
+        CachedField<Long> cached = receivedAtField;
+        if (null == cached.key || cached.key != now) {
+            cached = new CachedField<>(now, encode("received_at", new DateTime(now, DateTimeZone.UTC).toString()));
+            receivedAtField = cached;
+        }
+        return cached.value;
+    }
+
+    private byte[] getEventTypeFields(final EventType eventType) {
+        final String version = eventType.getSchema().getVersion().toString();
+        EventTypeFields fields = eventTypeFields.get(eventType.getName());
+        if (null == fields || !fields.version.equals(version)) {
+            fields = new EventTypeFields(version, concat(
+                    encode("event_type", eventType.getName()), ",".getBytes(StandardCharsets.UTF_8),
+                    encode("version", version)));
+            eventTypeFields.put(eventType.getName(), fields);
+        }
+        return fields.value;
+    }
+
+    // null partition or flow id means that the field is removed from metadata, as it was with JSONObject.put
+    @Nullable
+    private byte[] getPartitionField(@Nullable final String partition) {
+        return null == partition ? null : partitionFields.computeIfAbsent(partition, p -> encode("partition", p));
+    }
+
+    @Nullable
+    private byte[] getFlowIdField(@Nullable final String flowId) {
+        if (null == flowId) {
+            return null;
+        }
+        CachedField<String> cached = flowIdField;
+        if (!flowId.equals(cached.key)) {
+            cached = new CachedField<>(flowId, encode(FLOW_ID, flowId));
+            flowIdField = cached;
+        }
+        return cached.value;
+    }
+
+    private static byte[] encode(final String name, final String value) {
+        return ("\"" + name + "\":" + JSONObject.quote(value)).getBytes(StandardCharsets.UTF_8);
     }
 
-    private void setFlowId(final JSONObject metadata) {
-        if ("".equals(metadata.optString("flow_id"))) {
-            metadata.put("flow_id", FlowIdUtils.peek());
+    private static byte[] concat(final byte[]... parts) {
+        int length = 0;
+        for (final byte[] part : parts) {
+            length += part.length;
+        }
+        final byte[] result = new byte[length];
+        int position = 0;
+        for (final byte[] part : parts) {
+            System.arraycopy(part, 0, result, position, part.length);
+            position += part.length;
         }
+        return result;
     }
 
-    private void setEventTypeName(final JSONObject metadata, final EventType eventType) {
-        metadata.put("event_type", eventType.getName());
+    private static byte[][] nonNull(final byte[]... fields) {
+        int count = 0;
+        for (final byte[] field : fields) {
+            if (null != field) {
+                fields[count++] = field;
+            }
+        }
+        return count == fields.length ? fields : Arrays.copyOf(fields, count);
     }
 
-    private void setReceivedAt(final JSONObject metadata) {
-        final DateTime dateTime = new DateTime(DateTimeZone.UTC);
-        metadata.put("received_at", dateTime.toString());
+    private static class CachedField<T> {
+        private final T key;
+        private final byte[] value;
+
+        private CachedField(@Nullable final T key, @Nullable final byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
     }
 
-    public void setPartition(final JSONObject metadata, final BatchItem batchItem) {
-        metadata.put("partition", batchItem.getPartition());
+    private static class EventTypeFields {
+        private final String version;
+        private final byte[] value;
+
+        private EventTypeFields(final String version, final byte[] value) {
+            this.version = version;
+            this.value = value;
+        }
     }
 }
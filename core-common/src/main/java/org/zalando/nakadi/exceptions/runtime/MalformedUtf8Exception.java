@@ -0,0 +1,13 @@
+package org.zalando.nakadi.exceptions.runtime;
+
+import org.json.JSONException;
+
+/**
+ * Thrown when a json value contains bytes that are not a valid utf-8 sequence. The document is well formed apart from
+ * encoding, so it is reported as unprocessable instead of as a syntax error.
+ */
+public class MalformedUtf8Exception extends JSONException {
+    public MalformedUtf8Exception(final String message) {
+        super(message);
+    }
+}
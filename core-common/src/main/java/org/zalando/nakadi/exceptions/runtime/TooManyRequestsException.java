@@ -0,0 +1,15 @@
+package org.zalando.nakadi.exceptions.runtime;
+
+public class TooManyRequestsException extends NakadiBaseException {
+
+    private final long retryAfterSeconds;
+
+    public TooManyRequestsException(final String msg, final long retryAfterSeconds) {
+        super(msg);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
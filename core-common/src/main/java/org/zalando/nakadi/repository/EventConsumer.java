@@ -15,13 +15,41 @@ public interface EventConsumer extends Closeable {
 
     List<ConsumedEvent> readEvents();
 
+    /**
+     * Reads events waiting for them not longer than the timeout. Zero timeout returns only the events that are
+     * available without waiting, so that the caller is never blocked by an idle partition.
+     */
+    List<ConsumedEvent> readEvents(long timeoutMs);
+
     interface LowLevelConsumer extends EventConsumer {
         Set<TopicPartition> getAssignment();
+
+        /**
+         * Moves reading position of assigned partitions, so that the next events read are the ones right after
+         * the cursors.
+         */
+        void seek(Collection<NakadiCursor> cursors) throws InvalidCursorException;
+
+        /**
+         * Stops fetching of the partitions until they are resumed, the rest of partitions is read as usual. Partitions
+         * that are not assigned are ignored.
+         */
+        void pause(Collection<TopicPartition> partitions);
+
+        void resume(Collection<TopicPartition> partitions);
     }
 
     interface ReassignableEventConsumer extends EventConsumer {
         Set<EventTypePartition> getAssignment();
 
         void reassign(Collection<NakadiCursor> newValues) throws InvalidCursorException;
+
+        /**
+         * Stops fetching of the partitions until they are resumed or reassigned, so that the consumer of a stream can
+         * hold back the partitions that it can not send yet without stalling the others.
+         */
+        void pause(Collection<EventTypePartition> partitions);
+
+        void resume(Collection<EventTypePartition> partitions);
     }
 }
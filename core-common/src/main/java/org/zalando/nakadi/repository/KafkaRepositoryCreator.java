@@ -2,6 +2,7 @@ package org.zalando.nakadi.repository;
 
 import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.zalando.nakadi.config.NakadiSettings;
@@ -11,6 +12,7 @@ import org.zalando.nakadi.domain.storage.KafkaConfiguration;
 import org.zalando.nakadi.domain.storage.Storage;
 import org.zalando.nakadi.exceptions.runtime.NakadiRuntimeException;
 import org.zalando.nakadi.exceptions.runtime.TopicRepositoryException;
+import org.zalando.nakadi.repository.kafka.EventTailCache;
 import org.zalando.nakadi.repository.kafka.KafkaFactory;
 import org.zalando.nakadi.repository.kafka.KafkaLocationManager;
 import org.zalando.nakadi.repository.kafka.KafkaSettings;
@@ -20,8 +22,11 @@ import org.zalando.nakadi.repository.kafka.KafkaZookeeper;
 import org.zalando.nakadi.repository.zookeeper.ZooKeeperHolder;
 import org.zalando.nakadi.repository.zookeeper.ZookeeperSettings;
 
+import javax.annotation.PreDestroy;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 @Component(value = "kafka")
@@ -33,6 +38,9 @@ public class KafkaRepositoryCreator implements TopicRepositoryCreator {
     private final KafkaTopicConfigFactory kafkaTopicConfigFactory;
     private final MetricRegistry metricRegistry;
     private final ObjectMapper objectMapper;
+    private final EventTailCache tailCache;
+    // shared by the repositories of all the storages, so that the number of completion threads is fixed per node
+    private final ExecutorService publishingCompletionExecutor;
 
     @Autowired
     public KafkaRepositoryCreator(
@@ -41,13 +49,23 @@ public class KafkaRepositoryCreator implements TopicRepositoryCreator {
             final ZookeeperSettings zookeeperSettings,
             final KafkaTopicConfigFactory kafkaTopicConfigFactory,
             final MetricRegistry metricRegistry,
-            final ObjectMapper objectMapper) {
+            final ObjectMapper objectMapper,
+            final EventTailCache tailCache) {
         this.nakadiSettings = nakadiSettings;
         this.kafkaSettings = kafkaSettings;
         this.zookeeperSettings = zookeeperSettings;
         this.kafkaTopicConfigFactory = kafkaTopicConfigFactory;
         this.metricRegistry = metricRegistry;
         this.objectMapper = objectMapper;
+        this.tailCache = tailCache;
+        this.publishingCompletionExecutor = Executors.newFixedThreadPool(
+                kafkaSettings.getPublishingCompletionThreads(),
+                new ThreadFactoryBuilder().setNameFormat("kafka-publishing-completion-%d").setDaemon(true).build());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        publishingCompletionExecutor.shutdown();
     }
 
     @Override
@@ -60,8 +78,8 @@ public class KafkaRepositoryCreator implements TopicRepositoryCreator {
                     zookeeperSettings.getZkConnectionTimeoutMs(),
                     nakadiSettings);
             final KafkaLocationManager kafkaLocationManager = new KafkaLocationManager(zooKeeperHolder, kafkaSettings);
-            final KafkaFactory kafkaFactory =
-                    new KafkaFactory(new KafkaLocationManager(zooKeeperHolder, kafkaSettings), metricRegistry);
+            final KafkaFactory kafkaFactory = new KafkaFactory(new KafkaLocationManager(zooKeeperHolder, kafkaSettings),
+                    metricRegistry, kafkaSettings.getProducerPoolSize());
             final KafkaZookeeper zk = new KafkaZookeeper(zooKeeperHolder, objectMapper);
             final KafkaTopicRepository kafkaTopicRepository =
                     new KafkaTopicRepository.Builder()
@@ -73,6 +91,8 @@ public class KafkaRepositoryCreator implements TopicRepositoryCreator {
                             .setKafkaTopicConfigFactory(kafkaTopicConfigFactory)
                             .setKafkaLocationManager(kafkaLocationManager)
                             .setMetricRegistry(metricRegistry)
+                            .setTailCache(tailCache)
+                            .setPublishingCompletionExecutor(publishingCompletionExecutor)
                             .build();
             // check that it does work
             kafkaTopicRepository.listTopics();
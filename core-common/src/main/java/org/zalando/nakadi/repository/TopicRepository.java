@@ -19,6 +19,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 public interface TopicRepository {
 
@@ -49,6 +50,15 @@ public interface TopicRepository {
     void syncPostBatch(String topicId, List<BatchItem> batch, String eventTypeName, boolean delete)
             throws EventPublishingException;
 
+    /**
+     * Publishes the batch without blocking the calling thread till the events are acknowledged by the storage.
+     * Returned future fails with {@link EventPublishingException} if at least one event was not published, the
+     * statuses of the events are set on the batch items the same way as for
+     * {@link #syncPostBatch(String, List, String, boolean)}.
+     */
+    CompletableFuture<Void> asyncPostBatch(String topicId, List<BatchItem> batch, String eventTypeName, boolean delete)
+            throws EventPublishingException;
+
     void repartition(String topic, int partitionsNumber) throws CannotAddPartitionToTopicException,
             TopicConfigException;
 
@@ -88,4 +98,11 @@ public interface TopicRepository {
             ServiceTemporarilyUnavailableException;
 
     void setRetentionTime(String topic, Long retentionMs) throws TopicConfigException;
+
+    /**
+     * Tells how much of the memory, that buffers the events on their way to the storage, is taken.
+     *
+     * @return Utilization of the buffer, from 0 to 1.
+     */
+    double getPublishingBufferUtilization();
 }
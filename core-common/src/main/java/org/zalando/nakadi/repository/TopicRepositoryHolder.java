@@ -13,6 +13,7 @@ import org.zalando.nakadi.exceptions.runtime.NakadiRuntimeException;
 import org.zalando.nakadi.exceptions.runtime.ServiceTemporarilyUnavailableException;
 import org.zalando.nakadi.exceptions.runtime.TopicRepositoryException;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -97,6 +98,24 @@ public class TopicRepositoryHolder {
         }
     }
 
+    /**
+     * Utilization of the most utilized publishing buffer among the storages that are in use by the node.
+     */
+    public double getPublishingBufferUtilization() {
+        final List<TopicRepository> topicRepositories;
+        lock.lock();
+        try {
+            topicRepositories = new ArrayList<>(storageTopicRepository.values());
+        } finally {
+            lock.unlock();
+        }
+        double result = 0;
+        for (final TopicRepository topicRepository : topicRepositories) {
+            result = Math.max(result, topicRepository.getPublishingBufferUtilization());
+        }
+        return result;
+    }
+
     private TopicRepositoryCreator getTopicRepositoryCreator(final Storage.Type type) {
         final TopicRepositoryCreator topicRepositoryCreator = repositoryCreators.get(type);
         if (topicRepositoryCreator == null) {
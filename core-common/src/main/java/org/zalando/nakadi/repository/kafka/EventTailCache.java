@@ -0,0 +1,272 @@
+package org.zalando.nakadi.repository.kafka;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.zalando.nakadi.domain.ConsumedEvent;
+import org.zalando.nakadi.domain.EventOwnerHeader;
+import org.zalando.nakadi.domain.NakadiCursor;
+import org.zalando.nakadi.domain.TopicPartition;
+
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Node-wide cache of the most recent events per partition, so that consumers that are a bit behind the head of a
+ * partition are served from memory instead of kafka. The cache of a partition is a ring buffer of a fixed size (on
+ * heap or off heap), and it always holds a contiguous range of events: it is fed by the events read from kafka
+ * and by the events published from this node, but only if they directly follow the last cached event.
+ * Partitions are cached only when they are read on this node, the least recently read partition is dropped when the
+ * total size of the cache is reached.
+ */
+@Component
+public class EventTailCache {
+
+    private final int partitionBytes;
+    private final long totalBytes;
+    private final boolean offHeap;
+    private final ConcurrentMap<TopicPartition, PartitionTail> partitions = new ConcurrentHashMap<>();
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final Meter hits;
+    private final Meter misses;
+    private final Meter evictions;
+
+    @Autowired
+    public EventTailCache(@Value("${nakadi.stream.tailCache.partitionBytes}") final int partitionBytes,
+                          @Value("${nakadi.stream.tailCache.totalBytes}") final long totalBytes,
+                          @Value("${nakadi.stream.tailCache.offHeap}") final boolean offHeap,
+                          final MetricRegistry metricRegistry) {
+        this.partitionBytes = partitionBytes;
+        this.totalBytes = totalBytes;
+        this.offHeap = offHeap;
+        this.hits = metricRegistry.meter("nakadi.tail_cache.hits");
+        this.misses = metricRegistry.meter("nakadi.tail_cache.misses");
+        this.evictions = metricRegistry.meter("nakadi.tail_cache.evictions");
+        metricRegistry.register("nakadi.tail_cache.allocated_bytes", (Gauge<Long>) allocatedBytes::get);
+        metricRegistry.register("nakadi.tail_cache.used_bytes", (Gauge<Long>) usedBytes::get);
+        metricRegistry.register("nakadi.tail_cache.hit_ratio", new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(hits.getOneMinuteRate(), hits.getOneMinuteRate() + misses.getOneMinuteRate());
+            }
+        });
+    }
+
+    public boolean isEnabled() {
+        return partitionBytes > 0 && totalBytes >= partitionBytes;
+    }
+
+    /**
+     * Returns cached events that follow the cursor, or empty list if the cursor is not covered by the cache. A miss
+     * is recorded only if there are cached events of the partition and the cursor is out of them.
+     */
+    public List<ConsumedEvent> read(final NakadiCursor after) {
+        if (!isEnabled()) {
+            return Collections.emptyList();
+        }
+        final PartitionTail tail = partitions.get(after.getTopicPartition());
+        if (null == tail) {
+            // only the partitions that are cached are taken into account by the hit ratio
+            return Collections.emptyList();
+        }
+        final List<ConsumedEvent> result = tail.read(after);
+        if (null == result) {
+            misses.mark();
+            return Collections.emptyList();
+        }
+        if (!result.isEmpty()) {
+            hits.mark();
+        }
+        return result;
+    }
+
+    /**
+     * Caches the event that was read from storage right after the cursor.
+     */
+    public void append(final NakadiCursor after, final ConsumedEvent event) {
+        if (!isEnabled() || null == event.getEvent()) {
+            return;
+        }
+        final TopicPartition topicPartition = after.getTopicPartition();
+        PartitionTail tail = partitions.get(topicPartition);
+        if (null == tail) {
+            tail = createPartitionTail(topicPartition);
+        }
+        tail.append(KafkaCursor.toKafkaOffset(after.getOffset()), KafkaCursor.toKafkaOffset(
+                event.getPosition().getOffset()), event.getEvent(), event.getTimestamp(), event.getOwner(), true);
+    }
+
+    /**
+     * Caches the event that was published from this node. Published events are only cached for the partitions that
+     * are read on this node.
+     */
+    void appendPublished(final String topic, final int partition, final long offset, final byte[] event,
+                         final long timestamp, @Nullable final EventOwnerHeader owner) {
+        if (!isEnabled()) {
+            return;
+        }
+        final PartitionTail tail = partitions.get(
+                new TopicPartition(topic, KafkaCursor.toNakadiPartition(partition)));
+        if (null != tail) {
+            tail.append(offset - 1, offset, event, timestamp, owner, false);
+        }
+    }
+
+    private synchronized PartitionTail createPartitionTail(final TopicPartition topicPartition) {
+        final PartitionTail existing = partitions.get(topicPartition);
+        if (null != existing) {
+            return existing;
+        }
+        while (allocatedBytes.get() + partitionBytes > totalBytes && !partitions.isEmpty()) {
+            // the least recently read partition gives the place to the new one
+            final Map.Entry<TopicPartition, PartitionTail> lru = Collections.min(partitions.entrySet(),
+                    (e1, e2) -> Long.compare(e1.getValue().lastReadAt, e2.getValue().lastReadAt));
+            partitions.remove(lru.getKey());
+            lru.getValue().release();
+        }
+        final PartitionTail tail = new PartitionTail(
+                offHeap ? ByteBuffer.allocateDirect(partitionBytes) : ByteBuffer.allocate(partitionBytes));
+        allocatedBytes.addAndGet(partitionBytes);
+        partitions.put(topicPartition, tail);
+        return tail;
+    }
+
+    private static class CachedEvent {
+        private final long offset;
+        private final int position;
+        private final int length;
+        private final long timestamp;
+        private final EventOwnerHeader owner;
+
+        private CachedEvent(final long offset, final int position, final int length, final long timestamp,
+                            @Nullable final EventOwnerHeader owner) {
+            this.offset = offset;
+            this.position = position;
+            this.length = length;
+            this.timestamp = timestamp;
+            this.owner = owner;
+        }
+    }
+
+    private class PartitionTail {
+        private final ByteBuffer buffer;
+        private final ArrayDeque<CachedEvent> events = new ArrayDeque<>();
+        // offset right before the first cached event and offset of the last cached event
+        private long baseOffset;
+        private long lastOffset;
+        private int writePosition;
+        private int used;
+        private volatile long lastReadAt = System.currentTimeMillis();
+        private boolean released;
+
+        private PartitionTail(final ByteBuffer buffer) {
+            this.buffer = buffer;
+            reset(-1);
+        }
+
+        @Nullable
+        private synchronized List<ConsumedEvent> read(final NakadiCursor after) {
+            lastReadAt = System.currentTimeMillis();
+            if (events.isEmpty()) {
+                return Collections.emptyList();
+            }
+            final long afterOffset = KafkaCursor.toKafkaOffset(after.getOffset());
+            if (afterOffset < baseOffset || afterOffset > lastOffset) {
+                return null;
+            }
+            final List<ConsumedEvent> result = new ArrayList<>();
+            final Iterator<CachedEvent> it = events.descendingIterator();
+            while (it.hasNext()) {
+                final CachedEvent event = it.next();
+                if (event.offset <= afterOffset) {
+                    break;
+                }
+                result.add(new ConsumedEvent(copyOut(event), NakadiCursor.of(
+                        after.getTimeline(), after.getPartition(), KafkaCursor.toNakadiOffset(event.offset)),
+                        event.timestamp, event.owner));
+            }
+            Collections.reverse(result);
+            return result;
+        }
+
+        private synchronized void append(final long afterOffset, final long offset, final byte[] data,
+                                         final long timestamp, @Nullable final EventOwnerHeader owner,
+                                         final boolean canRestart) {
+            if (released) {
+                return;
+            }
+            if (afterOffset != lastOffset) {
+                // events read after a gap start the cache from scratch, older events are ignored
+                if (!canRestart || afterOffset < lastOffset) {
+                    return;
+                }
+                reset(afterOffset);
+            }
+            if (data.length > buffer.capacity()) {
+                reset(offset);
+                return;
+            }
+            while (buffer.capacity() - used < data.length) {
+                final CachedEvent evicted = events.pollFirst();
+                used -= evicted.length;
+                usedBytes.addAndGet(-evicted.length);
+                baseOffset = evicted.offset;
+                evictions.mark();
+            }
+            final int position = writePosition;
+            final int firstPart = Math.min(data.length, buffer.capacity() - position);
+            buffer.position(position);
+            buffer.put(data, 0, firstPart);
+            if (firstPart < data.length) {
+                buffer.position(0);
+                buffer.put(data, firstPart, data.length - firstPart);
+            }
+            writePosition = (position + data.length) % buffer.capacity();
+            used += data.length;
+            usedBytes.addAndGet(data.length);
+            events.addLast(new CachedEvent(offset, position, data.length, timestamp, owner));
+            lastOffset = offset;
+        }
+
+        private byte[] copyOut(final CachedEvent event) {
+            final byte[] result = new byte[event.length];
+            final int firstPart = Math.min(event.length, buffer.capacity() - event.position);
+            buffer.position(event.position);
+            buffer.get(result, 0, firstPart);
+            if (firstPart < event.length) {
+                buffer.position(0);
+                buffer.get(result, firstPart, event.length - firstPart);
+            }
+            return result;
+        }
+
+        private void reset(final long offset) {
+            usedBytes.addAndGet(-used);
+            events.clear();
+            used = 0;
+            writePosition = 0;
+            baseOffset = offset;
+            lastOffset = offset;
+        }
+
+        private synchronized void release() {
+            released = true;
+            reset(-1);
+            allocatedBytes.addAndGet(-buffer.capacity());
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package org.zalando.nakadi.repository.kafka;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.zalando.nakadi.domain.ConsumedEvent;
+import org.zalando.nakadi.domain.NakadiCursor;
+import org.zalando.nakadi.domain.Timeline;
+import org.zalando.nakadi.exceptions.runtime.InvalidCursorException;
+import org.zalando.nakadi.repository.EventConsumer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Consumer that reads partitions through the node-wide {@link SharedPartitionReader}s, so that the records that are
+ * read by several consumers of the node are fetched from kafka only once. Every consumer keeps its own position in
+ * each partition. Partitions that are not shared with other consumers, and partitions where the consumer is behind
+ * the window of the shared reader (lagging consumers), are read with one private kafka consumer until the position
+ * gets back to the window.
+ */
+public class FanOutKafkaConsumer implements EventConsumer.LowLevelConsumer {
+
+    private final SharedPartitionReaders sharedReaders;
+    private final Supplier<Consumer<byte[], byte[]>> privateConsumerSupplier;
+    private final Map<TopicPartition, Timeline> timelineMap;
+    private final long pollTimeout;
+    // next offset to read per partition
+    private final Map<TopicPartition, Long> positions = new HashMap<>();
+    private final Set<TopicPartition> privatePartitions = new HashSet<>();
+    private final Set<TopicPartition> pausedPartitions = new HashSet<>();
+    private Consumer<byte[], byte[]> privateConsumer;
+
+    FanOutKafkaConsumer(
+            final SharedPartitionReaders sharedReaders,
+            final Supplier<Consumer<byte[], byte[]>> privateConsumerSupplier,
+            final List<KafkaCursor> kafkaCursors,
+            final Map<TopicPartition, Timeline> timelineMap,
+            final long pollTimeout) {
+        this.sharedReaders = sharedReaders;
+        this.privateConsumerSupplier = privateConsumerSupplier;
+        this.timelineMap = timelineMap;
+        this.pollTimeout = pollTimeout;
+        for (final KafkaCursor cursor : kafkaCursors) {
+            positions.put(new TopicPartition(cursor.getTopic(), cursor.getPartition()), cursor.getOffset());
+        }
+        positions.keySet().forEach(sharedReaders::register);
+    }
+
+    @Override
+    public Set<org.zalando.nakadi.domain.TopicPartition> getAssignment() {
+        return positions.keySet().stream()
+                .map(tp -> new org.zalando.nakadi.domain.TopicPartition(
+                        tp.topic(),
+                        KafkaCursor.toNakadiPartition(tp.partition())))
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public void seek(final Collection<NakadiCursor> cursors) throws InvalidCursorException {
+        for (final NakadiCursor cursor : cursors) {
+            final KafkaCursor kafkaCursor = KafkaCursor.fromNakadiCursor(cursor).addOffset(1);
+            final TopicPartition tp = new TopicPartition(kafkaCursor.getTopic(), kafkaCursor.getPartition());
+            positions.put(tp, kafkaCursor.getOffset());
+            if (privatePartitions.contains(tp)) {
+                privateConsumer.seek(tp, kafkaCursor.getOffset());
+            }
+        }
+    }
+
+    @Override
+    public void pause(final Collection<org.zalando.nakadi.domain.TopicPartition> partitions) {
+        final List<TopicPartition> toPause = toAssignedKafkaPartitions(partitions);
+        pausedPartitions.addAll(toPause);
+        final List<TopicPartition> privateToPause = toPause.stream()
+                .filter(privatePartitions::contains)
+                .collect(Collectors.toList());
+        if (!privateToPause.isEmpty()) {
+            privateConsumer.pause(privateToPause);
+        }
+    }
+
+    @Override
+    public void resume(final Collection<org.zalando.nakadi.domain.TopicPartition> partitions) {
+        final List<TopicPartition> toResume = toAssignedKafkaPartitions(partitions);
+        pausedPartitions.removeAll(toResume);
+        final List<TopicPartition> privateToResume = toResume.stream()
+                .filter(privatePartitions::contains)
+                .collect(Collectors.toList());
+        if (!privateToResume.isEmpty()) {
+            privateConsumer.resume(privateToResume);
+        }
+    }
+
+    private List<TopicPartition> toAssignedKafkaPartitions(
+            final Collection<org.zalando.nakadi.domain.TopicPartition> partitions) {
+        return partitions.stream()
+                .map(tp -> new TopicPartition(tp.getTopic(), KafkaCursor.toKafkaPartition(tp.getPartition())))
+                .filter(positions::containsKey)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<ConsumedEvent> readEvents() {
+        return readEvents(pollTimeout);
+    }
+
+    @Override
+    public List<ConsumedEvent> readEvents(final long timeoutMs) {
+        final List<ConsumedEvent> result = new ArrayList<>();
+        // at first everything that is already in memory or in private consumer is taken without waiting
+        readAll(0, result);
+        if (result.isEmpty() && timeoutMs > 0) {
+            final int sources = positions.size() - privatePartitions.size() + (privatePartitions.isEmpty() ? 0 : 1);
+            readAll(Math.max(1, timeoutMs / Math.max(1, sources)), result);
+        }
+        return result;
+    }
+
+    private void readAll(final long timeoutMs, final List<ConsumedEvent> result) {
+        for (final Map.Entry<TopicPartition, Long> entry : positions.entrySet()) {
+            final TopicPartition tp = entry.getKey();
+            if (pausedPartitions.contains(tp)) {
+                // paused partitions do not move between shared and private reading until they are resumed
+                continue;
+            }
+            final long position = entry.getValue();
+            final SharedPartitionReader reader = sharedReaders.getReader(tp, position);
+            if (privatePartitions.contains(tp)) {
+                if (null != reader && reader.canServe(position)) {
+                    switchToShared(tp);
+                } else {
+                    continue;
+                }
+            }
+            final List<ConsumerRecord<byte[], byte[]>> records =
+                    null == reader ? null : reader.read(position, timeoutMs);
+            if (null == records) {
+                if (null != reader) {
+                    sharedReaders.markPrivateFallback();
+                }
+                switchToPrivate(tp, position);
+            } else if (!records.isEmpty()) {
+                sharedReaders.markSharedRead();
+                addRecords(tp, records, result);
+            }
+        }
+        if (!privatePartitions.isEmpty()) {
+            final ConsumerRecords<byte[], byte[]> records = privateConsumer.poll(Duration.ofMillis(timeoutMs));
+            for (final TopicPartition tp : records.partitions()) {
+                addRecords(tp, records.records(tp), result);
+            }
+        }
+    }
+
+    private void addRecords(final TopicPartition tp, final List<ConsumerRecord<byte[], byte[]>> records,
+                            final List<ConsumedEvent> result) {
+        final Timeline timeline = timelineMap.get(tp);
+        for (final ConsumerRecord<byte[], byte[]> record : records) {
+            result.add(NakadiKafkaConsumer.toConsumedEvent(record, timeline));
+        }
+        positions.put(tp, records.get(records.size() - 1).offset() + 1);
+    }
+
+    private void switchToPrivate(final TopicPartition tp, final long position) {
+        if (null == privateConsumer) {
+            privateConsumer = privateConsumerSupplier.get();
+        }
+        privatePartitions.add(tp);
+        privateConsumer.assign(new ArrayList<>(privatePartitions));
+        privateConsumer.seek(tp, position);
+    }
+
+    private void switchToShared(final TopicPartition tp) {
+        privatePartitions.remove(tp);
+        privateConsumer.assign(new ArrayList<>(privatePartitions));
+    }
+
+    @Override
+    public void close() {
+        positions.keySet().forEach(sharedReaders::unregister);
+        positions.clear();
+        if (null != privateConsumer) {
+            privateConsumer.close();
+        }
+    }
+}
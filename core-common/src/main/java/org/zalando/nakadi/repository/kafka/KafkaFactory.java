@@ -10,11 +10,14 @@ import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import java.io.Closeable;
+import java.time.Duration;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
@@ -24,59 +27,70 @@ import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+/**
+ * Keeps the pool of kafka producers. Producers are sharded by topic-partition, so that publishing to different
+ * partitions is spread among several record accumulators and sender threads, and termination of one producer (for
+ * example because of a failure of one broker) affects only the partitions of its shard.
+ */
 public class KafkaFactory {
 
     private static final Logger LOG = LoggerFactory.getLogger(KafkaFactory.class);
     private final KafkaLocationManager kafkaLocationManager;
     private final Counter useCountMetric;
     private final Counter producerTerminations;
-    private final Map<Producer<String, String>, AtomicInteger> useCount = new ConcurrentHashMap<>();
-    private final ReadWriteLock rwLock = new ReentrantReadWriteLock();
-    @Nullable
-    private Producer<String, String> activeProducer;
+    private final ProducerShard[] shards;
+    private final Map<Producer<String, byte[]>, ProducerShard> producerShards = new ConcurrentHashMap<>();
 
     public KafkaFactory(final KafkaLocationManager kafkaLocationManager, final MetricRegistry metricRegistry) {
+        this(kafkaLocationManager, metricRegistry, 1);
+    }
+
+    public KafkaFactory(final KafkaLocationManager kafkaLocationManager, final MetricRegistry metricRegistry,
+                        final int producerPoolSize) {
         this.kafkaLocationManager = kafkaLocationManager;
         this.useCountMetric = metricRegistry.counter("kafka.producer.use_count");
         this.producerTerminations = metricRegistry.counter("kafka.producer.termination_count");
-    }
-
-    @Nullable
-    private Producer<String, String> takeUnderLock(final boolean canCreate) {
-        final Lock lock = canCreate ? rwLock.writeLock() : rwLock.readLock();
-        lock.lock();
-        try {
-            if (null != activeProducer) {
-                useCount.get(activeProducer).incrementAndGet();
-                return activeProducer;
-            } else if (canCreate) {
-                activeProducer = createProducerInstance();
-                useCount.put(activeProducer, new AtomicInteger(1));
-                LOG.info("New producer instance created: " + activeProducer);
-                return activeProducer;
-            } else {
-                return null;
-            }
-        } finally {
-            lock.unlock();
+        this.shards = new ProducerShard[Math.max(1, producerPoolSize)];
+        for (int i = 0; i < shards.length; ++i) {
+            shards[i] = new ProducerShard(i, metricRegistry);
         }
     }
 
-    protected Producer<String, String> createProducerInstance() {
+    protected Producer<String, byte[]> createProducerInstance() {
         return new KafkaProducerCrutch(kafkaLocationManager.getKafkaProducerProperties(),
                 new KafkaCrutch(kafkaLocationManager));
     }
 
+    public int getProducerPoolSize() {
+        return shards.length;
+    }
+
     /**
      * Takes producer from producer cache. Every producer, that was received by this method must be released with
-     * {@link #releaseProducer(Producer)} method.
+     * {@link #releaseProducer(Producer)} method. The producer belongs to the first shard of the pool, that should
+     * be used for the calls that are not bound to any partition (like metadata requests).
+     *
+     * @return Initialized kafka producer instance.
+     */
+    public Producer<String, byte[]> takeProducer() {
+        return take(shards[0]);
+    }
+
+    /**
+     * Takes producer that is responsible for publishing to the {@code partition} of the {@code topic}. Every
+     * producer, that was received by this method must be released with {@link #releaseProducer(Producer)} method.
      *
      * @return Initialized kafka producer instance.
      */
-    public Producer<String, String> takeProducer() {
-        Producer<String, String> result = takeUnderLock(false);
+    public Producer<String, byte[]> takeProducer(final String topic, final String partition) {
+        final int hash = 31 * topic.hashCode() + partition.hashCode();
+        return take(shards[(hash & Integer.MAX_VALUE) % shards.length]);
+    }
+
+    private Producer<String, byte[]> take(final ProducerShard shard) {
+        Producer<String, byte[]> result = shard.takeUnderLock(false);
         if (null == result) {
-            result = takeUnderLock(true);
+            result = shard.takeUnderLock(true);
         }
         useCountMetric.inc();
         return result;
@@ -88,53 +102,190 @@ public class KafkaFactory {
      *
      * @param producer Producer to release.
      */
-    public void releaseProducer(final Producer<String, String> producer) {
+    public void releaseProducer(final Producer<String, byte[]> producer) {
         useCountMetric.dec();
-        final AtomicInteger counter = useCount.get(producer);
-        if (counter != null && 0 == counter.decrementAndGet()) {
-            final boolean deleteProducer;
-            rwLock.readLock().lock();
-            try {
-                deleteProducer = producer != activeProducer;
-            } finally {
-                rwLock.readLock().unlock();
-            }
-            if (deleteProducer) {
-                rwLock.writeLock().lock();
-                try {
-                    if (counter.get() == 0 && null != useCount.remove(producer)) {
-                        LOG.info("Stopping producer instance - It was reported that instance should be refreshed " +
-                                "and it is not used anymore: " + producer);
-                        producer.close();
-                    }
-                } finally {
-                    rwLock.writeLock().unlock();
-                }
-            }
+        final ProducerShard shard = producerShards.get(producer);
+        if (null != shard) {
+            shard.release(producer);
         }
     }
 
     /**
      * Notifies producer cache, that this producer should be marked as obsolete. All methods, that are using this
      * producer instance right now can continue using it, but new calls to {@link #takeProducer()} will use some other
-     * producers.
+     * producers. Other shards of the pool are not affected.
      * It is allowed to call this method only between {@link #takeProducer()} and {@link #releaseProducer(Producer)}
      * method calls. (You can not terminate something that you do not own)
      *
      * @param producer Producer instance to terminate.
      */
-    public void terminateProducer(final Producer<String, String> producer) {
+    public void terminateProducer(final Producer<String, byte[]> producer) {
         LOG.info("Received signal to terminate producer " + producer);
-        rwLock.writeLock().lock();
-        try {
-            if (producer == this.activeProducer) {
-                producerTerminations.inc();
-                this.activeProducer = null;
-            } else {
-                LOG.info("Signal for producer termination already received: " + producer);
+        final ProducerShard shard = producerShards.get(producer);
+        if (null == shard || !shard.terminate(producer)) {
+            LOG.info("Signal for producer termination already received: " + producer);
+        }
+    }
+
+    /**
+     * Marks all the active producers of the pool as obsolete, so that the new ones, with fresh metadata, are
+     * created on the next calls to {@link #takeProducer()}.
+     */
+    public void terminateAllProducers() {
+        for (final ProducerShard shard : shards) {
+            shard.terminateActive();
+        }
+    }
+
+    /**
+     * Tells which part of the buffer memory is taken by the records that are waiting to be sent to the brokers. Every
+     * producer of the pool has its own buffer, so the most utilized one is reported: once its buffer is full, sends to
+     * the partitions of its shard block until the buffer is freed or request times out.
+     *
+     * @return Utilization of the most utilized buffer, from 0 to 1.
+     */
+    public double getBufferUtilization() {
+        double result = 0;
+        for (final ProducerShard shard : shards) {
+            result = Math.max(result, shard.getBufferUtilization());
+        }
+        return result;
+    }
+
+    private static double getBufferUtilization(final Producer<String, byte[]> producer) {
+        double total = 0;
+        double available = 0;
+        for (final Map.Entry<MetricName, ? extends Metric> entry : producer.metrics().entrySet()) {
+            if (!"producer-metrics".equals(entry.getKey().group())) {
+                continue;
+            }
+            if ("buffer-total-bytes".equals(entry.getKey().name())) {
+                total = toDouble(entry.getValue());
+            } else if ("buffer-available-bytes".equals(entry.getKey().name())) {
+                available = toDouble(entry.getValue());
+            }
+        }
+        return total > 0 ? Math.max(0, total - available) / total : 0;
+    }
+
+    private static double toDouble(final Metric metric) {
+        final Object value = metric.metricValue();
+        return value instanceof Number ? ((Number) value).doubleValue() : 0;
+    }
+
+    private class ProducerShard {
+        private final int index;
+        private final Map<Producer<String, byte[]>, AtomicInteger> useCount = new ConcurrentHashMap<>();
+        private final ReadWriteLock rwLock = new ReentrantReadWriteLock();
+        private final Counter shardUseCount;
+        private final Counter shardTerminations;
+        private final Counter shardActiveProducers;
+        @Nullable
+        private Producer<String, byte[]> activeProducer;
+
+        private ProducerShard(final int index, final MetricRegistry metricRegistry) {
+            this.index = index;
+            final String prefix = "kafka.producer.shard." + index;
+            this.shardUseCount = metricRegistry.counter(prefix + ".use_count");
+            this.shardTerminations = metricRegistry.counter(prefix + ".termination_count");
+            this.shardActiveProducers = metricRegistry.counter(prefix + ".active_producers");
+        }
+
+        @Nullable
+        private Producer<String, byte[]> takeUnderLock(final boolean canCreate) {
+            final Lock lock = canCreate ? rwLock.writeLock() : rwLock.readLock();
+            lock.lock();
+            try {
+                if (null != activeProducer) {
+                    useCount.get(activeProducer).incrementAndGet();
+                    shardUseCount.inc();
+                    return activeProducer;
+                } else if (canCreate) {
+                    activeProducer = createProducerInstance();
+                    useCount.put(activeProducer, new AtomicInteger(1));
+                    producerShards.put(activeProducer, this);
+                    shardUseCount.inc();
+                    shardActiveProducers.inc();
+                    LOG.info("New producer instance created for shard " + index + ": " + activeProducer);
+                    return activeProducer;
+                } else {
+                    return null;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void release(final Producer<String, byte[]> producer) {
+            final AtomicInteger counter = useCount.get(producer);
+            if (counter == null) {
+                return;
+            }
+            shardUseCount.dec();
+            if (0 == counter.decrementAndGet()) {
+                final boolean deleteProducer;
+                rwLock.readLock().lock();
+                try {
+                    deleteProducer = producer != activeProducer;
+                } finally {
+                    rwLock.readLock().unlock();
+                }
+                if (deleteProducer) {
+                    rwLock.writeLock().lock();
+                    try {
+                        if (counter.get() == 0 && null != useCount.remove(producer)) {
+                            LOG.info("Stopping producer instance - It was reported that instance should be " +
+                                    "refreshed and it is not used anymore: " + producer);
+                            producerShards.remove(producer);
+                            producer.close();
+                        }
+                    } finally {
+                        rwLock.writeLock().unlock();
+                    }
+                }
+            }
+        }
+
+        private double getBufferUtilization() {
+            rwLock.readLock().lock();
+            try {
+                return null == activeProducer ? 0 : KafkaFactory.getBufferUtilization(activeProducer);
+            } finally {
+                rwLock.readLock().unlock();
+            }
+        }
+
+        private boolean terminate(final Producer<String, byte[]> producer) {
+            rwLock.writeLock().lock();
+            try {
+                if (producer != this.activeProducer) {
+                    return false;
+                }
+                terminateActive();
+                return true;
+            } finally {
+                rwLock.writeLock().unlock();
+            }
+        }
+
+        private void terminateActive() {
+            rwLock.writeLock().lock();
+            try {
+                if (null != activeProducer) {
+                    producerTerminations.inc();
+                    shardTerminations.inc();
+                    shardActiveProducers.dec();
+                    final AtomicInteger counter = useCount.get(activeProducer);
+                    // producer that is not used by anyone will not be released, so it should be closed right away
+                    if (counter.get() == 0 && null != useCount.remove(activeProducer)) {
+                        producerShards.remove(activeProducer);
+                        activeProducer.close();
+                    }
+                    activeProducer = null;
+                }
+            } finally {
+                rwLock.writeLock().unlock();
             }
-        } finally {
-            rwLock.writeLock().unlock();
         }
     }
 
@@ -168,6 +319,14 @@ public class KafkaFactory {
             return super.poll(timeoutMs);
         }
 
+        @Override
+        public ConsumerRecords<byte[], byte[]> poll(final Duration timeout) {
+            if (kafkaCrutch.brokerIpAddressChanged) {
+                throw new KafkaCrutchException("Kafka broker ip address changed, exiting");
+            }
+            return super.poll(timeout);
+        }
+
         @Override
         public void close() {
             kafkaCrutch.close();
@@ -181,7 +340,7 @@ public class KafkaFactory {
         }
     }
 
-    public class KafkaProducerCrutch extends KafkaProducer<String, String> {
+    public class KafkaProducerCrutch extends KafkaProducer<String, byte[]> {
 
         private final KafkaCrutch kafkaCrutch;
 
@@ -191,7 +350,7 @@ public class KafkaFactory {
         }
 
         @Override
-        public Future<RecordMetadata> send(final ProducerRecord<String, String> record, final Callback callback) {
+        public Future<RecordMetadata> send(final ProducerRecord<String, byte[]> record, final Callback callback) {
             if (kafkaCrutch.brokerIpAddressChanged) {
                 throw new KafkaCrutchException("Kafka broker ip address changed, exiting");
             }
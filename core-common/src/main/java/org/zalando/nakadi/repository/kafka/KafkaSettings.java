@@ -21,6 +21,10 @@ public class KafkaSettings {
     private final int maxRequestSize;
     private final int deliveryTimeoutMs;
     private final int maxBlockMs;
+    private final int producerPoolSize;
+    private final long sharedReaderWindowBytes;
+    private final long sharedReaderTotalBytes;
+    private final int publishingCompletionThreads;
 
     @Autowired
     public KafkaSettings(@Value("${nakadi.kafka.request.timeout.ms}") final int requestTimeoutMs,
@@ -30,7 +34,12 @@ public class KafkaSettings {
                          @Value("${nakadi.kafka.enable.auto.commit}") final boolean enableAutoCommit,
                          @Value("${nakadi.kafka.max.request.size}") final int maxRequestSize,
                          @Value("${nakadi.kafka.delivery.timeout.ms}") final int deliveryTimeoutMs,
-                         @Value("${nakadi.kafka.max.block.ms}") final int maxBlockMs) {
+                         @Value("${nakadi.kafka.max.block.ms}") final int maxBlockMs,
+                         @Value("${nakadi.kafka.producer.pool.size}") final int producerPoolSize,
+                         @Value("${nakadi.kafka.shared.reader.window.bytes}") final long sharedReaderWindowBytes,
+                         @Value("${nakadi.kafka.shared.reader.total.bytes}") final long sharedReaderTotalBytes,
+                         @Value("${nakadi.kafka.publishing.completion.threads}")
+                         final int publishingCompletionThreads) {
         this.requestTimeoutMs = requestTimeoutMs;
         this.batchSize = batchSize;
         this.bufferMemory = bufferMemory;
@@ -39,6 +48,10 @@ public class KafkaSettings {
         this.maxRequestSize = maxRequestSize;
         this.deliveryTimeoutMs = deliveryTimeoutMs;
         this.maxBlockMs = maxBlockMs;
+        this.producerPoolSize = producerPoolSize;
+        this.sharedReaderWindowBytes = sharedReaderWindowBytes;
+        this.sharedReaderTotalBytes = sharedReaderTotalBytes;
+        this.publishingCompletionThreads = publishingCompletionThreads;
     }
 
     public int getRequestTimeoutMs() {
@@ -72,4 +85,32 @@ public class KafkaSettings {
     public int getMaxBlockMs() {
         return maxBlockMs;
     }
+
+    public int getProducerPoolSize() {
+        return producerPoolSize;
+    }
+
+    /**
+     * Size of the window of records that are kept per partition for the consumers that read the partition at about
+     * the same position, 0 means that every consumer reads kafka on its own.
+     */
+    public long getSharedReaderWindowBytes() {
+        return sharedReaderWindowBytes;
+    }
+
+    /**
+     * Memory that is taken by the windows of all the shared readers of the node, partitions that do not fit into it
+     * are read by every consumer on its own.
+     */
+    public long getSharedReaderTotalBytes() {
+        return sharedReaderTotalBytes;
+    }
+
+    /**
+     * Number of threads that are completing asynchronously published batches, i.e. releasing producers and
+     * reporting the results once kafka acknowledged or failed all the events of a batch.
+     */
+    public int getPublishingCompletionThreads() {
+        return publishingCompletionThreads;
+    }
 }
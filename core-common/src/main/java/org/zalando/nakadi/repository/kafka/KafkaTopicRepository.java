@@ -54,6 +54,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -65,6 +66,7 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
@@ -92,6 +94,13 @@ public class KafkaTopicRepository implements TopicRepository {
     private final KafkaTopicConfigFactory kafkaTopicConfigFactory;
     private final KafkaLocationManager kafkaLocationManager;
     private final MetricRegistry metricRegistry;
+    private final ConcurrentMap<String, PartitionLeaders> partitionLeaders = new ConcurrentHashMap<>();
+    @Nullable
+    private final SharedPartitionReaders sharedReaders;
+    @Nullable
+    private final EventTailCache tailCache;
+    // releasing of a producer may close it and wait for its requests, so it is kept away from the common pool
+    private final Executor publishingCompletionExecutor;
 
     public KafkaTopicRepository(final Builder builder) {
         this.kafkaZookeeper = builder.kafkaZookeeper;
@@ -107,6 +116,15 @@ public class KafkaTopicRepository implements TopicRepository {
             this.circuitBreakers = builder.circuitBreakers;
         }
         this.metricRegistry = builder.metricRegistry;
+        this.tailCache = builder.tailCache;
+        this.publishingCompletionExecutor = builder.publishingCompletionExecutor;
+        if (null != kafkaSettings && kafkaSettings.getSharedReaderWindowBytes() > 0) {
+            this.sharedReaders = new SharedPartitionReaders(kafkaFactory::getConsumer,
+                    kafkaSettings.getSharedReaderWindowBytes(), kafkaSettings.getSharedReaderTotalBytes(),
+                    metricRegistry);
+        } else {
+            this.sharedReaders = null;
+        }
     }
 
     public static class Builder {
@@ -119,6 +137,8 @@ public class KafkaTopicRepository implements TopicRepository {
         private KafkaTopicConfigFactory kafkaTopicConfigFactory;
         private KafkaLocationManager kafkaLocationManager;
         private MetricRegistry metricRegistry;
+        private EventTailCache tailCache;
+        private Executor publishingCompletionExecutor;
 
         public Builder setKafkaZookeeper(final KafkaZookeeper kafkaZookeeper) {
             this.kafkaZookeeper = kafkaZookeeper;
@@ -165,24 +185,35 @@ public class KafkaTopicRepository implements TopicRepository {
             return this;
         }
 
+        public Builder setTailCache(final EventTailCache tailCache) {
+            this.tailCache = tailCache;
+            return this;
+        }
+
+        public Builder setPublishingCompletionExecutor(final Executor publishingCompletionExecutor) {
+            this.publishingCompletionExecutor = publishingCompletionExecutor;
+            return this;
+        }
+
         public KafkaTopicRepository build() {
             return new KafkaTopicRepository(this);
         }
     }
 
     private CompletableFuture<Exception> publishItem(
-            final Producer<String, String> producer,
+            final Producer<String, byte[]> producer,
             final String topicId,
             final BatchItem item,
             final HystrixKafkaCircuitBreaker circuitBreaker,
             final boolean delete) throws EventPublishingException {
         try {
             final CompletableFuture<Exception> result = new CompletableFuture<>();
-            final ProducerRecord<String, String> kafkaRecord = new ProducerRecord<>(
+            final byte[] event = delete ? null : item.dumpEventToBytes();
+            final ProducerRecord<String, byte[]> kafkaRecord = new ProducerRecord<>(
                     topicId,
                     KafkaCursor.toKafkaPartition(item.getPartition()),
                     item.getEventKey(),
-                    delete ? null : item.dumpEventToString());
+                    event);
             if (null != item.getOwner()) {
                 item.getOwner().serialize(kafkaRecord);
             }
@@ -201,6 +232,10 @@ public class KafkaTopicRepository implements TopicRepository {
                 } else {
                     item.updateStatusAndDetail(EventPublishingStatus.SUBMITTED, "");
                     circuitBreaker.markSuccessfully();
+                    if (null != tailCache && null != event) {
+                        tailCache.appendPublished(topicId, metadata.partition(), metadata.offset(), event,
+                                metadata.timestamp(), item.getOwner());
+                    }
                     result.complete(null);
                 }
             }));
@@ -259,9 +294,7 @@ public class KafkaTopicRepository implements TopicRepository {
             if (!Boolean.TRUE.equals(areNewPartitionsAdded)) {
                 throw new TopicConfigException(String.format("Failed to repartition topic to %s", partitionsNumber));
             }
-            final Producer<String, String> producer = kafkaFactory.takeProducer();
-            kafkaFactory.terminateProducer(producer);
-            kafkaFactory.releaseProducer(producer);
+            kafkaFactory.terminateAllProducers();
         } catch (Exception e) {
             throw new CannotAddPartitionToTopicException(String
                     .format("Failed to increase the number of partition for %s topic to %s", topic,
@@ -313,6 +346,7 @@ public class KafkaTopicRepository implements TopicRepository {
             // this will only trigger topic deletion, but the actual deletion is asynchronous
             final AdminZkClient adminZkClient = new AdminZkClient(zkClient);
             adminZkClient.deleteTopic(topic);
+            partitionLeaders.remove(topic);
         } catch (final Exception e) {
             throw new TopicDeletionException("Unable to delete topic " + topic, e);
         }
@@ -329,56 +363,24 @@ public class KafkaTopicRepository implements TopicRepository {
     public void syncPostBatch(
             final String topicId, final List<BatchItem> batch, final String eventType, final boolean delete)
             throws EventPublishingException {
-        final Producer<String, String> producer = kafkaFactory.takeProducer();
+        // metadata is requested always from the same producer, so that partition leaders are cached effectively
+        final Producer<String, byte[]> metadataProducer = kafkaFactory.takeProducer();
+        final Map<String, Producer<String, byte[]>> partitionProducers = new HashMap<>();
+        final Map<BatchItem, CompletableFuture<Exception>> sendFutures = new HashMap<>();
         try {
-            final Map<String, String> partitionToBroker = producer.partitionsFor(topicId).stream().collect(
-                    Collectors.toMap(
-                            p -> String.valueOf(p.partition()),
-                            p -> p.leader().idString() + "_" + p.leader().host()));
-            batch.forEach(item -> {
-                Preconditions.checkNotNull(
-                        item.getPartition(), "BatchItem partition can't be null at the moment of publishing!");
-                item.setBrokerId(partitionToBroker.get(item.getPartition()));
-            });
-
-            int shortCircuited = 0;
-            final Map<BatchItem, CompletableFuture<Exception>> sendFutures = new HashMap<>();
-            for (final BatchItem item : batch) {
-                item.setStep(EventPublishingStep.PUBLISHING);
-                final HystrixKafkaCircuitBreaker circuitBreaker = circuitBreakers.computeIfAbsent(
-                        item.getBrokerId(), brokerId -> new HystrixKafkaCircuitBreaker(brokerId));
-                if (circuitBreaker.attemptExecution()) {
-                    sendFutures.put(item, publishItem(producer, topicId, item, circuitBreaker, delete));
-                } else {
-                    shortCircuited++;
-                    item.updateStatusAndDetail(EventPublishingStatus.FAILED, "short circuited");
-                    metricRegistry
-                            .meter(String.format(
-                                    HYSTRIX_SHORT_CIRCUIT_COUNTER,
-                                    item.getBrokerId()))
-                            .mark();
-                }
-            }
-            if (shortCircuited > 0) {
-                LOG.warn("Short circuiting request to Kafka {} time(s) due to timeout for topic {}",
-                        shortCircuited, topicId);
-            }
+            sendBatch(metadataProducer, partitionProducers, sendFutures, topicId, batch, delete);
             final CompletableFuture<Void> multiFuture = CompletableFuture.allOf(
                     sendFutures.values().toArray(new CompletableFuture<?>[sendFutures.size()]));
             multiFuture.get(createSendTimeout(), TimeUnit.MILLISECONDS);
-
-            // Now lets check for errors
-            final Optional<Exception> needReset = sendFutures.entrySet().stream()
-                    .filter(entry -> isExceptionShouldLeadToReset(entry.getValue().getNow(null)))
-                    .map(entry -> entry.getValue().getNow(null))
-                    .findAny();
-            if (needReset.isPresent()) {
-                LOG.info("Terminating producer while publishing to topic {} because of unrecoverable exception",
-                        topicId, needReset.get());
-                kafkaFactory.terminateProducer(producer);
-            }
+            resetFailedProducers(topicId, partitionProducers, sendFutures);
         } catch (final TimeoutException ex) {
-            kafkaFactory.terminateProducer(producer);
+            final Map<Producer<String, byte[]>, Boolean> timedOut = new IdentityHashMap<>();
+            sendFutures.forEach((item, future) -> {
+                if (!future.isDone()) {
+                    timedOut.put(partitionProducers.get(item.getPartition()), Boolean.TRUE);
+                }
+            });
+            timedOut.keySet().forEach(kafkaFactory::terminateProducer);
             failUnpublished(batch, "timed out");
             throw new EventPublishingException("Timeout publishing message to kafka", ex);
         } catch (final ExecutionException ex) {
@@ -389,8 +391,105 @@ public class KafkaTopicRepository implements TopicRepository {
             failUnpublished(batch, "interrupted");
             throw new EventPublishingException("Interrupted publishing message to kafka", ex);
         } finally {
-            kafkaFactory.releaseProducer(producer);
+            releaseProducers(metadataProducer, partitionProducers);
+        }
+        failIfNotSubmitted(batch);
+    }
+
+    /**
+     * Publishes the batch without waiting for the acknowledgements from kafka. Producers are released and the
+     * returned future is completed when all the events are acknowledged or failed, the future fails with
+     * {@link EventPublishingException} if at least one of the events was not published. The time of publishing is
+     * limited by kafka delivery timeout.
+     */
+    @Override
+    public CompletableFuture<Void> asyncPostBatch(
+            final String topicId, final List<BatchItem> batch, final String eventType, final boolean delete)
+            throws EventPublishingException {
+        final Producer<String, byte[]> metadataProducer = kafkaFactory.takeProducer();
+        final Map<String, Producer<String, byte[]>> partitionProducers = new HashMap<>();
+        final Map<BatchItem, CompletableFuture<Exception>> sendFutures = new HashMap<>();
+        try {
+            sendBatch(metadataProducer, partitionProducers, sendFutures, topicId, batch, delete);
+        } catch (final RuntimeException ex) {
+            releaseProducers(metadataProducer, partitionProducers);
+            throw ex;
+        }
+        // completion is moved out of kafka sender thread, as releasing of producer may lead to its closing
+        return CompletableFuture.allOf(sendFutures.values().toArray(new CompletableFuture<?>[sendFutures.size()]))
+                .thenRunAsync(() -> {
+                    try {
+                        resetFailedProducers(topicId, partitionProducers, sendFutures);
+                    } finally {
+                        releaseProducers(metadataProducer, partitionProducers);
+                    }
+                    failIfNotSubmitted(batch);
+                }, publishingCompletionExecutor);
+    }
+
+    private void sendBatch(final Producer<String, byte[]> metadataProducer,
+                           final Map<String, Producer<String, byte[]>> partitionProducers,
+                           final Map<BatchItem, CompletableFuture<Exception>> sendFutures,
+                           final String topicId,
+                           final List<BatchItem> batch,
+                           final boolean delete) throws EventPublishingException {
+        final Map<String, String> partitionToBroker = getPartitionToBroker(metadataProducer, topicId);
+        batch.forEach(item -> {
+            Preconditions.checkNotNull(
+                    item.getPartition(), "BatchItem partition can't be null at the moment of publishing!");
+            item.setBrokerId(partitionToBroker.get(item.getPartition()));
+        });
+
+        int shortCircuited = 0;
+        for (final BatchItem item : batch) {
+            item.setStep(EventPublishingStep.PUBLISHING);
+            final HystrixKafkaCircuitBreaker circuitBreaker = circuitBreakers.computeIfAbsent(
+                    item.getBrokerId(), brokerId -> new HystrixKafkaCircuitBreaker(brokerId));
+            if (circuitBreaker.attemptExecution()) {
+                final Producer<String, byte[]> producer = partitionProducers.computeIfAbsent(
+                        item.getPartition(), partition -> kafkaFactory.takeProducer(topicId, partition));
+                sendFutures.put(item, publishItem(producer, topicId, item, circuitBreaker, delete));
+            } else {
+                shortCircuited++;
+                item.updateStatusAndDetail(EventPublishingStatus.FAILED, "short circuited");
+                metricRegistry
+                        .meter(String.format(
+                                HYSTRIX_SHORT_CIRCUIT_COUNTER,
+                                item.getBrokerId()))
+                        .mark();
+            }
+        }
+        if (shortCircuited > 0) {
+            LOG.warn("Short circuiting request to Kafka {} time(s) due to timeout for topic {}",
+                    shortCircuited, topicId);
         }
+    }
+
+    // only the producers of the failed partitions are reset
+    private void resetFailedProducers(final String topicId,
+                                      final Map<String, Producer<String, byte[]>> partitionProducers,
+                                      final Map<BatchItem, CompletableFuture<Exception>> sendFutures) {
+        final Map<Producer<String, byte[]>, Exception> needReset = new IdentityHashMap<>();
+        sendFutures.forEach((item, future) -> {
+            final Exception exception = future.getNow(null);
+            if (isExceptionShouldLeadToReset(exception)) {
+                needReset.putIfAbsent(partitionProducers.get(item.getPartition()), exception);
+            }
+        });
+        needReset.forEach((producer, exception) -> {
+            LOG.info("Terminating producer while publishing to topic {} because of unrecoverable exception",
+                    topicId, exception);
+            kafkaFactory.terminateProducer(producer);
+        });
+    }
+
+    private void releaseProducers(final Producer<String, byte[]> metadataProducer,
+                                  final Map<String, Producer<String, byte[]>> partitionProducers) {
+        kafkaFactory.releaseProducer(metadataProducer);
+        partitionProducers.values().forEach(kafkaFactory::releaseProducer);
+    }
+
+    private void failIfNotSubmitted(final List<BatchItem> batch) throws EventPublishingException {
         final boolean atLeastOneFailed = batch.stream()
                 .anyMatch(item -> item.getResponse().getPublishingStatus() == EventPublishingStatus.FAILED);
         if (atLeastOneFailed) {
@@ -399,6 +498,35 @@ public class KafkaTopicRepository implements TopicRepository {
         }
     }
 
+    /**
+     * Kafka producer returns the same list of partitions for a topic until metadata of the cluster is updated, so
+     * mapping of partitions to brokers is rebuilt only when the list returned by producer is changed.
+     */
+    private Map<String, String> getPartitionToBroker(final Producer<String, byte[]> producer, final String topicId) {
+        final List<PartitionInfo> partitionInfos = producer.partitionsFor(topicId);
+        final PartitionLeaders cached = partitionLeaders.get(topicId);
+        if (null != cached && cached.partitionInfos == partitionInfos) {
+            return cached.partitionToBroker;
+        }
+        final Map<String, String> partitionToBroker = partitionInfos.stream().collect(
+                Collectors.toMap(
+                        p -> String.valueOf(p.partition()),
+                        p -> p.leader().idString() + "_" + p.leader().host()));
+        partitionLeaders.put(topicId, new PartitionLeaders(partitionInfos, partitionToBroker));
+        return partitionToBroker;
+    }
+
+    private static class PartitionLeaders {
+        private final List<PartitionInfo> partitionInfos;
+        private final Map<String, String> partitionToBroker;
+
+        private PartitionLeaders(final List<PartitionInfo> partitionInfos,
+                                 final Map<String, String> partitionToBroker) {
+            this.partitionInfos = partitionInfos;
+            this.partitionToBroker = partitionToBroker;
+        }
+    }
+
     private long createSendTimeout() {
         return nakadiSettings.getKafkaSendTimeoutMs() + kafkaSettings.getRequestTimeoutMs();
     }
@@ -614,7 +742,7 @@ public class KafkaTopicRepository implements TopicRepository {
     }
 
     public List<String> listPartitionNamesInternal(final String topicId) {
-        final Producer<String, String> producer = kafkaFactory.takeProducer();
+        final Producer<String, byte[]> producer = kafkaFactory.takeProducer();
         try {
             return unmodifiableList(producer.partitionsFor(topicId)
                     .stream()
@@ -640,6 +768,14 @@ public class KafkaTopicRepository implements TopicRepository {
                 .map(kafkaCursor -> kafkaCursor.addOffset(1))
                 .collect(toList());
 
+        if (null != sharedReaders) {
+            return new FanOutKafkaConsumer(
+                    sharedReaders,
+                    () -> kafkaFactory.getConsumer(clientId),
+                    kafkaCursors,
+                    timelineMap,
+                    nakadiSettings.getKafkaPollTimeoutMs());
+        }
         return new NakadiKafkaConsumer(
                 kafkaFactory.getConsumer(clientId),
                 kafkaCursors,
@@ -699,6 +835,11 @@ public class KafkaTopicRepository implements TopicRepository {
         }
     }
 
+    @Override
+    public double getPublishingBufferUtilization() {
+        return kafkaFactory.getBufferUtilization();
+    }
+
     private void validateCursorForNulls(final NakadiCursor cursor) throws InvalidCursorException {
         if (cursor.getPartition() == null) {
             throw new InvalidCursorException(NULL_PARTITION, cursor);
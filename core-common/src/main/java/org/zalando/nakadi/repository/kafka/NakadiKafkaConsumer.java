@@ -6,10 +6,14 @@ import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.common.TopicPartition;
 import org.zalando.nakadi.domain.ConsumedEvent;
 import org.zalando.nakadi.domain.EventOwnerHeader;
+import org.zalando.nakadi.domain.NakadiCursor;
 import org.zalando.nakadi.domain.Timeline;
+import org.zalando.nakadi.exceptions.runtime.InvalidCursorException;
 import org.zalando.nakadi.repository.EventConsumer;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -50,26 +54,69 @@ public class NakadiKafkaConsumer implements EventConsumer.LowLevelConsumer {
                 .collect(Collectors.toSet());
     }
 
+    @Override
+    public void seek(final Collection<NakadiCursor> cursors) throws InvalidCursorException {
+        for (final NakadiCursor cursor : cursors) {
+            final KafkaCursor kafkaCursor = KafkaCursor.fromNakadiCursor(cursor).addOffset(1);
+            kafkaConsumer.seek(new TopicPartition(kafkaCursor.getTopic(), kafkaCursor.getPartition()),
+                    kafkaCursor.getOffset());
+        }
+    }
+
+    @Override
+    public void pause(final Collection<org.zalando.nakadi.domain.TopicPartition> partitions) {
+        final List<TopicPartition> toPause = toAssignedKafkaPartitions(partitions);
+        if (!toPause.isEmpty()) {
+            kafkaConsumer.pause(toPause);
+        }
+    }
+
+    @Override
+    public void resume(final Collection<org.zalando.nakadi.domain.TopicPartition> partitions) {
+        final List<TopicPartition> toResume = toAssignedKafkaPartitions(partitions);
+        if (!toResume.isEmpty()) {
+            kafkaConsumer.resume(toResume);
+        }
+    }
+
+    private List<TopicPartition> toAssignedKafkaPartitions(
+            final Collection<org.zalando.nakadi.domain.TopicPartition> partitions) {
+        // kafka consumer refuses to pause partitions that are not assigned to it
+        final Set<TopicPartition> assignment = kafkaConsumer.assignment();
+        return partitions.stream()
+                .map(tp -> new TopicPartition(tp.getTopic(), KafkaCursor.toKafkaPartition(tp.getPartition())))
+                .filter(assignment::contains)
+                .collect(Collectors.toList());
+    }
+
     @Override
     public List<ConsumedEvent> readEvents() {
-        final ConsumerRecords<byte[], byte[]> records = kafkaConsumer.poll(pollTimeout);
+        return readEvents(pollTimeout);
+    }
+
+    @Override
+    public List<ConsumedEvent> readEvents(final long timeoutMs) {
+        final ConsumerRecords<byte[], byte[]> records = kafkaConsumer.poll(Duration.ofMillis(timeoutMs));
         if (records.isEmpty()) {
             return Collections.emptyList();
         }
         final ArrayList<ConsumedEvent> result = new ArrayList<>(records.count());
         for (final ConsumerRecord<byte[], byte[]> record : records) {
-            final KafkaCursor cursor = new KafkaCursor(record.topic(), record.partition(), record.offset());
             final Timeline timeline = timelineMap.get(new TopicPartition(record.topic(), record.partition()));
-
-            result.add(new ConsumedEvent(
-                    record.value(),
-                    cursor.toNakadiCursor(timeline),
-                    record.timestamp(),
-                    EventOwnerHeader.deserialize(record)));
+            result.add(toConsumedEvent(record, timeline));
         }
         return result;
     }
 
+    static ConsumedEvent toConsumedEvent(final ConsumerRecord<byte[], byte[]> record, final Timeline timeline) {
+        final KafkaCursor cursor = new KafkaCursor(record.topic(), record.partition(), record.offset());
+        return new ConsumedEvent(
+                record.value(),
+                cursor.toNakadiCursor(timeline),
+                record.timestamp(),
+                EventOwnerHeader.deserialize(record));
+    }
+
     @Override
     public void close() {
         kafkaConsumer.close();
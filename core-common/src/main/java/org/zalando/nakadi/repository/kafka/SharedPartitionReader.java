@@ -0,0 +1,167 @@
+package org.zalando.nakadi.repository.kafka;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Reads one kafka partition on behalf of all the consumers of the node that are reading it at about the same
+ * position. There is no background thread: records are fetched by the consumer that needs records that are not
+ * fetched yet, while other consumers wait for the fetch to finish and take the records from memory. Fetched records
+ * are kept in a window that is limited by size. The reader follows the most advanced consumer: a consumer that is
+ * ahead of the window moves the reader to its position, and consumers that fall behind the window should read the
+ * partition on their own.
+ */
+class SharedPartitionReader {
+
+    private final TopicPartition topicPartition;
+    private final Consumer<byte[], byte[]> kafkaConsumer;
+    private final long maxWindowBytes;
+    private final ArrayDeque<ConsumerRecord<byte[], byte[]>> window = new ArrayDeque<>();
+    private long windowBytes;
+    // positions in [firstOffset, nextOffset] can be served from the window
+    private long firstOffset;
+    private long nextOffset;
+    private boolean fetching;
+    private boolean closed;
+
+    SharedPartitionReader(final TopicPartition topicPartition, final Consumer<byte[], byte[]> kafkaConsumer,
+                          final long startOffset, final long maxWindowBytes) {
+        this.topicPartition = topicPartition;
+        this.kafkaConsumer = kafkaConsumer;
+        this.maxWindowBytes = maxWindowBytes;
+        this.firstOffset = startOffset;
+        this.nextOffset = startOffset;
+        kafkaConsumer.assign(Collections.singletonList(topicPartition));
+        kafkaConsumer.seek(topicPartition, startOffset);
+    }
+
+    TopicPartition getTopicPartition() {
+        return topicPartition;
+    }
+
+    /**
+     * Tells if the consumer at the position can be served by the reader, that is the case unless the consumer is
+     * behind the window.
+     */
+    synchronized boolean canServe(final long position) {
+        return !closed && position >= firstOffset;
+    }
+
+    /**
+     * Returns records of the partition starting from the position. If all the fetched records were already read,
+     * the next portion of records is fetched (or the fetch of other consumer is awaited) for not longer than timeout.
+     * If the position is ahead of the window, the reader is moved to it.
+     *
+     * @return records starting from position or null if the position is behind the window of the reader
+     */
+    @Nullable
+    List<ConsumerRecord<byte[], byte[]>> read(final long position, final long timeoutMs) {
+        synchronized (this) {
+            if (!canServe(position)) {
+                return null;
+            }
+            if (position < nextOffset) {
+                final List<ConsumerRecord<byte[], byte[]>> records = recordsFrom(position);
+                if (!records.isEmpty()) {
+                    return records;
+                }
+                // there are no records between the position and the position of kafka consumer, that happens when
+                // offsets are not contiguous (compacted topics, transaction markers), so next records are awaited
+            }
+            if (fetching) {
+                try {
+                    wait(Math.max(1, timeoutMs));
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return Collections.emptyList();
+                }
+                return canServe(position) ? recordsFrom(position) : null;
+            }
+            if (position > nextOffset) {
+                moveTo(position);
+            }
+            fetching = true;
+        }
+        // kafka consumer is only used by the consumer that holds fetching flag
+        List<ConsumerRecord<byte[], byte[]>> fetched = Collections.emptyList();
+        long positionAfterFetch = position;
+        try {
+            fetched = kafkaConsumer.poll(Duration.ofMillis(timeoutMs)).records(topicPartition);
+            positionAfterFetch = kafkaConsumer.position(topicPartition);
+        } finally {
+            synchronized (this) {
+                fetching = false;
+                if (closed) {
+                    kafkaConsumer.close();
+                } else {
+                    append(fetched, positionAfterFetch);
+                }
+                notifyAll();
+            }
+        }
+        synchronized (this) {
+            return canServe(position) ? recordsFrom(position) : null;
+        }
+    }
+
+    // the consumer that is ahead of the reader takes it over, the ones that are left behind read on their own
+    private void moveTo(final long position) {
+        window.clear();
+        windowBytes = 0;
+        firstOffset = position;
+        nextOffset = position;
+        kafkaConsumer.seek(topicPartition, position);
+    }
+
+    private void append(final List<ConsumerRecord<byte[], byte[]>> records, final long positionAfterFetch) {
+        for (final ConsumerRecord<byte[], byte[]> record : records) {
+            window.addLast(record);
+            windowBytes += sizeOf(record);
+        }
+        nextOffset = Math.max(nextOffset, positionAfterFetch);
+        // records of the last fetch are always kept, so that the consumers waiting for them are not left behind
+        while (windowBytes > maxWindowBytes && window.size() > records.size()) {
+            final ConsumerRecord<byte[], byte[]> evicted = window.pollFirst();
+            windowBytes -= sizeOf(evicted);
+            firstOffset = evicted.offset() + 1;
+        }
+    }
+
+    private List<ConsumerRecord<byte[], byte[]>> recordsFrom(final long position) {
+        final List<ConsumerRecord<byte[], byte[]>> result = new ArrayList<>();
+        // consumers are usually reading the tail of the window
+        final Iterator<ConsumerRecord<byte[], byte[]>> it = window.descendingIterator();
+        while (it.hasNext()) {
+            final ConsumerRecord<byte[], byte[]> record = it.next();
+            if (record.offset() < position) {
+                break;
+            }
+            result.add(record);
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    private static long sizeOf(final ConsumerRecord<byte[], byte[]> record) {
+        return null == record.value() ? 0 : record.value().length;
+    }
+
+    // kafka consumer is closed by the consumer that is fetching records, if there is one
+    synchronized void close() {
+        closed = true;
+        window.clear();
+        windowBytes = 0;
+        if (!fetching) {
+            kafkaConsumer.close();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package org.zalando.nakadi.repository.kafka;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Node-wide registry of {@link SharedPartitionReader}s. There is at most one reader per topic-partition, it is
+ * created only when the partition is read by at least two consumers and is closed when less than two consumers are
+ * left. Every reader takes the size of the window from the memory of the node, partitions that do not fit into it
+ * are read by the consumers on their own.
+ */
+class SharedPartitionReaders {
+
+    private final Supplier<Consumer<byte[], byte[]>> consumerSupplier;
+    private final long maxWindowBytes;
+    private final long maxTotalBytes;
+    // number of consumers per partition, changes are made under the lock of the registry
+    private final Map<TopicPartition, Integer> consumers = new ConcurrentHashMap<>();
+    private final Map<TopicPartition, SharedPartitionReader> readers = new ConcurrentHashMap<>();
+    private volatile long reservedBytes;
+    private final Meter sharedReads;
+    private final Meter privateFallbacks;
+
+    SharedPartitionReaders(final Supplier<Consumer<byte[], byte[]>> consumerSupplier, final long maxWindowBytes,
+                           final long maxTotalBytes, final MetricRegistry metricRegistry) {
+        this.consumerSupplier = consumerSupplier;
+        this.maxWindowBytes = maxWindowBytes;
+        this.maxTotalBytes = maxTotalBytes;
+        this.sharedReads = metricRegistry.meter("kafka.shared_reader.shared_reads");
+        this.privateFallbacks = metricRegistry.meter("kafka.shared_reader.private_fallbacks");
+    }
+
+    synchronized void register(final TopicPartition topicPartition) {
+        consumers.merge(topicPartition, 1, Integer::sum);
+    }
+
+    synchronized void unregister(final TopicPartition topicPartition) {
+        final Integer left = consumers.computeIfPresent(topicPartition, (tp, count) -> count > 1 ? count - 1 : null);
+        if (null == left || left < 2) {
+            final SharedPartitionReader reader = readers.remove(topicPartition);
+            if (null != reader) {
+                reservedBytes -= maxWindowBytes;
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the reader of the partition, the reader is created starting from the position if the partition is read
+     * by several consumers and there is memory for its window.
+     *
+     * @return reader of the partition or null if the partition should be read by the consumer on its own
+     */
+    @Nullable
+    SharedPartitionReader getReader(final TopicPartition topicPartition, final long position) {
+        final SharedPartitionReader reader = readers.get(topicPartition);
+        if (null != reader) {
+            return reader;
+        }
+        if (consumers.getOrDefault(topicPartition, 0) < 2 || reservedBytes + maxWindowBytes > maxTotalBytes) {
+            return null;
+        }
+        return createReader(topicPartition, position);
+    }
+
+    @Nullable
+    private synchronized SharedPartitionReader createReader(final TopicPartition topicPartition, final long position) {
+        final SharedPartitionReader existing = readers.get(topicPartition);
+        if (null != existing) {
+            return existing;
+        }
+        if (consumers.getOrDefault(topicPartition, 0) < 2 || reservedBytes + maxWindowBytes > maxTotalBytes) {
+            return null;
+        }
+        final SharedPartitionReader reader =
+                new SharedPartitionReader(topicPartition, consumerSupplier.get(), position, maxWindowBytes);
+        reservedBytes += maxWindowBytes;
+        readers.put(topicPartition, reader);
+        return reader;
+    }
+
+    void markSharedRead() {
+        sharedReads.mark();
+    }
+
+    void markPrivateFallback() {
+        privateFallbacks.mark();
+    }
+}
@@ -2,22 +2,32 @@ package org.zalando.nakadi.util;
 
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.zalando.nakadi.domain.LazyJsonObject;
 import org.zalando.nakadi.exceptions.runtime.JsonPathAccessException;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /*
  One could use JsonPath Lib instead: https://github.com/jayway/JsonPath
 
  However, I had the feeling that JsonPath is way too much compared to what is needed here. Therefore it might be
  slower. Moreover we already have a JSONObject. Using JsonPath would mean to convert it back to a string (or pass
  the json string instead of the JSONObject to the strategy) and parse it again.
+
+ On publishing events are represented with LazyJsonObject, in that case only the objects on the path are decoded.
  */
 public class JsonPathAccess {
-    private final JSONObject jsonObject;
+    private final Object jsonObject;
 
     public JsonPathAccess(final JSONObject jsonObject) {
         this.jsonObject = jsonObject;
     }
 
+    public JsonPathAccess(final LazyJsonObject jsonObject) {
+        this.jsonObject = jsonObject;
+    }
+
     public Object get(final String path) throws JsonPathAccessException {
 
         final JsonPathTokenizer pathTokenizer = new JsonPathTokenizer(path);
@@ -26,6 +36,13 @@ public class JsonPathAccess {
         String field;
 
         while ((field = pathTokenizer.nextToken()) != null) {
+            if (curr instanceof LazyJsonObject) {
+                curr = ((LazyJsonObject) curr).opt(field);
+                if (null == curr) {
+                    throw new JsonPathAccessException("field " + field + " doesn't exist.");
+                }
+                continue;
+            }
             if (!(curr instanceof JSONObject)) {
                 throw new JsonPathAccessException("field " + field + " doesn't exist.");
             }
@@ -38,6 +55,20 @@ public class JsonPathAccess {
         return curr;
     }
 
+    /**
+     * Splits path to the names of fields exactly the same way as {@link #get(String)} does it, so that the path
+     * could be tokenized once and then applied to many objects.
+     */
+    public static List<String> tokenize(final String path) {
+        final JsonPathTokenizer pathTokenizer = new JsonPathTokenizer(path);
+        final List<String> result = new ArrayList<>();
+        String field;
+        while ((field = pathTokenizer.nextToken()) != null) {
+            result.add(field);
+        }
+        return result;
+    }
+
     private static class JsonPathTokenizer {
         private final char[] path;
         private int pos = 0;
@@ -48,7 +79,7 @@ public class JsonPathAccess {
             tokenBuilder = new StringBuilder(this.path.length);
         }
 
-        public synchronized String nextToken() {
+        public String nextToken() {
             if (pos >= path.length) {
                 return null;
             }
@@ -3,6 +3,7 @@ package org.zalando.nakadi.validation;
 import org.everit.json.schema.FormatValidator;
 
 import java.time.OffsetDateTime;
+import java.time.Year;
 import java.time.format.DateTimeParseException;
 import java.util.Optional;
 import java.util.regex.Matcher;
@@ -22,6 +23,9 @@ public class RFC3339DateTimeValidator implements FormatValidator {
 
     @Override
     public Optional<String> validate(final String dateTime) {
+        if (isCanonical(dateTime)) {
+            return Optional.empty();
+        }
         try {
             OffsetDateTime.parse(dateTime, ISO_OFFSET_DATE_TIME);
 
@@ -39,6 +43,86 @@ public class RFC3339DateTimeValidator implements FormatValidator {
         }
     }
 
+    /**
+     * Checks the most common shape of timestamps, yyyy-MM-ddTHH:mm:ss[.fraction](Z|+hh:mm), without parsing it
+     * into an object and without any exceptions. Returns false in case if the value is not of this shape, so it
+     * has to be checked by the slow path, that is used to build the error message anyway.
+     */
+    static boolean isCanonical(final String value) {
+        final int length = value.length();
+        if (length < 20 || value.charAt(4) != '-' || value.charAt(7) != '-' || value.charAt(13) != ':'
+                || value.charAt(16) != ':') {
+            return false;
+        }
+        final char timeSeparator = value.charAt(10);
+        if (timeSeparator != 'T' && timeSeparator != 't') {
+            return false;
+        }
+        final int year = digits(value, 0, 4);
+        final int month = digits(value, 5, 2);
+        final int day = digits(value, 8, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || !inRange(digits(value, 11, 2), 23) || !inRange(digits(value, 14, 2), 59)
+                || !inRange(digits(value, 17, 2), 59)) {
+            return false;
+        }
+        int position = 19;
+        if (value.charAt(position) == '.') {
+            final int fractionStart = ++position;
+            while (position < length && isDigit(value.charAt(position))) {
+                ++position;
+            }
+            final int fractionLength = position - fractionStart;
+            if (fractionLength < 1 || fractionLength > 9) {
+                return false;
+            }
+        }
+        if (position == length - 1) {
+            final char zone = value.charAt(position);
+            return zone == 'Z' || zone == 'z';
+        }
+        if (position != length - 6) {
+            return false;
+        }
+        final char sign = value.charAt(position);
+        return (sign == '+' || sign == '-') && value.charAt(position + 3) == ':'
+                && inRange(digits(value, position + 1, 2), 17) && inRange(digits(value, position + 4, 2), 59);
+    }
+
+    private static int daysInMonth(final int year, final int month) {
+        switch (month) {
+            case 2:
+                return Year.isLeap(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static boolean inRange(final int value, final int max) {
+        return value >= 0 && value <= max;
+    }
+
+    private static boolean isDigit(final char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int digits(final String value, final int from, final int count) {
+        int result = 0;
+        for (int i = from; i < from + count; ++i) {
+            final char c = value.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
     @Override
     public String formatName() {
         return "date-time";
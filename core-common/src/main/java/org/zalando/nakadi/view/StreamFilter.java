@@ -0,0 +1,36 @@
+package org.zalando.nakadi.view;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.ImmutableList;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * Condition on a field of streamed events: the value found by {@code path} (the same dot-separated path that is used
+ * by {@link EventOwnerSelector}) must be equal to one of {@code values}. Numbers are compared by value, other fields
+ * by their string representation.
+ */
+public class StreamFilter {
+
+    private final String path;
+
+    private final List<String> values;
+
+    @JsonCreator
+    public StreamFilter(@JsonProperty("path") @Nullable final String path,
+                        @JsonProperty("values") @Nullable final List<String> values) {
+        this.path = path;
+        this.values = values == null ? ImmutableList.of() : values;
+    }
+
+    @Nullable
+    public String getPath() {
+        return path;
+    }
+
+    public List<String> getValues() {
+        return values;
+    }
+}
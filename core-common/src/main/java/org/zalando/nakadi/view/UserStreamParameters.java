@@ -29,6 +29,9 @@ public class UserStreamParameters {
 
     private final Optional<Long> commitTimeoutSeconds;
 
+    private final List<StreamFilter> filters;
+
+    private final List<String> projection;
 
     @JsonCreator
     public UserStreamParameters(@JsonProperty("batch_limit") @Nullable final Integer batchLimit,
@@ -39,7 +42,9 @@ public class UserStreamParameters {
                                 @JsonProperty("stream_keep_alive_limit") @Nullable final Integer streamKeepAliveLimit,
                                 @JsonProperty("max_uncommitted_events") @Nullable final Integer maxUncommittedEvents,
                                 @JsonProperty("partitions") @Nullable final List<EventTypePartition> partitions,
-                                @JsonProperty("commit_timeout") @Nullable final Long commitTimeoutSeconds) {
+                                @JsonProperty("commit_timeout") @Nullable final Long commitTimeoutSeconds,
+                                @JsonProperty("filters") @Nullable final List<StreamFilter> filters,
+                                @JsonProperty("projection") @Nullable final List<String> projection) {
         this.batchLimit = Optional.ofNullable(batchLimit);
         this.streamLimit = Optional.ofNullable(streamLimit);
         this.batchTimespan = Optional.ofNullable(batchTimespan);
@@ -49,6 +54,8 @@ public class UserStreamParameters {
         this.maxUncommittedEvents = Optional.ofNullable(maxUncommittedEvents);
         this.partitions = partitions == null ? ImmutableList.of() : partitions;
         this.commitTimeoutSeconds = Optional.ofNullable(commitTimeoutSeconds);
+        this.filters = filters == null ? ImmutableList.of() : filters;
+        this.projection = projection == null ? ImmutableList.of() : projection;
     }
 
     public Optional<Integer> getBatchLimit() {
@@ -86,4 +93,12 @@ public class UserStreamParameters {
     public Optional<Long> getCommitTimeoutSeconds() {
         return commitTimeoutSeconds;
     }
+
+    public List<StreamFilter> getFilters() {
+        return filters;
+    }
+
+    public List<String> getProjection() {
+        return projection;
+    }
 }
@@ -2,11 +2,15 @@ package org.zalando.nakadi.domain;
 
 import org.json.JSONException;
 import org.junit.Test;
+import org.zalando.nakadi.exceptions.runtime.MalformedUtf8Exception;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.List;
 
 import static junit.framework.TestCase.fail;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class BatchFactoryTest {
 
@@ -140,4 +144,61 @@ public class BatchFactoryTest {
         final String events = "[{\"number\": 9223372036854775808 }]";
         BatchFactory.from(events);
     }
+
+    @Test
+    public void testMultiByteCharactersInBytes() {
+        final byte[] events = "[{\"name\":\"香港\"}, {\"name\":\"Zürich\"}]".getBytes(StandardCharsets.UTF_8);
+        final List<BatchItem> batch = BatchFactory.from(events);
+        assertEquals(2, batch.size());
+        assertEquals(17, batch.get(0).getEventSize());
+        assertEquals("香港", batch.get(0).getEvent().getString("name"));
+        assertEquals("Zürich", batch.get(1).getEvent().getString("name"));
+        assertEquals("{\"name\":\"Zürich\"}",
+                new String(batch.get(1).dumpEventToBytes(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testMalformedUtf8IsRejected() {
+        final byte[][] malformedSequences = {
+                {(byte) 0x80}, // continuation byte without lead byte
+                {(byte) 0xC3}, // lead byte without continuation byte
+                {(byte) 0xC0, (byte) 0xAF}, // overlong encoding of '/'
+                {(byte) 0xE0, (byte) 0x80, (byte) 0xAF}, // overlong encoding of '/'
+                {(byte) 0xED, (byte) 0xA0, (byte) 0x80}, // surrogate
+                {(byte) 0xF4, (byte) 0x90, (byte) 0x80, (byte) 0x80}, // above U+10FFFF
+                {(byte) 0xFF},
+        };
+        for (final byte[] sequence : malformedSequences) {
+            assertMalformedUtf8("[{\"name\":\"", sequence, "\"}]");
+            assertMalformedUtf8("[{\"", sequence, "\":\"value\"}]");
+            assertMalformedUtf8("[{\"name\":\"\\n", sequence, "\"}]");
+        }
+    }
+
+    @Test
+    public void testSupplementaryCharactersInBytes() {
+        final byte[] events = "[{\"name\":\"\uD83D\uDE00\"}]".getBytes(StandardCharsets.UTF_8);
+        final List<BatchItem> batch = BatchFactory.from(events);
+        assertEquals("\uD83D\uDE00", batch.get(0).getEvent().getString("name"));
+    }
+
+    private static void assertMalformedUtf8(final String prefix, final byte[] sequence, final String suffix) {
+        final byte[] prefixBytes = prefix.getBytes(StandardCharsets.UTF_8);
+        final byte[] suffixBytes = suffix.getBytes(StandardCharsets.UTF_8);
+        final byte[] events = new byte[prefixBytes.length + sequence.length + suffixBytes.length];
+        System.arraycopy(prefixBytes, 0, events, 0, prefixBytes.length);
+        System.arraycopy(sequence, 0, events, prefixBytes.length, sequence.length);
+        System.arraycopy(suffixBytes, 0, events, prefixBytes.length + sequence.length, suffixBytes.length);
+        try {
+            BatchFactory.from(events);
+            fail("Malformed utf-8 sequence " + Arrays.toString(sequence) + " is accepted");
+        } catch (final MalformedUtf8Exception e) {
+            assertTrue(e.getMessage().startsWith("Malformed utf-8 sequence"));
+        }
+    }
+
+    @Test(expected = JSONException.class)
+    public void testEmptyInput() {
+        BatchFactory.from(new byte[0]);
+    }
 }
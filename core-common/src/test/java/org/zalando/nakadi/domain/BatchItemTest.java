@@ -1,5 +1,6 @@
 package org.zalando.nakadi.domain;
 
+import com.google.common.collect.ImmutableSet;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.json.JSONArray;
@@ -7,7 +8,7 @@ import org.json.JSONObject;
 import org.junit.Assert;
 import org.junit.Test;
 
-import java.util.Collections;
+import java.nio.charset.StandardCharsets;
 import java.util.UUID;
 
 import static org.junit.Assert.assertEquals;
@@ -26,7 +27,7 @@ public class BatchItemTest {
         final BatchItem item = new BatchItem("{ \"name\": \"香港\"} ",
                 BatchItem.EmptyInjectionConfiguration.build(1, false),
                 new BatchItem.InjectionConfiguration[BatchItem.Injection.values().length],
-                Collections.emptyList());
+                new int[0]);
         assertEquals(20, item.getEventSize());
     }
 
@@ -93,6 +94,7 @@ public class BatchItemTest {
         final BatchItem bi = BatchFactory.from(new JSONArray().put(event).toString()).get(0);
 
         final JSONObject metadata = bi.getEvent()
+                .toJSONObject()
                 .getJSONObject(BatchItem.Injection.METADATA.name);
         metadata.put("test_test_test", "test2");
         bi.inject(BatchItem.Injection.METADATA, metadata.toString());
@@ -117,6 +119,7 @@ public class BatchItemTest {
         final BatchItem bi = BatchFactory.from(new JSONArray().put(event).toString()).get(0);
 
         final JSONObject metadata = bi.getEvent()
+                .toJSONObject()
                 .getJSONObject(BatchItem.Injection.METADATA.name);
         metadata.put("test_test_test", "test2");
         bi.inject(BatchItem.Injection.METADATA, metadata.toString());
@@ -166,4 +169,33 @@ public class BatchItemTest {
         final JSONObject result = restoreJsonObject(bi);
         Assert.assertFalse(result.keys().hasNext());
     }
+
+    @Test
+    public void testReplacementOfLastScalarMetadata() {
+        final BatchItem bi = BatchFactory.from("[{\"a\": 1, \"metadata\" : \"x\" }]").get(0);
+        bi.inject(BatchItem.Injection.METADATA, "{\"z\":\"Z\"}");
+        Assert.assertEquals("{\"a\":1,\"metadata\":{\"z\":\"Z\"}}", bi.dumpEventToString());
+    }
+
+    @Test
+    public void testNoMetadataWithWhitespaceAtInjectionPoint() {
+        final BatchItem bi = BatchFactory.from("[{\n  \"foo\": \"a b\"\n}]").get(0);
+        bi.inject(BatchItem.Injection.METADATA, "{}");
+        Assert.assertEquals("{\"metadata\":{},\"foo\":\"a b\"}", bi.dumpEventToString());
+    }
+
+    @Test
+    public void testInjectMetadataFields() {
+        final BatchItem bi = BatchFactory.from(
+                "[{\"a\": 1, \"metadata\" : { \"x\" : [ 1, 2 ],\n \"y\": \"y y\", \"z\": 3 } }]").get(0);
+        bi.injectMetadataFields(ImmutableSet.of("y"), "\"y\":\"Y\"".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals("{\"a\":1,\"metadata\":{\"x\":[1,2],\"z\":3,\"y\":\"Y\"}}", bi.dumpEventToString());
+    }
+
+    @Test
+    public void testInjectMetadataFieldsToEmptyMetadata() {
+        final BatchItem bi = BatchFactory.from("[{\"metadata\":{ }}]").get(0);
+        bi.injectMetadataFields(ImmutableSet.of(), "\"y\":1".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals("{\"metadata\":{\"y\":1}}", bi.dumpEventToString());
+    }
 }
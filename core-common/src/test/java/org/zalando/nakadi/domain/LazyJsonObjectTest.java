@@ -0,0 +1,58 @@
+package org.zalando.nakadi.domain;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LazyJsonObjectTest {
+
+    private static final String EVENT = "{\"metadata\": {\"eid\": \"x\", \"partition\": \"1\"}, " +
+            "\"int\": 12, \"long\": 12345678901234, \"double\": 1.5e3, \"bool\": true, \"null\": null, " +
+            "\"array\": [1, {\"a\": \"b\"}], \"str\": \"Z\\u00fcrich\"}";
+
+    @Test
+    public void testValuesAreTheSameAsInStrictParser() {
+        final LazyJsonObject lazy = StrictJsonParser.parseLazyObject(EVENT);
+        final JSONObject strict = StrictJsonParser.parseObject(EVENT);
+
+        Assert.assertEquals(strict.length(), lazy.length());
+        for (final String key : strict.keySet()) {
+            Assert.assertEquals(key, strict.get(key).toString(), lazy.opt(key).toString());
+        }
+        Assert.assertEquals(strict.toString(), lazy.toString());
+    }
+
+    @Test
+    public void testValueTypes() {
+        final LazyJsonObject lazy = StrictJsonParser.parseLazyObject(EVENT);
+
+        Assert.assertEquals(12, lazy.opt("int"));
+        Assert.assertEquals(12345678901234L, lazy.opt("long"));
+        Assert.assertEquals(1500.0, lazy.opt("double"));
+        Assert.assertEquals(Boolean.TRUE, lazy.opt("bool"));
+        Assert.assertEquals(JSONObject.NULL, lazy.opt("null"));
+        Assert.assertTrue(lazy.opt("array") instanceof JSONArray);
+        Assert.assertEquals("Zürich", lazy.getString("str"));
+        Assert.assertEquals("1", lazy.getObject("metadata").getString("partition"));
+        Assert.assertNull(lazy.opt("missing"));
+        Assert.assertNull(lazy.optObject("str"));
+        Assert.assertEquals("default", lazy.optString("null", "default"));
+    }
+
+    @Test(expected = JSONException.class)
+    public void testNestedDuplicateKeysAreRejected() {
+        StrictJsonParser.parseLazyObject("{\"a\": {\"b\": 1, \"b\": 2}}");
+    }
+
+    @Test(expected = JSONException.class)
+    public void testNestedInvalidNumberIsRejected() {
+        StrictJsonParser.parseLazyObject("{\"a\": {\"b\": 9223372036854775808}}");
+    }
+
+    @Test(expected = JSONException.class)
+    public void testNotAStringValue() {
+        StrictJsonParser.parseLazyObject("{\"a\": 1}").getString("a");
+    }
+}
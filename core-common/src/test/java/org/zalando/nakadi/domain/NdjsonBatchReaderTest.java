@@ -0,0 +1,125 @@
+package org.zalando.nakadi.domain;
+
+import org.json.JSONException;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static junit.framework.TestCase.fail;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NdjsonBatchReaderTest {
+
+    @Test
+    public void testEventsAreSplitIntoChunksByNumber() throws IOException {
+        final NdjsonBatchReader reader = reader("{\"a\":1}\n{\"a\":2}\n{\"a\":3}\n", 2, 1024);
+
+        final List<BatchItem> first = reader.next();
+        assertEquals(2, first.size());
+        assertEquals("{\"a\":1}", first.get(0).getEvent().toString());
+        assertEquals("{\"a\":2}", first.get(1).getEvent().toString());
+        final List<BatchItem> second = reader.next();
+        assertEquals(1, second.size());
+        assertEquals("{\"a\":3}", second.get(0).getEvent().toString());
+        assertTrue(reader.next().isEmpty());
+        assertEquals(24, reader.getBytesRead());
+    }
+
+    @Test
+    public void testEventsAreSplitIntoChunksBySize() throws IOException {
+        final NdjsonBatchReader reader = reader("{\"a\":1}\n{\"a\":2}\n{\"a\":3}", 100, 10);
+
+        assertEquals(2, reader.next().size());
+        assertEquals(1, reader.next().size());
+        assertTrue(reader.next().isEmpty());
+    }
+
+    @Test
+    public void testEmptyLinesAreIgnored() throws IOException {
+        final NdjsonBatchReader reader = reader("\n  \r\n{\"a\":1}\r\n\n{\"a\":2} \n\n", 100, 1024);
+
+        final List<BatchItem> batch = reader.next();
+        assertEquals(2, batch.size());
+        assertEquals("{\"a\":2}", batch.get(1).getEvent().toString());
+        assertTrue(reader.next().isEmpty());
+    }
+
+    @Test
+    public void testEmptyStream() throws IOException {
+        assertTrue(reader("", 100, 1024).next().isEmpty());
+        assertTrue(reader("\n\n", 100, 1024).next().isEmpty());
+    }
+
+    @Test
+    public void testEventsLongerThanChunkAreRead() throws IOException {
+        final StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 20000; ++i) {
+            value.append('x');
+        }
+        final String event = "{\"a\":\"" + value + "\"}";
+        final NdjsonBatchReader reader = reader(event + "\n" + event + "\n{\"b\":1}", 100, 16);
+
+        assertEquals(event, reader.next().get(0).getEvent().toString());
+        assertEquals(event, reader.next().get(0).getEvent().toString());
+        assertEquals("{\"b\":1}", reader.next().get(0).getEvent().toString());
+        assertTrue(reader.next().isEmpty());
+    }
+
+    @Test
+    public void testInvalidLineIsReportedWithItsNumber() throws IOException {
+        final NdjsonBatchReader reader = reader("{\"a\":1}\n{\"a\":2} x\n", 100, 1024);
+
+        assertEquals(1, reader.next().size());
+        try {
+            reader.next();
+            fail();
+        } catch (final JSONException e) {
+            assertTrue(e.getMessage().contains("line 2"));
+        }
+        assertTrue(reader.next().isEmpty());
+    }
+
+    @Test
+    public void testReadingGoesOnAfterInvalidLine() throws IOException {
+        final NdjsonBatchReader reader = reader("{\"a\":1}\n{\"a\":\n{\"a\":3}\n{\"a\"\n{\"a\":5}", 100, 1024);
+
+        assertEquals(1, reader.next().size());
+        try {
+            reader.next();
+            fail();
+        } catch (final JSONException e) {
+            assertTrue(e.getMessage().contains("line 2"));
+        }
+        assertEquals("{\"a\":3}", reader.next().get(0).getEvent().toString());
+        try {
+            reader.next();
+            fail();
+        } catch (final JSONException e) {
+            assertTrue(e.getMessage().contains("line 4"));
+        }
+        assertEquals("{\"a\":5}", reader.next().get(0).getEvent().toString());
+        assertTrue(reader.next().isEmpty());
+    }
+
+    @Test(expected = JSONException.class)
+    public void testArrayIsNotAccepted() throws IOException {
+        reader("[{\"a\":1}]", 100, 1024).next();
+    }
+
+    private static NdjsonBatchReader reader(final String events, final int chunkEvents, final int chunkBytes) {
+        final byte[] data = events.getBytes(StandardCharsets.UTF_8);
+        // body is uploaded in small parts, so that lines are split between reads
+        final InputStream in = new ByteArrayInputStream(data) {
+            @Override
+            public synchronized int read(final byte[] b, final int off, final int len) {
+                return super.read(b, off, Math.min(len, 3));
+            }
+        };
+        return new NdjsonBatchReader(in, chunkEvents, chunkBytes);
+    }
+}
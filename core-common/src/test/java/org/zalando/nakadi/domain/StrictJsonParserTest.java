@@ -40,4 +40,10 @@ public class StrictJsonParserTest {
         testSingleString("{\"test\":1e+2}");
         testSingleString("{\"test\":-1e+4}");
     }
+
+    @Test
+    public void testStrings() {
+        testSingleString("{\"test\":\"香港\"}");
+        testSingleString("{\"test\":\"Z\\u00fcrich \\\"香港\\\"\\n\"}");
+    }
 }
@@ -0,0 +1,138 @@
+package org.zalando.nakadi.repository.kafka;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import org.zalando.nakadi.domain.ConsumedEvent;
+import org.zalando.nakadi.domain.NakadiCursor;
+import org.zalando.nakadi.domain.Timeline;
+
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.zalando.nakadi.utils.TestUtils.buildTimeline;
+
+public class EventTailCacheTest {
+
+    private static final String TOPIC = "topic";
+
+    private final Timeline timeline = buildTimeline(TOPIC, TOPIC, new Date());
+
+    @Test
+    public void whenEventsAreReadAfterCachedPositionThenTheyAreServedFromCache() {
+        final EventTailCache cache = createCache(100, 1000);
+        appendRead(cache, -1, 0, 1, 2);
+
+        assertThat(offsets(cache.read(cursor(0))), equalTo(ImmutableList.of(1L, 2L)));
+        assertThat(cache.read(cursor(2)), empty());
+        assertThat(cache.read(cursor(-1)).get(0).getEvent(), equalTo(event(0)));
+    }
+
+    @Test
+    public void whenCursorIsNotCoveredThenNothingIsServed() {
+        final EventTailCache cache = createCache(100, 1000);
+        appendRead(cache, 9, 10, 11);
+
+        assertThat(cache.read(cursor(5)), empty());
+        assertThat(cache.read(cursor(11)), empty());
+        assertThat(cache.read(NakadiCursor.of(timeline, "1", "000000000000000010")), empty());
+    }
+
+    @Test
+    public void whenPartitionIsNotCachedThenMissIsNotRecorded() {
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final EventTailCache cache = new EventTailCache(100, 1000, false, metricRegistry);
+
+        cache.read(cursor(5));
+        assertThat(metricRegistry.meter("nakadi.tail_cache.misses").getCount(), equalTo(0L));
+
+        appendRead(cache, 9, 10, 11);
+        cache.read(cursor(11));
+        assertThat(metricRegistry.meter("nakadi.tail_cache.misses").getCount(), equalTo(0L));
+        cache.read(cursor(5));
+        assertThat(metricRegistry.meter("nakadi.tail_cache.misses").getCount(), equalTo(1L));
+        assertThat(metricRegistry.meter("nakadi.tail_cache.hits").getCount(), equalTo(0L));
+    }
+
+    @Test
+    public void whenEventsAreReadAfterGapThenCacheIsRestarted() {
+        final EventTailCache cache = createCache(100, 1000);
+        appendRead(cache, -1, 0, 1);
+        appendRead(cache, 4, 5);
+
+        assertThat(cache.read(cursor(0)), empty());
+        assertThat(offsets(cache.read(cursor(4))), equalTo(ImmutableList.of(5L)));
+    }
+
+    @Test
+    public void whenPublishedEventsAreNotContiguousThenTheyAreIgnored() {
+        final EventTailCache cache = createCache(100, 1000);
+        appendRead(cache, -1, 0);
+        cache.appendPublished(TOPIC, 0, 1, event(1), 0, null);
+        cache.appendPublished(TOPIC, 0, 3, event(3), 0, null);
+
+        assertThat(offsets(cache.read(cursor(-1))), equalTo(ImmutableList.of(0L, 1L)));
+    }
+
+    @Test
+    public void whenPartitionIsFullThenOldestEventsAreEvictedAndBufferIsWrapped() {
+        // every event takes 7 bytes, so that only 3 of them fit into the partition buffer and the 4th one wraps
+        final EventTailCache cache = createCache(24, 1000);
+        appendRead(cache, -1, 0, 1, 2, 3, 4);
+
+        assertThat(cache.read(cursor(0)), empty());
+        final List<ConsumedEvent> events = cache.read(cursor(1));
+        assertThat(offsets(events), equalTo(ImmutableList.of(2L, 3L, 4L)));
+        assertThat(events.stream().map(e -> new String(e.getEvent())).collect(Collectors.toList()),
+                equalTo(ImmutableList.of("{\"e\":2}", "{\"e\":3}", "{\"e\":4}")));
+    }
+
+    @Test
+    public void whenTotalSizeIsReachedThenLeastRecentlyReadPartitionIsDropped() throws InterruptedException {
+        final EventTailCache cache = createCache(100, 200);
+        appendRead(cache, -1, 0);
+        appendRead(cache, NakadiCursor.of(timeline, "1", "-1"), 0);
+        Thread.sleep(5);
+        cache.read(cursor(-1));
+        appendRead(cache, NakadiCursor.of(timeline, "2", "-1"), 0);
+
+        assertThat(offsets(cache.read(cursor(-1))), equalTo(ImmutableList.of(0L)));
+        assertThat(cache.read(NakadiCursor.of(timeline, "1", "-1")), empty());
+    }
+
+    private EventTailCache createCache(final int partitionBytes, final long totalBytes) {
+        return new EventTailCache(partitionBytes, totalBytes, false, new MetricRegistry());
+    }
+
+    private void appendRead(final EventTailCache cache, final long after, final long... offsets) {
+        appendRead(cache, cursor(after), offsets);
+    }
+
+    private void appendRead(final EventTailCache cache, final NakadiCursor after, final long... offsets) {
+        NakadiCursor previous = after;
+        for (final long offset : offsets) {
+            final NakadiCursor position = NakadiCursor.of(timeline, after.getPartition(),
+                    KafkaCursor.toNakadiOffset(offset));
+            cache.append(previous, new ConsumedEvent(event(offset), position, 0, null));
+            previous = position;
+        }
+    }
+
+    private NakadiCursor cursor(final long offset) {
+        return NakadiCursor.of(timeline, "0", KafkaCursor.toNakadiOffset(offset));
+    }
+
+    private static byte[] event(final long offset) {
+        return ("{\"e\":" + offset + "}").getBytes();
+    }
+
+    private static List<Long> offsets(final List<ConsumedEvent> events) {
+        return events.stream()
+                .map(event -> KafkaCursor.fromNakadiCursor(event.getPosition()).getOffset())
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,214 @@
+package org.zalando.nakadi.repository.kafka;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+import org.zalando.nakadi.domain.ConsumedEvent;
+import org.zalando.nakadi.domain.Timeline;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.zalando.nakadi.utils.TestUtils.buildTimeline;
+
+public class FanOutKafkaConsumerTest {
+
+    private static final String TOPIC = "topic";
+    private static final TopicPartition TP = new TopicPartition(TOPIC, 0);
+    private static final long POLL_TIMEOUT = 100;
+
+    private final Map<TopicPartition, Timeline> timelineMap =
+            ImmutableMap.of(TP, buildTimeline(TOPIC, TOPIC, new Date()));
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void whenConsumersReadTheSamePositionThenRecordsAreFetchedOnce() {
+        final Consumer<byte[], byte[]> sharedConsumer = mock(Consumer.class);
+        when(sharedConsumer.poll(any(Duration.class))).thenReturn(records(0, 1, 2));
+        when(sharedConsumer.position(TP)).thenReturn(3L);
+        final SharedPartitionReaders readers = createReaders(() -> sharedConsumer, 1000);
+        final Consumer<byte[], byte[]> privateConsumer = mock(Consumer.class);
+
+        final FanOutKafkaConsumer first = createConsumer(readers, privateConsumer, 0);
+        final FanOutKafkaConsumer second = createConsumer(readers, privateConsumer, 0);
+
+        assertThat(offsets(first.readEvents()), equalTo(ImmutableList.of(0L, 1L, 2L)));
+        assertThat(offsets(second.readEvents()), equalTo(ImmutableList.of(0L, 1L, 2L)));
+
+        verify(sharedConsumer, times(1)).poll(any(Duration.class));
+        verify(privateConsumer, never()).poll(any(Duration.class));
+
+        // the partition is not shared anymore
+        first.close();
+        verify(sharedConsumer, times(1)).close();
+        second.close();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void whenPartitionIsReadBySingleConsumerThenSharedReaderIsNotCreated() {
+        final Supplier<Consumer<byte[], byte[]>> sharedConsumerSupplier = mock(Supplier.class);
+        final SharedPartitionReaders readers = createReaders(sharedConsumerSupplier, 1000);
+        final Consumer<byte[], byte[]> privateConsumer = mock(Consumer.class);
+        when(privateConsumer.poll(any(Duration.class))).thenReturn(records(0));
+
+        final FanOutKafkaConsumer consumer = createConsumer(readers, privateConsumer, 0);
+
+        assertThat(offsets(consumer.readEvents()), equalTo(ImmutableList.of(0L)));
+        verify(privateConsumer).seek(TP, 0L);
+        verify(sharedConsumerSupplier, never()).get();
+        consumer.close();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void whenWindowsDoNotFitIntoMemoryThenSharedReaderIsNotCreated() {
+        final Supplier<Consumer<byte[], byte[]>> sharedConsumerSupplier = mock(Supplier.class);
+        final SharedPartitionReaders readers = createReaders(sharedConsumerSupplier, 500);
+        final Consumer<byte[], byte[]> privateConsumer = mock(Consumer.class);
+        when(privateConsumer.poll(any(Duration.class))).thenReturn(records(0));
+
+        final FanOutKafkaConsumer first = createConsumer(readers, privateConsumer, 0);
+        final FanOutKafkaConsumer second = createConsumer(readers, mock(Consumer.class), 0);
+
+        assertThat(offsets(first.readEvents()), equalTo(ImmutableList.of(0L)));
+        verify(sharedConsumerSupplier, never()).get();
+        first.close();
+        second.close();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void whenConsumerIsBehindWindowThenPrivateConsumerIsUsed() {
+        final Consumer<byte[], byte[]> sharedConsumer = mock(Consumer.class);
+        when(sharedConsumer.poll(any(Duration.class))).thenReturn(records(100));
+        when(sharedConsumer.position(TP)).thenReturn(101L);
+        final SharedPartitionReaders readers = createReaders(() -> sharedConsumer, 1000);
+        final Consumer<byte[], byte[]> privateConsumer = mock(Consumer.class);
+        when(privateConsumer.poll(any(Duration.class))).thenReturn(records(0));
+
+        final FanOutKafkaConsumer leading = createConsumer(readers, mock(Consumer.class), 100);
+        final FanOutKafkaConsumer lagging = createConsumer(readers, privateConsumer, 0);
+
+        assertThat(offsets(leading.readEvents()), equalTo(ImmutableList.of(100L)));
+        assertThat(offsets(lagging.readEvents()), equalTo(ImmutableList.of(0L)));
+        verify(privateConsumer).seek(TP, 0L);
+
+        leading.close();
+        lagging.close();
+        verify(privateConsumer, times(1)).close();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void whenConsumerIsAheadOfWindowThenReaderIsMovedToIt() {
+        final Consumer<byte[], byte[]> sharedConsumer = mock(Consumer.class);
+        when(sharedConsumer.poll(any(Duration.class))).thenReturn(records(0), records(100));
+        when(sharedConsumer.position(TP)).thenReturn(1L, 101L);
+        final SharedPartitionReaders readers = createReaders(() -> sharedConsumer, 1000);
+        final Consumer<byte[], byte[]> privateConsumer = mock(Consumer.class);
+        when(privateConsumer.poll(any(Duration.class))).thenReturn(records(1));
+
+        final FanOutKafkaConsumer lagging = createConsumer(readers, privateConsumer, 0);
+        final FanOutKafkaConsumer leading = createConsumer(readers, mock(Consumer.class), 100);
+
+        // the reader is created at the position of the lagging consumer, but it follows the leading one
+        assertThat(offsets(lagging.readEvents()), equalTo(ImmutableList.of(0L)));
+        assertThat(offsets(leading.readEvents()), equalTo(ImmutableList.of(100L)));
+        verify(sharedConsumer).seek(TP, 100L);
+
+        assertThat(offsets(lagging.readEvents()), equalTo(ImmutableList.of(1L)));
+        verify(privateConsumer).seek(TP, 1L);
+
+        lagging.close();
+        leading.close();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void whenOffsetsHaveGapsThenConsumerMovesPastThem() {
+        final Consumer<byte[], byte[]> sharedConsumer = mock(Consumer.class);
+        // offsets 2-4 are taken by records that are not returned, like transaction markers
+        when(sharedConsumer.poll(any(Duration.class))).thenReturn(records(0, 1), records(5, 6));
+        when(sharedConsumer.position(TP)).thenReturn(5L, 7L);
+        final SharedPartitionReaders readers = createReaders(() -> sharedConsumer, 1000);
+        final FanOutKafkaConsumer first = createConsumer(readers, mock(Consumer.class), 0);
+        final FanOutKafkaConsumer second = createConsumer(readers, mock(Consumer.class), 0);
+
+        assertThat(offsets(first.readEvents()), equalTo(ImmutableList.of(0L, 1L)));
+        assertThat(offsets(second.readEvents()), equalTo(ImmutableList.of(0L, 1L)));
+        assertThat(offsets(first.readEvents()), equalTo(ImmutableList.of(5L, 6L)));
+        assertThat(offsets(second.readEvents()), equalTo(ImmutableList.of(5L, 6L)));
+
+        verify(sharedConsumer, times(2)).poll(any(Duration.class));
+        verify(sharedConsumer, never()).seek(TP, 2L);
+        first.close();
+        second.close();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void whenPartitionIsPausedThenItIsNotReadUntilResumed() {
+        final Consumer<byte[], byte[]> sharedConsumer = mock(Consumer.class);
+        when(sharedConsumer.poll(any(Duration.class))).thenReturn(records(0, 1));
+        when(sharedConsumer.position(TP)).thenReturn(2L);
+        final SharedPartitionReaders readers = createReaders(() -> sharedConsumer, 1000);
+        final FanOutKafkaConsumer consumer = createConsumer(readers, mock(Consumer.class), 0);
+        final FanOutKafkaConsumer other = createConsumer(readers, mock(Consumer.class), 0);
+        final List<org.zalando.nakadi.domain.TopicPartition> partitions = ImmutableList.of(
+                new org.zalando.nakadi.domain.TopicPartition(TOPIC, KafkaCursor.toNakadiPartition(TP.partition())));
+
+        consumer.pause(partitions);
+        assertThat(consumer.readEvents(), equalTo(ImmutableList.of()));
+        verify(sharedConsumer, never()).poll(any(Duration.class));
+
+        consumer.resume(partitions);
+        assertThat(offsets(consumer.readEvents()), equalTo(ImmutableList.of(0L, 1L)));
+        consumer.close();
+        other.close();
+    }
+
+    private static SharedPartitionReaders createReaders(final Supplier<Consumer<byte[], byte[]>> consumerSupplier,
+                                                        final long maxTotalBytes) {
+        return new SharedPartitionReaders(consumerSupplier, 1000, maxTotalBytes, new MetricRegistry());
+    }
+
+    private FanOutKafkaConsumer createConsumer(final SharedPartitionReaders readers,
+                                               final Consumer<byte[], byte[]> privateConsumer,
+                                               final long offset) {
+        return new FanOutKafkaConsumer(readers, () -> privateConsumer,
+                ImmutableList.of(new KafkaCursor(TOPIC, TP.partition(), offset)), timelineMap, POLL_TIMEOUT);
+    }
+
+    private static ConsumerRecords<byte[], byte[]> records(final long... offsets) {
+        final List<ConsumerRecord<byte[], byte[]>> records = new ArrayList<>();
+        for (final long offset : offsets) {
+            records.add(new ConsumerRecord<>(TOPIC, TP.partition(), offset, null, "{}".getBytes()));
+        }
+        return new ConsumerRecords<>(ImmutableMap.of(TP, records));
+    }
+
+    private static List<Long> offsets(final List<ConsumedEvent> events) {
+        return events.stream()
+                .map(event -> KafkaCursor.fromNakadiCursor(event.getPosition()).getOffset())
+                .collect(Collectors.toList());
+    }
+}
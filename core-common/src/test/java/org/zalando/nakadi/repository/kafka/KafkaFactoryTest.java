@@ -7,7 +7,10 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -18,29 +21,37 @@ public class KafkaFactoryTest {
             super(null, metricRegistry);
         }
 
+        FakeKafkaFactory(final MetricRegistry metricRegistry, final int producerPoolSize) {
+            super(null, metricRegistry, producerPoolSize);
+        }
+
         @Override
-        protected Producer<String, String> createProducerInstance() {
+        protected Producer<String, byte[]> createProducerInstance() {
             return Mockito.mock(Producer.class);
         }
     }
 
     private static KafkaFactory createTestKafkaFactory() {
+        return new FakeKafkaFactory(createMetricRegistry());
+    }
+
+    private static MetricRegistry createMetricRegistry() {
         final MetricRegistry reg = Mockito.mock(MetricRegistry.class);
         Mockito.when(reg.counter(Mockito.anyString())).thenReturn(Mockito.mock(Counter.class));
-        return new FakeKafkaFactory(reg);
+        return reg;
     }
 
     @Test
     public void verifySameProducerUsed() {
         final KafkaFactory factory = createTestKafkaFactory();
-        final Producer<String, String> producer1 = factory.takeProducer();
+        final Producer<String, byte[]> producer1 = factory.takeProducer();
         try {
             Assert.assertNotNull(producer1);
         } finally {
             factory.releaseProducer(producer1);
         }
 
-        final Producer<String, String> producer2 = factory.takeProducer();
+        final Producer<String, byte[]> producer2 = factory.takeProducer();
         try {
             Assert.assertSame(producer1, producer2);
         } finally {
@@ -52,9 +63,9 @@ public class KafkaFactoryTest {
     public void verifyProducerIsClosedAtCorrectTime() {
         final KafkaFactory factory = createTestKafkaFactory();
 
-        final List<Producer<String, String>> producers1 = IntStream.range(0, 10)
+        final List<Producer<String, byte[]>> producers1 = IntStream.range(0, 10)
                 .mapToObj(ignore -> factory.takeProducer()).collect(Collectors.toList());
-        final Producer<String, String> producer = producers1.get(0);
+        final Producer<String, byte[]> producer = producers1.get(0);
         Assert.assertNotNull(producer);
         producers1.forEach(p -> Assert.assertSame(producer, p));
         producers1.forEach(factory::releaseProducer);
@@ -62,9 +73,9 @@ public class KafkaFactoryTest {
         Mockito.verify(producer, Mockito.times(0)).close();
 
 
-        final List<Producer<String, String>> producers2 = IntStream.range(0, 10)
+        final List<Producer<String, byte[]>> producers2 = IntStream.range(0, 10)
                 .mapToObj(ignore -> factory.takeProducer()).collect(Collectors.toList());
-        final Producer<String, String> additionalProducer = factory.takeProducer();
+        final Producer<String, byte[]> additionalProducer = factory.takeProducer();
 
         Assert.assertSame(producer, additionalProducer);
         producers2.forEach(p -> Assert.assertSame(producer, p));
@@ -82,16 +93,74 @@ public class KafkaFactoryTest {
     @Test
     public void verifyNewProducerCreatedAfterClose() {
         final KafkaFactory factory = createTestKafkaFactory();
-        final Producer<String, String> producer1 = factory.takeProducer();
+        final Producer<String, byte[]> producer1 = factory.takeProducer();
         Assert.assertNotNull(producer1);
         factory.terminateProducer(producer1);
         factory.releaseProducer(producer1);
         Mockito.verify(producer1, Mockito.times(1)).close();
 
-        final Producer<String, String> producer2 = factory.takeProducer();
+        final Producer<String, byte[]> producer2 = factory.takeProducer();
         Assert.assertNotNull(producer2);
         Assert.assertNotSame(producer1, producer2);
         factory.releaseProducer(producer2);
         Mockito.verify(producer2, Mockito.times(0)).close();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void verifyProducersAreShardedByPartition() {
+        final KafkaFactory factory = new FakeKafkaFactory(createMetricRegistry(), 4);
+        final Set<Producer<String, byte[]>> producers = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < 16; ++i) {
+            final Producer<String, byte[]> producer = factory.takeProducer("topic", String.valueOf(i));
+            Assert.assertSame(producer, factory.takeProducer("topic", String.valueOf(i)));
+            producers.add(producer);
+            factory.releaseProducer(producer);
+            factory.releaseProducer(producer);
+        }
+        Assert.assertEquals(4, producers.size());
+    }
+
+    @Test
+    public void verifyTerminationDoesNotAffectOtherShards() {
+        final KafkaFactory factory = new FakeKafkaFactory(createMetricRegistry(), 2);
+        final List<Producer<String, byte[]>> producers = IntStream.range(0, 8)
+                .mapToObj(partition -> factory.takeProducer("topic", String.valueOf(partition)))
+                .collect(Collectors.toList());
+        final Producer<String, byte[]> terminated = producers.get(0);
+        factory.terminateProducer(terminated);
+        producers.forEach(factory::releaseProducer);
+        Mockito.verify(terminated, Mockito.times(1)).close();
+
+        final List<Producer<String, byte[]>> newProducers = IntStream.range(0, 8)
+                .mapToObj(partition -> factory.takeProducer("topic", String.valueOf(partition)))
+                .collect(Collectors.toList());
+        for (int i = 0; i < producers.size(); ++i) {
+            if (producers.get(i) == terminated) {
+                Assert.assertNotSame(terminated, newProducers.get(i));
+            } else {
+                Assert.assertSame(producers.get(i), newProducers.get(i));
+                Mockito.verify(producers.get(i), Mockito.times(0)).close();
+            }
+        }
+        newProducers.forEach(factory::releaseProducer);
+    }
+
+    @Test
+    public void verifyTerminateAllClosesUnusedProducers() {
+        final KafkaFactory factory = new FakeKafkaFactory(createMetricRegistry(), 2);
+        final Producer<String, byte[]> unused = factory.takeProducer();
+        factory.releaseProducer(unused);
+        Producer<String, byte[]> used = unused;
+        for (int partition = 0; used == unused; ++partition) {
+            used = factory.takeProducer("topic", String.valueOf(partition));
+            if (used == unused) {
+                factory.releaseProducer(used);
+            }
+        }
+
+        factory.terminateAllProducers();
+        Mockito.verify(unused, Mockito.times(1)).close();
+        Mockito.verify(used, Mockito.times(0)).close();
+        Assert.assertNotSame(unused, factory.takeProducer());
+    }
+}
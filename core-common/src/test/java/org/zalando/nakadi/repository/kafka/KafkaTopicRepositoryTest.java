@@ -3,6 +3,7 @@ package org.zalando.nakadi.repository.kafka;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.producer.BufferExhaustedException;
 import org.apache.kafka.clients.producer.Callback;
@@ -21,6 +22,7 @@ import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.zalando.nakadi.config.NakadiSettings;
 import org.zalando.nakadi.domain.BatchItem;
+import org.zalando.nakadi.domain.BatchItemResponse;
 import org.zalando.nakadi.domain.CursorError;
 import org.zalando.nakadi.domain.EventOwnerHeader;
 import org.zalando.nakadi.domain.EventPublishingStatus;
@@ -36,13 +38,14 @@ import org.zalando.nakadi.view.Cursor;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
@@ -79,7 +82,7 @@ public class KafkaTopicRepositoryTest {
     private static final String KAFKA_CLIENT_ID = "application_name-topic_name";
 
     @Captor
-    private ArgumentCaptor<ProducerRecord<String, String>> producerRecordArgumentCaptor;
+    private ArgumentCaptor<ProducerRecord<String, byte[]>> producerRecordArgumentCaptor;
 
     @SuppressWarnings("unchecked")
     public static final ProducerRecord EXPECTED_PRODUCER_RECORD = new ProducerRecord(MY_TOPIC, 0, "0", "payload");
@@ -115,7 +118,7 @@ public class KafkaTopicRepositoryTest {
             cursor("5", "30"), cursor("9", "100"));
 
     private final KafkaTopicRepository kafkaTopicRepository;
-    private final KafkaProducer<String, String> kafkaProducer;
+    private final KafkaProducer<String, byte[]> kafkaProducer;
     private final KafkaFactory kafkaFactory;
 
     @SuppressWarnings("unchecked")
@@ -158,7 +161,7 @@ public class KafkaTopicRepositoryTest {
         final String myTopic = "event-owner-selector-events";
         final BatchItem item = new BatchItem("{}", null,
                 null,
-                Collections.emptyList());
+                new int[0]);
         item.setPartition("1");
         item.setOwner(new EventOwnerHeader("retailer", "nakadi"));
         final List<BatchItem> batch = ImmutableList.of(item);
@@ -170,7 +173,7 @@ public class KafkaTopicRepositoryTest {
             kafkaTopicRepository.syncPostBatch(myTopic, batch, "random", false);
             fail();
         } catch (final EventPublishingException e) {
-            final ProducerRecord<String, String> recordSent = captureProducerRecordSent();
+            final ProducerRecord<String, byte[]> recordSent = captureProducerRecordSent();
             final Header nameHeader = recordSent.headers().headers(EventOwnerHeader.AUTH_PARAM_NAME)
                     .iterator().next();
             Assert.assertEquals(new String(nameHeader.value()), "retailer");
@@ -285,7 +288,7 @@ public class KafkaTopicRepositoryTest {
                 "{}",
                 BatchItem.EmptyInjectionConfiguration.build(1, true),
                 new BatchItem.InjectionConfiguration[BatchItem.Injection.values().length],
-                Collections.emptyList());
+                new int[0]);
         item.setPartition("1");
         final List<BatchItem> batch = new ArrayList<>();
         batch.add(item);
@@ -312,7 +315,7 @@ public class KafkaTopicRepositoryTest {
         final BatchItem item = new BatchItem("{}",
                 BatchItem.EmptyInjectionConfiguration.build(1, true),
                 new BatchItem.InjectionConfiguration[BatchItem.Injection.values().length],
-                Collections.emptyList());
+                new int[0]);
         item.setPartition("1");
         final List<BatchItem> batch = new ArrayList<>();
         batch.add(item);
@@ -339,11 +342,11 @@ public class KafkaTopicRepositoryTest {
 
         final BatchItem firstItem = new BatchItem("{}", BatchItem.EmptyInjectionConfiguration.build(1, true),
                 new BatchItem.InjectionConfiguration[BatchItem.Injection.values().length],
-                Collections.emptyList());
+                new int[0]);
         firstItem.setPartition("1");
         final BatchItem secondItem = new BatchItem("{}", BatchItem.EmptyInjectionConfiguration.build(1, true),
                 new BatchItem.InjectionConfiguration[BatchItem.Injection.values().length],
-                Collections.emptyList());
+                new int[0]);
         secondItem.setPartition("2");
         final List<BatchItem> batch = ImmutableList.of(firstItem, secondItem);
 
@@ -373,6 +376,48 @@ public class KafkaTopicRepositoryTest {
         }
     }
 
+    @Test
+    public void whenAsyncPostBatchThenResultIsAvailableAfterKafkaCallbacks() throws Exception {
+        final BatchItem firstItem = new BatchItem("{}", BatchItem.EmptyInjectionConfiguration.build(1, true),
+                new BatchItem.InjectionConfiguration[BatchItem.Injection.values().length],
+                new int[0]);
+        firstItem.setPartition("1");
+        final BatchItem secondItem = new BatchItem("{}", BatchItem.EmptyInjectionConfiguration.build(1, true),
+                new BatchItem.InjectionConfiguration[BatchItem.Injection.values().length],
+                new int[0]);
+        secondItem.setPartition("2");
+        final List<BatchItem> batch = ImmutableList.of(firstItem, secondItem);
+
+        when(kafkaProducer.partitionsFor(EXPECTED_PRODUCER_RECORD.topic())).thenReturn(ImmutableList.of(
+                new PartitionInfo(EXPECTED_PRODUCER_RECORD.topic(), 1, NODE, null, null),
+                new PartitionInfo(EXPECTED_PRODUCER_RECORD.topic(), 2, NODE, null, null)));
+
+        final List<Callback> callbacks = new ArrayList<>();
+        when(kafkaProducer.send(any(), any())).thenAnswer(invocation -> {
+            callbacks.add((Callback) invocation.getArguments()[1]);
+            return null;
+        });
+
+        final CompletableFuture<Void> result =
+                kafkaTopicRepository.asyncPostBatch(EXPECTED_PRODUCER_RECORD.topic(), batch, "random", false);
+        assertThat(result.isDone(), is(false));
+        assertThat(callbacks.size(), is(2));
+
+        callbacks.get(0).onCompletion(null, null);
+        callbacks.get(1).onCompletion(null, new Exception());
+        try {
+            result.get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (final ExecutionException e) {
+            assertThat(e.getCause() instanceof EventPublishingException, is(true));
+        }
+        final List<BatchItemResponse> responses = batch.stream().map(BatchItem::getResponse).collect(toList());
+        assertThat(responses.stream().filter(r -> r.getPublishingStatus() == EventPublishingStatus.SUBMITTED)
+                .count(), is(1L));
+        assertThat(responses.stream().filter(r -> r.getPublishingStatus() == EventPublishingStatus.FAILED)
+                .count(), is(1L));
+    }
+
     @Test
     public void checkCircuitBreakerStateBasedOnKafkaResponse() {
         when(nakadiSettings.getKafkaSendTimeoutMs()).thenReturn(1000L);
@@ -417,7 +462,7 @@ public class KafkaTopicRepositoryTest {
                 final BatchItem batchItem = new BatchItem("{}",
                         BatchItem.EmptyInjectionConfiguration.build(1, true),
                         new BatchItem.InjectionConfiguration[BatchItem.Injection.values().length],
-                        Collections.emptyList());
+                        new int[0]);
                 batchItem.setPartition("1");
                 batches.add(batchItem);
                 TimeUnit.MILLISECONDS.sleep(5);
@@ -492,6 +537,7 @@ public class KafkaTopicRepositoryTest {
                     .setKafkaTopicConfigFactory(kafkaTopicConfigFactory)
                     .setKafkaLocationManager(kafkaLocationManager)
                     .setMetricRegistry(metricRegistry)
+                    .setPublishingCompletionExecutor(MoreExecutors.directExecutor())
                     .build();
         } catch (final Exception e) {
             throw new RuntimeException(e);
@@ -546,6 +592,7 @@ public class KafkaTopicRepositoryTest {
         when(kafkaFactory.getConsumer(KAFKA_CLIENT_ID)).thenReturn(consumer);
         when(kafkaFactory.getConsumer()).thenReturn(consumer);
         when(kafkaFactory.takeProducer()).thenReturn(kafkaProducer);
+        when(kafkaFactory.takeProducer(anyString(), anyString())).thenReturn(kafkaProducer);
 
         return kafkaFactory;
     }
@@ -562,7 +609,7 @@ public class KafkaTopicRepositoryTest {
     }
 
     @SuppressWarnings("unchecked")
-    private ProducerRecord<String, String> captureProducerRecordSent() {
+    private ProducerRecord<String, byte[]> captureProducerRecordSent() {
         verify(kafkaProducer, atLeastOnce()).send(producerRecordArgumentCaptor.capture(), any());
         return producerRecordArgumentCaptor.getValue();
     }
@@ -2,6 +2,7 @@ package org.zalando.nakadi.repository.kafka;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
@@ -15,6 +16,7 @@ import org.zalando.nakadi.domain.ConsumedEvent;
 import org.zalando.nakadi.domain.Timeline;
 import org.zalando.nakadi.utils.TestUtils;
 
+import java.time.Duration;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -121,7 +123,7 @@ public class NakadiKafkaConsumerTest {
         final ConsumerRecords<byte[], byte[]> emptyRecords = new ConsumerRecords<>(ImmutableMap.of());
 
         final KafkaConsumer<byte[], byte[]> kafkaConsumerMock = mock(KafkaConsumer.class);
-        final ArgumentCaptor<Long> pollTimeoutCaptor = ArgumentCaptor.forClass(Long.class);
+        final ArgumentCaptor<Duration> pollTimeoutCaptor = ArgumentCaptor.forClass(Duration.class);
         when(kafkaConsumerMock.poll(pollTimeoutCaptor.capture())).thenReturn(consumerRecords, emptyRecords);
 
         // we mock KafkaConsumer anyway, so the cursors we pass are not really important
@@ -147,7 +149,7 @@ public class NakadiKafkaConsumerTest {
                         0, null)));
 
         assertThat("The kafka poll should be called with timeout we defined", pollTimeoutCaptor.getValue(),
-                equalTo(POLL_TIMEOUT));
+                equalTo(Duration.ofMillis(POLL_TIMEOUT)));
     }
 
     @Test
@@ -161,7 +163,7 @@ public class NakadiKafkaConsumerTest {
         int numberOfNakadiRuntimeBaseExceptions = 0;
         for (final Exception exception : exceptions) {
             final KafkaConsumer<byte[], byte[]> kafkaConsumerMock = mock(KafkaConsumer.class);
-            when(kafkaConsumerMock.poll(POLL_TIMEOUT)).thenThrow(exception);
+            when(kafkaConsumerMock.poll(Duration.ofMillis(POLL_TIMEOUT))).thenThrow(exception);
 
             try {
 
@@ -195,4 +197,26 @@ public class NakadiKafkaConsumerTest {
         verify(kafkaConsumerMock, times(1)).close();
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void whenPauseThenOnlyAssignedPartitionsArePaused() {
+        // ARRANGE //
+        final KafkaConsumer<byte[], byte[]> kafkaConsumerMock = mock(KafkaConsumer.class);
+        final TopicPartition assigned = new TopicPartition(TOPIC, PARTITION);
+        when(kafkaConsumerMock.assignment()).thenReturn(ImmutableSet.of(assigned));
+        final NakadiKafkaConsumer nakadiKafkaConsumer = new NakadiKafkaConsumer(kafkaConsumerMock,
+                ImmutableList.of(kafkaCursor(TOPIC, PARTITION, 0)), createTpTimelineMap(), POLL_TIMEOUT);
+        final List<org.zalando.nakadi.domain.TopicPartition> partitions = ImmutableList.of(
+                new org.zalando.nakadi.domain.TopicPartition(TOPIC, toNakadiPartition(PARTITION)),
+                new org.zalando.nakadi.domain.TopicPartition(TOPIC, toNakadiPartition(PARTITION + 1)));
+
+        // ACT //
+        nakadiKafkaConsumer.pause(partitions);
+        nakadiKafkaConsumer.resume(partitions);
+
+        // ASSERT //
+        verify(kafkaConsumerMock, times(1)).pause(ImmutableList.of(assigned));
+        verify(kafkaConsumerMock, times(1)).resume(ImmutableList.of(assigned));
+    }
+
 }
@@ -38,6 +38,22 @@ public class JsonPathAccessTest {
 
     }
 
+    @Test
+    public void canAccessPropertiesOfLazyObject() throws Exception {
+        final JsonPathAccess lazyJsonPath = new JsonPathAccess(TestUtils.toLazyJson(JSON_OBJECT));
+
+        assertThat(lazyJsonPath.get("sku"), equalTo("ABCDE"));
+        assertThat(lazyJsonPath.get("brand").toString(), equalTo(JSON_OBJECT.getJSONObject("brand").toString()));
+        assertThat(lazyJsonPath.get("brand.name"), equalTo("Superbrand"));
+        assertThat(lazyJsonPath.get("dynamic_attributes.'field.with.dots'.field'.'\\\\with\\'chars\""),
+                equalTo("you reached it"));
+    }
+
+    @Test(expected = JsonPathAccessException.class)
+    public void throwsExceptionIfLazyPropertyDoesNotExist() throws JsonPathAccessException {
+        new JsonPathAccess(TestUtils.toLazyJson(JSON_OBJECT)).get("brand.does_not_exist");
+    }
+
     @Test(expected = JsonPathAccessException.class)
     public void throwsExceptionIfPropertyDoesNotExist() throws JsonPathAccessException {
 
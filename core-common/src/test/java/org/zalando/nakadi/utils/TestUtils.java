@@ -18,7 +18,9 @@ import org.zalando.nakadi.config.JsonConfig;
 import org.zalando.nakadi.domain.BatchFactory;
 import org.zalando.nakadi.domain.BatchItem;
 import org.zalando.nakadi.domain.EventType;
+import org.zalando.nakadi.domain.LazyJsonObject;
 import org.zalando.nakadi.domain.ResourceAuthorization;
+import org.zalando.nakadi.domain.StrictJsonParser;
 import org.zalando.nakadi.domain.Subscription;
 import org.zalando.nakadi.domain.Timeline;
 import org.zalando.nakadi.domain.storage.Storage;
@@ -209,6 +211,10 @@ public class TestUtils {
         return BatchFactory.from("[" + event + "]").get(0);
     }
 
+    public static LazyJsonObject toLazyJson(final JSONObject event) {
+        return StrictJsonParser.parseLazyObject(event.toString());
+    }
+
     public static DateTime randomDate() {
         final long maxMillis = new DateTime().getMillis();
         final long randomMillis = Math.round(Math.random() * maxMillis);
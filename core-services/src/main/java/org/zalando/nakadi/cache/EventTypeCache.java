@@ -13,6 +13,8 @@ import org.zalando.nakadi.domain.EventType;
 import org.zalando.nakadi.domain.Timeline;
 import org.zalando.nakadi.exceptions.runtime.InternalNakadiException;
 import org.zalando.nakadi.exceptions.runtime.NoSuchEventTypeException;
+import org.zalando.nakadi.partitioning.EventKeyExtractor;
+import org.zalando.nakadi.partitioning.StringHash;
 import org.zalando.nakadi.repository.db.EventTypeRepository;
 import org.zalando.nakadi.repository.db.TimelineDbRepository;
 import org.zalando.nakadi.service.timeline.TimelineSync;
@@ -121,6 +123,7 @@ public class EventTypeCache {
     private final long periodicUpdatesInterval;
     private final long zkChangesTTL;
     private final EventValidatorBuilder eventValidatorBuilder;
+    private final StringHash stringHash;
     private TimelineSync.ListenerRegistration timelineSyncListener = null;
 
     private static final Logger LOG = LoggerFactory.getLogger(EventTypeCache.class);
@@ -132,6 +135,7 @@ public class EventTypeCache {
             final TimelineDbRepository timelineRepository,
             final TimelineSync timelineSync,
             final EventValidatorBuilder eventValidatorBuilder,
+            final StringHash stringHash,
             @Value("${nakadi.event-cache.periodic-update-seconds:120}") final long periodicUpdatesIntervalSeconds,
             @Value("${nakadi.event-cache.change-ttl:600}") final long zkChangesTTLSeconds) {
         this.changesRegistry = changesRegistry;
@@ -143,6 +147,7 @@ public class EventTypeCache {
         this.scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
         this.timelineSync = timelineSync;
         this.eventValidatorBuilder = eventValidatorBuilder;
+        this.stringHash = stringHash;
         this.periodicUpdatesInterval = TimeUnit.SECONDS.toMillis(periodicUpdatesIntervalSeconds);
         this.zkChangesTTL = TimeUnit.SECONDS.toMillis(zkChangesTTLSeconds);
     }
@@ -275,6 +280,10 @@ public class EventTypeCache {
         return getCached(name).getEventTypeValidator();
     }
 
+    public EventKeyExtractor getEventKeyExtractor(final String name) throws NoSuchEventTypeException {
+        return getCached(name).getEventKeyExtractor();
+    }
+
     public List<Timeline> getTimelinesOrdered(final String name) throws NoSuchEventTypeException {
         return getCached(name).getTimelines();
     }
@@ -301,6 +310,7 @@ public class EventTypeCache {
         final CachedValue result = new CachedValue(
                 eventType,
                 eventValidatorBuilder.build(eventType),
+                EventKeyExtractor.forEventType(eventType, stringHash),
                 timelines
         );
         LOG.info("Successfully load event type {}, took: {} ms", eventTypeName, System.currentTimeMillis() - start);
@@ -316,13 +326,16 @@ public class EventTypeCache {
     private static class CachedValue {
         private final EventType eventType;
         private final EventTypeValidator eventTypeValidator;
+        private final EventKeyExtractor eventKeyExtractor;
         private final List<Timeline> timelines;
 
         CachedValue(final EventType eventType,
                     final EventTypeValidator eventTypeValidator,
+                    final EventKeyExtractor eventKeyExtractor,
                     final List<Timeline> timelines) {
             this.eventType = eventType;
             this.eventTypeValidator = eventTypeValidator;
+            this.eventKeyExtractor = eventKeyExtractor;
             this.timelines = timelines;
         }
 
@@ -334,6 +347,10 @@ public class EventTypeCache {
             return eventTypeValidator;
         }
 
+        public EventKeyExtractor getEventKeyExtractor() {
+            return eventKeyExtractor;
+        }
+
         public List<Timeline> getTimelines() {
             return timelines;
         }
@@ -0,0 +1,155 @@
+package org.zalando.nakadi.partitioning;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.zalando.nakadi.domain.CleanupPolicy;
+import org.zalando.nakadi.domain.EventCategory;
+import org.zalando.nakadi.domain.EventType;
+import org.zalando.nakadi.domain.LazyJsonObject;
+import org.zalando.nakadi.exceptions.runtime.InvalidPartitionKeyFieldsException;
+import org.zalando.nakadi.util.JsonPathAccess;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.zalando.nakadi.validation.JsonSchemaEnrichment.DATA_PATH_PREFIX;
+
+/**
+ * Extracts values of partition key fields and the key of the event (compaction key or the only partition key field)
+ * from events of one event type. Paths are tokenized once per event type and are merged into a tree, so that all
+ * the values are taken from the event in one traversal. Hash of partition key fields is the same as the one that is
+ * calculated by applying {@link StringHash} to string representation of the fields.
+ */
+public class EventKeyExtractor {
+
+    private static final String[] COMPACTION_KEY_PATH = {"metadata", "partition_compaction_key"};
+
+    private final PathNode root = new PathNode();
+    private final StringHash stringHash;
+    private final String[] partitionKeyFields;
+    private final int compactionKeyIdx;
+    private final int eventKeyIdx;
+    private final int slots;
+
+    private EventKeyExtractor(final StringHash stringHash, final List<String> partitionKeyPaths,
+                              final boolean compactionKey, final boolean eventKeyFromPartitionKey) {
+        this.stringHash = stringHash;
+        this.partitionKeyFields = partitionKeyPaths.toArray(new String[0]);
+        int slot = 0;
+        for (final String path : partitionKeyPaths) {
+            root.add(JsonPathAccess.tokenize(path), 0, slot++);
+        }
+        if (compactionKey) {
+            root.add(Arrays.asList(COMPACTION_KEY_PATH), 0, slot);
+            this.compactionKeyIdx = slot++;
+        } else {
+            this.compactionKeyIdx = -1;
+        }
+        this.eventKeyIdx = compactionKey ? compactionKeyIdx : (eventKeyFromPartitionKey ? 0 : -1);
+        this.slots = slot;
+    }
+
+    public static EventKeyExtractor forEventType(final EventType eventType, final StringHash stringHash) {
+        final boolean hashPartitioning = PartitionStrategy.HASH_STRATEGY.equals(eventType.getPartitionStrategy());
+        final List<String> partitionKeyPaths = hashPartitioning ? partitionKeyPaths(eventType) : new ArrayList<>();
+        // we will set event key from partition key only if there is exactly one partition key field,
+        // in other case it's not clear what should be set as event key
+        return new EventKeyExtractor(stringHash, partitionKeyPaths,
+                eventType.getCleanupPolicy() == CleanupPolicy.COMPACT, partitionKeyPaths.size() == 1);
+    }
+
+    private static List<String> partitionKeyPaths(final EventType eventType) {
+        final List<String> result = new ArrayList<>();
+        for (final String field : eventType.getPartitionKeyFields()) {
+            result.add(EventCategory.DATA.equals(eventType.getCategory()) ? DATA_PATH_PREFIX + field : field);
+        }
+        return result;
+    }
+
+    public EventKeys extract(final LazyJsonObject event)
+            throws InvalidPartitionKeyFieldsException, JSONException {
+        final Object[] values = new Object[slots];
+        final String[] missingFields = new String[slots];
+        root.collect(event, values, missingFields);
+
+        int partitionKeyHash = 0;
+        for (int i = 0; i < partitionKeyFields.length; ++i) {
+            if (null != missingFields[i]) {
+                throw new InvalidPartitionKeyFieldsException("field " + missingFields[i] + " doesn't exist.");
+            }
+            partitionKeyHash += stringHash.hashCode(values[i]);
+        }
+        if (compactionKeyIdx >= 0 && !(values[compactionKeyIdx] instanceof String)) {
+            throw new JSONException("JSONObject[" + JSONObject.quote(COMPACTION_KEY_PATH[1]) + "] not a string.");
+        }
+        return new EventKeys(partitionKeyHash, eventKeyIdx < 0 ? null : values[eventKeyIdx].toString());
+    }
+
+    public static class EventKeys {
+        private final int partitionKeyHash;
+        private final String eventKey;
+
+        public EventKeys(final int partitionKeyHash, @Nullable final String eventKey) {
+            this.partitionKeyHash = partitionKeyHash;
+            this.eventKey = eventKey;
+        }
+
+        /**
+         * Sum of {@link StringHash} of partition key fields, 0 if event type is not partitioned by hash.
+         */
+        public int getPartitionKeyHash() {
+            return partitionKeyHash;
+        }
+
+        @Nullable
+        public String getEventKey() {
+            return eventKey;
+        }
+    }
+
+    private static class PathNode {
+        private final Map<String, PathNode> children = new LinkedHashMap<>();
+        private int[] slots = new int[0];
+
+        private void add(final List<String> path, final int depth, final int slot) {
+            if (depth == path.size()) {
+                slots = Arrays.copyOf(slots, slots.length + 1);
+                slots[slots.length - 1] = slot;
+            } else {
+                children.computeIfAbsent(path.get(depth), name -> new PathNode()).add(path, depth + 1, slot);
+            }
+        }
+
+        private void collect(final Object value, final Object[] values, final String[] missingFields) {
+            for (final int slot : slots) {
+                values[slot] = value;
+            }
+            for (final Map.Entry<String, PathNode> child : children.entrySet()) {
+                final Object childValue;
+                if (value instanceof LazyJsonObject) {
+                    childValue = ((LazyJsonObject) value).opt(child.getKey());
+                } else if (value instanceof JSONObject) {
+                    childValue = ((JSONObject) value).opt(child.getKey());
+                } else {
+                    childValue = null;
+                }
+                if (null == childValue) {
+                    child.getValue().markMissing(child.getKey(), missingFields);
+                } else {
+                    child.getValue().collect(childValue, values, missingFields);
+                }
+            }
+        }
+
+        private void markMissing(final String field, final String[] missingFields) {
+            for (final int slot : slots) {
+                missingFields[slot] = field;
+            }
+            children.values().forEach(child -> child.markMissing(field, missingFields));
+        }
+    }
+}
@@ -1,75 +1,62 @@
 package org.zalando.nakadi.partitioning;
 
-import org.json.JSONObject;
+import com.google.common.collect.Ordering;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import org.zalando.nakadi.domain.EventCategory;
+import org.zalando.nakadi.cache.EventTypeCache;
 import org.zalando.nakadi.domain.EventType;
-import org.zalando.nakadi.exceptions.Try;
+import org.zalando.nakadi.domain.LazyJsonObject;
 import org.zalando.nakadi.exceptions.runtime.InvalidPartitionKeyFieldsException;
-import org.zalando.nakadi.exceptions.runtime.JsonPathAccessException;
-import org.zalando.nakadi.exceptions.runtime.NakadiRuntimeException;
-import org.zalando.nakadi.util.JsonPathAccess;
 
 import java.util.List;
-import java.util.stream.Collectors;
 
 import static java.lang.Math.abs;
-import static org.zalando.nakadi.validation.JsonSchemaEnrichment.DATA_PATH_PREFIX;
 
 @Component
 public class HashPartitionStrategy implements PartitionStrategy {
 
     private final HashPartitionStrategyCrutch hashPartitioningCrutch;
-    private final StringHash stringHash;
+    private final EventTypeCache eventTypeCache;
 
     @Autowired
     public HashPartitionStrategy(final HashPartitionStrategyCrutch hashPartitioningCrutch,
-                                 final StringHash stringHash) {
+                                 final EventTypeCache eventTypeCache) {
         this.hashPartitioningCrutch = hashPartitioningCrutch;
-        this.stringHash = stringHash;
+        this.eventTypeCache = eventTypeCache;
     }
 
     @Override
-    public String calculatePartition(final EventType eventType, final JSONObject event, final List<String> partitions)
+    public String calculatePartition(final EventType eventType, final LazyJsonObject event,
+                                     final List<String> partitions)
             throws InvalidPartitionKeyFieldsException {
-        final List<String> partitionKeyFields = eventType.getPartitionKeyFields();
-        if (partitionKeyFields.isEmpty()) {
-            throw new RuntimeException("Applying " + this.getClass().getSimpleName() + " although event type " +
-                    "has no partition key fields configured.");
-        }
-        try {
-            final JsonPathAccess traversableJsonEvent = new JsonPathAccess(event);
-            final int hashValue = partitionKeyFields.stream()
-                    // The problem is that JSONObject doesn't override hashCode(). Therefore convert it to
-                    // a string first and then use hashCode()
-                    .map(pkf -> EventCategory.DATA.equals(eventType.getCategory()) ? DATA_PATH_PREFIX + pkf : pkf)
-                    .map(Try.wrap(okf -> {
-                        try {
-                            final String fieldValue = traversableJsonEvent.get(okf).toString();
-                            return stringHash.hashCode(fieldValue);
-                        } catch (final JsonPathAccessException e) {
-                            throw new InvalidPartitionKeyFieldsException(e.getMessage());
-                        }
-                    }))
-                    .map(Try::getOrThrow)
-                    .mapToInt(hc -> hc)
-                    .sum();
-
-
-            int partitionIndex = abs(hashValue) % partitions.size();
-            partitionIndex = hashPartitioningCrutch.adjustPartitionIndex(partitionIndex, partitions.size());
+        checkPartitionKeyFields(eventType);
+        final int hashValue = eventTypeCache.getEventKeyExtractor(eventType.getName())
+                .extract(event)
+                .getPartitionKeyHash();
+        return calculatePartition(eventType, hashValue, partitions);
+    }
 
-            final List<String> sortedPartitions = partitions.stream().sorted().collect(Collectors.toList());
-            return sortedPartitions.get(partitionIndex);
+    /**
+     * Calculates partition using sum of hashes of partition key fields, that was already extracted from the event
+     * by {@link EventKeyExtractor}.
+     */
+    public String calculatePartition(final EventType eventType, final int partitionKeyHash,
+                                     final List<String> partitions) {
+        checkPartitionKeyFields(eventType);
+
+        int partitionIndex = abs(partitionKeyHash) % partitions.size();
+        partitionIndex = hashPartitioningCrutch.adjustPartitionIndex(partitionIndex, partitions.size());
+
+        // partitions provided by PartitionResolver are already sorted, so usually there is nothing to sort
+        final List<String> sortedPartitions = Ordering.natural().isOrdered(partitions) ?
+                partitions : Ordering.natural().sortedCopy(partitions);
+        return sortedPartitions.get(partitionIndex);
+    }
 
-        } catch (NakadiRuntimeException e) {
-            final Exception original = e.getException();
-            if (original instanceof InvalidPartitionKeyFieldsException) {
-                throw (InvalidPartitionKeyFieldsException) original;
-            } else {
-                throw e;
-            }
+    private void checkPartitionKeyFields(final EventType eventType) {
+        if (eventType.getPartitionKeyFields().isEmpty()) {
+            throw new RuntimeException("Applying " + this.getClass().getSimpleName() + " although event type " +
+                    "has no partition key fields configured.");
         }
     }
 
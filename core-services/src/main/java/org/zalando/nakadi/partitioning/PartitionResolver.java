@@ -2,11 +2,14 @@ package org.zalando.nakadi.partitioning;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import org.json.JSONObject;
+import com.google.common.collect.Ordering;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import org.zalando.nakadi.cache.EventTypeCache;
 import org.zalando.nakadi.domain.EventType;
 import org.zalando.nakadi.domain.EventTypeBase;
+import org.zalando.nakadi.domain.LazyJsonObject;
+import org.zalando.nakadi.domain.Timeline;
 import org.zalando.nakadi.exceptions.runtime.InvalidEventTypeException;
 import org.zalando.nakadi.exceptions.runtime.NoSuchPartitionStrategyException;
 import org.zalando.nakadi.exceptions.runtime.PartitioningException;
@@ -15,6 +18,8 @@ import org.zalando.nakadi.service.timeline.TimelineService;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import static org.zalando.nakadi.domain.EventCategory.UNDEFINED;
 import static org.zalando.nakadi.partitioning.PartitionStrategy.HASH_STRATEGY;
@@ -27,12 +32,24 @@ public class PartitionResolver {
     public static final List<String> ALL_PARTITION_STRATEGIES = ImmutableList.of(
             HASH_STRATEGY, USER_DEFINED_STRATEGY, RANDOM_STRATEGY);
 
+    /**
+     * Partitions of the topic may be changed without changing timeline (repartitioning), and metadata of kafka
+     * producer may be updated a bit later than the event type is invalidated, therefore routing table is
+     * periodically rebuilt even without invalidation.
+     */
+    private static final long ROUTING_TABLE_TTL_MS = TimeUnit.SECONDS.toMillis(10);
+
     private final Map<String, PartitionStrategy> partitionStrategies;
+    private final HashPartitionStrategy hashPartitionStrategy;
     private final TimelineService timelineService;
+    private final Map<String, RoutingTable> routingTables = new ConcurrentHashMap<>();
 
     @Autowired
-    public PartitionResolver(final TimelineService timelineService, final HashPartitionStrategy hashPartitionStrategy) {
+    public PartitionResolver(final TimelineService timelineService, final HashPartitionStrategy hashPartitionStrategy,
+                             final EventTypeCache eventTypeCache) {
         this.timelineService = timelineService;
+        this.hashPartitionStrategy = hashPartitionStrategy;
+        eventTypeCache.addInvalidationListener(routingTables::remove);
 
         partitionStrategies = ImmutableMap.of(
                 HASH_STRATEGY, hashPartitionStrategy,
@@ -56,19 +73,63 @@ public class PartitionResolver {
         }
     }
 
-    public String resolvePartition(final EventType eventType, final JSONObject eventAsJson)
-            throws PartitioningException {
+    /**
+     * Resolves partition using keys that were already extracted from the event, so that hash partitioning doesn't
+     * need to look into the event once again.
+     */
+    public String resolvePartition(final EventType eventType, final LazyJsonObject eventAsJson,
+                                   final EventKeyExtractor.EventKeys eventKeys) throws PartitioningException {
+        final PartitionStrategy partitionStrategy = getPartitionStrategy(eventType);
+        if (partitionStrategy == hashPartitionStrategy) {
+            return hashPartitionStrategy.calculatePartition(
+                    eventType, eventKeys.getPartitionKeyHash(), getSortedPartitions(eventType));
+        }
+        return partitionStrategy.calculatePartition(eventType, eventAsJson, getSortedPartitions(eventType));
+    }
 
+    private PartitionStrategy getPartitionStrategy(final EventType eventType) throws PartitioningException {
         final String eventTypeStrategy = eventType.getPartitionStrategy();
         final PartitionStrategy partitionStrategy = partitionStrategies.get(eventTypeStrategy);
         if (partitionStrategy == null) {
             throw new PartitioningException("Partition Strategy defined for this EventType is not found: " +
                     eventTypeStrategy);
         }
+        return partitionStrategy;
+    }
 
-        final List<String> partitions = timelineService.getTopicRepository(eventType)
-                .listPartitionNames(timelineService.getActiveTimeline(eventType).getTopic());
-        return partitionStrategy.calculatePartition(eventType, eventAsJson, partitions);
+    /**
+     * Returns partitions of the active timeline of event type, sorted lexicographically. Result is cached per
+     * timeline, so that list of partitions is not requested from the topic repository for every event.
+     */
+    public List<String> getSortedPartitions(final EventType eventType) {
+        final Timeline activeTimeline = timelineService.getActiveTimeline(eventType);
+        final RoutingTable existing = routingTables.get(eventType.getName());
+        if (null != existing && existing.isValidFor(activeTimeline)) {
+            return existing.sortedPartitions;
+        }
+        final List<String> partitions = timelineService.getTopicRepository(activeTimeline)
+                .listPartitionNames(activeTimeline.getTopic());
+        final RoutingTable routingTable =
+                new RoutingTable(activeTimeline, Ordering.natural().immutableSortedCopy(partitions));
+        routingTables.put(eventType.getName(), routingTable);
+        return routingTable.sortedPartitions;
+    }
+
+    private static class RoutingTable {
+        // Timeline objects are recreated every time when event type cache is reloaded, so identity is compared
+        private final Timeline timeline;
+        private final List<String> sortedPartitions;
+        private final long createdAt;
+
+        private RoutingTable(final Timeline timeline, final List<String> sortedPartitions) {
+            this.timeline = timeline;
+            this.sortedPartitions = sortedPartitions;
+            this.createdAt = System.currentTimeMillis();
+        }
+
+        private boolean isValidFor(final Timeline activeTimeline) {
+            return timeline == activeTimeline && System.currentTimeMillis() - createdAt < ROUTING_TABLE_TTL_MS;
+        }
     }
 
 }
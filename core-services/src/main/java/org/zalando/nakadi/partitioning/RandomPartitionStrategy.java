@@ -1,7 +1,7 @@
 package org.zalando.nakadi.partitioning;
 
-import org.json.JSONObject;
 import org.zalando.nakadi.domain.EventType;
+import org.zalando.nakadi.domain.LazyJsonObject;
 
 import java.util.List;
 import java.util.Random;
@@ -15,7 +15,8 @@ public class RandomPartitionStrategy implements PartitionStrategy {
     }
 
     @Override
-    public String calculatePartition(final EventType eventType, final JSONObject event, final List<String> partitions) {
+    public String calculatePartition(final EventType eventType, final LazyJsonObject event,
+                                     final List<String> partitions) {
         if (partitions.size() == 1) {
             return partitions.get(0);
         }
@@ -15,4 +15,37 @@ public class StringHash {
         return hash;
     }
 
+    /**
+     * Returns the same value as {@code hashCode(value.toString())}, but avoids building strings for the most
+     * common values of json fields.
+     */
+    public int hashCode(final Object value) {
+        if (value instanceof String) {
+            return hashCode((String) value);
+        } else if (value instanceof Integer || value instanceof Long) {
+            return decimalHashCode(((Number) value).longValue());
+        }
+        return hashCode(value.toString());
+    }
+
+    private int decimalHashCode(final long value) {
+        if (value == Long.MIN_VALUE) {
+            return hashCode(Long.toString(value));
+        }
+        int hash = 0;
+        long remaining = value;
+        if (value < 0) {
+            hash = '-';
+            remaining = -value;
+        }
+        long divisor = 1;
+        while (divisor <= remaining / 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            hash = 31 * hash + (char) ('0' + (remaining / divisor) % 10);
+        }
+        return hash;
+    }
+
 }
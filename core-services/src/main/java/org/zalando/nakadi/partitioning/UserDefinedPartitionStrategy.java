@@ -1,8 +1,8 @@
 package org.zalando.nakadi.partitioning;
 
 import org.json.JSONException;
-import org.json.JSONObject;
 import org.zalando.nakadi.domain.EventType;
+import org.zalando.nakadi.domain.LazyJsonObject;
 import org.zalando.nakadi.exceptions.runtime.PartitioningException;
 
 import java.util.List;
@@ -10,10 +10,11 @@ import java.util.List;
 public class UserDefinedPartitionStrategy implements PartitionStrategy {
 
     @Override
-    public String calculatePartition(final EventType eventType, final JSONObject event, final List<String> partitions)
+    public String calculatePartition(final EventType eventType, final LazyJsonObject event,
+                                     final List<String> partitions)
             throws PartitioningException {
         try {
-            final String partition = event.getJSONObject("metadata").getString("partition");
+            final String partition = event.getObject("metadata").getString("partition");
             if (partitions.contains(partition)) {
                 return partition;
             } else {
@@ -0,0 +1,381 @@
+package org.zalando.nakadi.service;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.TreeCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.zalando.nakadi.domain.PublishingQuota;
+import org.zalando.nakadi.exceptions.runtime.TooManyRequestsException;
+import org.zalando.nakadi.repository.zookeeper.ZooKeeperHolder;
+import org.zalando.nakadi.service.publishing.NakadiAuditLogPublisher;
+
+import javax.annotation.Nullable;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Rate limits of publishing per application and per event type. Quotas are kept in zookeeper and cached by every node,
+ * every node enforces them on its own with token buckets, that allow bursts of up to one second of the rate.
+ * Size of the batch is known before it is parsed, so bytes are charged right away, while events are charged once the
+ * batch is parsed. A batch is rejected while the quota is exhausted by the previous ones, so one big batch may take
+ * more than the quota, but the batches that follow it are rejected until the debt is paid off.
+ */
+@Component
+public class PublishingQuotaService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PublishingQuotaService.class);
+    private static final String PATH_QUOTAS = "/nakadi/quotas";
+
+    private final ZooKeeperHolder zooKeeperHolder;
+    private final NakadiAuditLogPublisher auditLogPublisher;
+    private final ObjectMapper objectMapper;
+    private final LongSupplier nanoClock;
+    private final Meter rejections;
+    private final ConcurrentMap<String, Limiter> limiters = new ConcurrentHashMap<>();
+    private TreeCache quotasCache;
+
+    @Autowired
+    public PublishingQuotaService(final ZooKeeperHolder zooKeeperHolder,
+                                  final NakadiAuditLogPublisher auditLogPublisher,
+                                  final ObjectMapper objectMapper,
+                                  final MetricRegistry metricRegistry) {
+        this(zooKeeperHolder, auditLogPublisher, objectMapper, metricRegistry, System::nanoTime);
+    }
+
+    @VisibleForTesting
+    PublishingQuotaService(final ZooKeeperHolder zooKeeperHolder,
+                           final NakadiAuditLogPublisher auditLogPublisher,
+                           final ObjectMapper objectMapper,
+                           final MetricRegistry metricRegistry,
+                           final LongSupplier nanoClock) {
+        this.zooKeeperHolder = zooKeeperHolder;
+        this.auditLogPublisher = auditLogPublisher;
+        this.objectMapper = objectMapper;
+        this.nanoClock = nanoClock;
+        this.rejections = metricRegistry.meter("nakadi.publishing.quota.rejections");
+    }
+
+    @PostConstruct
+    public void initIt() {
+        try {
+            this.quotasCache = TreeCache.newBuilder(zooKeeperHolder.get(), PATH_QUOTAS).build();
+            this.quotasCache.start();
+        } catch (final Exception e) {
+            LOG.error(e.getMessage(), e);
+        }
+    }
+
+    @VisibleForTesting
+    void setQuotasCache(final TreeCache quotasCache) {
+        this.quotasCache = quotasCache;
+    }
+
+    @PreDestroy
+    public void cleanUp() {
+        this.quotasCache.close();
+    }
+
+    /**
+     * Charges the batch to the quotas of the event type and of the application before the batch is parsed.
+     *
+     * @throws TooManyRequestsException if any of the quotas is exhausted
+     */
+    public void checkQuota(final String etName, final String appId, final long bytes)
+            throws TooManyRequestsException {
+        final Limiter etLimiter = getLimiter(Type.PRODUCER_ET, etName);
+        final Limiter appLimiter = getLimiter(Type.PRODUCER_APP, appId);
+        if (null == etLimiter && null == appLimiter) {
+            return;
+        }
+        final long now = nanoClock.getAsLong();
+        // both quotas are checked before any is charged, so that a rejected batch does not take the other quota
+        final long waitNanos = Math.max(
+                null == etLimiter ? 0 : etLimiter.getWaitNanos(now),
+                null == appLimiter ? 0 : appLimiter.getWaitNanos(now));
+        if (waitNanos > 0) {
+            rejections.mark();
+            final long retryAfterSeconds = Math.max(1, (long) Math.ceil(
+                    waitNanos / (double) TimeUnit.SECONDS.toNanos(1)));
+            LOG.debug("Publishing of {} to {} is over the quota", appId, etName);
+            throw new TooManyRequestsException("Publishing quota of application " + appId + " or event type " +
+                    etName + " is exceeded, retry in " + retryAfterSeconds + " seconds", retryAfterSeconds);
+        }
+        if (null != etLimiter) {
+            etLimiter.chargeBytes(now, bytes);
+        }
+        if (null != appLimiter) {
+            appLimiter.chargeBytes(now, bytes);
+        }
+    }
+
+    /**
+     * Charges the events of the batch, that was admitted by {@link #checkQuota(String, String, long)}, once the
+     * number of the events is known.
+     */
+    public void chargeEvents(final String etName, final String appId, final int events) {
+        final long now = nanoClock.getAsLong();
+        final Limiter etLimiter = getLimiter(Type.PRODUCER_ET, etName);
+        if (null != etLimiter) {
+            etLimiter.chargeEvents(now, events);
+        }
+        final Limiter appLimiter = getLimiter(Type.PRODUCER_APP, appId);
+        if (null != appLimiter) {
+            appLimiter.chargeEvents(now, events);
+        }
+    }
+
+    /**
+     * Charges the bytes of the batch, that were not known when the batch was admitted, for example because it was
+     * uploaded with chunked encoding or compressed.
+     */
+    public void chargeBytes(final String etName, final String appId, final long bytes) {
+        final long now = nanoClock.getAsLong();
+        final Limiter etLimiter = getLimiter(Type.PRODUCER_ET, etName);
+        if (null != etLimiter) {
+            etLimiter.chargeBytes(now, bytes);
+        }
+        final Limiter appLimiter = getLimiter(Type.PRODUCER_APP, appId);
+        if (null != appLimiter) {
+            appLimiter.chargeBytes(now, bytes);
+        }
+    }
+
+    public Map<String, Map<String, PublishingQuota>> getQuotas() {
+        return ImmutableMap.of(
+                "event_types", getChildren(Type.PRODUCER_ET),
+                "apps", getChildren(Type.PRODUCER_APP));
+    }
+
+    public void setQuota(final String name, final Type type, final PublishingQuota quota) throws RuntimeException {
+        try {
+            final Optional<PublishingQuota> oldQuota = getQuota(type, name);
+            final CuratorFramework curator = zooKeeperHolder.get();
+            final String path = createQuotaEntryPath(name, type);
+            final byte[] data = objectMapper.writeValueAsBytes(quota);
+            if (curator.checkExists().forPath(path) == null) {
+                curator.create().creatingParentsIfNeeded().forPath(path, data);
+            } else {
+                curator.setData().forPath(path, data);
+            }
+
+            auditLogPublisher.publish(
+                    oldQuota.map(q -> new QuotaEntry(type, name, q)),
+                    Optional.of(new QuotaEntry(type, name, quota)),
+                    NakadiAuditLogPublisher.ResourceType.PUBLISHING_QUOTA,
+                    oldQuota.isPresent() ?
+                            NakadiAuditLogPublisher.ActionType.UPDATED : NakadiAuditLogPublisher.ActionType.CREATED,
+                    QuotaEntry.getId(type, name));
+        } catch (final Exception e) {
+            throw new RuntimeException("Issue occurred while writing quota to zk", e);
+        }
+    }
+
+    public void deleteQuota(final String name, final Type type) throws RuntimeException {
+        try {
+            final Optional<PublishingQuota> oldQuota = getQuota(type, name);
+            final CuratorFramework curator = zooKeeperHolder.get();
+            final String path = createQuotaEntryPath(name, type);
+            if (curator.checkExists().forPath(path) != null) {
+                curator.delete().forPath(path);
+
+                auditLogPublisher.publish(
+                        oldQuota.map(q -> new QuotaEntry(type, name, q)),
+                        Optional.empty(),
+                        NakadiAuditLogPublisher.ResourceType.PUBLISHING_QUOTA,
+                        NakadiAuditLogPublisher.ActionType.DELETED,
+                        QuotaEntry.getId(type, name));
+            }
+        } catch (final Exception e) {
+            throw new RuntimeException("Issue occurred while deleting quota from zk", e);
+        }
+    }
+
+    /**
+     * Returns the limiter of the quota from the cache of zookeeper. Limiter is recreated every time the quota is
+     * changed, that is noticed by the version of its node. Limiter is replaced atomically, so that concurrent requests
+     * share the same bucket, and never by the one of an older version, that may still be seen by a slower request.
+     */
+    @Nullable
+    private Limiter getLimiter(final Type type, final String name) {
+        final String path = createQuotaEntryPath(name, type);
+        final ChildData data;
+        try {
+            data = quotasCache.getCurrentData(path);
+        } catch (final Exception e) {
+            LOG.error(e.getMessage(), e);
+            return null;
+        }
+        if (null == data || null == data.getData() || null == data.getStat()) {
+            limiters.remove(path);
+            return null;
+        }
+        final long version = data.getStat().getMzxid();
+        return limiters.compute(path, (p, limiter) -> {
+            if (null != limiter && limiter.version >= version) {
+                return limiter;
+            }
+            return parse(path, data)
+                    .map(quota -> new Limiter(version, quota, nanoClock.getAsLong()))
+                    .orElse(null);
+        });
+    }
+
+    private Optional<PublishingQuota> getQuota(final Type type, final String name) {
+        final ChildData data = quotasCache.getCurrentData(createQuotaEntryPath(name, type));
+        return null == data ? Optional.empty() : parse(data.getPath(), data);
+    }
+
+    private Optional<PublishingQuota> parse(final String path, final ChildData data) {
+        if (null == data.getData() || data.getData().length == 0) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(objectMapper.readValue(data.getData(), PublishingQuota.class));
+        } catch (final IOException e) {
+            LOG.error("Quota {} can not be parsed, it is ignored", path, e);
+            return Optional.empty();
+        }
+    }
+
+    private Map<String, PublishingQuota> getChildren(final Type type) {
+        final Map<String, ChildData> currentChildren = quotasCache.getCurrentChildren(type.getZkPath());
+        final Map<String, PublishingQuota> result = new HashMap<>();
+        if (null != currentChildren) {
+            currentChildren.forEach((name, data) -> parse(data.getPath(), data)
+                    .ifPresent(quota -> result.put(name, quota)));
+        }
+        return result;
+    }
+
+    private String createQuotaEntryPath(final String name, final Type type) {
+        return type.getZkPath() + "/" + name;
+    }
+
+    public enum Type {
+        PRODUCER_APP("/nakadi/quotas/producers/apps"),
+        PRODUCER_ET("/nakadi/quotas/producers/event_types");
+
+        private final String zkPath;
+
+        Type(final String zkPath) {
+            this.zkPath = zkPath;
+        }
+
+        public String getZkPath() {
+            return zkPath;
+        }
+    }
+
+    public static class QuotaEntry {
+        private final Type type;
+        private final String name;
+        private final PublishingQuota quota;
+
+        public QuotaEntry(final Type type, final String name, final PublishingQuota quota) {
+            this.type = type;
+            this.name = name;
+            this.quota = quota;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public PublishingQuota getQuota() {
+            return quota;
+        }
+
+        public static String getId(final Type type, final String name) {
+            return String.format("%s:%s", type, name);
+        }
+    }
+
+    private static class Limiter {
+        private final long version;
+        @Nullable
+        private final TokenBucket events;
+        @Nullable
+        private final TokenBucket bytes;
+
+        private Limiter(final long version, final PublishingQuota quota, final long nowNanos) {
+            this.version = version;
+            this.events = null == quota.getEventsPerSecond() ? null :
+                    new TokenBucket(quota.getEventsPerSecond(), nowNanos);
+            this.bytes = null == quota.getBytesPerSecond() ? null :
+                    new TokenBucket(quota.getBytesPerSecond(), nowNanos);
+        }
+
+        private long getWaitNanos(final long nowNanos) {
+            return Math.max(
+                    null == events ? 0 : events.getWaitNanos(nowNanos),
+                    null == bytes ? 0 : bytes.getWaitNanos(nowNanos));
+        }
+
+        private void chargeEvents(final long nowNanos, final long amount) {
+            if (null != events) {
+                events.charge(nowNanos, amount);
+            }
+        }
+
+        private void chargeBytes(final long nowNanos, final long amount) {
+            if (null != bytes) {
+                bytes.charge(nowNanos, amount);
+            }
+        }
+    }
+
+    /**
+     * Bucket of tokens that is refilled at the rate of the quota up to one second of the rate. Tokens may go below
+     * zero, in that case nothing is admitted until the bucket is refilled.
+     */
+    private static class TokenBucket {
+        private final double ratePerNano;
+        private final double capacity;
+        private double tokens;
+        private long updatedAtNanos;
+
+        private TokenBucket(final long ratePerSecond, final long nowNanos) {
+            this.ratePerNano = ratePerSecond / (double) TimeUnit.SECONDS.toNanos(1);
+            this.capacity = ratePerSecond;
+            this.tokens = capacity;
+            this.updatedAtNanos = nowNanos;
+        }
+
+        private synchronized long getWaitNanos(final long nowNanos) {
+            refill(nowNanos);
+            return tokens > 0 ? 0 : (long) Math.ceil((1 - tokens) / ratePerNano);
+        }
+
+        private synchronized void charge(final long nowNanos, final long amount) {
+            refill(nowNanos);
+            tokens -= amount;
+        }
+
+        private void refill(final long nowNanos) {
+            if (nowNanos > updatedAtNanos) {
+                tokens = Math.min(capacity, tokens + (nowNanos - updatedAtNanos) * ratePerNano);
+                updatedAtNanos = nowNanos;
+            }
+        }
+    }
+}
@@ -7,6 +7,7 @@ import org.springframework.stereotype.Component;
 import org.zalando.nakadi.domain.EventOwnerHeader;
 import org.zalando.nakadi.domain.EventType;
 import org.zalando.nakadi.domain.Feature;
+import org.zalando.nakadi.domain.LazyJsonObject;
 import org.zalando.nakadi.exceptions.runtime.JsonPathAccessException;
 import org.zalando.nakadi.service.FeatureToggleService;
 import org.zalando.nakadi.util.JsonPathAccess;
@@ -24,7 +25,7 @@ public class EventOwnerExtractorFactory {
         this.featureToggleService = featureToggleService;
     }
 
-    public Function<JSONObject, EventOwnerHeader> createExtractor(final EventType eventType) {
+    public Function<LazyJsonObject, EventOwnerHeader> createExtractor(final EventType eventType) {
         final EventOwnerSelector selector = eventType.getEventOwnerSelector();
         if (null == selector || !(featureToggleService.isFeatureEnabled(Feature.EVENT_OWNER_SELECTOR_AUTHZ))) {
             return null;
@@ -40,7 +41,7 @@ public class EventOwnerExtractorFactory {
     }
 
     @VisibleForTesting
-    static Function<JSONObject, EventOwnerHeader> createPathExtractor(final EventOwnerSelector selector) {
+    static Function<LazyJsonObject, EventOwnerHeader> createPathExtractor(final EventOwnerSelector selector) {
         return (batchItem) -> {
             try {
                 final JsonPathAccess jsonPath = new JsonPathAccess(batchItem);
@@ -53,7 +54,7 @@ public class EventOwnerExtractorFactory {
     }
 
     @VisibleForTesting
-    static Function<JSONObject, EventOwnerHeader> createStaticExtractor(final EventOwnerSelector selector) {
+    static Function<LazyJsonObject, EventOwnerHeader> createStaticExtractor(final EventOwnerSelector selector) {
         final EventOwnerHeader eventOwnerHeader = new EventOwnerHeader(selector.getName(), selector.getValue());
         return batchItem -> eventOwnerHeader;
     }
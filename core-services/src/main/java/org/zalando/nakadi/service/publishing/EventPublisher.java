@@ -3,7 +3,7 @@ package org.zalando.nakadi.service.publishing;
 import com.google.common.collect.ImmutableMap;
 import io.opentracing.Span;
 import io.opentracing.tag.Tags;
-import org.json.JSONObject;
+import org.json.JSONException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -20,6 +20,8 @@ import org.zalando.nakadi.domain.EventPublishResult;
 import org.zalando.nakadi.domain.EventPublishingStatus;
 import org.zalando.nakadi.domain.EventPublishingStep;
 import org.zalando.nakadi.domain.EventType;
+import org.zalando.nakadi.domain.LazyJsonObject;
+import org.zalando.nakadi.domain.NdjsonBatchReader;
 import org.zalando.nakadi.domain.Timeline;
 import org.zalando.nakadi.enrichment.Enrichment;
 import org.zalando.nakadi.exceptions.runtime.AccessDeniedException;
@@ -28,32 +30,31 @@ import org.zalando.nakadi.exceptions.runtime.EventPublishingException;
 import org.zalando.nakadi.exceptions.runtime.EventTypeTimeoutException;
 import org.zalando.nakadi.exceptions.runtime.EventValidationException;
 import org.zalando.nakadi.exceptions.runtime.InternalNakadiException;
-import org.zalando.nakadi.exceptions.runtime.InvalidPartitionKeyFieldsException;
-import org.zalando.nakadi.exceptions.runtime.JsonPathAccessException;
 import org.zalando.nakadi.exceptions.runtime.NoSuchEventTypeException;
 import org.zalando.nakadi.exceptions.runtime.PartitioningException;
 import org.zalando.nakadi.exceptions.runtime.PublishEventOwnershipException;
 import org.zalando.nakadi.exceptions.runtime.ServiceTemporarilyUnavailableException;
+import org.zalando.nakadi.partitioning.EventKeyExtractor;
 import org.zalando.nakadi.partitioning.PartitionResolver;
-import org.zalando.nakadi.partitioning.PartitionStrategy;
 import org.zalando.nakadi.service.AuthorizationValidator;
 import org.zalando.nakadi.service.TracingService;
 import org.zalando.nakadi.service.timeline.TimelineService;
 import org.zalando.nakadi.service.timeline.TimelineSync;
-import org.zalando.nakadi.util.JsonPathAccess;
 import org.zalando.nakadi.validation.EventTypeValidator;
 import org.zalando.nakadi.validation.ValidationError;
 
+import javax.annotation.Nullable;
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeoutException;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
-import static org.zalando.nakadi.validation.JsonSchemaEnrichment.DATA_PATH_PREFIX;
-
 @Component
 public class EventPublisher {
 
@@ -68,6 +69,7 @@ public class EventPublisher {
     private final TimelineSync timelineSync;
     private final AuthorizationValidator authValidator;
     private final EventOwnerExtractorFactory eventOwnerExtractorFactory;
+    private final GroupCommitPublisher groupCommitPublisher;
 
     @Autowired
     public EventPublisher(final TimelineService timelineService,
@@ -77,7 +79,8 @@ public class EventPublisher {
                           final NakadiSettings nakadiSettings,
                           final TimelineSync timelineSync,
                           final AuthorizationValidator authValidator,
-                          final EventOwnerExtractorFactory eventOwnerExtractorFactory) {
+                          final EventOwnerExtractorFactory eventOwnerExtractorFactory,
+                          final GroupCommitPublisher groupCommitPublisher) {
         this.timelineService = timelineService;
         this.eventTypeCache = eventTypeCache;
         this.partitionResolver = partitionResolver;
@@ -86,9 +89,10 @@ public class EventPublisher {
         this.timelineSync = timelineSync;
         this.authValidator = authValidator;
         this.eventOwnerExtractorFactory = eventOwnerExtractorFactory;
+        this.groupCommitPublisher = groupCommitPublisher;
     }
 
-    public EventPublishResult publish(final String events, final String eventTypeName, final Span parentSpan)
+    public EventPublishResult publish(final byte[] events, final String eventTypeName, final Span parentSpan)
             throws NoSuchEventTypeException,
             InternalNakadiException,
             EnrichmentException,
@@ -100,7 +104,7 @@ public class EventPublisher {
         return processInternal(events, eventTypeName, true, parentSpan, false);
     }
 
-    public EventPublishResult delete(final String events, final String eventTypeName, final Span parentSpan)
+    public EventPublishResult delete(final byte[] events, final String eventTypeName, final Span parentSpan)
             throws NoSuchEventTypeException,
             InternalNakadiException,
             EnrichmentException,
@@ -112,7 +116,107 @@ public class EventPublisher {
         return processInternal(events, eventTypeName, true, parentSpan, true);
     }
 
-    EventPublishResult processInternal(final String events,
+    /**
+     * Publishes the events without blocking the calling thread while waiting for the storage to acknowledge them.
+     * Usage of event type is released when the returned future is completed.
+     */
+    public CompletableFuture<EventPublishResult> publishAsync(
+            final byte[] events, final String eventTypeName, final Span parentSpan)
+            throws NoSuchEventTypeException,
+            InternalNakadiException,
+            EventTypeTimeoutException,
+            AccessDeniedException,
+            ServiceTemporarilyUnavailableException {
+        return processInternal(events, eventTypeName, true, parentSpan, false, true);
+    }
+
+    public CompletableFuture<EventPublishResult> deleteAsync(
+            final byte[] events, final String eventTypeName, final Span parentSpan)
+            throws NoSuchEventTypeException,
+            InternalNakadiException,
+            EventTypeTimeoutException,
+            AccessDeniedException,
+            ServiceTemporarilyUnavailableException {
+        return processInternal(events, eventTypeName, true, parentSpan, true, true);
+    }
+
+    /**
+     * Publishes the events while they are being read, chunk by chunk. Every chunk is validated and submitted on its
+     * own, and usage of event type is held only while a chunk is published, so that a long upload does not delay
+     * timeline switch. Once a chunk is not submitted, or a line is not valid json, the events that follow it are not
+     * published and are reported as aborted, the chunks that were submitted before stay submitted. If nothing is
+     * submitted yet, malformed json and timeout of waiting for timeline switch fail the whole request instead.
+     */
+    public EventPublishResult publishStream(final NdjsonBatchReader events, final String eventTypeName,
+                                            final Span parentSpan)
+            throws IOException,
+            JSONException,
+            NoSuchEventTypeException,
+            InternalNakadiException,
+            EventTypeTimeoutException,
+            AccessDeniedException,
+            ServiceTemporarilyUnavailableException {
+        authValidator.authorizeEventTypeWrite(eventTypeCache.getEventType(eventTypeName));
+        final List<BatchItemResponse> responses = new ArrayList<>();
+        // status and step of the first chunk that was not submitted
+        EventPublishingStatus failedStatus = null;
+        EventPublishingStep failedStep = EventPublishingStep.NONE;
+        boolean partiallySubmitted = false;
+        while (true) {
+            final List<BatchItem> chunk;
+            try {
+                chunk = events.next();
+            } catch (final JSONException e) {
+                if (!partiallySubmitted && null == failedStatus) {
+                    throw e;
+                }
+                LOG.debug("Malformed event after submitted ones: {}", e.getMessage());
+                final BatchItemResponse response = new BatchItemResponse();
+                if (null == failedStatus) {
+                    response.setPublishingStatus(EventPublishingStatus.FAILED);
+                    response.setStep(EventPublishingStep.VALIDATING);
+                    response.setDetail(e.getMessage());
+                    failedStatus = EventPublishingStatus.ABORTED;
+                    failedStep = EventPublishingStep.VALIDATING;
+                }
+                responses.add(response);
+                continue;
+            }
+            if (chunk.isEmpty()) {
+                break;
+            }
+            if (null != failedStatus) {
+                responses.addAll(responses(chunk));
+                continue;
+            }
+            final EventPublishResult result;
+            try {
+                result = processBatch(chunk, eventTypeName, false, parentSpan, false, false).join();
+            } catch (final EventTypeTimeoutException e) {
+                if (!partiallySubmitted) {
+                    throw e;
+                }
+                chunk.forEach(item -> item.updateStatusAndDetail(EventPublishingStatus.FAILED, e.getMessage()));
+                responses.addAll(responses(chunk));
+                failedStatus = EventPublishingStatus.FAILED;
+                continue;
+            }
+            responses.addAll(result.getResponses());
+            if (result.getStatus() == EventPublishingStatus.SUBMITTED) {
+                partiallySubmitted = true;
+            } else {
+                failedStatus = result.getStatus();
+                failedStep = result.getStep();
+            }
+        }
+        if (null == failedStatus) {
+            return new EventPublishResult(EventPublishingStatus.SUBMITTED, EventPublishingStep.NONE, responses);
+        }
+        return new EventPublishResult(
+                partiallySubmitted ? EventPublishingStatus.FAILED : failedStatus, failedStep, responses);
+    }
+
+    EventPublishResult processInternal(final byte[] events,
                                        final String eventTypeName,
                                        final boolean useAuthz,
                                        final Span parentSpan,
@@ -120,9 +224,31 @@ public class EventPublisher {
             throws NoSuchEventTypeException, InternalNakadiException, EventTypeTimeoutException,
             AccessDeniedException, ServiceTemporarilyUnavailableException, PublishEventOwnershipException,
             EnrichmentException, PartitioningException {
+        // synchronous processing always returns completed future
+        return processInternal(events, eventTypeName, useAuthz, parentSpan, delete, false).join();
+    }
+
+    private CompletableFuture<EventPublishResult> processInternal(final byte[] events,
+                                                                  final String eventTypeName,
+                                                                  final boolean useAuthz,
+                                                                  final Span parentSpan,
+                                                                  final boolean delete,
+                                                                  final boolean async)
+            throws NoSuchEventTypeException, InternalNakadiException, EventTypeTimeoutException,
+            AccessDeniedException, ServiceTemporarilyUnavailableException {
+        return processBatch(BatchFactory.from(events), eventTypeName, useAuthz, parentSpan, delete, async);
+    }
+
+    private CompletableFuture<EventPublishResult> processBatch(final List<BatchItem> batch,
+                                                               final String eventTypeName,
+                                                               final boolean useAuthz,
+                                                               final Span parentSpan,
+                                                               final boolean delete,
+                                                               final boolean async)
+            throws NoSuchEventTypeException, InternalNakadiException, EventTypeTimeoutException,
+            AccessDeniedException, ServiceTemporarilyUnavailableException {
 
         Closeable publishingCloser = null;
-        final List<BatchItem> batch = BatchFactory.from(events);
         try {
             publishingCloser = timelineSync.workWithEventType(eventTypeName, nakadiSettings.getTimelineWaitTimeoutMs());
 
@@ -133,31 +259,47 @@ public class EventPublisher {
             validateEventOwnership(eventType, batch);
             validate(batch, eventType, parentSpan, delete);
             partition(batch, eventType);
-            setEventKey(batch, eventType);
             if (!delete) {
                 enrich(batch, eventType);
             }
-            submit(batch, eventType, parentSpan, delete);
-
-            return ok(batch);
+            if (!async) {
+                submit(batch, eventType, parentSpan, delete);
+                return CompletableFuture.completedFuture(ok(batch));
+            }
+            final CompletableFuture<Void> submitted = submitAsync(batch, eventType, parentSpan, delete);
+            // from now on usage of event type is released on completion of publishing
+            final Closeable asyncPublishingCloser = publishingCloser;
+            publishingCloser = null;
+            return submitted.handle((ignore, ex) -> {
+                closePublishing(asyncPublishingCloser);
+                if (null == ex) {
+                    return ok(batch);
+                }
+                final Throwable cause = ex instanceof CompletionException ? ex.getCause() : ex;
+                if (!(cause instanceof EventPublishingException)) {
+                    throw new CompletionException(cause);
+                }
+                LOG.error("error publishing event", cause);
+                return failed(batch);
+            });
         } catch (final EventValidationException e) {
             LOG.info(
                     "Event validation error: {}",
                     Optional.ofNullable(e.getMessage()).map(s -> s.replaceAll("\n", "; ")).orElse(null)
             );
-            return aborted(EventPublishingStep.VALIDATING, batch);
+            return CompletableFuture.completedFuture(aborted(EventPublishingStep.VALIDATING, batch));
         } catch (final PartitioningException e) {
             LOG.debug("Event partition error: {}", e.getMessage());
-            return aborted(EventPublishingStep.PARTITIONING, batch);
+            return CompletableFuture.completedFuture(aborted(EventPublishingStep.PARTITIONING, batch));
         } catch (final EnrichmentException e) {
             LOG.debug("Event enrichment error: {}", e.getMessage());
-            return aborted(EventPublishingStep.ENRICHING, batch);
+            return CompletableFuture.completedFuture(aborted(EventPublishingStep.ENRICHING, batch));
         } catch (final PublishEventOwnershipException e) {
             LOG.debug("Event ownership error: {}", e.getMessage());
-            return aborted(EventPublishingStep.VALIDATING, batch);
+            return CompletableFuture.completedFuture(aborted(EventPublishingStep.VALIDATING, batch));
         } catch (final EventPublishingException e) {
             LOG.error("error publishing event", e);
-            return failed(batch);
+            return CompletableFuture.completedFuture(failed(batch));
         } catch (final InterruptedException e) {
             Thread.currentThread().interrupt();
             LOG.error("Failed to wait for timeline switch", e);
@@ -166,13 +308,17 @@ public class EventPublisher {
             LOG.error("Failed to wait for timeline switch", e);
             throw new EventTypeTimeoutException("Event type is currently in maintenance, please repeat request");
         } finally {
-            try {
-                if (publishingCloser != null) {
-                    publishingCloser.close();
-                }
-            } catch (final IOException e) {
-                LOG.error("Exception occurred when releasing usage of event-type", e);
+            closePublishing(publishingCloser);
+        }
+    }
+
+    private static void closePublishing(@Nullable final Closeable publishingCloser) {
+        try {
+            if (publishingCloser != null) {
+                publishingCloser.close();
             }
+        } catch (final IOException e) {
+            LOG.error("Exception occurred when releasing usage of event-type", e);
         }
     }
 
@@ -197,11 +343,14 @@ public class EventPublisher {
 
     private void partition(final List<BatchItem> batch, final EventType eventType)
             throws PartitioningException {
+        final EventKeyExtractor keyExtractor = eventTypeCache.getEventKeyExtractor(eventType.getName());
         for (final BatchItem item : batch) {
             item.setStep(EventPublishingStep.PARTITIONING);
             try {
-                final String partitionId = partitionResolver.resolvePartition(eventType, item.getEvent());
+                final EventKeyExtractor.EventKeys eventKeys = keyExtractor.extract(item.getEvent());
+                final String partitionId = partitionResolver.resolvePartition(eventType, item.getEvent(), eventKeys);
                 item.setPartition(partitionId);
+                item.setEventKey(eventKeys.getEventKey());
             } catch (final PartitioningException e) {
                 item.updateStatusAndDetail(EventPublishingStatus.FAILED, e.getMessage());
                 throw e;
@@ -209,38 +358,9 @@ public class EventPublisher {
         }
     }
 
-    private void setEventKey(final List<BatchItem> batch, final EventType eventType) {
-        if (eventType.getCleanupPolicy() == CleanupPolicy.COMPACT) {
-            for (final BatchItem item : batch) {
-                final String compactionKey = item.getEvent()
-                        .getJSONObject("metadata")
-                        .getString("partition_compaction_key");
-                item.setEventKey(compactionKey);
-            }
-        } else if (PartitionStrategy.HASH_STRATEGY.equals(eventType.getPartitionStrategy())) {
-            final List<String> partitionKeyFields = eventType.getPartitionKeyFields();
-            // we will set event key only if there is exactly one partition key field,
-            // in other case it's not clear what should be set as event key
-            if (partitionKeyFields.size() == 1) {
-                String partitionKeyField = partitionKeyFields.get(0);
-                if (EventCategory.DATA.equals(eventType.getCategory())) {
-                    partitionKeyField = DATA_PATH_PREFIX + partitionKeyField;
-                }
-                for (final BatchItem item : batch) {
-                    final JsonPathAccess jsonPath = new JsonPathAccess(item.getEvent());
-                    try {
-                        final String eventKey = jsonPath.get(partitionKeyField).toString();
-                        item.setEventKey(eventKey);
-                    } catch (final JsonPathAccessException e) {
-                        throw new InvalidPartitionKeyFieldsException(e.getMessage());
-                    }
-                }
-            }
-        }
-    }
-
     private void validateEventOwnership(final EventType eventType, final List<BatchItem> batchItems) {
-        final Function<JSONObject, EventOwnerHeader> extractor = eventOwnerExtractorFactory.createExtractor(eventType);
+        final Function<LazyJsonObject, EventOwnerHeader> extractor =
+                eventOwnerExtractorFactory.createExtractor(eventType);
         if (null == extractor) {
             return;
         }
@@ -278,7 +398,7 @@ public class EventPublisher {
                     item.updateStatusAndDetail(EventPublishingStatus.FAILED, e.getMessage());
                     if (eventType.getCategory() != EventCategory.UNDEFINED) {
                         validationSpan.log(ImmutableMap.of(
-                                "event.id", item.getEvent().getJSONObject("metadata").getString("eid"),
+                                "event.id", String.valueOf(item.getResponse().getEid()),
                                 "error", e.getMessage()));
                     }
 
@@ -298,7 +418,8 @@ public class EventPublisher {
         final Span publishSpan = TracingService.getNewSpanWithParent(parentSpan, "publishing_to_kafka")
                 .setTag(Tags.MESSAGE_BUS_DESTINATION.getKey(), topic);
         try {
-            timelineService.getTopicRepository(eventType).syncPostBatch(topic, batch, eventType.getName(), delete);
+            groupCommitPublisher.syncPostBatch(
+                    timelineService.getTopicRepository(eventType), topic, batch, eventType.getName(), delete);
         } catch (final EventPublishingException epe) {
             publishSpan.log(epe.getMessage());
             throw epe;
@@ -307,7 +428,31 @@ public class EventPublisher {
         }
     }
 
-    private void validateSchema(final JSONObject event, final EventType eventType)
+    private CompletableFuture<Void> submitAsync(
+            final List<BatchItem> batch, final EventType eventType, final Span parentSpan, final boolean delete)
+            throws EventPublishingException {
+        final Timeline activeTimeline = timelineService.getActiveTimeline(eventType);
+        final String topic = activeTimeline.getTopic();
+        final Span publishSpan = TracingService.getNewSpanWithParent(parentSpan, "publishing_to_kafka")
+                .setTag(Tags.MESSAGE_BUS_DESTINATION.getKey(), topic);
+        final CompletableFuture<Void> result;
+        try {
+            result = timelineService.getTopicRepository(eventType)
+                    .asyncPostBatch(topic, batch, eventType.getName(), delete);
+        } catch (final RuntimeException e) {
+            publishSpan.log(e.getMessage());
+            publishSpan.finish();
+            throw e;
+        }
+        return result.whenComplete((ignore, ex) -> {
+            if (null != ex) {
+                publishSpan.log(ex.getMessage());
+            }
+            publishSpan.finish();
+        });
+    }
+
+    private void validateSchema(final LazyJsonObject event, final EventType eventType)
             throws EventValidationException, InternalNakadiException, NoSuchEventTypeException {
 
         final EventTypeValidator validator = eventTypeCache.getValidator(eventType.getName());
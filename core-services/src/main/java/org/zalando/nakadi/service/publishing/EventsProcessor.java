@@ -10,6 +10,7 @@ import org.springframework.stereotype.Component;
 import org.zalando.nakadi.util.FlowIdUtils;
 import org.zalando.nakadi.util.UUIDGenerator;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
@@ -81,7 +82,8 @@ public class EventsProcessor {
                     LOG.trace("No kpi events send to {}", etName);
                     return;
                 }
-                eventPublisher.processInternal(jsonArray.toString(), etName, false, null, false);
+                eventPublisher.processInternal(
+                        jsonArray.toString().getBytes(StandardCharsets.UTF_8), etName, false, null, false);
                 LOG.trace("Published batch of {} to {}", eventsCount, etName);
             } catch (final Exception e) {
                 LOG.error("Error occurred while publishing events to {}, {}", etName, e.getMessage(), e);
@@ -0,0 +1,155 @@
+package org.zalando.nakadi.service.publishing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.zalando.nakadi.domain.BatchItem;
+import org.zalando.nakadi.domain.EventPublishingStatus;
+import org.zalando.nakadi.exceptions.runtime.EventPublishingException;
+import org.zalando.nakadi.repository.TopicRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces batches that are published concurrently to the same topic into one submission to the storage (group
+ * commit). The first request that arrives becomes the leader of the group: it waits for the linger time (or until the
+ * group is full), and publishes the events of all the requests that joined the group in the meantime. Statuses of the
+ * events are set by the storage on the batch items themselves, so every request gets the responses for its own
+ * events.
+ * Group commit is disabled when linger time is not positive, in this case every batch is published on its own.
+ */
+@Component
+public class GroupCommitPublisher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GroupCommitPublisher.class);
+
+    private final long lingerMs;
+    private final int maxGroupEvents;
+    private final ConcurrentMap<String, Group> groups = new ConcurrentHashMap<>();
+
+    @Autowired
+    public GroupCommitPublisher(
+            @Value("${nakadi.publishing.group-commit.linger-ms:0}") final long lingerMs,
+            @Value("${nakadi.publishing.group-commit.max-events:1000}") final int maxGroupEvents) {
+        this.lingerMs = lingerMs;
+        this.maxGroupEvents = maxGroupEvents;
+    }
+
+    public void syncPostBatch(final TopicRepository topicRepository, final String topic, final List<BatchItem> batch,
+                              final String eventType, final boolean delete) throws EventPublishingException {
+        if (lingerMs <= 0) {
+            topicRepository.syncPostBatch(topic, batch, eventType, delete);
+            return;
+        }
+        final String key = (delete ? "delete:" : "publish:") + topic;
+        final Group group = join(key, batch);
+        if (group.leader == Thread.currentThread()) {
+            publishGroup(key, group, topicRepository, topic, eventType, delete);
+        }
+        waitForGroup(group, batch);
+    }
+
+    private Group join(final String key, final List<BatchItem> batch) {
+        while (true) {
+            final Group group = groups.computeIfAbsent(key, ignore -> new Group());
+            synchronized (group) {
+                if (!group.closed && (group.items.isEmpty() || group.items.size() + batch.size() <= maxGroupEvents)) {
+                    if (group.items.isEmpty()) {
+                        group.leader = Thread.currentThread();
+                    }
+                    group.items.addAll(batch);
+                    if (group.items.size() >= maxGroupEvents) {
+                        group.notifyAll();
+                    }
+                    return group;
+                }
+            }
+            // group is already being published or is full, the next one should be started
+            groups.remove(key, group);
+        }
+    }
+
+    private void publishGroup(final String key, final Group group, final TopicRepository topicRepository,
+                              final String topic, final String eventType, final boolean delete) {
+        final List<BatchItem> items;
+        try {
+            synchronized (group) {
+                final long finishAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+                long waitNanos = finishAt - System.nanoTime();
+                while (group.items.size() < maxGroupEvents && waitNanos > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(group, waitNanos);
+                    waitNanos = finishAt - System.nanoTime();
+                }
+                group.closed = true;
+                items = group.items;
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            closeAndFail(key, group, new EventPublishingException("Interrupted publishing message to kafka", e));
+            return;
+        }
+        groups.remove(key, group);
+        try {
+            topicRepository.syncPostBatch(topic, items, eventType, delete);
+            group.result.complete(null);
+        } catch (final RuntimeException e) {
+            group.result.completeExceptionally(e);
+        } finally {
+            // other requests of the group must never wait forever
+            group.result.completeExceptionally(new EventPublishingException("Failed to publish group of events"));
+        }
+    }
+
+    private void closeAndFail(final String key, final Group group, final RuntimeException e) {
+        synchronized (group) {
+            group.closed = true;
+        }
+        groups.remove(key, group);
+        group.result.completeExceptionally(e);
+    }
+
+    private static void waitForGroup(final Group group, final List<BatchItem> batch) throws EventPublishingException {
+        try {
+            group.result.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failUnpublished(batch, "interrupted");
+            throw new EventPublishingException("Interrupted publishing message to kafka", e);
+        } catch (final ExecutionException e) {
+            if (group.leader == Thread.currentThread() && e.getCause() instanceof RuntimeException
+                    && !(e.getCause() instanceof EventPublishingException)) {
+                // unexpected errors are reported by the leader exactly the same way as without grouping
+                throw (RuntimeException) e.getCause();
+            }
+            LOG.debug("Publishing of the group of {} events failed", group.items.size(), e.getCause());
+        }
+        // the group may fail because of events of other requests, only the own events matter
+        if (batch.stream().anyMatch(item ->
+                item.getResponse().getPublishingStatus() != EventPublishingStatus.SUBMITTED)) {
+            failUnpublished(batch, "internal error");
+            throw new EventPublishingException("Internal error publishing message to kafka");
+        }
+    }
+
+    private static void failUnpublished(final List<BatchItem> batch, final String reason) {
+        batch.stream()
+                .filter(item -> item.getResponse().getPublishingStatus() != EventPublishingStatus.SUBMITTED)
+                .filter(item -> item.getResponse().getDetail().isEmpty())
+                .forEach(item -> item.updateStatusAndDetail(EventPublishingStatus.FAILED, reason));
+    }
+
+    private static class Group {
+        private final List<BatchItem> items = new ArrayList<>();
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        private Thread leader;
+        private boolean closed;
+    }
+}
@@ -103,7 +103,8 @@ public class NakadiAuditLogPublisher {
         FEATURE,
         ADMINS,
         CURSORS,
-        BLACKLIST_ENTRY
+        BLACKLIST_ENTRY,
+        PUBLISHING_QUOTA
     }
 
     public enum ActionType {
@@ -0,0 +1,133 @@
+package org.zalando.nakadi.service.publishing;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Suppliers;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.zalando.nakadi.exceptions.runtime.TooManyRequestsException;
+import org.zalando.nakadi.repository.TopicRepositoryHolder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Node-wide admission control of publishing. When the storage slows down, publishing requests pile up in the node and
+ * fill the buffer of the producers, after that every request blocks a thread until it times out, whatever event type
+ * it publishes to. To avoid that, requests are rejected right away when either the size of the batches that are being
+ * published by the node is over the budget or the buffer of the producers is almost full. Rejected clients are told
+ * to retry once the batches that are in flight are expected to be published, judging by the recent publishing rate.
+ * A batch is always admitted when nothing is in flight, so batches bigger than the budget are still published.
+ */
+@Component
+public class PublishingAdmissionControl {
+
+    private static final long BUFFER_CHECK_INTERVAL_MS = 100;
+
+    private final long maxInFlightBytes;
+    private final double maxBufferUtilization;
+    private final long maxRetryAfterSeconds;
+    private final DoubleSupplier bufferUtilization;
+    private final AtomicLong inFlightBytes = new AtomicLong();
+    private final Meter completedBytes;
+    private final Meter rejections;
+
+    @Autowired
+    public PublishingAdmissionControl(
+            @Value("${nakadi.publishing.admission.max-in-flight-bytes:0}") final long maxInFlightBytes,
+            @Value("${nakadi.publishing.admission.max-buffer-utilization:0.9}") final double maxBufferUtilization,
+            @Value("${nakadi.publishing.admission.max-retry-after-seconds:30}") final long maxRetryAfterSeconds,
+            final TopicRepositoryHolder topicRepositoryHolder,
+            final MetricRegistry metricRegistry) {
+        this(maxInFlightBytes, maxBufferUtilization, maxRetryAfterSeconds,
+                cachedBufferUtilization(topicRepositoryHolder), metricRegistry);
+    }
+
+    @VisibleForTesting
+    PublishingAdmissionControl(final long maxInFlightBytes, final double maxBufferUtilization,
+                               final long maxRetryAfterSeconds, final DoubleSupplier bufferUtilization,
+                               final MetricRegistry metricRegistry) {
+        this.maxInFlightBytes = maxInFlightBytes;
+        this.maxBufferUtilization = maxBufferUtilization;
+        this.maxRetryAfterSeconds = maxRetryAfterSeconds;
+        this.bufferUtilization = bufferUtilization;
+        this.completedBytes = metricRegistry.meter("nakadi.publishing.admission.completed_bytes");
+        this.rejections = metricRegistry.meter("nakadi.publishing.admission.rejections");
+        metricRegistry.register("nakadi.publishing.admission.in_flight_bytes", (Gauge<Long>) inFlightBytes::get);
+    }
+
+    /**
+     * Admits the batch for publishing, the admission must be released when the batch is published or failed.
+     *
+     * @param bytes size of the batch
+     * @throws TooManyRequestsException if the node is overloaded with publishing
+     */
+    public Admission admit(final long bytes) throws TooManyRequestsException {
+        final double utilization = bufferUtilization.getAsDouble();
+        if (utilization > maxBufferUtilization) {
+            throw reject(String.format("Publishing buffer of the node is %.0f%% full", utilization * 100));
+        }
+        while (true) {
+            final long inFlight = inFlightBytes.get();
+            if (maxInFlightBytes > 0 && inFlight > 0 && inFlight + bytes > maxInFlightBytes) {
+                throw reject("Node is publishing " + inFlight + " bytes already");
+            }
+            if (inFlightBytes.compareAndSet(inFlight, inFlight + bytes)) {
+                return new Admission(bytes);
+            }
+        }
+    }
+
+    long getInFlightBytes() {
+        return inFlightBytes.get();
+    }
+
+    /**
+     * Estimates the time it takes to publish the batches that are in flight, at the publishing rate of the last
+     * minute. If nothing was published recently, the storage is considered to be stuck, and the longest delay is used.
+     */
+    @VisibleForTesting
+    long getRetryAfterSeconds() {
+        final double bytesPerSecond = completedBytes.getOneMinuteRate();
+        if (bytesPerSecond < 1) {
+            return maxRetryAfterSeconds;
+        }
+        final long seconds = (long) Math.ceil(inFlightBytes.get() / bytesPerSecond);
+        return Math.max(1, Math.min(maxRetryAfterSeconds, seconds));
+    }
+
+    private TooManyRequestsException reject(final String reason) {
+        rejections.mark();
+        final long retryAfterSeconds = getRetryAfterSeconds();
+        return new TooManyRequestsException(reason + ", retry in " + retryAfterSeconds + " seconds",
+                retryAfterSeconds);
+    }
+
+    private static DoubleSupplier cachedBufferUtilization(final TopicRepositoryHolder topicRepositoryHolder) {
+        // metrics of all the producers are scanned to find the utilization, so it is not done for every request
+        final com.google.common.base.Supplier<Double> utilization = Suppliers.memoizeWithExpiration(
+                topicRepositoryHolder::getPublishingBufferUtilization, BUFFER_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        return utilization::get;
+    }
+
+    public class Admission {
+        private final long bytes;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Admission(final long bytes) {
+            this.bytes = bytes;
+        }
+
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                inFlightBytes.addAndGet(-bytes);
+                completedBytes.mark(bytes);
+            }
+        }
+    }
+}
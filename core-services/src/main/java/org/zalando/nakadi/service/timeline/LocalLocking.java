@@ -1,74 +1,99 @@
 package org.zalando.nakadi.service.timeline;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 import java.io.Closeable;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
+/**
+ * Local (node) part of event type locking during timeline switch. Every event type has its own lock state, so that
+ * locking of one event type blocks only publishers of this event type. Publishing to an unlocked event type takes
+ * only an increment and a decrement of a counter, monitor of the event type is used only while it is locked.
+ */
 public class LocalLocking {
-    private static final Logger LOG = LoggerFactory.getLogger(LocalLocking.class);
-    private final Set<String> lockedEventTypes = new HashSet<>();
-    private final Map<String, Integer> eventTypesBeingPublished = new HashMap<>();
-    private final Object lock = new Object();
+    private final ConcurrentMap<String, EventTypeLock> locks = new ConcurrentHashMap<>();
 
     public Closeable workWithEventType(final String eventType, final long timeoutMs)
             throws InterruptedException, TimeoutException {
+        final EventTypeLock lock = getLock(eventType);
         final long finishAt = System.currentTimeMillis() + timeoutMs;
-        synchronized (lock) {
-            long now = System.currentTimeMillis();
-            while (now < finishAt && lockedEventTypes.contains(eventType)) {
-                lock.wait(finishAt - now);
-                now = System.currentTimeMillis();
-            }
-            if (lockedEventTypes.contains(eventType)) {
-                throw new TimeoutException("Timed out while waiting for event type " + eventType +
-                        " to unlock within " + timeoutMs + " ms");
+        while (true) {
+            if (!lock.locked) {
+                lock.publishers.incrementAndGet();
+                // locking thread sets the flag before it checks the publishers, so one of them sees the other
+                if (!lock.locked) {
+                    return lock::release;
+                }
+                lock.release();
             }
-            eventTypesBeingPublished.put(eventType, eventTypesBeingPublished.getOrDefault(eventType, 0) + 1);
-        }
-        return () -> {
             synchronized (lock) {
-                final int currentCount = eventTypesBeingPublished.get(eventType);
-                if (1 == currentCount) {
-                    eventTypesBeingPublished.remove(eventType);
-                    lock.notifyAll();
-                } else {
-                    eventTypesBeingPublished.put(eventType, currentCount - 1);
+                long now = System.currentTimeMillis();
+                while (now < finishAt && lock.locked) {
+                    lock.wait(finishAt - now);
+                    now = System.currentTimeMillis();
+                }
+                if (lock.locked) {
+                    throw new TimeoutException("Timed out while waiting for event type " + eventType +
+                            " to unlock within " + timeoutMs + " ms");
                 }
             }
-        };
+        }
     }
 
-    public Set<String> getUnlockedEventTypes(final Set<String> lockedEventTypesUpdated) {
-        synchronized (lock) {
-            return this.lockedEventTypes.stream()
-                    .filter(v -> !lockedEventTypesUpdated.contains(v))
-                    .collect(Collectors.toSet());
-        }
+    public synchronized Set<String> getUnlockedEventTypes(final Set<String> lockedEventTypesUpdated) {
+        return getLockedEventTypes().stream()
+                .filter(v -> !lockedEventTypesUpdated.contains(v))
+                .collect(Collectors.toSet());
     }
 
-    public void updateLockedEventTypes(final Set<String> lockedEventTypes) throws InterruptedException {
-        synchronized (lock) {
-            this.lockedEventTypes.clear();
-            this.lockedEventTypes.addAll(lockedEventTypes);
-            boolean haveUsage = true;
-            while (haveUsage) {
-                final List<String> stillLocked = this.lockedEventTypes.stream()
-                        .filter(eventTypesBeingPublished::containsKey).collect(Collectors.toList());
-                haveUsage = !stillLocked.isEmpty();
-                if (haveUsage) {
-                    LOG.info("Event types are still locked: {}", stillLocked);
-                    lock.wait();
-                }
+    /**
+     * Locks the event types and unlocks all the others. Locking does not wait for the publishers that are already
+     * publishing to the event types, so that the event types that are locked at the same time do not wait for each
+     * other, see {@link #hasPublishers(String)}.
+     */
+    public synchronized void updateLockedEventTypes(final Set<String> lockedEventTypes) {
+        for (final Map.Entry<String, EventTypeLock> entry : locks.entrySet()) {
+            if (entry.getValue().locked && !lockedEventTypes.contains(entry.getKey())) {
+                entry.getValue().unlock();
             }
-            lock.notifyAll();
+        }
+        for (final String eventType : lockedEventTypes) {
+            getLock(eventType).locked = true;
+        }
+    }
+
+    public boolean hasPublishers(final String eventType) {
+        final EventTypeLock lock = locks.get(eventType);
+        return null != lock && lock.publishers.get() > 0;
+    }
+
+    private Set<String> getLockedEventTypes() {
+        return locks.entrySet().stream()
+                .filter(e -> e.getValue().locked)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toSet());
+    }
+
+    private EventTypeLock getLock(final String eventType) {
+        final EventTypeLock lock = locks.get(eventType);
+        return null != lock ? lock : locks.computeIfAbsent(eventType, et -> new EventTypeLock());
+    }
+
+    private static class EventTypeLock {
+        private final AtomicInteger publishers = new AtomicInteger();
+        private volatile boolean locked;
+
+        private void release() {
+            publishers.decrementAndGet();
+        }
+
+        private synchronized void unlock() {
+            locked = false;
+            notifyAll();
         }
     }
 }
@@ -13,6 +13,7 @@ import org.zalando.nakadi.exceptions.runtime.NakadiRuntimeException;
 import org.zalando.nakadi.exceptions.runtime.ServiceTemporarilyUnavailableException;
 import org.zalando.nakadi.repository.EventConsumer;
 import org.zalando.nakadi.repository.TopicRepository;
+import org.zalando.nakadi.repository.kafka.EventTailCache;
 import org.zalando.nakadi.repository.kafka.KafkaFactory;
 import org.zalando.nakadi.util.NakadiCollectionUtils;
 
@@ -59,20 +60,33 @@ public class MultiTimelineEventConsumer implements EventConsumer.ReassignableEve
      * for each event type partition within current timeline.
      */
     private final Map<EventTypePartition, String> borderOffsets = new HashMap<>();
+    /**
+     * Partitions that are not fetched until they are resumed. Pause is applied to the underlying consumers once again
+     * every time they are recreated.
+     */
+    private final Set<EventTypePartition> pausedPartitions = new HashSet<>();
+    /**
+     * Partitions that are read from the tail cache, they are paused in the underlying consumers, that are moved to the
+     * latest positions only once the partitions are not found in the cache anymore.
+     */
+    private final Set<EventTypePartition> cachedPartitions = new HashSet<>();
     private final TimelineService timelineService;
     private final TimelineSync timelineSync;
     private final AtomicBoolean timelinesChanged = new AtomicBoolean(false);
     private final Comparator<NakadiCursor> comparator;
+    private final EventTailCache tailCache;
 
     public MultiTimelineEventConsumer(
             final String clientId,
             final TimelineService timelineService,
             final TimelineSync timelineSync,
-            final Comparator<NakadiCursor> comparator) {
+            final Comparator<NakadiCursor> comparator,
+            final EventTailCache tailCache) {
         this.clientId = clientId;
         this.timelineService = timelineService;
         this.timelineSync = timelineSync;
         this.comparator = comparator;
+        this.tailCache = tailCache;
     }
 
     @Override
@@ -82,6 +96,15 @@ public class MultiTimelineEventConsumer implements EventConsumer.ReassignableEve
 
     @Override
     public List<ConsumedEvent> readEvents() {
+        return readEvents(EventConsumer::readEvents);
+    }
+
+    @Override
+    public List<ConsumedEvent> readEvents(final long timeoutMs) {
+        return readEvents(consumer -> consumer.readEvents(timeoutMs));
+    }
+
+    private List<ConsumedEvent> readEvents(final Function<EventConsumer, List<ConsumedEvent>> reader) {
         if (timelinesChanged.compareAndSet(true, false)) {
             try {
                 onTimelinesChanged();
@@ -89,26 +112,46 @@ public class MultiTimelineEventConsumer implements EventConsumer.ReassignableEve
                 throw new NakadiRuntimeException(ex);
             }
         }
-        final List<ConsumedEvent> result;
+        final List<ConsumedEvent> cached;
         try {
-            result = poll();
+            cached = readTailCache();
+        } catch (final InvalidCursorException ex) {
+            throw new NakadiRuntimeException(ex);
+        }
+        final List<ConsumedEvent> polled;
+        try {
+            // cached events are not held back while waiting for the partitions that are read from storage
+            polled = poll(cached.isEmpty() ? reader : consumer -> consumer.readEvents(0));
         } catch (KafkaFactory.KafkaCrutchException kce) {
             LOG.warn("Kafka connections should be reinitialized because consumers should be recreated", kce);
             final List<NakadiCursor> tmpOffsets = new ArrayList<>(latestOffsets.values());
+            final List<EventTypePartition> tmpPaused = new ArrayList<>(pausedPartitions);
             // close all the clients
             reassign(Collections.emptyList());
             // create new clients
             reassign(tmpOffsets);
+            pause(tmpPaused);
             return Collections.emptyList();
         }
-        if (result.isEmpty()) {
-            return result;
+        if (cached.isEmpty() && polled.isEmpty()) {
+            return polled;
         }
 
-        final List<ConsumedEvent> filteredResult = new ArrayList<>(result.size());
-        for (final ConsumedEvent event : result) {
+        final List<ConsumedEvent> filteredResult = new ArrayList<>(cached.size() + polled.size());
+        processEvents(cached, true, filteredResult);
+        processEvents(polled, false, filteredResult);
+        return filteredResult;
+    }
+
+    private void processEvents(final List<ConsumedEvent> events, final boolean fromCache,
+                               final List<ConsumedEvent> filteredResult) {
+        for (final ConsumedEvent event : events) {
             final EventTypePartition etp = event.getPosition().getEventTypePartition();
-            latestOffsets.put(etp, event.getPosition());
+            final NakadiCursor previous = latestOffsets.put(etp, event.getPosition());
+            if (!fromCache && null != previous
+                    && previous.getTopicPartition().equals(event.getPosition().getTopicPartition())) {
+                tailCache.append(previous, event);
+            }
             final String border = borderOffsets.get(etp);
             final boolean timelineBorderReached = null != border
                     && border.compareTo(event.getPosition().getOffset()) <= 0;
@@ -120,7 +163,60 @@ public class MultiTimelineEventConsumer implements EventConsumer.ReassignableEve
                 filteredResult.add(event);
             }
         }
-        return filteredResult;
+    }
+
+    /**
+     * Takes the events that follow current positions from the node-wide cache of recent events. Partitions found in
+     * the cache are paused in the underlying consumers, so that they are not read from storage once again, while the
+     * rest of partitions is read as usual. Once a partition is not found in the cache anymore, the underlying consumer
+     * is moved to its latest position and reading from storage is resumed.
+     *
+     * @return List of cached events, empty if there are no cached events for any of the partitions.
+     */
+    private List<ConsumedEvent> readTailCache() throws InvalidCursorException {
+        if (!tailCache.isEnabled()) {
+            return Collections.emptyList();
+        }
+        final List<ConsumedEvent> result = new ArrayList<>();
+        final List<EventTypePartition> hits = new ArrayList<>();
+        final List<NakadiCursor> misses = new ArrayList<>();
+        for (final NakadiCursor cursor : latestOffsets.values()) {
+            if (pausedPartitions.contains(cursor.getEventTypePartition())) {
+                continue;
+            }
+            final List<ConsumedEvent> cached = tailCache.read(cursor);
+            if (!cached.isEmpty()) {
+                result.addAll(cached);
+                if (!cachedPartitions.contains(cursor.getEventTypePartition())) {
+                    hits.add(cursor.getEventTypePartition());
+                }
+            } else if (cachedPartitions.contains(cursor.getEventTypePartition())) {
+                misses.add(cursor);
+            }
+        }
+        if (!hits.isEmpty()) {
+            cachedPartitions.addAll(hits);
+            final Set<TopicPartition> topicPartitions = toTopicPartitions(hits);
+            eventConsumers.values().forEach(consumer -> consumer.pause(topicPartitions));
+        }
+        if (!misses.isEmpty()) {
+            final List<EventTypePartition> missedPartitions = misses.stream()
+                    .map(NakadiCursor::getEventTypePartition)
+                    .collect(Collectors.toList());
+            cachedPartitions.removeAll(missedPartitions);
+            final Set<TopicPartition> topicPartitions = toTopicPartitions(missedPartitions);
+            for (final EventConsumer.LowLevelConsumer consumer : eventConsumers.values()) {
+                final Set<TopicPartition> assignment = consumer.getAssignment();
+                final List<NakadiCursor> toSeek = misses.stream()
+                        .filter(cursor -> assignment.contains(cursor.getTopicPartition()))
+                        .collect(Collectors.toList());
+                if (!toSeek.isEmpty()) {
+                    consumer.seek(toSeek);
+                }
+                consumer.resume(topicPartitions);
+            }
+        }
+        return result;
     }
 
     /**
@@ -128,11 +224,11 @@ public class MultiTimelineEventConsumer implements EventConsumer.ReassignableEve
      *
      * @return List of consumed events.
      */
-    private List<ConsumedEvent> poll() {
+    private List<ConsumedEvent> poll(final Function<EventConsumer, List<ConsumedEvent>> reader) {
         List<ConsumedEvent> result = null;
         boolean newCollectionCreated = false;
         for (final EventConsumer consumer : eventConsumers.values()) {
-            final List<ConsumedEvent> partialResult = consumer.readEvents();
+            final List<ConsumedEvent> partialResult = reader.apply(consumer);
             if (null == result) {
                 result = partialResult;
             } else {
@@ -249,10 +345,50 @@ public class MultiTimelineEventConsumer implements EventConsumer.ReassignableEve
                         clientId, Arrays.deepToString(entry.getValue().toArray()));
                 final EventConsumer.LowLevelConsumer consumer = repo.createEventConsumer(clientId, entry.getValue());
                 eventConsumers.put(repo, consumer);
+                // new consumer starts from the latest positions, so partitions read from the cache need no seek
+                entry.getValue().forEach(cursor -> cachedPartitions.remove(cursor.getEventTypePartition()));
+                final Set<EventTypePartition> toPause = new HashSet<>(pausedPartitions);
+                toPause.addAll(cachedPartitions);
+                if (!toPause.isEmpty()) {
+                    consumer.pause(toTopicPartitions(toPause));
+                }
             }
         }
     }
 
+    @Override
+    public void pause(final Collection<EventTypePartition> partitions) {
+        final List<EventTypePartition> toPause = partitions.stream()
+                .filter(latestOffsets::containsKey)
+                .collect(Collectors.toList());
+        pausedPartitions.addAll(toPause);
+        final Set<TopicPartition> topicPartitions = toTopicPartitions(toPause);
+        eventConsumers.values().forEach(consumer -> consumer.pause(topicPartitions));
+    }
+
+    @Override
+    public void resume(final Collection<EventTypePartition> partitions) {
+        pausedPartitions.removeAll(partitions);
+        // partitions read from the cache stay paused in the underlying consumers until they are not found in it
+        final Set<TopicPartition> topicPartitions = toTopicPartitions(partitions.stream()
+                .filter(etp -> !cachedPartitions.contains(etp))
+                .collect(Collectors.toList()));
+        eventConsumers.values().forEach(consumer -> consumer.resume(topicPartitions));
+    }
+
+    /**
+     * Event type partition is read from the topics of all its active timelines, consumers ignore the topics that are
+     * not assigned to them.
+     */
+    private Set<TopicPartition> toTopicPartitions(final Collection<EventTypePartition> partitions) {
+        final Set<TopicPartition> result = new HashSet<>();
+        for (final EventTypePartition etp : partitions) {
+            eventTypeTimelines.getOrDefault(etp.getEventType(), Collections.emptyList()).forEach(
+                    timeline -> result.add(new TopicPartition(timeline.getTopic(), etp.getPartition())));
+        }
+        return result;
+    }
+
     private void stopAndRemoveConsumer(final TopicRepository toRemove) {
         final EventConsumer realConsumer = eventConsumers.remove(toRemove);
         try {
@@ -317,6 +453,8 @@ public class MultiTimelineEventConsumer implements EventConsumer.ReassignableEve
 
     private void cleanStreamedPartitions(final Set<EventTypePartition> partitions) {
         partitions.forEach(latestOffsets::remove);
+        pausedPartitions.removeAll(partitions);
+        cachedPartitions.removeAll(partitions);
     }
 
     void onTimelineChange(final String eventType) {
@@ -49,6 +49,7 @@ import org.zalando.nakadi.repository.TopicRepositoryHolder;
 import org.zalando.nakadi.cache.EventTypeCache;
 import org.zalando.nakadi.repository.db.StorageDbRepository;
 import org.zalando.nakadi.repository.db.TimelineDbRepository;
+import org.zalando.nakadi.repository.kafka.EventTailCache;
 import org.zalando.nakadi.service.AdminService;
 import org.zalando.nakadi.service.FeatureToggleService;
 import org.zalando.nakadi.service.publishing.NakadiAuditLogPublisher;
@@ -80,6 +81,7 @@ public class TimelineService {
     private final FeatureToggleService featureToggleService;
     private final String compactedStorageName;
     private final NakadiAuditLogPublisher auditLogPublisher;
+    private final EventTailCache tailCache;
 
     @Autowired
     public TimelineService(final EventTypeCache eventTypeCache,
@@ -93,7 +95,8 @@ public class TimelineService {
                            final AdminService adminService,
                            final FeatureToggleService featureToggleService,
                            @Value("${nakadi.timelines.storage.compacted}") final String compactedStorageName,
-                           @Lazy final NakadiAuditLogPublisher auditLogPublisher) {
+                           @Lazy final NakadiAuditLogPublisher auditLogPublisher,
+                           final EventTailCache tailCache) {
         this.eventTypeCache = eventTypeCache;
         this.storageDbRepository = storageDbRepository;
         this.timelineSync = timelineSync;
@@ -106,6 +109,7 @@ public class TimelineService {
         this.featureToggleService = featureToggleService;
         this.compactedStorageName = compactedStorageName;
         this.auditLogPublisher = auditLogPublisher;
+        this.tailCache = tailCache;
     }
 
     public void createTimeline(final String eventTypeName, final String storageId)
@@ -288,14 +292,14 @@ public class TimelineService {
     public EventConsumer createEventConsumer(@Nullable final String clientId, final List<NakadiCursor> positions)
             throws InvalidCursorException {
         final MultiTimelineEventConsumer result = new MultiTimelineEventConsumer(
-                clientId, this, timelineSync, new NakadiCursorComparator(eventTypeCache));
+                clientId, this, timelineSync, new NakadiCursorComparator(eventTypeCache), tailCache);
         result.reassign(positions);
         return result;
     }
 
     public EventConsumer.ReassignableEventConsumer createEventConsumer(@Nullable final String clientId) {
         return new MultiTimelineEventConsumer(
-                clientId, this, timelineSync, new NakadiCursorComparator(eventTypeCache));
+                clientId, this, timelineSync, new NakadiCursorComparator(eventTypeCache), tailCache);
     }
 
     private void switchTimelines(final Timeline activeTimeline, final Timeline nextTimeline)
@@ -361,7 +365,7 @@ public class TimelineService {
 
     private void finishTimelineUpdate(final String eventTypeName) throws TimelineException {
         try {
-            timelineSync.finishTimelineUpdate(eventTypeName);
+            timelineSync.finishTimelineUpdate(eventTypeName, nakadiSettings.getTimelineWaitTimeoutMs());
         } catch (final InterruptedException ie) {
             Thread.currentThread().interrupt();
             throw new TimelineException("Timeline update was interrupted for:" + eventTypeName);
@@ -16,7 +16,12 @@ import java.util.function.Consumer;
  *     | - et_2                 The same goes here (et_2)
  *  + - nodes                   nakadi nodes
  *    + - {node1}: {version}    Each nakadi node exposes version being used on this node
+ *  + - acks
+ *    + - et_1
+ *      + - {node1}: {ack}      Last change of et_1 lock processed by node1 (locked:{lock_id} or unlocked:{lock_id})
  * </pre>
+ * Change of version notifies nodes that the set of locked event types changed. Node that is updating timeline of an
+ * event type waits only for the acknowledgements of this event type, lock id is the creation zxid of lock node.
  */
 public interface TimelineSync {
     /**
@@ -43,8 +48,9 @@ public interface TimelineSync {
      * Release publishing lock to event type
      *
      * @param eventType Event type to unlock publishing to.
+     * @param timeoutMs Timeout for sync operation.
      */
-    void finishTimelineUpdate(String eventType) throws InterruptedException, RuntimeException;
+    void finishTimelineUpdate(String eventType, long timeoutMs) throws InterruptedException, RuntimeException;
 
     interface ListenerRegistration {
         void cancel();
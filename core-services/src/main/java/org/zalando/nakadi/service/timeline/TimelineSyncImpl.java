@@ -4,10 +4,12 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
 import org.apache.curator.framework.recipes.locks.InterProcessLock;
 import org.apache.curator.framework.recipes.locks.InterProcessSemaphoreMutex;
+import org.apache.curator.framework.state.ConnectionState;
 import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.WatchedEvent;
 import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.data.Stat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -21,9 +23,8 @@ import org.zalando.nakadi.util.UUIDGenerator;
 import javax.annotation.Nullable;
 import java.io.Closeable;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -42,11 +43,12 @@ import java.util.function.Function;
 public class TimelineSyncImpl implements TimelineSync {
     private static class DelayedChange {
         private final int version;
-        private final Set<String> lockedEventTypes;
+        // locked event type to identifier of its lock
+        private final Map<String, Long> lockedEventTypes;
 
-        private DelayedChange(final int version, final Collection<String> lockedEventTypes) {
+        private DelayedChange(final int version, final Map<String, Long> lockedEventTypes) {
             this.version = version;
-            this.lockedEventTypes = new HashSet<>(lockedEventTypes);
+            this.lockedEventTypes = lockedEventTypes;
         }
 
         @Override
@@ -58,10 +60,22 @@ public class TimelineSyncImpl implements TimelineSync {
     private static final String ROOT_PATH = "/nakadi/timelines";
     private static final Logger LOG = LoggerFactory.getLogger(TimelineSyncImpl.class);
     private static final long LOCK_ZK_TIMEOUT = 10_000;
+    private static final long ACK_CHECK_INTERVAL_MS = 100;
+    private static final String ACK_LOCKED = "locked:";
+    private static final String ACK_UNLOCKED = "unlocked:";
 
     private final ZooKeeperHolder zooKeeperHolder;
     private final String nodeId;
     private final LocalLocking localLocking = new LocalLocking();
+    // identifiers of the locks of event types that are locked on this node, used only by the thread reacting on changes
+    private final Map<String, Long> lockIds = new HashMap<>();
+    // acknowledgements of event types that are not written yet, locked event types are acknowledged once they have no
+    // publishers, so that the event types that are locked at the same time do not wait for each other
+    private final Map<String, String> pendingAcks = new HashMap<>();
+    // acknowledgements of the locks that are written to zk, they are written again once the session is recreated, as
+    // ephemeral nodes are removed together with the session
+    private final Map<String, String> writtenLockAcks = new HashMap<>();
+    private final AtomicBoolean reconnected = new AtomicBoolean(false);
     private final Map<String, List<Consumer<String>>> consumerListeners = new HashMap<>();
     private final List<Consumer<String>> headlessConsumerListeners = new ArrayList<>();
     private final BlockingQueue<DelayedChange> queuedChanges = new LinkedBlockingQueue<>();
@@ -73,6 +87,11 @@ public class TimelineSyncImpl implements TimelineSync {
         this.nodeId = uuidGenerator.randomUUID().toString();
         this.zooKeeperHolder = zooKeeperHolder;
         this.initializeZkStructure();
+        zooKeeperHolder.get().getConnectionStateListenable().addListener((client, state) -> {
+            if (state == ConnectionState.RECONNECTED) {
+                reconnected.set(true);
+            }
+        });
     }
 
     @VisibleForTesting
@@ -89,6 +108,7 @@ public class TimelineSyncImpl implements TimelineSync {
         checkAndCreateZkNode("version", "0");
         checkAndCreateZkNode("locked_et", "[]");
         checkAndCreateZkNode("nodes", "[]");
+        checkAndCreateZkNode("acks", "");
 
         runLocked(() -> {
             try {
@@ -139,11 +159,16 @@ public class TimelineSyncImpl implements TimelineSync {
 
     @Scheduled(fixedDelay = 500)
     public void reactOnEventTypesChange() throws InterruptedException {
+        if (reconnected.getAndSet(false)) {
+            LOG.info("Writing acknowledgements of locks again after reconnect: {}", writtenLockAcks);
+            writtenLockAcks.forEach(pendingAcks::putIfAbsent);
+        }
         checkForNewChange();
         while (!queuedChanges.isEmpty()) {
             final DelayedChange change = queuedChanges.peek();
             LOG.info("Reacting on delayed change {}", change);
-            final Set<String> unlockedEventTypes = localLocking.getUnlockedEventTypes(change.lockedEventTypes);
+            final Set<String> unlockedEventTypes =
+                    localLocking.getUnlockedEventTypes(change.lockedEventTypes.keySet());
             // Notify consumers that they should refresh timeline information
             for (final String unlocked : unlockedEventTypes) {
                 LOG.info("Notifying about unlock of {}", unlocked);
@@ -167,7 +192,17 @@ public class TimelineSyncImpl implements TimelineSync {
             // Updating the list of locked event types is done only after updating the cache in order to guarantee that
             // there is no concurrency between publisher threads and cache expire thread, which has lead to events being
             // published to the wrong timeline. More details in ARUHA-1359.
-            localLocking.updateLockedEventTypes(change.lockedEventTypes);
+            localLocking.updateLockedEventTypes(change.lockedEventTypes.keySet());
+            for (final String unlocked : unlockedEventTypes) {
+                Optional.ofNullable(lockIds.remove(unlocked))
+                        .ifPresent(lockId -> pendingAcks.put(unlocked, ACK_UNLOCKED + lockId));
+            }
+            change.lockedEventTypes.forEach((locked, lockId) -> {
+                if (!lockId.equals(lockIds.put(locked, lockId))) {
+                    pendingAcks.put(locked, ACK_LOCKED + lockId);
+                }
+            });
+            acknowledgePendingChanges();
             try {
                 updateSelfVersionTo(change.version);
             } catch (final Exception ex) {
@@ -177,6 +212,7 @@ public class TimelineSyncImpl implements TimelineSync {
             queuedChanges.poll();
             LOG.info("Delayed change {} successfully processed", change);
         }
+        acknowledgePendingChanges();
     }
 
     private void updateSelfVersionTo(final int version) throws Exception {
@@ -189,6 +225,55 @@ public class TimelineSyncImpl implements TimelineSync {
         }
     }
 
+    private void acknowledgePendingChanges() {
+        final Iterator<Map.Entry<String, String>> it = pendingAcks.entrySet().iterator();
+        while (it.hasNext()) {
+            final Map.Entry<String, String> pending = it.next();
+            if (pending.getValue().startsWith(ACK_LOCKED) && localLocking.hasPublishers(pending.getKey())) {
+                LOG.info("Event type is still locked: {}", pending.getKey());
+                continue;
+            }
+            if (acknowledge(pending.getKey(), pending.getValue())) {
+                if (pending.getValue().startsWith(ACK_LOCKED)) {
+                    writtenLockAcks.put(pending.getKey(), pending.getValue());
+                } else {
+                    writtenLockAcks.remove(pending.getKey());
+                }
+                it.remove();
+            }
+        }
+    }
+
+    private boolean acknowledge(final String eventType, final String ack) {
+        final String zkPath = toZkPath("/acks/" + eventType + "/" + nodeId);
+        final byte[] ackBytes = ack.getBytes(Charsets.UTF_8);
+        try {
+            try {
+                zooKeeperHolder.get().setData().forPath(zkPath, ackBytes);
+            } catch (final KeeperException.NoNodeException ex) {
+                // parent is created as a container in order to be cleaned up by zookeeper versions supporting it,
+                // otherwise it is removed once the timeline update is finished
+                zooKeeperHolder.get().create().creatingParentContainersIfNeeded().withMode(CreateMode.EPHEMERAL)
+                        .forPath(zkPath, ackBytes);
+            }
+            return true;
+        } catch (final Exception ex) {
+            LOG.error("Failed to acknowledge {} of event type {}, will retry", ack, eventType, ex);
+            return false;
+        }
+    }
+
+    private Map<String, Long> readLockedEventTypes() throws Exception {
+        final Map<String, Long> result = new HashMap<>();
+        for (final String eventType : zooKeeperHolder.get().getChildren().forPath(toZkPath("/locked_et"))) {
+            final Stat stat = zooKeeperHolder.get().checkExists().forPath(toZkPath("/locked_et/" + eventType));
+            if (null != stat) {
+                result.put(eventType, stat.getCzxid());
+            }
+        }
+        return result;
+    }
+
     private void checkForNewChange() {
         if (newVersionPresent.compareAndSet(true, false)) {
             runLocked(() -> {
@@ -196,7 +281,7 @@ public class TimelineSyncImpl implements TimelineSync {
                 try {
                     queuedChanges.add(
                             new DelayedChange(readData("/version", this::versionChanged, Integer::parseInt),
-                                    this.zooKeeperHolder.get().getChildren().forPath(toZkPath("/locked_et"))));
+                                    readLockedEventTypes()));
                     success = true;
                 } catch (final RuntimeException ex) {
                     throw ex;
@@ -254,10 +339,18 @@ public class TimelineSyncImpl implements TimelineSync {
         return localLocking.workWithEventType(eventType, timeoutMs);
     }
 
-    private void updateVersionAndWaitForAllNodes(@Nullable final Long timeoutMs)
+    /**
+     * Notifies all the nodes about the change of locked event types and waits only for them to acknowledge the change
+     * of the event type, so that timeline update of one event type is not held back by the others.
+     *
+     * @param replacedAck acknowledgement that is replaced by the expected one, if set only the nodes that have written
+     *                    it are waited for, the others have never seen the previous change
+     */
+    private void updateVersionAndWaitForAllNodes(
+            final String eventType, final String expectedAck, @Nullable final String replacedAck, final long timeoutMs)
             throws InterruptedException, RuntimeException {
         // Create next version, that will contain locked event type.
-        final Optional<Long> expectedFinish = Optional.ofNullable(timeoutMs).map(t -> System.currentTimeMillis() + t);
+        final long expectedFinish = System.currentTimeMillis() + timeoutMs;
         final AtomicInteger versionToWait = new AtomicInteger();
         runLocked(() -> {
             try {
@@ -272,37 +365,51 @@ public class TimelineSyncImpl implements TimelineSync {
                 throw new RuntimeException(e);
             }
         });
-        // Wait for all nodes to have latest version.
-        final AtomicBoolean latestVersionIsThere = new AtomicBoolean(false);
-        while (!latestVersionIsThere.get()) {
-            LOG.info("Waiting for all nodes to have the same version {}", versionToWait.get());
-            if (expectedFinish.isPresent() && System.currentTimeMillis() > expectedFinish.get()) {
-                throw new RuntimeException("Timed out while updating version to " + versionToWait.get());
+        // Wait for all nodes to acknowledge the change of event type.
+        LOG.info("Waiting for all nodes to acknowledge {} of {} (version {})",
+                expectedAck, eventType, versionToWait.get());
+        while (!isAcknowledgedByAllNodes(eventType, expectedAck, replacedAck, versionToWait.get())) {
+            if (System.currentTimeMillis() > expectedFinish) {
+                LOG.error("Timed out while waiting for nodes to acknowledge {} of {} (version {})",
+                        expectedAck, eventType, versionToWait.get());
+                throw new RuntimeException("Timed out while waiting for nodes to acknowledge " + expectedAck +
+                        " of " + eventType + " (version " + versionToWait.get() + ")");
             }
-            ThreadUtils.sleep(TimeUnit.SECONDS.toMillis(1));
-            runLocked(() -> {
-                try {
-                    final List<String> nodes = zooKeeperHolder.get().getChildren().forPath(toZkPath("/nodes"));
-                    boolean allOk = true;
-                    for (final String node : nodes) {
-                        final int nodeVersion = readData("/nodes/" + node, null, Integer::valueOf);
-                        final boolean nodeOk = nodeVersion >= versionToWait.get();
-                        if (!nodeOk) {
-                            allOk = false;
-                        }
-                        LOG.info("Node {} OK (current: {}, expected: {})", node, nodeVersion, versionToWait.get());
-                    }
-                    if (allOk) {
-                        latestVersionIsThere.set(true);
-                    }
-                } catch (final RuntimeException e) {
-                    throw e;
-                } catch (final Exception ex) {
-                    throw new RuntimeException(ex);
+            ThreadUtils.sleep(ACK_CHECK_INTERVAL_MS);
+        }
+        LOG.info("Change {} of {} is acknowledged by all nodes", expectedAck, eventType);
+    }
+
+    private boolean isAcknowledgedByAllNodes(final String eventType, final String expectedAck,
+                                             @Nullable final String replacedAck, final int version) {
+        try {
+            for (final String node : zooKeeperHolder.get().getChildren().forPath(toZkPath("/nodes"))) {
+                final String ack = readDataIfExists("/acks/" + eventType + "/" + node);
+                if (expectedAck.equals(ack) || (null != replacedAck && !replacedAck.equals(ack))) {
+                    continue;
                 }
-            });
+                // node that is gone does not publish anymore
+                if (null != readDataIfExists("/nodes/" + node)) {
+                    LOG.debug("Node {} has not acknowledged {} of {} yet (current: {}, version: {})",
+                            node, expectedAck, eventType, ack, version);
+                    return false;
+                }
+            }
+            return true;
+        } catch (final RuntimeException ex) {
+            throw ex;
+        } catch (final Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    @Nullable
+    private String readDataIfExists(final String relativeName) throws Exception {
+        try {
+            return readData(relativeName, null, Function.identity());
+        } catch (final KeeperException.NoNodeException ex) {
+            return null;
         }
-        LOG.info("Version update to {} complete", versionToWait.get());
     }
 
     @Override
@@ -311,9 +418,11 @@ public class TimelineSyncImpl implements TimelineSync {
         LOG.info("Starting timeline update for event type {} with timeout {} ms", eventType, timeoutMs);
         final String etZkPath = toZkPath("/locked_et/" + eventType);
 
+        final long lockId;
         try {
             zooKeeperHolder.get().create().withMode(CreateMode.EPHEMERAL)
                     .forPath(etZkPath, nodeId.getBytes(Charsets.UTF_8));
+            lockId = zooKeeperHolder.get().checkExists().forPath(etZkPath).getCzxid();
         } catch (final KeeperException.NodeExistsException ex) {
             throw new IllegalStateException(ex);
         } catch (final Exception ex) {
@@ -322,7 +431,7 @@ public class TimelineSyncImpl implements TimelineSync {
 
         boolean successful = false;
         try {
-            updateVersionAndWaitForAllNodes(timeoutMs);
+            updateVersionAndWaitForAllNodes(eventType, ACK_LOCKED + lockId, null, timeoutMs);
             successful = true;
         } catch (final InterruptedException ex) {
             throw ex;
@@ -338,17 +447,54 @@ public class TimelineSyncImpl implements TimelineSync {
     }
 
     @Override
-    public void finishTimelineUpdate(final String eventType) throws InterruptedException, RuntimeException {
-        LOG.info("Finishing timeline update for event type {}", eventType);
+    public void finishTimelineUpdate(final String eventType, final long timeoutMs)
+            throws InterruptedException, RuntimeException {
+        LOG.info("Finishing timeline update for event type {} with timeout {} ms", eventType, timeoutMs);
         final String etZkPath = toZkPath("/locked_et/" + eventType);
+        final long lockId;
         try {
+            final Stat stat = zooKeeperHolder.get().checkExists().forPath(etZkPath);
+            if (null == stat) {
+                throw new IllegalStateException("Timeline update for event type " + eventType + " is not started");
+            }
+            lockId = stat.getCzxid();
             zooKeeperHolder.get().delete().forPath(etZkPath);
         } catch (final RuntimeException ex) {
             throw ex;
         } catch (final Exception ex) {
             throw new RuntimeException(ex);
         }
-        updateVersionAndWaitForAllNodes(null);
+        // nodes that have registered after the lock, or have lost the acknowledgement of it together with the session
+        // and not written it again yet, have nothing to release
+        updateVersionAndWaitForAllNodes(eventType, ACK_UNLOCKED + lockId, ACK_LOCKED + lockId, timeoutMs);
+        removeAcks(eventType, ACK_UNLOCKED + lockId);
+    }
+
+    /**
+     * Removes acknowledgements of the finished update, so that nothing is left in zk for the event type. Nodes that
+     * have acknowledged anything else in between are kept together with the parent.
+     */
+    private void removeAcks(final String eventType, final String finishedAck) {
+        final String acksPath = toZkPath("/acks/" + eventType);
+        try {
+            for (final String node : zooKeeperHolder.get().getChildren().forPath(acksPath)) {
+                final String ackPath = acksPath + "/" + node;
+                final Stat stat = new Stat();
+                try {
+                    final byte[] ack = zooKeeperHolder.get().getData().storingStatIn(stat).forPath(ackPath);
+                    if (finishedAck.equals(new String(ack, Charsets.UTF_8))) {
+                        zooKeeperHolder.get().delete().withVersion(stat.getVersion()).forPath(ackPath);
+                    }
+                } catch (final KeeperException.NoNodeException | KeeperException.BadVersionException ex) {
+                    LOG.debug("Acknowledgement {} is changed concurrently, leaving it", ackPath, ex);
+                }
+            }
+            zooKeeperHolder.get().delete().forPath(acksPath);
+        } catch (final KeeperException.NoNodeException | KeeperException.NotEmptyException ex) {
+            LOG.debug("Acknowledgements of {} are changed concurrently, leaving them", eventType, ex);
+        } catch (final Exception ex) {
+            LOG.warn("Failed to remove acknowledgements of {}", eventType, ex);
+        }
     }
 
     @Override
@@ -1,10 +1,10 @@
 package org.zalando.nakadi.validation;
 
-import org.json.JSONObject;
+import org.zalando.nakadi.domain.LazyJsonObject;
 
 import java.util.Optional;
 
 public interface EventTypeValidator {
 
-    Optional<ValidationError> validate(JSONObject event);
+    Optional<ValidationError> validate(LazyJsonObject event);
 }
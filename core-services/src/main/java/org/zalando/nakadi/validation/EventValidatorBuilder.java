@@ -4,10 +4,13 @@ import org.everit.json.schema.Schema;
 import org.everit.json.schema.ValidationException;
 import org.everit.json.schema.loader.SchemaLoader;
 import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.zalando.nakadi.domain.EventCategory;
 import org.zalando.nakadi.domain.EventType;
+import org.zalando.nakadi.domain.LazyJsonObject;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -17,6 +20,8 @@ import java.util.function.Function;
 @Component
 public class EventValidatorBuilder {
 
+    private static final Logger LOG = LoggerFactory.getLogger(EventValidatorBuilder.class);
+
     private final RFC3339DateTimeValidator dateTimeValidator = new RFC3339DateTimeValidator();
     private final JsonSchemaEnrichment loader;
 
@@ -27,16 +32,26 @@ public class EventValidatorBuilder {
     }
 
     public EventTypeValidator build(final EventType eventType) {
-        final List<Function<JSONObject, Optional<ValidationError>>> validators = new ArrayList<>(2);
+        final List<Function<LazyJsonObject, Optional<ValidationError>>> validators = new ArrayList<>(2);
 
-        // 1. We always validate schema.
+        // 1. We always validate schema. Compiled schema is used to quickly accept valid events, while interpreted
+        // one has the final word on invalid events, as it is the one that builds error messages.
+        final JSONObject effectiveSchema = loader.effectiveSchema(eventType);
         final Schema schema = SchemaLoader.builder()
-                .schemaJson(loader.effectiveSchema(eventType))
+                .schemaJson(effectiveSchema)
                 .addFormatValidator(new RFC3339DateTimeValidator())
                 .build()
                 .load()
                 .build();
-        validators.add((evt) -> validateSchemaConformance(schema, evt));
+        final Optional<JsonSchemaCompiler.CompiledSchema> compiledSchema =
+                JsonSchemaCompiler.compile(effectiveSchema, dateTimeValidator);
+        if (compiledSchema.isPresent()) {
+            final JsonSchemaCompiler.CompiledSchema compiled = compiledSchema.get();
+            validators.add((evt) -> compiled.conforms(evt) ? Optional.empty() : validateSchemaConformance(schema, evt));
+        } else {
+            LOG.info("Schema of event type {} can not be compiled, it will be interpreted", eventType.getName());
+            validators.add((evt) -> validateSchemaConformance(schema, evt));
+        }
 
         // 2. in case of data or business event type we validate occurred_at
         if (eventType.getCategory() == EventCategory.DATA || eventType.getCategory() == EventCategory.BUSINESS) {
@@ -51,18 +66,19 @@ public class EventValidatorBuilder {
                 .orElse(Optional.empty());
     }
 
-    private Optional<ValidationError> validateOccurredAt(final JSONObject event) {
+    private Optional<ValidationError> validateOccurredAt(final LazyJsonObject event) {
         return Optional
-                .ofNullable(event.optJSONObject("metadata"))
-                .map(metadata -> metadata.optString("occurred_at"))
+                .ofNullable(event.optObject("metadata"))
+                .map(metadata -> metadata.optString("occurred_at", ""))
                 .flatMap(dateTimeValidator::validate)
                 .map(e -> new ValidationError("#/metadata/occurred_at:" + e));
 
     }
 
-    private Optional<ValidationError> validateSchemaConformance(final Schema schema, final JSONObject evt) {
+    private Optional<ValidationError> validateSchemaConformance(final Schema schema, final LazyJsonObject evt) {
         try {
-            schema.validate(evt);
+            // everit validator is working only with org.json representation, so the whole event is decoded here
+            schema.validate(evt.toJSONObject());
             return Optional.empty();
         } catch (final ValidationException e) {
             final StringBuilder builder = new StringBuilder();
@@ -0,0 +1,581 @@
+package org.zalando.nakadi.validation;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.zalando.nakadi.domain.LazyJsonObject;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Compiles json schema into a tree of checks, that are working directly on {@link LazyJsonObject}, so that valid
+ * events are checked without decoding the whole event into org.json, without exceptions and without looking up
+ * keywords in the schema for every event: references are resolved, patterns are compiled and enums are converted to
+ * sets once per event type.
+ * <p>
+ * Compiled schema never accepts an event that is rejected by the interpreted (everit) one, but it may reject events
+ * that are valid (for example in case of non-trivial enum or uniqueItems comparison). That's why the verdict of the
+ * compiled schema is final only for valid events, invalid ones must be checked by the interpreted schema, that is
+ * also responsible for building error messages. Schemas with keywords that are not supported by the compiler are
+ * not compiled at all.
+ */
+public class JsonSchemaCompiler {
+
+    private static final long MAX_EXACT_DOUBLE = 1L << 53;
+
+    private final JSONObject root;
+    private final RFC3339DateTimeValidator dateTimeValidator;
+    private final Map<Object, RefNode> compiled = new IdentityHashMap<>();
+
+    private JsonSchemaCompiler(final JSONObject root, final RFC3339DateTimeValidator dateTimeValidator) {
+        this.root = root;
+        this.dateTimeValidator = dateTimeValidator;
+    }
+
+    public static Optional<CompiledSchema> compile(final JSONObject schema,
+                                                   final RFC3339DateTimeValidator dateTimeValidator) {
+        try {
+            final Node node = new JsonSchemaCompiler(schema, dateTimeValidator).compileSchema(schema, true);
+            return Optional.of(event -> node.accepts(event));
+        } catch (final UnsupportedSchemaException e) {
+            return Optional.empty();
+        }
+    }
+
+    @FunctionalInterface
+    public interface CompiledSchema {
+        /**
+         * @return true if the event is definitely valid, false if it is either invalid or can not be proven valid
+         * by the compiled schema
+         */
+        boolean conforms(LazyJsonObject event);
+    }
+
+    @FunctionalInterface
+    private interface Node {
+        boolean accepts(Object value);
+    }
+
+    private static class UnsupportedSchemaException extends Exception {
+        UnsupportedSchemaException(final String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    /**
+     * Placeholder that allows recursive references, target is set once the referenced schema is compiled.
+     */
+    private static class RefNode implements Node {
+        private Node target;
+
+        @Override
+        public boolean accepts(final Object value) {
+            return target.accepts(value);
+        }
+    }
+
+    private Node compileSchema(final Object schema, final boolean isRoot) throws UnsupportedSchemaException {
+        if (schema instanceof Boolean) {
+            final boolean acceptAll = (Boolean) schema;
+            return value -> acceptAll;
+        }
+        if (!(schema instanceof JSONObject)) {
+            throw new UnsupportedSchemaException("Schema is not an object");
+        }
+        final RefNode existing = compiled.get(schema);
+        if (null != existing) {
+            return existing;
+        }
+        final RefNode ref = new RefNode();
+        compiled.put(schema, ref);
+        ref.target = compileKeywords((JSONObject) schema, isRoot);
+        return ref;
+    }
+
+    private Node compileKeywords(final JSONObject schema, final boolean isRoot) throws UnsupportedSchemaException {
+        if (!isRoot && (schema.has("id") || schema.has("$id"))) {
+            throw new UnsupportedSchemaException("Resolution scope changes are not supported");
+        }
+        for (final String keyword : new String[]{
+                "not", "oneOf", "dependencies", "propertyNames", "contains", "multipleOf", "if"}) {
+            if (schema.has(keyword)) {
+                throw new UnsupportedSchemaException("Keyword " + keyword + " is not supported");
+            }
+        }
+        final List<Node> nodes = new ArrayList<>();
+        if (schema.has("$ref")) {
+            nodes.add(compileSchema(resolveRef(schema.get("$ref")), false));
+        }
+        addIfPresent(nodes, compileType(schema.opt("type")));
+        addIfPresent(nodes, compileEnum(schema));
+        addIfPresent(nodes, compileConst(schema));
+        addIfPresent(nodes, compileObject(schema));
+        addIfPresent(nodes, compileArray(schema));
+        addIfPresent(nodes, compileString(schema));
+        addIfPresent(nodes, compileNumber(schema));
+        nodes.addAll(compileSchemaList(schema.opt("allOf")));
+        final List<Node> anyOf = compileSchemaList(schema.opt("anyOf"));
+        if (!anyOf.isEmpty()) {
+            final Node[] alternatives = anyOf.toArray(new Node[0]);
+            nodes.add(value -> {
+                for (final Node alternative : alternatives) {
+                    if (alternative.accepts(value)) {
+                        return true;
+                    }
+                }
+                return false;
+            });
+        }
+        return all(nodes);
+    }
+
+    private static void addIfPresent(final List<Node> nodes, final Node node) {
+        if (null != node) {
+            nodes.add(node);
+        }
+    }
+
+    private static Node all(final List<Node> nodes) {
+        if (nodes.isEmpty()) {
+            return value -> true;
+        } else if (nodes.size() == 1) {
+            return nodes.get(0);
+        }
+        final Node[] checks = nodes.toArray(new Node[0]);
+        return value -> {
+            for (final Node check : checks) {
+                if (!check.accepts(value)) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    private List<Node> compileSchemaList(final Object schemas) throws UnsupportedSchemaException {
+        final List<Node> result = new ArrayList<>();
+        if (null == schemas) {
+            return result;
+        }
+        if (!(schemas instanceof JSONArray)) {
+            throw new UnsupportedSchemaException("List of schemas is expected");
+        }
+        for (final Object schema : (JSONArray) schemas) {
+            result.add(compileSchema(schema, false));
+        }
+        return result;
+    }
+
+    private Object resolveRef(final Object ref) throws UnsupportedSchemaException {
+        if (!(ref instanceof String) || !(ref.equals("#") || ((String) ref).startsWith("#/"))) {
+            throw new UnsupportedSchemaException("Only local references are supported");
+        }
+        Object current = root;
+        final String pointer = (String) ref;
+        if (pointer.length() < 2) {
+            return current;
+        }
+        for (final String encodedToken : pointer.substring(2).split("/", -1)) {
+            final String token;
+            try {
+                token = URLDecoder.decode(encodedToken.replace("+", "%2B"), "UTF-8")
+                        .replace("~1", "/").replace("~0", "~");
+            } catch (final UnsupportedEncodingException | IllegalArgumentException e) {
+                throw new UnsupportedSchemaException("Failed to decode reference " + ref);
+            }
+            if (current instanceof JSONObject && ((JSONObject) current).has(token)) {
+                current = ((JSONObject) current).get(token);
+            } else if (current instanceof JSONArray && token.matches("\\d{1,9}")
+                    && Integer.parseInt(token) < ((JSONArray) current).length()) {
+                current = ((JSONArray) current).get(Integer.parseInt(token));
+            } else {
+                throw new UnsupportedSchemaException("Failed to resolve reference " + ref);
+            }
+        }
+        return current;
+    }
+
+    private static Node compileType(final Object type) throws UnsupportedSchemaException {
+        if (null == type) {
+            return null;
+        }
+        if (type instanceof String) {
+            return compileSingleType((String) type);
+        }
+        if (!(type instanceof JSONArray)) {
+            throw new UnsupportedSchemaException("Unsupported type definition");
+        }
+        final List<Node> alternatives = new ArrayList<>();
+        for (final Object singleType : (JSONArray) type) {
+            if (!(singleType instanceof String)) {
+                throw new UnsupportedSchemaException("Unsupported type definition");
+            }
+            alternatives.add(compileSingleType((String) singleType));
+        }
+        final Node[] checks = alternatives.toArray(new Node[0]);
+        return value -> {
+            for (final Node check : checks) {
+                if (check.accepts(value)) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
+    private static Node compileSingleType(final String type) throws UnsupportedSchemaException {
+        switch (type) {
+            case "object":
+                return JsonSchemaCompiler::isObject;
+            case "array":
+                return value -> value instanceof JSONArray;
+            case "string":
+                return value -> value instanceof String;
+            case "number":
+                return value -> value instanceof Number;
+            case "integer":
+                return value -> value instanceof Integer || value instanceof Long;
+            case "boolean":
+                return value -> value instanceof Boolean;
+            case "null":
+                return JSONObject.NULL::equals;
+            default:
+                throw new UnsupportedSchemaException("Unsupported type " + type);
+        }
+    }
+
+    private static Node compileEnum(final JSONObject schema) throws UnsupportedSchemaException {
+        final Object values = schema.opt("enum");
+        if (null == values) {
+            return null;
+        }
+        if (!(values instanceof JSONArray)) {
+            throw new UnsupportedSchemaException("enum is expected to be an array");
+        }
+        // Only scalar values are compared here, everything else is left for the interpreted schema, as it has its
+        // own rules of comparison for numbers and structures.
+        final Set<Object> allowed = new HashSet<>();
+        for (final Object value : (JSONArray) values) {
+            if (isComparableScalar(value)) {
+                allowed.add(value);
+            }
+        }
+        return allowed::contains;
+    }
+
+    private static Node compileConst(final JSONObject schema) {
+        if (!schema.has("const")) {
+            return null;
+        }
+        final Object constValue = schema.get("const");
+        return isComparableScalar(constValue) ? constValue::equals : value -> false;
+    }
+
+    private static boolean isComparableScalar(final Object value) {
+        return value instanceof String || value instanceof Boolean || value instanceof Integer
+                || JSONObject.NULL.equals(value);
+    }
+
+    private Node compileObject(final JSONObject schema) throws UnsupportedSchemaException {
+        final JSONObject properties = optObject(schema, "properties");
+        final JSONObject patternProperties = optObject(schema, "patternProperties");
+        final Object additionalProperties = schema.opt("additionalProperties");
+        final JSONArray required = schema.optJSONArray("required");
+        final int minProperties = optCount(schema, "minProperties", 0);
+        final int maxProperties = optCount(schema, "maxProperties", Integer.MAX_VALUE);
+        if (null == properties && null == patternProperties && null == additionalProperties && null == required
+                && minProperties == 0 && maxProperties == Integer.MAX_VALUE) {
+            if (schema.has("required")) {
+                throw new UnsupportedSchemaException("required is expected to be an array");
+            }
+            return null;
+        }
+
+        final Map<String, Node> propertyNodes = new HashMap<>();
+        if (null != properties) {
+            for (final String name : properties.keySet()) {
+                propertyNodes.put(name, compileSchema(properties.get(name), false));
+            }
+        }
+        final List<Pattern> patterns = new ArrayList<>();
+        final List<Node> patternNodes = new ArrayList<>();
+        if (null != patternProperties) {
+            for (final String regex : patternProperties.keySet()) {
+                patterns.add(compilePattern(regex));
+                patternNodes.add(compileSchema(patternProperties.get(regex), false));
+            }
+        }
+        final Node additionalNode = null == additionalProperties ? null : compileSchema(additionalProperties, false);
+        final String[] requiredNames = new String[null == required ? 0 : required.length()];
+        for (int i = 0; i < requiredNames.length; ++i) {
+            final Object name = required.get(i);
+            if (!(name instanceof String)) {
+                throw new UnsupportedSchemaException("required is expected to contain strings");
+            }
+            requiredNames[i] = (String) name;
+        }
+        final Pattern[] compiledPatterns = patterns.toArray(new Pattern[0]);
+        final Node[] compiledPatternNodes = patternNodes.toArray(new Node[0]);
+
+        return value -> {
+            if (value instanceof LazyJsonObject) {
+                final LazyJsonObject object = (LazyJsonObject) value;
+                final int size = object.length();
+                if (size < minProperties || size > maxProperties || !hasAll(object::has, requiredNames)) {
+                    return false;
+                }
+                for (int i = 0; i < size; ++i) {
+                    if (!acceptsProperty(object.nameAt(i), object.valueAt(i), propertyNodes, compiledPatterns,
+                            compiledPatternNodes, additionalNode)) {
+                        return false;
+                    }
+                }
+            } else if (value instanceof JSONObject) {
+                final JSONObject object = (JSONObject) value;
+                final int size = object.length();
+                if (size < minProperties || size > maxProperties || !hasAll(object::has, requiredNames)) {
+                    return false;
+                }
+                for (final String name : object.keySet()) {
+                    if (!acceptsProperty(name, object.get(name), propertyNodes, compiledPatterns,
+                            compiledPatternNodes, additionalNode)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        };
+    }
+
+    private static boolean hasAll(final Predicate<String> has, final String[] names) {
+        for (final String name : names) {
+            if (!has.test(name)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean acceptsProperty(final String name, final Object value, final Map<String, Node> properties,
+                                           final Pattern[] patterns, final Node[] patternNodes,
+                                           final Node additionalNode) {
+        boolean matched = false;
+        final Node propertyNode = properties.get(name);
+        if (null != propertyNode) {
+            if (!propertyNode.accepts(value)) {
+                return false;
+            }
+            matched = true;
+        }
+        for (int i = 0; i < patterns.length; ++i) {
+            if (patterns[i].matcher(name).find()) {
+                if (!patternNodes[i].accepts(value)) {
+                    return false;
+                }
+                matched = true;
+            }
+        }
+        return matched || null == additionalNode || additionalNode.accepts(value);
+    }
+
+    private Node compileArray(final JSONObject schema) throws UnsupportedSchemaException {
+        final Object items = schema.opt("items");
+        final int minItems = optCount(schema, "minItems", 0);
+        final int maxItems = optCount(schema, "maxItems", Integer.MAX_VALUE);
+        final boolean uniqueItems = schema.optBoolean("uniqueItems", false);
+        if (null == items && minItems == 0 && maxItems == Integer.MAX_VALUE && !uniqueItems) {
+            return null;
+        }
+        final Node allItems;
+        final Node[] tupleItems;
+        final Node additionalItems;
+        if (items instanceof JSONArray) {
+            allItems = null;
+            tupleItems = compileSchemaList(items).toArray(new Node[0]);
+            additionalItems = schema.has("additionalItems") ?
+                    compileSchema(schema.get("additionalItems"), false) : null;
+        } else {
+            allItems = null == items ? null : compileSchema(items, false);
+            tupleItems = new Node[0];
+            additionalItems = null;
+        }
+
+        return value -> {
+            if (!(value instanceof JSONArray)) {
+                return true;
+            }
+            final JSONArray array = (JSONArray) value;
+            final int length = array.length();
+            if (length < minItems || length > maxItems || (uniqueItems && !hasUniqueScalars(array))) {
+                return false;
+            }
+            for (int i = 0; i < length; ++i) {
+                final Node itemNode;
+                if (null != allItems) {
+                    itemNode = allItems;
+                } else if (i < tupleItems.length) {
+                    itemNode = tupleItems[i];
+                } else {
+                    itemNode = additionalItems;
+                }
+                if (null != itemNode && !itemNode.accepts(array.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    /**
+     * Conservative check for uniqueness: arrays with items that are not strings, booleans or integers are left for
+     * the interpreted schema, as the interpreted schema has its own rules of comparison for numbers and structures.
+     */
+    private static boolean hasUniqueScalars(final JSONArray array) {
+        final Set<Object> seen = new HashSet<>();
+        for (final Object item : array) {
+            if (!isComparableScalar(item) || !seen.add(item)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Node compileString(final JSONObject schema) throws UnsupportedSchemaException {
+        final int minLength = optCount(schema, "minLength", 0);
+        final int maxLength = optCount(schema, "maxLength", Integer.MAX_VALUE);
+        final Pattern pattern = schema.has("pattern") ? compilePattern(schema.get("pattern")) : null;
+        final Object format = schema.opt("format");
+        if (null != format && !"date-time".equals(format)) {
+            throw new UnsupportedSchemaException("Format " + format + " is not supported");
+        }
+        final boolean isDateTime = null != format;
+        if (minLength == 0 && maxLength == Integer.MAX_VALUE && null == pattern && !isDateTime) {
+            return null;
+        }
+        return value -> {
+            if (!(value instanceof String)) {
+                return true;
+            }
+            final String string = (String) value;
+            if (minLength > 0 || maxLength != Integer.MAX_VALUE) {
+                // both utf-16 and code point lengths are checked, so that valid events are valid in both meanings
+                final int length = string.length();
+                final int codePoints = string.codePointCount(0, length);
+                if (codePoints < minLength || length > maxLength) {
+                    return false;
+                }
+            }
+            if (null != pattern && !pattern.matcher(string).find()) {
+                return false;
+            }
+            return !isDateTime || !dateTimeValidator.validate(string).isPresent();
+        };
+    }
+
+    private static Node compileNumber(final JSONObject schema) throws UnsupportedSchemaException {
+        final Object minimum = schema.opt("minimum");
+        final Object maximum = schema.opt("maximum");
+        final Object exclusiveMinimum = schema.opt("exclusiveMinimum");
+        final Object exclusiveMaximum = schema.opt("exclusiveMaximum");
+        if (null == minimum && null == maximum && null == exclusiveMinimum && null == exclusiveMaximum) {
+            return null;
+        }
+        final List<DoubleBound> bounds = new ArrayList<>();
+        if (null != minimum) {
+            final double limit = asLimit(minimum);
+            bounds.add(Boolean.TRUE.equals(exclusiveMinimum) ? v -> v > limit : v -> v >= limit);
+        }
+        if (null != maximum) {
+            final double limit = asLimit(maximum);
+            bounds.add(Boolean.TRUE.equals(exclusiveMaximum) ? v -> v < limit : v -> v <= limit);
+        }
+        if (exclusiveMinimum instanceof Number) {
+            final double limit = asLimit(exclusiveMinimum);
+            bounds.add(v -> v > limit);
+        } else if (null != exclusiveMinimum && !(exclusiveMinimum instanceof Boolean)) {
+            throw new UnsupportedSchemaException("Unsupported exclusiveMinimum");
+        }
+        if (exclusiveMaximum instanceof Number) {
+            final double limit = asLimit(exclusiveMaximum);
+            bounds.add(v -> v < limit);
+        } else if (null != exclusiveMaximum && !(exclusiveMaximum instanceof Boolean)) {
+            throw new UnsupportedSchemaException("Unsupported exclusiveMaximum");
+        }
+        final DoubleBound[] checks = bounds.toArray(new DoubleBound[0]);
+        return value -> {
+            if (!(value instanceof Number)) {
+                return true;
+            }
+            if (value instanceof Long && Math.abs((Long) value) > MAX_EXACT_DOUBLE) {
+                // comparison of such values depends on the way they are compared, leaving it to the interpreter
+                return false;
+            }
+            final double number = ((Number) value).doubleValue();
+            for (final DoubleBound check : checks) {
+                if (!check.accepts(number)) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    @FunctionalInterface
+    private interface DoubleBound {
+        boolean accepts(double value);
+    }
+
+    private static double asLimit(final Object limit) throws UnsupportedSchemaException {
+        if (!(limit instanceof Number)) {
+            throw new UnsupportedSchemaException("Numeric limit is expected");
+        }
+        return ((Number) limit).doubleValue();
+    }
+
+    private static Pattern compilePattern(final Object regex) throws UnsupportedSchemaException {
+        if (!(regex instanceof String)) {
+            throw new UnsupportedSchemaException("pattern is expected to be a string");
+        }
+        try {
+            return Pattern.compile((String) regex);
+        } catch (final PatternSyntaxException e) {
+            throw new UnsupportedSchemaException("Invalid pattern " + regex);
+        }
+    }
+
+    private static JSONObject optObject(final JSONObject schema, final String keyword)
+            throws UnsupportedSchemaException {
+        final Object value = schema.opt(keyword);
+        if (null != value && !(value instanceof JSONObject)) {
+            throw new UnsupportedSchemaException(keyword + " is expected to be an object");
+        }
+        return (JSONObject) value;
+    }
+
+    private static int optCount(final JSONObject schema, final String keyword, final int defaultValue)
+            throws UnsupportedSchemaException {
+        final Object value = schema.opt(keyword);
+        if (null == value) {
+            return defaultValue;
+        }
+        if (!(value instanceof Integer)) {
+            throw new UnsupportedSchemaException(keyword + " is expected to be an integer");
+        }
+        return (Integer) value;
+    }
+
+    private static boolean isObject(final Object value) {
+        return value instanceof LazyJsonObject || value instanceof JSONObject;
+    }
+}
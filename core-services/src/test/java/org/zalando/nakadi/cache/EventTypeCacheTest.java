@@ -11,6 +11,7 @@ import org.mockito.MockitoAnnotations;
 import org.zalando.nakadi.domain.EventType;
 import org.zalando.nakadi.domain.Timeline;
 import org.zalando.nakadi.exceptions.runtime.NoSuchEventTypeException;
+import org.zalando.nakadi.partitioning.StringHash;
 import org.zalando.nakadi.repository.db.EventTypeRepository;
 import org.zalando.nakadi.repository.db.TimelineDbRepository;
 import org.zalando.nakadi.service.timeline.TimelineSync;
@@ -55,7 +56,7 @@ public class EventTypeCacheTest {
 
         eventTypeCache = new EventTypeCache(
                 changesRegistry, eventTypeRepository, timelineDbRepository, timelineSync, eventValidatorBuilder,
-                1,
+                new StringHash(), 1,
                 3); // Update every second, so tests should be fast enough
     }
 
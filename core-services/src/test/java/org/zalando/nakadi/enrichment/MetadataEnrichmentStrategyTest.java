@@ -19,6 +19,10 @@ import static org.zalando.nakadi.utils.TestUtils.randomString;
 public class MetadataEnrichmentStrategyTest {
     private final MetadataEnrichmentStrategy strategy = new MetadataEnrichmentStrategy();
 
+    private static JSONObject enrichedMetadata(final BatchItem batchItem) {
+        return new JSONObject(batchItem.dumpEventToString()).getJSONObject("metadata");
+    }
+
     @Test
     public void setReceivedAtWithSystemTimeInUTC() throws Exception {
         final EventType eventType = buildDefaultEventType();
@@ -34,9 +38,7 @@ public class MetadataEnrichmentStrategyTest {
             DateTimeUtils.setCurrentMillisSystem();
         }
 
-        assertThat(batch.getEvent()
-                        .getJSONObject("metadata")
-                        .getString("received_at"),
+        assertThat(enrichedMetadata(batch).getString("received_at"),
                 equalTo("1970-01-01T00:00:00.000Z"));
     }
 
@@ -60,7 +62,7 @@ public class MetadataEnrichmentStrategyTest {
 
         strategy.enrich(batch, eventType);
 
-        assertThat(batch.getEvent().getJSONObject("metadata").getString("event_type"), equalTo(eventType.getName()));
+        assertThat(enrichedMetadata(batch).getString("event_type"), equalTo(eventType.getName()));
     }
 
     @Test
@@ -69,11 +71,11 @@ public class MetadataEnrichmentStrategyTest {
         final JSONObject event = buildBusinessEvent();
         final BatchItem batchItem = createBatchItem(event);
 
-        assertThat(batchItem.getEvent().getJSONObject("metadata").optString("version"), isEmptyString());
+        assertThat(batchItem.getEvent().getObject("metadata").optString("version", ""), isEmptyString());
 
         strategy.enrich(batchItem, eventType);
 
-        assertThat(batchItem.getEvent().getJSONObject("metadata").getString("version"), equalTo("1.0.0"));
+        assertThat(enrichedMetadata(batchItem).getString("version"), equalTo("1.0.0"));
     }
 
     @Test
@@ -88,7 +90,7 @@ public class MetadataEnrichmentStrategyTest {
         FlowIdUtils.push(flowId);
         strategy.enrich(batch, eventType);
 
-        assertThat(batch.getEvent().getJSONObject("metadata").getString("flow_id"), equalTo(flowId));
+        assertThat(enrichedMetadata(batch).getString("flow_id"), equalTo(flowId));
     }
 
     @Test
@@ -101,7 +103,7 @@ public class MetadataEnrichmentStrategyTest {
         FlowIdUtils.push("something-else");
         strategy.enrich(batch, eventType);
 
-        assertThat(batch.getEvent().getJSONObject("metadata").getString("flow_id"), equalTo("something"));
+        assertThat(enrichedMetadata(batch).getString("flow_id"), equalTo("something"));
     }
 
     @Test
@@ -115,7 +117,7 @@ public class MetadataEnrichmentStrategyTest {
         FlowIdUtils.push(flowId);
         strategy.enrich(batch, eventType);
 
-        assertThat(batch.getEvent().getJSONObject("metadata").getString("flow_id"), equalTo(flowId));
+        assertThat(enrichedMetadata(batch).getString("flow_id"), equalTo(flowId));
     }
 
     @Test
@@ -129,7 +131,7 @@ public class MetadataEnrichmentStrategyTest {
         FlowIdUtils.push(flowId);
         strategy.enrich(batch, eventType);
 
-        assertThat(batch.getEvent().getJSONObject("metadata").getString("flow_id"), equalTo(flowId));
+        assertThat(enrichedMetadata(batch).getString("flow_id"), equalTo(flowId));
     }
 
     @Test
@@ -142,6 +144,26 @@ public class MetadataEnrichmentStrategyTest {
 
         strategy.enrich(batch, eventType);
 
-        assertThat(batch.getEvent().getJSONObject("metadata").getString("partition"), equalTo(partition));
+        assertThat(enrichedMetadata(batch).getString("partition"), equalTo(partition));
+    }
+
+    @Test
+    public void keepOriginalFieldsAndReplaceEnrichedOnes() throws Exception {
+        final EventType eventType = buildDefaultEventType();
+        final BatchItem batch = createBatchItem("{\"metadata\": {\"eid\": \"x\", \"partition\": \"5\", " +
+                "\"version\": \"0.1.0\", \"span_ctx\": {\"a\": [1, 2]}}, \"foo\": \"bar\"}");
+        batch.setPartition("1");
+
+        strategy.enrich(batch, eventType);
+
+        final String dumped = batch.dumpEventToString();
+        assertThat(dumped.indexOf("\"version\""), equalTo(dumped.lastIndexOf("\"version\"")));
+        assertThat(dumped.indexOf("\"partition\""), equalTo(dumped.lastIndexOf("\"partition\"")));
+        final JSONObject event = new JSONObject(dumped);
+        assertThat(event.getString("foo"), equalTo("bar"));
+        assertThat(event.getJSONObject("metadata").getString("eid"), equalTo("x"));
+        assertThat(event.getJSONObject("metadata").getJSONObject("span_ctx").getJSONArray("a").length(), equalTo(2));
+        assertThat(event.getJSONObject("metadata").getString("partition"), equalTo("1"));
+        assertThat(event.getJSONObject("metadata").getString("version"), equalTo("1.0.0"));
     }
 }
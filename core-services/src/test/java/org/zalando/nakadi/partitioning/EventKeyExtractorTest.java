@@ -0,0 +1,96 @@
+package org.zalando.nakadi.partitioning;
+
+import com.google.common.collect.ImmutableList;
+import org.json.JSONException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.zalando.nakadi.domain.CleanupPolicy;
+import org.zalando.nakadi.domain.EventCategory;
+import org.zalando.nakadi.domain.EventType;
+import org.zalando.nakadi.domain.LazyJsonObject;
+import org.zalando.nakadi.domain.StrictJsonParser;
+import org.zalando.nakadi.exceptions.runtime.InvalidPartitionKeyFieldsException;
+import org.zalando.nakadi.util.JsonPathAccess;
+import org.zalando.nakadi.utils.EventTypeTestBuilder;
+
+import java.util.List;
+
+public class EventKeyExtractorTest {
+
+    private static final String EVENT = "{\"metadata\": {\"partition_compaction_key\": \"compaction\"}, " +
+            "\"sku\": \"ABC-123\", \"count\": -1234567890123, \"small\": 7, \"flag\": true, \"price\": 1.5e3, " +
+            "\"nothing\": null, \"nested\": {\"a\": {\"b\": \"c\"}, \"list\": [1, 2]}, \"dot.ted\": \"x\"}";
+
+    private final StringHash stringHash = new StringHash();
+
+    @Test
+    public void testHashIsTheSameAsForStringRepresentation() {
+        final List<String> fields = ImmutableList.of("sku", "count", "small", "flag", "price", "nothing",
+                "nested", "nested.a.b", "nested.list", "'dot.ted'", "sku");
+        final EventType eventType = EventTypeTestBuilder.builder()
+                .partitionStrategy(PartitionStrategy.HASH_STRATEGY)
+                .partitionKeyFields(fields)
+                .build();
+        final LazyJsonObject event = StrictJsonParser.parseLazyObject(EVENT);
+
+        int expectedHash = 0;
+        for (final String field : fields) {
+            expectedHash += stringHash.hashCode(new JsonPathAccess(event).get(field).toString());
+        }
+
+        final EventKeyExtractor.EventKeys keys = EventKeyExtractor.forEventType(eventType, stringHash).extract(event);
+        Assert.assertEquals(expectedHash, keys.getPartitionKeyHash());
+        Assert.assertNull(keys.getEventKey());
+    }
+
+    @Test
+    public void testEventKeyIsTakenFromTheOnlyPartitionKeyField() {
+        final EventType eventType = EventTypeTestBuilder.builder()
+                .category(EventCategory.DATA)
+                .partitionStrategy(PartitionStrategy.HASH_STRATEGY)
+                .partitionKeyFields(ImmutableList.of("id"))
+                .build();
+        final LazyJsonObject event = StrictJsonParser.parseLazyObject("{\"data\": {\"id\": 42}}");
+
+        final EventKeyExtractor.EventKeys keys = EventKeyExtractor.forEventType(eventType, stringHash).extract(event);
+        Assert.assertEquals("42", keys.getEventKey());
+        Assert.assertEquals("42".hashCode(), keys.getPartitionKeyHash());
+    }
+
+    @Test
+    public void testCompactionKeyIsUsedAsEventKey() {
+        final EventType eventType = EventTypeTestBuilder.builder()
+                .partitionStrategy(PartitionStrategy.HASH_STRATEGY)
+                .partitionKeyFields(ImmutableList.of("sku"))
+                .cleanupPolicy(CleanupPolicy.COMPACT)
+                .build();
+
+        final EventKeyExtractor.EventKeys keys = EventKeyExtractor.forEventType(eventType, stringHash)
+                .extract(StrictJsonParser.parseLazyObject(EVENT));
+        Assert.assertEquals("compaction", keys.getEventKey());
+        Assert.assertEquals("ABC-123".hashCode(), keys.getPartitionKeyHash());
+    }
+
+    @Test
+    public void testMissingPartitionKeyField() {
+        final EventType eventType = EventTypeTestBuilder.builder()
+                .partitionStrategy(PartitionStrategy.HASH_STRATEGY)
+                .partitionKeyFields(ImmutableList.of("sku", "nested.missing.field"))
+                .build();
+        try {
+            EventKeyExtractor.forEventType(eventType, stringHash).extract(StrictJsonParser.parseLazyObject(EVENT));
+            Assert.fail("Extraction is expected to fail");
+        } catch (final InvalidPartitionKeyFieldsException e) {
+            Assert.assertEquals("field missing doesn't exist.", e.getMessage());
+        }
+    }
+
+    @Test(expected = JSONException.class)
+    public void testMissingCompactionKey() {
+        final EventType eventType = EventTypeTestBuilder.builder()
+                .partitionStrategy(PartitionStrategy.RANDOM_STRATEGY)
+                .cleanupPolicy(CleanupPolicy.COMPACT)
+                .build();
+        EventKeyExtractor.forEventType(eventType, stringHash).extract(StrictJsonParser.parseLazyObject("{}"));
+    }
+}
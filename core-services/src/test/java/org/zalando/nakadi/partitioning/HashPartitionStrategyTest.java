@@ -4,6 +4,7 @@ import com.google.common.collect.ImmutableList;
 import org.apache.commons.lang3.StringUtils;
 import org.json.JSONObject;
 import org.junit.Test;
+import org.zalando.nakadi.cache.EventTypeCache;
 import org.zalando.nakadi.domain.EventType;
 import org.zalando.nakadi.exceptions.Try;
 
@@ -39,6 +40,7 @@ import static org.zalando.nakadi.partitioning.PartitionStrategy.HASH_STRATEGY;
 import static org.zalando.nakadi.utils.TestUtils.loadEventType;
 import static org.zalando.nakadi.utils.TestUtils.readFile;
 import static org.zalando.nakadi.utils.TestUtils.resourceAsString;
+import static org.zalando.nakadi.utils.TestUtils.toLazyJson;
 
 public class HashPartitionStrategyTest {
 
@@ -50,19 +52,29 @@ public class HashPartitionStrategyTest {
     private static List<JSONObject> eventSamplesB = null;
     private static List<JSONObject> eventSamplesC = null;
 
+    private final EventTypeCache eventTypeCache;
     private final HashPartitionStrategy strategy;
     private final EventType simpleEventType;
     private final ArrayList<List<JSONObject>> partitions = createEmptyPartitions(PARTITIONS.length);
 
     public HashPartitionStrategyTest() {
         simpleEventType = new EventType();
+        simpleEventType.setName("simple");
+        simpleEventType.setPartitionStrategy(HASH_STRATEGY);
         simpleEventType.setPartitionKeyFields(asList("sku", "name"));
 
         final HashPartitionStrategyCrutch hashPartitioningCrutch = mock(HashPartitionStrategyCrutch.class);
         when(hashPartitioningCrutch.adjustPartitionIndex(anyInt(), anyInt()))
                 .thenAnswer(invocation -> invocation.getArguments()[0]); // don't do any adjustments
 
-        strategy = new HashPartitionStrategy(hashPartitioningCrutch, new StringHash());
+        eventTypeCache = mock(EventTypeCache.class);
+        strategy = new HashPartitionStrategy(hashPartitioningCrutch, eventTypeCache);
+        mockEventKeyExtractor(simpleEventType);
+    }
+
+    private void mockEventKeyExtractor(final EventType eventType) {
+        when(eventTypeCache.getEventKeyExtractor(eventType.getName()))
+                .thenReturn(EventKeyExtractor.forEventType(eventType, new StringHash()));
     }
 
     @Test
@@ -97,9 +109,12 @@ public class HashPartitionStrategyTest {
         final JSONObject event = new JSONObject(resourceAsString("../complex-event.json", this.getClass()));
 
         final EventType eventType = new EventType();
+        eventType.setName("complex");
+        eventType.setPartitionStrategy(HASH_STRATEGY);
         eventType.setPartitionKeyFields(asList("sku", "brand", "category_id", "details.detail_a.detail_a_a"));
+        mockEventKeyExtractor(eventType);
 
-        final String partition = strategy.calculatePartition(eventType, event, asList(PARTITIONS));
+        final String partition = strategy.calculatePartition(eventType, toLazyJson(event), asList(PARTITIONS));
 
         assertThat(partition, isIn(PARTITIONS));
     }
@@ -109,8 +124,9 @@ public class HashPartitionStrategyTest {
         final EventType eventType = loadEventType(
                 "org/zalando/nakadi/domain/event-type.with.partition-key-fields.json");
         eventType.setPartitionStrategy(HASH_STRATEGY);
+        mockEventKeyExtractor(eventType);
         final JSONObject event = new JSONObject(readFile("sample-data-event.json"));
-        assertThat(strategy.calculatePartition(eventType, event, ImmutableList.of("p0")), equalTo("p0"));
+        assertThat(strategy.calculatePartition(eventType, toLazyJson(event), ImmutableList.of("p0")), equalTo("p0"));
     }
 
     private double calculateVarianceOfUniformDistribution(final double[] samples) {
@@ -179,7 +195,8 @@ public class HashPartitionStrategyTest {
                                           final List<JSONObject> events) {
         events.stream()
                 .map(Try.<JSONObject, Void>wrap(event -> {
-                    final String partition = strategy.calculatePartition(eventType, event, asList(PARTITIONS));
+                    final String partition = strategy.calculatePartition(
+                            eventType, toLazyJson(event), asList(PARTITIONS));
                     final int partitionNo = parseInt(partition);
                     partitions.get(partitionNo).add(event);
                     return null;
@@ -4,7 +4,9 @@ import com.google.common.collect.ImmutableList;
 import org.json.JSONObject;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
+import org.zalando.nakadi.cache.EventTypeCache;
 import org.zalando.nakadi.domain.EventType;
 import org.zalando.nakadi.domain.Timeline;
 import org.zalando.nakadi.exceptions.runtime.InvalidEventTypeException;
@@ -13,31 +15,42 @@ import org.zalando.nakadi.exceptions.runtime.PartitioningException;
 import org.zalando.nakadi.repository.TopicRepository;
 import org.zalando.nakadi.service.timeline.TimelineService;
 
+import java.util.function.Consumer;
+
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.zalando.nakadi.domain.EventCategory.UNDEFINED;
 import static org.zalando.nakadi.partitioning.PartitionStrategy.HASH_STRATEGY;
 import static org.zalando.nakadi.partitioning.PartitionStrategy.RANDOM_STRATEGY;
 import static org.zalando.nakadi.partitioning.PartitionStrategy.USER_DEFINED_STRATEGY;
 import static org.zalando.nakadi.utils.TestUtils.buildDefaultEventType;
+import static org.zalando.nakadi.utils.TestUtils.toLazyJson;
 
 public class PartitionResolverTest {
 
+    private static final EventKeyExtractor.EventKeys NO_KEYS = new EventKeyExtractor.EventKeys(0, null);
+
     private PartitionResolver partitionResolver;
     private TimelineService timelineService;
+    private TopicRepository topicRepository;
+    private EventTypeCache eventTypeCache;
 
     @Before
     public void before() {
-        final TopicRepository topicRepository = Mockito.mock(TopicRepository.class);
+        topicRepository = Mockito.mock(TopicRepository.class);
         when(topicRepository.listPartitionNames(any(String.class))).thenReturn(ImmutableList.of("0"));
         timelineService = Mockito.mock(TimelineService.class);
         when(timelineService.getTopicRepository((Timeline) any())).thenReturn(topicRepository);
         when(timelineService.getTopicRepository((EventType) any())).thenReturn(topicRepository);
-        partitionResolver = new PartitionResolver(timelineService, mock(HashPartitionStrategy.class));
+        eventTypeCache = mock(EventTypeCache.class);
+        partitionResolver = new PartitionResolver(timelineService, mock(HashPartitionStrategy.class), eventTypeCache);
     }
 
     @Test
@@ -51,16 +64,44 @@ public class PartitionResolverTest {
         final JSONObject event = new JSONObject();
         event.put("abc", "blah");
 
-        final String partition = partitionResolver.resolvePartition(eventType, event);
+        final String partition = partitionResolver.resolvePartition(eventType, toLazyJson(event), NO_KEYS);
         assertThat(partition, notNullValue());
     }
 
+    @Test
+    public void whenResolvePartitionSeveralTimesThenPartitionsAreListedOnce() {
+        final EventType eventType = buildDefaultEventType();
+        eventType.setPartitionStrategy(RANDOM_STRATEGY);
+        when(timelineService.getActiveTimeline(eq(eventType))).thenReturn(mock(Timeline.class));
+
+        for (int i = 0; i < 10; ++i) {
+            partitionResolver.resolvePartition(eventType, toLazyJson(new JSONObject()), NO_KEYS);
+        }
+
+        verify(topicRepository, times(1)).listPartitionNames(any());
+    }
+
+    @Test
+    public void whenEventTypeIsInvalidatedThenPartitionsAreListedAgain() {
+        final EventType eventType = buildDefaultEventType();
+        when(timelineService.getActiveTimeline(eq(eventType))).thenReturn(mock(Timeline.class));
+        when(topicRepository.listPartitionNames(any())).thenReturn(ImmutableList.of("2", "10", "0", "1"));
+        final ArgumentCaptor<Consumer> listener = ArgumentCaptor.forClass(Consumer.class);
+        verify(eventTypeCache).addInvalidationListener(listener.capture());
+
+        assertThat(partitionResolver.getSortedPartitions(eventType), contains("0", "1", "10", "2"));
+        listener.getValue().accept(eventType.getName());
+        partitionResolver.getSortedPartitions(eventType);
+
+        verify(topicRepository, times(2)).listPartitionNames(any());
+    }
+
     @Test(expected = PartitioningException.class)
     public void whenResolvePartitionWithUnknownStrategyThenPartitioningException() {
         final EventType eventType = new EventType();
         eventType.setPartitionStrategy("blah_strategy");
 
-        partitionResolver.resolvePartition(eventType, null);
+        partitionResolver.resolvePartition(eventType, null, NO_KEYS);
     }
 
     @Test(expected = NoSuchPartitionStrategyException.class)
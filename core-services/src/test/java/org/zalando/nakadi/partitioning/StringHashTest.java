@@ -31,4 +31,12 @@ public class StringHashTest {
                                 .and(equalTo(testString.hashCode()))));
     }
 
+    @Test
+    public void testHashOfValueIsEqualToHashOfItsStringRepresentation() {
+        for (final Object value : new Object[]{0, 7, -7, 1234567890, Integer.MIN_VALUE, Long.MAX_VALUE,
+                Long.MIN_VALUE, -1234567890123L, true, 1.5e3, "Hello"}) {
+            assertThat(stringHash.hashCode(value), equalTo(stringHash.hashCode(value.toString())));
+        }
+    }
+
 }
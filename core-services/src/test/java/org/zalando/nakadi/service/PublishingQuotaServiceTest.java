@@ -0,0 +1,132 @@
+package org.zalando.nakadi.service;
+
+import com.codahale.metrics.MetricRegistry;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.TreeCache;
+import org.apache.zookeeper.data.Stat;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.zalando.nakadi.domain.PublishingQuota;
+import org.zalando.nakadi.exceptions.runtime.TooManyRequestsException;
+import org.zalando.nakadi.utils.TestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PublishingQuotaServiceTest {
+
+    private static final String APP_PATH = "/nakadi/quotas/producers/apps/app";
+    private static final String ET_PATH = "/nakadi/quotas/producers/event_types/et";
+
+    private final TreeCache quotasCache = mock(TreeCache.class);
+    private final AtomicLong nanos = new AtomicLong();
+    private PublishingQuotaService quotaService;
+
+    @Before
+    public void setUp() {
+        quotaService = new PublishingQuotaService(null, null, TestUtils.OBJECT_MAPPER, new MetricRegistry(),
+                nanos::get);
+        quotaService.setQuotasCache(quotasCache);
+    }
+
+    @Test
+    public void whenNoQuotaIsSetThenBatchIsAdmitted() {
+        for (int i = 0; i < 10; ++i) {
+            quotaService.checkQuota("et", "app", 1_000_000);
+            quotaService.chargeEvents("et", "app", 1_000_000);
+        }
+    }
+
+    @Test
+    public void whenBytesAreOverQuotaThenBatchIsRejectedUntilRefilled() throws Exception {
+        setQuota(ET_PATH, 1, new PublishingQuota(null, 1000L));
+
+        quotaService.checkQuota("et", "app", 3000);
+        try {
+            quotaService.checkQuota("et", "app", 1);
+            Assert.fail("Batch over the quota must be rejected");
+        } catch (final TooManyRequestsException e) {
+            // debt of 2000 bytes is paid off at 1000 bytes per second
+            Assert.assertEquals(3, e.getRetryAfterSeconds());
+        }
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(3));
+        quotaService.checkQuota("et", "app", 1);
+    }
+
+    @Test(expected = TooManyRequestsException.class)
+    public void whenEventsAreOverQuotaOfAppThenBatchIsRejected() throws Exception {
+        setQuota(APP_PATH, 1, new PublishingQuota(10L, null));
+
+        quotaService.checkQuota("et", "app", 100);
+        quotaService.chargeEvents("et", "app", 10);
+        quotaService.checkQuota("other-et", "app", 100);
+    }
+
+    @Test
+    public void whenQuotaIsChangedThenItIsAppliedRightAway() throws Exception {
+        setQuota(ET_PATH, 1, new PublishingQuota(null, 10L));
+        quotaService.checkQuota("et", "app", 100);
+
+        setQuota(ET_PATH, 2, new PublishingQuota(null, 1000L));
+        quotaService.checkQuota("et", "app", 100);
+    }
+
+    @Test
+    public void whenLimiterIsFirstUsedConcurrentlyThenNoChargeIsLost() throws Exception {
+        setQuota(ET_PATH, 1, new PublishingQuota(null, 1000L));
+
+        final int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<?>> charges = new ArrayList<>();
+            for (int i = 0; i < threads; ++i) {
+                charges.add(executor.submit(() -> {
+                    start.await();
+                    quotaService.chargeBytes("et", "app", 1000);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (final Future<?> charge : charges) {
+                charge.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        try {
+            quotaService.checkQuota("et", "app", 1);
+            Assert.fail("Batch over the quota must be rejected");
+        } catch (final TooManyRequestsException e) {
+            Assert.assertEquals(threads, e.getRetryAfterSeconds());
+        }
+    }
+
+    @Test(expected = TooManyRequestsException.class)
+    public void whenOlderVersionOfQuotaIsSeenThenLimiterIsNotReset() throws Exception {
+        setQuota(ET_PATH, 2, new PublishingQuota(null, 1000L));
+        quotaService.checkQuota("et", "app", 3000);
+
+        setQuota(ET_PATH, 1, new PublishingQuota(null, 1000L));
+        quotaService.checkQuota("et", "app", 1);
+    }
+
+    private void setQuota(final String path, final long version, final PublishingQuota quota) throws Exception {
+        final Stat stat = new Stat();
+        stat.setMzxid(version);
+        when(quotasCache.getCurrentData(path))
+                .thenReturn(new ChildData(path, stat, TestUtils.OBJECT_MAPPER.writeValueAsBytes(quota)));
+    }
+}
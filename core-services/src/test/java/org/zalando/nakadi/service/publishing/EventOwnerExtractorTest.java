@@ -1,26 +1,26 @@
 package org.zalando.nakadi.service.publishing;
 
-import org.json.JSONObject;
 import org.junit.Assert;
 import org.junit.Test;
 import org.zalando.nakadi.domain.EventOwnerHeader;
+import org.zalando.nakadi.domain.LazyJsonObject;
 import org.zalando.nakadi.domain.StrictJsonParser;
 import org.zalando.nakadi.view.EventOwnerSelector;
 
 import java.util.function.Function;
 
 public class EventOwnerExtractorTest {
-    private static final JSONObject MOCK_EVENT = StrictJsonParser.parse("{" +
+    private static final LazyJsonObject MOCK_EVENT = StrictJsonParser.parseLazyObject("{" +
             "\"other\": null, \n" +
             "\"example\": {\n" +
                 "\"security\": {\"final\": \"test_value\"}}" +
-            "}", false);
+            "}");
 
     @Test
     public void testCorrectValueProjectedWhenNestedEventWithPathValue() {
         final EventOwnerSelector selector = new EventOwnerSelector(
                 EventOwnerSelector.Type.PATH, "retailer_id", "example.security.final");
-        final Function<JSONObject, EventOwnerHeader> extractor =
+        final Function<LazyJsonObject, EventOwnerHeader> extractor =
                 EventOwnerExtractorFactory.createPathExtractor(selector);
 
         final EventOwnerHeader result = extractor.apply(MOCK_EVENT);
@@ -29,7 +29,7 @@ public class EventOwnerExtractorTest {
 
     @Test
     public void testAbsenceOfPathValue() {
-        final Function<JSONObject, EventOwnerHeader> extractor = EventOwnerExtractorFactory.createPathExtractor(
+        final Function<LazyJsonObject, EventOwnerHeader> extractor = EventOwnerExtractorFactory.createPathExtractor(
                 new EventOwnerSelector(EventOwnerSelector.Type.PATH, "retailer_id", "example.nothing.here"));
 
         final EventOwnerHeader result = extractor.apply(MOCK_EVENT);
@@ -38,7 +38,7 @@ public class EventOwnerExtractorTest {
 
     @Test
     public void testNullWithPathValue() {
-        final Function<JSONObject, EventOwnerHeader> extractor = EventOwnerExtractorFactory.createPathExtractor(
+        final Function<LazyJsonObject, EventOwnerHeader> extractor = EventOwnerExtractorFactory.createPathExtractor(
                 new EventOwnerSelector(EventOwnerSelector.Type.PATH, "retailer_id", "other"));
 
         final EventOwnerHeader result = extractor.apply(MOCK_EVENT);
@@ -47,7 +47,7 @@ public class EventOwnerExtractorTest {
 
     @Test
     public void testCorrectValueSetWhenStaticPath() {
-        final Function<JSONObject, EventOwnerHeader> extractor = EventOwnerExtractorFactory.createStaticExtractor(
+        final Function<LazyJsonObject, EventOwnerHeader> extractor = EventOwnerExtractorFactory.createStaticExtractor(
                 new EventOwnerSelector(EventOwnerSelector.Type.STATIC, "retailer_id", "examplexx"));
 
         final EventOwnerHeader result = extractor.apply(MOCK_EVENT);
@@ -2,6 +2,7 @@ package org.zalando.nakadi.service.publishing;
 
 import com.google.common.collect.ImmutableList;
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 import org.junit.Assert;
 import org.junit.Before;
@@ -17,6 +18,8 @@ import org.zalando.nakadi.domain.EventPublishingStatus;
 import org.zalando.nakadi.domain.EventPublishingStep;
 import org.zalando.nakadi.domain.EventType;
 import org.zalando.nakadi.domain.EventTypeBase;
+import org.zalando.nakadi.domain.LazyJsonObject;
+import org.zalando.nakadi.domain.NdjsonBatchReader;
 import org.zalando.nakadi.domain.Timeline;
 import org.zalando.nakadi.enrichment.Enrichment;
 import org.zalando.nakadi.exceptions.runtime.AccessDeniedException;
@@ -24,8 +27,10 @@ import org.zalando.nakadi.exceptions.runtime.EnrichmentException;
 import org.zalando.nakadi.exceptions.runtime.EventPublishingException;
 import org.zalando.nakadi.exceptions.runtime.EventTypeTimeoutException;
 import org.zalando.nakadi.exceptions.runtime.PartitioningException;
+import org.zalando.nakadi.partitioning.EventKeyExtractor;
 import org.zalando.nakadi.partitioning.PartitionResolver;
 import org.zalando.nakadi.partitioning.PartitionStrategy;
+import org.zalando.nakadi.partitioning.StringHash;
 import org.zalando.nakadi.plugin.api.authz.Resource;
 import org.zalando.nakadi.repository.TopicRepository;
 import org.zalando.nakadi.service.AuthorizationValidator;
@@ -36,7 +41,9 @@ import org.zalando.nakadi.validation.EventTypeValidator;
 import org.zalando.nakadi.validation.ValidationError;
 import org.zalando.nakadi.view.EventOwnerSelector;
 
+import java.io.ByteArrayInputStream;
 import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -96,7 +103,7 @@ public class EventPublisherTest {
 
         eventOwnerExtractorFactory = mock(EventOwnerExtractorFactory.class);
         publisher = new EventPublisher(ts, cache, partitionResolver, enrichment, nakadiSettings, timelineSync,
-                authzValidator, eventOwnerExtractorFactory);
+                authzValidator, eventOwnerExtractorFactory, new GroupCommitPublisher(0, 1000));
     }
 
     @Test
@@ -106,7 +113,7 @@ public class EventPublisherTest {
 
         mockSuccessfulValidation(eventType);
 
-        final EventPublishResult result = publisher.publish(batch.toString(), eventType.getName(), null);
+        final EventPublishResult result = publisher.publish(toBytes(batch), eventType.getName(), null);
 
         assertThat(result.getStatus(), equalTo(EventPublishingStatus.SUBMITTED));
         verify(topicRepository, times(1)).syncPostBatch(any(), any(), any(), eq(false));
@@ -119,7 +126,7 @@ public class EventPublisherTest {
         mockSuccessfulValidation(eventType);
 
         Mockito.when(eventOwnerExtractorFactory.createExtractor(eq(eventType))).thenReturn(null);
-        publisher.publish(batch.toString(), eventType.getName(), null);
+        publisher.publish(toBytes(batch), eventType.getName(), null);
 
         // invoked once for a batch
         Mockito.verify(eventOwnerExtractorFactory, Mockito.times(1)).createExtractor(eq(eventType));
@@ -136,7 +143,7 @@ public class EventPublisherTest {
                 EventOwnerExtractorFactory.createStaticExtractor(
                         new EventOwnerSelector(EventOwnerSelector.Type.STATIC, "retailer", "nakadi")));
 
-        publisher.publish(batch.toString(), eventType.getName(), null);
+        publisher.publish(toBytes(batch), eventType.getName(), null);
         Mockito.verify(authzValidator, Mockito.times(3)).authorizeEventWrite(any());
     }
 
@@ -150,7 +157,7 @@ public class EventPublisherTest {
                 .when(authzValidator)
                 .authorizeEventTypeWrite(Mockito.eq(et));
 
-        publisher.publish(buildDefaultBatch(1).toString(), et.getName(), null);
+        publisher.publish(toBytes(buildDefaultBatch(1)), et.getName(), null);
     }
 
     @Test
@@ -161,7 +168,7 @@ public class EventPublisherTest {
 
         mockSuccessfulValidation(eventType);
 
-        final EventPublishResult result = publisher.publish(batch.toString(), eventType.getName(), null);
+        final EventPublishResult result = publisher.publish(toBytes(batch), eventType.getName(), null);
 
         assertThat(result.getResponses().get(0).getEid(), equalTo(event.getJSONObject("metadata").optString("eid")));
         verify(topicRepository, times(1)).syncPostBatch(any(), any(), any(), eq(false));
@@ -176,7 +183,7 @@ public class EventPublisherTest {
         final Closeable etCloser = mock(Closeable.class);
         Mockito.when(timelineSync.workWithEventType(any(String.class), anyLong())).thenReturn(etCloser);
 
-        publisher.publish(batch.toString(), eventType.getName(), null);
+        publisher.publish(toBytes(batch), eventType.getName(), null);
 
         verify(timelineSync, times(1)).workWithEventType(eq(eventType.getName()), eq(TIMELINE_WAIT_TIMEOUT_MS));
         verify(etCloser, times(1)).close();
@@ -185,7 +192,7 @@ public class EventPublisherTest {
     @Test(expected = EventTypeTimeoutException.class)
     public void whenPublishAndTimelineLockTimedOutThenException() throws Exception {
         Mockito.when(timelineSync.workWithEventType(any(String.class), anyLong())).thenThrow(new TimeoutException());
-        publisher.publish(buildDefaultBatch(0).toString(), "blahET", null);
+        publisher.publish(toBytes(buildDefaultBatch(0)), "blahET", null);
     }
 
     @Test
@@ -196,11 +203,11 @@ public class EventPublisherTest {
 
         mockFaultValidation(eventType, "error");
 
-        final EventPublishResult result = publisher.publish(batch.toString(), eventType.getName(), null);
+        final EventPublishResult result = publisher.publish(toBytes(batch), eventType.getName(), null);
 
         assertThat(result.getStatus(), equalTo(EventPublishingStatus.ABORTED));
         verify(enrichment, times(0)).enrich(createBatchItem(event), eventType);
-        verify(partitionResolver, times(0)).resolvePartition(eventType, event);
+        verify(partitionResolver, times(0)).resolvePartition(any(), any(), any());
         verify(topicRepository, times(0)).syncPostBatch(any(), any(), any(), anyBoolean());
     }
 
@@ -212,7 +219,7 @@ public class EventPublisherTest {
 
         mockFaultValidation(eventType, "error");
 
-        EventPublishResult result = publisher.publish(batch.toString(), eventType.getName(), null);
+        EventPublishResult result = publisher.publish(toBytes(batch), eventType.getName(), null);
 
         assertThat(result.getStatus(), equalTo(EventPublishingStatus.ABORTED));
 
@@ -230,7 +237,7 @@ public class EventPublisherTest {
 
         // test with event header being set
         mockSuccessfulOwnerExtraction(eventType);
-        result = publisher.publish(batch.toString(), eventType.getName(), null);
+        result = publisher.publish(toBytes(batch), eventType.getName(), null);
 
         assertThat(result.getStatus(), equalTo(EventPublishingStatus.ABORTED));
         second = result.getResponses().get(1);
@@ -245,11 +252,11 @@ public class EventPublisherTest {
 
         mockSuccessfulValidation(eventType);
 
-        final EventPublishResult result = publisher.publish(batch.toString(), eventType.getName(), null);
+        final EventPublishResult result = publisher.publish(toBytes(batch), eventType.getName(), null);
 
         assertThat(result.getStatus(), equalTo(EventPublishingStatus.ABORTED));
         verify(enrichment, times(0)).enrich(any(), any());
-        verify(partitionResolver, times(0)).resolvePartition(any(), any());
+        verify(partitionResolver, times(0)).resolvePartition(any(), any(), any());
         verify(topicRepository, times(0)).syncPostBatch(any(), any(), any(), anyBoolean());
     }
 
@@ -266,7 +273,7 @@ public class EventPublisherTest {
 
         mockSuccessfulValidation(eventType);
 
-        final EventPublishResult result = publisher.publish(batch.toString(), eventType.getName(), null);
+        final EventPublishResult result = publisher.publish(toBytes(batch), eventType.getName(), null);
 
         assertThat(result.getStatus(), equalTo(EventPublishingStatus.ABORTED));
 
@@ -299,7 +306,7 @@ public class EventPublisherTest {
 
         mockSuccessfulValidation(eventType);
 
-        final EventPublishResult result = publisher.publish(batch.toString(), eventType.getName(), null);
+        final EventPublishResult result = publisher.publish(toBytes(batch), eventType.getName(), null);
 
         assertThat(result.getStatus(), equalTo(EventPublishingStatus.ABORTED));
 
@@ -326,11 +333,11 @@ public class EventPublisherTest {
 
         mockSuccessfulValidation(eventType);
 
-        final EventPublishResult result = publisher.publish(batch.toString(), eventType.getName(), null);
+        final EventPublishResult result = publisher.publish(toBytes(batch), eventType.getName(), null);
 
         assertThat(result.getStatus(), equalTo(EventPublishingStatus.SUBMITTED));
         verify(enrichment, times(1)).enrich(any(), any());
-        verify(partitionResolver, times(1)).resolvePartition(any(), any());
+        verify(partitionResolver, times(1)).resolvePartition(any(), any(), any());
         verify(topicRepository, times(1)).syncPostBatch(any(), any(), any(), eq(false));
     }
 
@@ -341,11 +348,11 @@ public class EventPublisherTest {
 
         mockSuccessfulValidation(eventType);
 
-        final EventPublishResult result = publisher.publish(batch.toString(), eventType.getName(), null);
+        final EventPublishResult result = publisher.publish(toBytes(batch), eventType.getName(), null);
 
         assertThat(result.getStatus(), equalTo(EventPublishingStatus.ABORTED));
         verify(enrichment, times(0)).enrich(any(), any());
-        verify(partitionResolver, times(0)).resolvePartition(any(), any());
+        verify(partitionResolver, times(0)).resolvePartition(any(), any(), any());
         verify(topicRepository, times(0)).syncPostBatch(any(), any(), any(), anyBoolean());
     }
 
@@ -356,11 +363,11 @@ public class EventPublisherTest {
 
         mockSuccessfulValidation(eventType);
 
-        final EventPublishResult result = publisher.publish(batch.toString(), eventType.getName(), null);
+        final EventPublishResult result = publisher.publish(toBytes(batch), eventType.getName(), null);
 
         assertThat(result.getStatus(), equalTo(EventPublishingStatus.ABORTED));
         verify(enrichment, times(0)).enrich(any(), any());
-        verify(partitionResolver, times(0)).resolvePartition(any(), any());
+        verify(partitionResolver, times(0)).resolvePartition(any(), any(), any());
         verify(topicRepository, times(0)).syncPostBatch(any(), any(), any(), anyBoolean());
     }
 
@@ -371,11 +378,11 @@ public class EventPublisherTest {
 
         mockSuccessfulValidation(eventType);
 
-        final EventPublishResult result = publisher.publish(batch.toString(), eventType.getName(), null);
+        final EventPublishResult result = publisher.publish(toBytes(batch), eventType.getName(), null);
 
         assertThat(result.getStatus(), equalTo(EventPublishingStatus.SUBMITTED));
         verify(enrichment, times(1)).enrich(any(), any());
-        verify(partitionResolver, times(1)).resolvePartition(any(), any());
+        verify(partitionResolver, times(1)).resolvePartition(any(), any(), any());
         verify(topicRepository, times(1)).syncPostBatch(any(), any(), any(), eq(false));
     }
 
@@ -384,12 +391,11 @@ public class EventPublisherTest {
         final EventType eventType = buildDefaultEventType();
         final List<BatchItem> batch = new ArrayList<>();
         batch.add(createBatchItem(buildDefaultBatch(1).getJSONObject(0)));
-        final JSONObject event = batch.get(0).getEvent();
 
         mockSuccessfulValidation(eventType);
         mockFaultPartition();
 
-        final EventPublishResult result = publisher.publish(createStringFromBatchItems(batch),
+        final EventPublishResult result = publisher.publish(createBytesFromBatchItems(batch),
                 eventType.getName(), null);
 
         assertThat(result.getStatus(), equalTo(EventPublishingStatus.ABORTED));
@@ -406,7 +412,7 @@ public class EventPublisherTest {
         mockSuccessfulValidation(eventType);
         mockFaultPartition();
 
-        final EventPublishResult result = publisher.publish(createStringFromBatchItems(batch),
+        final EventPublishResult result = publisher.publish(createBytesFromBatchItems(batch),
                 eventType.getName(), null);
 
         assertThat(result.getStatus(), equalTo(EventPublishingStatus.ABORTED));
@@ -422,7 +428,7 @@ public class EventPublisherTest {
         assertThat(second.getDetail(), is(isEmptyString()));
 
         verify(cache, times(2)).getValidator(any());
-        verify(partitionResolver, times(1)).resolvePartition(any(), any());
+        verify(partitionResolver, times(1)).resolvePartition(any(), any(), any());
     }
 
     @Test
@@ -433,7 +439,7 @@ public class EventPublisherTest {
         mockSuccessfulValidation(eventType);
         mockFailedPublishing();
 
-        final EventPublishResult result = publisher.publish(batch.toString(), eventType.getName(), null);
+        final EventPublishResult result = publisher.publish(toBytes(batch), eventType.getName(), null);
 
         assertThat(result.getStatus(), equalTo(EventPublishingStatus.FAILED));
         verify(topicRepository, times(1)).syncPostBatch(any(), any(), any(), eq(false));
@@ -448,11 +454,11 @@ public class EventPublisherTest {
         mockSuccessfulValidation(eventType);
         mockFaultEnrichment();
 
-        final EventPublishResult result = publisher.publish(batch.toString(), eventType.getName(), null);
+        final EventPublishResult result = publisher.publish(toBytes(batch), eventType.getName(), null);
 
         assertThat(result.getStatus(), equalTo(EventPublishingStatus.ABORTED));
         verify(cache, times(1)).getValidator(eventType.getName());
-        verify(partitionResolver, times(1)).resolvePartition(any(), any());
+        verify(partitionResolver, times(1)).resolvePartition(any(), any(), any());
         verify(enrichment, times(1)).enrich(any(), any());
         verify(topicRepository, times(0)).syncPostBatch(any(), any(), any(), anyBoolean());
     }
@@ -469,7 +475,7 @@ public class EventPublisherTest {
 
         mockSuccessfulValidation(eventType);
 
-        publisher.publish(batch.toString(), eventType.getName(), null);
+        publisher.publish(toBytes(batch), eventType.getName(), null);
 
         final List<BatchItem> publishedBatch = capturePublishedBatch();
         assertThat(publishedBatch.get(0).getEventKey(), equalTo("my_key"));
@@ -489,7 +495,7 @@ public class EventPublisherTest {
 
         mockSuccessfulValidation(eventType);
 
-        publisher.publish(batch.toString(), eventType.getName(), null);
+        publisher.publish(toBytes(batch), eventType.getName(), null);
 
         final List<BatchItem> publishedBatch = capturePublishedBatch();
         assertThat(publishedBatch.get(0).getEventKey(), equalTo(null));
@@ -504,7 +510,7 @@ public class EventPublisherTest {
 
         mockSuccessfulValidation(eventType);
 
-        publisher.publish(batch.toString(), eventType.getName(), null);
+        publisher.publish(toBytes(batch), eventType.getName(), null);
 
         final List<BatchItem> publishedBatch = capturePublishedBatch();
         assertThat(publishedBatch.get(0).getEventKey(), equalTo(null));
@@ -525,7 +531,7 @@ public class EventPublisherTest {
         mockSuccessfulValidation(eventType);
         mockFaultEnrichment();
 
-        final EventPublishResult result = publisher.publish(batch.toString(), eventType.getName(), null);
+        final EventPublishResult result = publisher.publish(toBytes(batch), eventType.getName(), null);
 
         assertThat(result.getStatus(), equalTo(EventPublishingStatus.ABORTED));
 
@@ -554,7 +560,7 @@ public class EventPublisherTest {
                 .when(authzValidator)
                 .authorizeEventWrite(any());
 
-        final EventPublishResult result = publisher.publish(batch.toString(), eventType.getName(), null);
+        final EventPublishResult result = publisher.publish(toBytes(batch), eventType.getName(), null);
 
         assertThat(result.getStatus(), equalTo(EventPublishingStatus.ABORTED));
 
@@ -576,12 +582,118 @@ public class EventPublisherTest {
         final EventType eventType = EventTypeTestBuilder.builder().build();
         Mockito.when(cache.getEventType(eventType.getName())).thenReturn(eventType);
         mockSuccessfulValidation(eventType);
-        final EventPublishResult result = publisher.publish(buildDefaultBatch(0).toString(),
+        final EventPublishResult result = publisher.publish(toBytes(buildDefaultBatch(0)),
                 eventType.getName(), null);
 
         Assert.assertEquals(result.getStatus(), EventPublishingStatus.SUBMITTED);
     }
 
+    @Test
+    public void whenStreamIsPublishedThenEveryChunkIsSubmittedOnItsOwn() throws Exception {
+        final EventType eventType = buildDefaultEventType();
+        mockSuccessfulValidation(eventType);
+
+        final EventPublishResult result =
+                publisher.publishStream(toNdjson(buildDefaultBatch(5), 2), eventType.getName(), null);
+
+        assertThat(result.getStatus(), equalTo(EventPublishingStatus.SUBMITTED));
+        assertThat(result.getResponses().size(), equalTo(5));
+        verify(topicRepository, times(3)).syncPostBatch(any(), any(), any(), eq(false));
+        // usage of event type is not held for the whole upload
+        verify(timelineSync, times(3)).workWithEventType(eq(eventType.getName()), eq(TIMELINE_WAIT_TIMEOUT_MS));
+    }
+
+    @Test
+    public void whenChunkOfStreamFailsThenFollowingEventsAreAborted() throws Exception {
+        final EventType eventType = buildDefaultEventType();
+        mockSuccessfulValidation(eventType);
+        Mockito
+                .doNothing()
+                .doThrow(EventPublishingException.class)
+                .when(topicRepository)
+                .syncPostBatch(any(), any(), any(), anyBoolean());
+
+        final EventPublishResult result =
+                publisher.publishStream(toNdjson(buildDefaultBatch(5), 2), eventType.getName(), null);
+
+        assertThat(result.getStatus(), equalTo(EventPublishingStatus.FAILED));
+        assertThat(result.getResponses().size(), equalTo(5));
+        assertThat(result.getResponses().get(4).getPublishingStatus(), equalTo(EventPublishingStatus.ABORTED));
+        verify(topicRepository, times(2)).syncPostBatch(any(), any(), any(), anyBoolean());
+    }
+
+    @Test
+    public void whenFirstChunkOfStreamIsInvalidThenResultIsAborted() throws Exception {
+        final EventType eventType = buildDefaultEventType();
+        mockFaultValidation(eventType, "error");
+
+        final EventPublishResult result =
+                publisher.publishStream(toNdjson(buildDefaultBatch(3), 2), eventType.getName(), null);
+
+        assertThat(result.getStatus(), equalTo(EventPublishingStatus.ABORTED));
+        assertThat(result.getResponses().size(), equalTo(3));
+        verify(topicRepository, times(0)).syncPostBatch(any(), any(), any(), anyBoolean());
+    }
+
+    @Test
+    public void whenLineOfStreamIsMalformedAfterSubmittedChunkThenItFailsAndFollowingEventsAreAborted()
+            throws Exception {
+        final EventType eventType = buildDefaultEventType();
+        mockSuccessfulValidation(eventType);
+        final JSONArray batch = buildDefaultBatch(3);
+        final String events = batch.getJSONObject(0) + "\n" + batch.getJSONObject(1) + "\n{\"malformed\"\n" +
+                batch.getJSONObject(2) + "\n";
+
+        final EventPublishResult result = publisher.publishStream(toNdjson(events, 1), eventType.getName(), null);
+
+        assertThat(result.getStatus(), equalTo(EventPublishingStatus.FAILED));
+        assertThat(result.getResponses().size(), equalTo(4));
+        assertThat(result.getResponses().get(1).getPublishingStatus(), equalTo(EventPublishingStatus.SUBMITTED));
+        final BatchItemResponse malformed = result.getResponses().get(2);
+        assertThat(malformed.getPublishingStatus(), equalTo(EventPublishingStatus.FAILED));
+        assertThat(malformed.getStep(), equalTo(EventPublishingStep.VALIDATING));
+        assertThat(malformed.getDetail(), startsWith("Failed to parse event at line 3"));
+        assertThat(result.getResponses().get(3).getPublishingStatus(), equalTo(EventPublishingStatus.ABORTED));
+        verify(topicRepository, times(2)).syncPostBatch(any(), any(), any(), anyBoolean());
+    }
+
+    @Test(expected = JSONException.class)
+    public void whenFirstLineOfStreamIsMalformedThenRequestIsRejected() throws Exception {
+        final EventType eventType = buildDefaultEventType();
+        mockSuccessfulValidation(eventType);
+
+        publisher.publishStream(toNdjson("{\"malformed\"\n" + buildDefaultBatch(1).getJSONObject(0), 1),
+                eventType.getName(), null);
+    }
+
+    @Test
+    public void whenTimelineSwitchTimesOutAfterSubmittedChunkThenFollowingEventsAreNotPublished() throws Exception {
+        final EventType eventType = buildDefaultEventType();
+        mockSuccessfulValidation(eventType);
+        Mockito.when(timelineSync.workWithEventType(any(String.class), anyLong()))
+                .thenReturn(mock(Closeable.class))
+                .thenThrow(new TimeoutException());
+
+        final EventPublishResult result =
+                publisher.publishStream(toNdjson(buildDefaultBatch(5), 2), eventType.getName(), null);
+
+        assertThat(result.getStatus(), equalTo(EventPublishingStatus.FAILED));
+        assertThat(result.getResponses().size(), equalTo(5));
+        assertThat(result.getResponses().get(2).getPublishingStatus(), equalTo(EventPublishingStatus.FAILED));
+        assertThat(result.getResponses().get(3).getPublishingStatus(), equalTo(EventPublishingStatus.FAILED));
+        assertThat(result.getResponses().get(4).getPublishingStatus(), equalTo(EventPublishingStatus.ABORTED));
+        verify(topicRepository, times(1)).syncPostBatch(any(), any(), any(), anyBoolean());
+    }
+
+    @Test(expected = EventTypeTimeoutException.class)
+    public void whenTimelineSwitchTimesOutBeforeFirstChunkOfStreamThenRequestIsRejected() throws Exception {
+        final EventType eventType = buildDefaultEventType();
+        mockSuccessfulValidation(eventType);
+        Mockito.when(timelineSync.workWithEventType(any(String.class), anyLong())).thenThrow(new TimeoutException());
+
+        publisher.publishStream(toNdjson(buildDefaultBatch(3), 2), eventType.getName(), null);
+    }
+
     private void mockFailedPublishing() throws Exception {
         Mockito
                 .doThrow(EventPublishingException.class)
@@ -593,7 +705,7 @@ public class EventPublisherTest {
         Mockito
                 .doThrow(new PartitioningException("partition error"))
                 .when(partitionResolver)
-                .resolvePartition(any(), any());
+                .resolvePartition(any(), any(), any());
     }
 
     private void mockFaultEnrichment() throws EnrichmentException {
@@ -611,6 +723,11 @@ public class EventPublisherTest {
                 .when(cache)
                 .getEventType(eventType.getName());
 
+        Mockito
+                .doReturn(EventKeyExtractor.forEventType(eventType, new StringHash()))
+                .when(cache)
+                .getEventKeyExtractor(eventType.getName());
+
         Mockito
                 .doReturn(faultyValidator)
                 .when(cache)
@@ -622,7 +739,7 @@ public class EventPublisherTest {
                 .validate(any());
     }
 
-    private void mockSuccessfulValidation(final EventType eventType, final JSONObject event) throws Exception {
+    private void mockSuccessfulValidation(final EventType eventType, final LazyJsonObject event) throws Exception {
         final EventTypeValidator truthyValidator = mock(EventTypeValidator.class);
 
         Mockito
@@ -630,6 +747,11 @@ public class EventPublisherTest {
                 .when(cache)
                 .getEventType(eventType.getName());
 
+        Mockito
+                .doReturn(EventKeyExtractor.forEventType(eventType, new StringHash()))
+                .when(cache)
+                .getEventKeyExtractor(eventType.getName());
+
         Mockito
                 .doReturn(Optional.empty())
                 .when(truthyValidator)
@@ -649,6 +771,11 @@ public class EventPublisherTest {
                 .when(cache)
                 .getEventType(eventType.getName());
 
+        Mockito
+                .doReturn(EventKeyExtractor.forEventType(eventType, new StringHash()))
+                .when(cache)
+                .getEventKeyExtractor(eventType.getName());
+
         Mockito
                 .doReturn(Optional.empty())
                 .when(truthyValidator)
@@ -668,6 +795,19 @@ public class EventPublisherTest {
                 .createExtractor(eq(eventType));
     }
 
+    private static NdjsonBatchReader toNdjson(final JSONArray batch, final int chunkEvents) {
+        final StringBuilder events = new StringBuilder();
+        for (int i = 0; i < batch.length(); ++i) {
+            events.append(batch.getJSONObject(i).toString()).append('\n');
+        }
+        return toNdjson(events.toString(), chunkEvents);
+    }
+
+    private static NdjsonBatchReader toNdjson(final String events, final int chunkEvents) {
+        return new NdjsonBatchReader(
+                new ByteArrayInputStream(events.getBytes(StandardCharsets.UTF_8)), chunkEvents, 1024);
+    }
+
     private JSONArray buildDefaultBatch(final int numberOfEvents) {
         return buildBatch(numberOfEvents, 50);
     }
@@ -716,7 +856,11 @@ public class EventPublisherTest {
         return new JSONArray(events);
     }
 
-    private String createStringFromBatchItems(final List<BatchItem> batch) {
+    private static byte[] toBytes(final JSONArray batch) {
+        return batch.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] createBytesFromBatchItems(final List<BatchItem> batch) {
         final StringBuilder sb = new StringBuilder();
         sb.append("[");
         for (final BatchItem item : batch) {
@@ -724,6 +868,6 @@ public class EventPublisherTest {
             sb.append(",");
         }
         sb.setCharAt(sb.length() - 1, ']');
-        return sb.toString();
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
     }
 }
@@ -0,0 +1,74 @@
+package org.zalando.nakadi.service.publishing;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Test;
+import org.zalando.nakadi.domain.BatchItem;
+import org.zalando.nakadi.domain.EventPublishingStatus;
+import org.zalando.nakadi.exceptions.runtime.EventPublishingException;
+import org.zalando.nakadi.repository.TopicRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.zalando.nakadi.utils.TestUtils.createBatchItem;
+
+public class GroupCommitPublisherTest {
+
+    private final TopicRepository topicRepository = mock(TopicRepository.class);
+
+    @Test
+    public void whenGroupCommitIsDisabledThenBatchIsPublishedAsIs() {
+        final List<BatchItem> batch = ImmutableList.of(createBatchItem("{}"));
+
+        new GroupCommitPublisher(0, 10).syncPostBatch(topicRepository, "topic", batch, "et", false);
+
+        verify(topicRepository, times(1)).syncPostBatch(eq("topic"), same(batch), eq("et"), eq(false));
+    }
+
+    @Test(timeout = 10000)
+    public void whenConcurrentBatchesThenTheyArePublishedTogether() throws Exception {
+        final GroupCommitPublisher publisher = new GroupCommitPublisher(TimeUnit.MINUTES.toMillis(1), 3);
+        final BatchItem failingItem = createBatchItem("{\"fail\": true}");
+        doAnswer(invocation -> {
+            final List<BatchItem> items = (List<BatchItem>) invocation.getArguments()[1];
+            Assert.assertEquals(3, items.size());
+            items.forEach(item -> item.updateStatusAndDetail(EventPublishingStatus.SUBMITTED, ""));
+            failingItem.updateStatusAndDetail(EventPublishingStatus.FAILED, "internal error");
+            throw new EventPublishingException("Internal error publishing message to kafka");
+        }).when(topicRepository).syncPostBatch(any(), any(), any(), anyBoolean());
+
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            final List<Future<?>> results = new ArrayList<>();
+            for (final BatchItem item : ImmutableList.of(createBatchItem("{}"), createBatchItem("{}"), failingItem)) {
+                results.add(executor.submit(() -> publisher.syncPostBatch(
+                        topicRepository, "topic", ImmutableList.of(item), "et", false)));
+            }
+            results.get(0).get();
+            results.get(1).get();
+            try {
+                results.get(2).get();
+                Assert.fail("Publishing of failed event is expected to fail");
+            } catch (final ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof EventPublishingException);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(topicRepository, times(1)).syncPostBatch(eq("topic"), any(), eq("et"), eq(false));
+    }
+}
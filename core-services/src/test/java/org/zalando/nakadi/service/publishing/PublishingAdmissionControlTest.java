@@ -0,0 +1,60 @@
+package org.zalando.nakadi.service.publishing;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+import org.zalando.nakadi.exceptions.runtime.TooManyRequestsException;
+
+public class PublishingAdmissionControlTest {
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+
+    @Test
+    public void whenInFlightBytesAreOverBudgetThenBatchIsRejected() {
+        final PublishingAdmissionControl admissionControl =
+                new PublishingAdmissionControl(100, 1.0, 30, () -> 0, metricRegistry);
+
+        final PublishingAdmissionControl.Admission first = admissionControl.admit(60);
+        admissionControl.admit(40);
+        try {
+            admissionControl.admit(1);
+            Assert.fail("Batch over the budget must be rejected");
+        } catch (final TooManyRequestsException e) {
+            // nothing was published yet, so the storage is considered to be stuck
+            Assert.assertEquals(30, e.getRetryAfterSeconds());
+        }
+        Assert.assertEquals(100, admissionControl.getInFlightBytes());
+
+        first.release();
+        first.release();
+        Assert.assertEquals(40, admissionControl.getInFlightBytes());
+        admissionControl.admit(60);
+        Assert.assertEquals(1, metricRegistry.meter("nakadi.publishing.admission.rejections").getCount());
+    }
+
+    @Test
+    public void whenNothingIsInFlightThenBigBatchIsAdmitted() {
+        final PublishingAdmissionControl admissionControl =
+                new PublishingAdmissionControl(100, 1.0, 30, () -> 0, metricRegistry);
+
+        admissionControl.admit(1000).release();
+        Assert.assertEquals(0, admissionControl.getInFlightBytes());
+    }
+
+    @Test(expected = TooManyRequestsException.class)
+    public void whenBufferIsAlmostFullThenBatchIsRejected() {
+        new PublishingAdmissionControl(0, 0.9, 30, () -> 0.95, metricRegistry).admit(1);
+    }
+
+    @Test
+    public void retryAfterIsBoundedByMaximum() {
+        final PublishingAdmissionControl admissionControl =
+                new PublishingAdmissionControl(0, 1.0, 30, () -> 0, metricRegistry);
+        Assert.assertEquals(30, admissionControl.getRetryAfterSeconds());
+
+        admissionControl.admit(10).release();
+        admissionControl.admit(10);
+        final long retryAfterSeconds = admissionControl.getRetryAfterSeconds();
+        Assert.assertTrue(retryAfterSeconds >= 1 && retryAfterSeconds <= 30);
+    }
+}
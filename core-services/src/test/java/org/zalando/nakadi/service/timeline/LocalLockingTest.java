@@ -0,0 +1,60 @@
+package org.zalando.nakadi.service.timeline;
+
+import com.google.common.collect.ImmutableSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class LocalLockingTest {
+
+    private final LocalLocking localLocking = new LocalLocking();
+
+    @Test(timeout = 5000)
+    public void whenEventTypeIsLockedThenOnlyItsPublishersAreBlocked() throws Exception {
+        localLocking.updateLockedEventTypes(ImmutableSet.of("et1"));
+
+        localLocking.workWithEventType("et2", 0).close();
+        try {
+            localLocking.workWithEventType("et1", 10);
+            Assert.fail("Publishing to locked event type must time out");
+        } catch (final TimeoutException ignore) {
+        }
+        Assert.assertEquals(ImmutableSet.of("et1"), localLocking.getUnlockedEventTypes(Collections.emptySet()));
+    }
+
+    @Test(timeout = 5000)
+    public void whenEventTypeIsLockedThenPublishersInProgressAreTracked() throws Exception {
+        final Closeable publishing = localLocking.workWithEventType("et1", 0);
+        localLocking.updateLockedEventTypes(ImmutableSet.of("et1"));
+        Assert.assertTrue(localLocking.hasPublishers("et1"));
+        Assert.assertFalse(localLocking.hasPublishers("et2"));
+
+        publishing.close();
+        Assert.assertFalse(localLocking.hasPublishers("et1"));
+    }
+
+    @Test(timeout = 5000)
+    public void whenEventTypeIsUnlockedThenWaitingPublisherProceeds() throws Exception {
+        localLocking.updateLockedEventTypes(ImmutableSet.of("et1"));
+        final AtomicBoolean published = new AtomicBoolean();
+        final Thread publisher = new Thread(() -> {
+            try {
+                localLocking.workWithEventType("et1", 5000).close();
+                published.set(true);
+            } catch (final InterruptedException | TimeoutException | IOException ignore) {
+            }
+        });
+        publisher.start();
+        publisher.join(100);
+        Assert.assertTrue(publisher.isAlive());
+
+        localLocking.updateLockedEventTypes(Collections.emptySet());
+        publisher.join();
+        Assert.assertTrue(published.get());
+    }
+}
@@ -0,0 +1,137 @@
+package org.zalando.nakadi.service.timeline;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Before;
+import org.junit.Test;
+import org.zalando.nakadi.domain.ConsumedEvent;
+import org.zalando.nakadi.domain.EventTypePartition;
+import org.zalando.nakadi.domain.NakadiCursor;
+import org.zalando.nakadi.domain.Timeline;
+import org.zalando.nakadi.domain.TopicPartition;
+import org.zalando.nakadi.repository.EventConsumer;
+import org.zalando.nakadi.repository.TopicRepository;
+import org.zalando.nakadi.repository.kafka.EventTailCache;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.zalando.nakadi.utils.TestUtils.buildTimeline;
+
+public class MultiTimelineEventConsumerTest {
+
+    private static final String ET = "et";
+    private static final String TOPIC = "topic";
+
+    private final Timeline timeline = buildTimeline(ET, TOPIC, new Date());
+    private final TopicRepository topicRepository = mock(TopicRepository.class);
+    private final EventTailCache tailCache = mock(EventTailCache.class);
+    private final EventConsumer.LowLevelConsumer firstConsumer = mock(EventConsumer.LowLevelConsumer.class);
+    private final EventConsumer.LowLevelConsumer secondConsumer = mock(EventConsumer.LowLevelConsumer.class);
+    private MultiTimelineEventConsumer consumer;
+
+    @Before
+    public void setUp() throws Exception {
+        final TimelineService timelineService = mock(TimelineService.class);
+        when(timelineService.getActiveTimelinesOrdered(eq(ET))).thenReturn(Collections.singletonList(timeline));
+        when(timelineService.getTopicRepository(eq(timeline))).thenReturn(topicRepository);
+        when(topicRepository.createEventConsumer(any(), any())).thenReturn(firstConsumer, secondConsumer);
+        when(firstConsumer.getAssignment()).thenReturn(ImmutableSet.of(tp("0"), tp("1")));
+
+        final TimelineSync timelineSync = mock(TimelineSync.class);
+        when(timelineSync.registerTimelineChangeListener(any(), any()))
+                .thenReturn(mock(TimelineSync.ListenerRegistration.class));
+
+        consumer = new MultiTimelineEventConsumer("client", timelineService, timelineSync,
+                Comparator.comparing(NakadiCursor::getOffset), tailCache);
+        consumer.reassign(ImmutableList.of(cursor("0"), cursor("1")));
+    }
+
+    @Test
+    public void whenPartitionsArePausedThenTheyArePausedInUnderlyingConsumer() {
+        consumer.pause(ImmutableList.of(etp("0"), etp("5")));
+        verify(firstConsumer).pause(ImmutableSet.of(tp("0")));
+
+        consumer.resume(ImmutableList.of(etp("0")));
+        verify(firstConsumer).resume(ImmutableSet.of(tp("0")));
+    }
+
+    @Test
+    public void whenUnderlyingConsumerIsRecreatedThenPartitionsArePausedInIt() throws Exception {
+        consumer.pause(ImmutableList.of(etp("0")));
+
+        consumer.reassign(ImmutableList.of(cursor("0"), cursor("1"), cursor("2")));
+
+        verify(firstConsumer).close();
+        verify(secondConsumer).pause(ImmutableSet.of(tp("0")));
+    }
+
+    @Test
+    public void whenPausedPartitionIsUnassignedThenItIsNotPausedAnymore() throws Exception {
+        consumer.pause(ImmutableList.of(etp("0")));
+
+        consumer.reassign(ImmutableList.of(cursor("1")));
+
+        verify(secondConsumer, never()).pause(any());
+    }
+
+    @Test
+    public void whenOnePartitionIsCachedThenOtherPartitionIsReadFromStorage() throws Exception {
+        final AtomicBoolean cached = new AtomicBoolean(true);
+        when(tailCache.isEnabled()).thenReturn(true);
+        when(tailCache.read(any())).thenAnswer(invocation -> {
+            final NakadiCursor after = (NakadiCursor) invocation.getArguments()[0];
+            if (!cached.get() || !after.getPartition().equals("0")) {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(event("0", String.valueOf(Integer.parseInt(after.getOffset()) + 1)));
+        });
+        when(firstConsumer.readEvents(0))
+                .thenReturn(Collections.singletonList(event("1", "1")), Collections.singletonList(event("1", "2")));
+
+        assertEquals(ImmutableList.of(cursor("0", "1"), cursor("1", "1")), positions(consumer.readEvents()));
+        assertEquals(ImmutableList.of(cursor("0", "2"), cursor("1", "2")), positions(consumer.readEvents()));
+        verify(firstConsumer).pause(ImmutableSet.of(tp("0")));
+        verify(firstConsumer, never()).seek(any());
+
+        cached.set(false);
+        consumer.readEvents();
+        verify(firstConsumer).seek(ImmutableList.of(cursor("0", "2")));
+        verify(firstConsumer).resume(ImmutableSet.of(tp("0")));
+    }
+
+    private NakadiCursor cursor(final String partition) {
+        return cursor(partition, "0");
+    }
+
+    private NakadiCursor cursor(final String partition, final String offset) {
+        return NakadiCursor.of(timeline, partition, offset);
+    }
+
+    private ConsumedEvent event(final String partition, final String offset) {
+        return new ConsumedEvent(new byte[]{'{', '}'}, cursor(partition, offset), 0, null);
+    }
+
+    private static List<NakadiCursor> positions(final List<ConsumedEvent> events) {
+        return events.stream().map(ConsumedEvent::getPosition).collect(Collectors.toList());
+    }
+
+    private static EventTypePartition etp(final String partition) {
+        return new EventTypePartition(ET, partition);
+    }
+
+    private static TopicPartition tp(final String partition) {
+        return new TopicPartition(TOPIC, partition);
+    }
+}
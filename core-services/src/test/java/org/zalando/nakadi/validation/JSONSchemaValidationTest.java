@@ -18,6 +18,8 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.Optional;
 
+import static org.zalando.nakadi.utils.TestUtils.toLazyJson;
+
 
 public class JSONSchemaValidationTest {
 
@@ -37,7 +39,7 @@ public class JSONSchemaValidationTest {
 
         final JSONObject event = new JSONObject("{ \"foo\": \"bar\" }");
 
-        final Optional<ValidationError> error = eventValidatorBuilder.build(et).validate(event);
+        final Optional<ValidationError> error = eventValidatorBuilder.build(et).validate(toLazyJson(event));
 
         Assert.assertThat(
                 error.get().getMessage(),
@@ -60,7 +62,7 @@ public class JSONSchemaValidationTest {
                 "}}," +
                 "\"foo\": \"bar\"}");
 
-        final Optional<ValidationError> noError = eventValidatorBuilder.build(et).validate(validEvent);
+        final Optional<ValidationError> noError = eventValidatorBuilder.build(et).validate(toLazyJson(validEvent));
 
         Assert.assertThat(noError, IsOptional.isAbsent());
 
@@ -74,7 +76,7 @@ public class JSONSchemaValidationTest {
                 "}}," +
                 "\"foo\": \"bar\"}");
 
-        final Optional<ValidationError> error = eventValidatorBuilder.build(et).validate(invalidEvent);
+        final Optional<ValidationError> error = eventValidatorBuilder.build(et).validate(toLazyJson(invalidEvent));
 
         Assert.assertThat(error.get().getMessage(),
                 CoreMatchers.equalTo("#/metadata/span_ctx/ot-tracer-spanid: expected type: String, found: Integer"));
@@ -88,7 +90,7 @@ public class JSONSchemaValidationTest {
 
         final JSONObject event = new JSONObject("{ \"data\": { \"foo\": \"bar\" } }");
 
-        final Optional<ValidationError> error = eventValidatorBuilder.build(et).validate(event);
+        final Optional<ValidationError> error = eventValidatorBuilder.build(et).validate(toLazyJson(event));
 
         Assert.assertThat(
                 error.get().getMessage(),
@@ -104,7 +106,7 @@ public class JSONSchemaValidationTest {
         final JSONObject event = dataChangeEvent();
         event.put("foo", "anything");
 
-        final Optional<ValidationError> error = eventValidatorBuilder.build(et).validate(event);
+        final Optional<ValidationError> error = eventValidatorBuilder.build(et).validate(toLazyJson(event));
 
         Assert.assertThat(
                 error.get().getMessage(),
@@ -119,7 +121,7 @@ public class JSONSchemaValidationTest {
         final JSONObject event = businessEvent();
         event.getJSONObject("metadata").put("event_type", "different-from-event-name");
 
-        final Optional<ValidationError> error = eventValidatorBuilder.build(et).validate(event);
+        final Optional<ValidationError> error = eventValidatorBuilder.build(et).validate(toLazyJson(event));
 
         Assert.assertThat(
                 error.get().getMessage(),
@@ -135,7 +137,7 @@ public class JSONSchemaValidationTest {
         final JSONObject event = businessEvent();
         event.getJSONObject("metadata").remove("occurred_at");
 
-        final Optional<ValidationError> error = eventValidatorBuilder.build(et).validate(event);
+        final Optional<ValidationError> error = eventValidatorBuilder.build(et).validate(toLazyJson(event));
 
         Assert.assertThat(
                 error.get().getMessage(),
@@ -150,7 +152,7 @@ public class JSONSchemaValidationTest {
         final JSONObject event = businessEvent();
         event.getJSONObject("metadata").put("eid", "x");
 
-        final Optional<ValidationError> error = eventValidatorBuilder.build(et).validate(event);
+        final Optional<ValidationError> error = eventValidatorBuilder.build(et).validate(toLazyJson(event));
 
         Assert.assertThat(
                 error.get().getMessage(),
@@ -166,7 +168,7 @@ public class JSONSchemaValidationTest {
         final long startTime = System.currentTimeMillis();
 
         final JSONObject event = undefinedEvent();
-        final Optional<ValidationError> error = eventValidatorBuilder.build(et).validate(event);
+        final Optional<ValidationError> error = eventValidatorBuilder.build(et).validate(toLazyJson(event));
 
         final long duration = System.currentTimeMillis() - startTime;
 
@@ -181,7 +183,7 @@ public class JSONSchemaValidationTest {
         et.setCategory(EventCategory.DATA);
         final JSONObject event = new JSONObject(TestUtils.readFile("product-event.json"));
 
-        final Optional<ValidationError> error = eventValidatorBuilder.build(et).validate(event);
+        final Optional<ValidationError> error = eventValidatorBuilder.build(et).validate(toLazyJson(event));
 
         Assert.assertThat(error, IsOptional.isAbsent());
     }
@@ -0,0 +1,98 @@
+package org.zalando.nakadi.validation;
+
+import org.everit.json.schema.Schema;
+import org.everit.json.schema.ValidationException;
+import org.everit.json.schema.loader.SchemaLoader;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+import org.zalando.nakadi.domain.StrictJsonParser;
+
+import java.util.Optional;
+
+public class JsonSchemaCompilerTest {
+
+    private static final String SCHEMA = "{\"type\": \"object\", \"required\": [\"a\"], " +
+            "\"additionalProperties\": false, " +
+            "\"definitions\": {\"node\": {\"type\": \"object\", \"properties\": {" +
+            "  \"next\": {\"$ref\": \"#/definitions/node\"}, " +
+            "  \"v\": {\"type\": \"integer\", \"minimum\": 1, \"maximum\": 10, \"exclusiveMaximum\": true}}}}, " +
+            "\"properties\": {" +
+            "  \"a\": {\"type\": \"string\", \"pattern\": \"^x\", \"minLength\": 2, \"maxLength\": 4}, " +
+            "  \"e\": {\"enum\": [\"A\", \"B\", 1]}, " +
+            "  \"t\": {\"type\": \"string\", \"format\": \"date-time\"}, " +
+            "  \"arr\": {\"type\": \"array\", \"items\": {\"type\": [\"string\", \"null\"]}, \"maxItems\": 2, " +
+            "    \"uniqueItems\": true}, " +
+            "  \"node\": {\"$ref\": \"#/definitions/node\"}, " +
+            "  \"tuple\": {\"items\": [{\"type\": \"integer\"}], \"additionalItems\": false}, " +
+            "  \"any\": {\"anyOf\": [{\"type\": \"integer\"}, {\"type\": \"object\", \"required\": [\"q\"]}]}, " +
+            "  \"flags\": {\"patternProperties\": {\"^f_\": {\"type\": \"boolean\"}}, " +
+            "    \"additionalProperties\": false}}}";
+
+    private static final String[] VALID_EVENTS = {
+            "{\"a\": \"xy\"}",
+            "{\"a\": \"xy\", \"e\": \"B\"}",
+            "{\"a\": \"xy\", \"e\": 1}",
+            "{\"a\": \"xy\", \"t\": \"2020-02-29T10:00:00.123+01:00\"}",
+            "{\"a\": \"xy\", \"arr\": [\"a\", null]}",
+            "{\"a\": \"xy\", \"node\": {\"v\": 5, \"next\": {\"v\": 9, \"next\": {}}}}",
+            "{\"a\": \"xy\", \"tuple\": [1]}",
+            "{\"a\": \"xy\", \"any\": 3}",
+            "{\"a\": \"xy\", \"any\": {\"q\": 1}}",
+            "{\"a\": \"xy\", \"flags\": {\"f_x\": true}}",
+    };
+
+    private static final String[] INVALID_EVENTS = {
+            "{\"b\": \"xy\"}",
+            "{\"a\": \"yy\"}",
+            "{\"a\": \"x\"}",
+            "{\"a\": \"xyzzz\"}",
+            "{\"a\": \"xy\", \"e\": \"C\"}",
+            "{\"a\": \"xy\", \"t\": \"2021-02-29T10:00:00Z\"}",
+            "{\"a\": \"xy\", \"t\": \"2021-02-28T10:00:00+01:00:00\"}",
+            "{\"a\": \"xy\", \"arr\": [\"a\", \"a\"]}",
+            "{\"a\": \"xy\", \"arr\": [\"a\", \"b\", \"c\"]}",
+            "{\"a\": \"xy\", \"arr\": [1]}",
+            "{\"a\": \"xy\", \"node\": {\"v\": 5, \"next\": {\"v\": 10}}}",
+            "{\"a\": \"xy\", \"node\": {\"v\": 0}}",
+            "{\"a\": \"xy\", \"tuple\": [1, 2]}",
+            "{\"a\": \"xy\", \"any\": {\"r\": 1}}",
+            "{\"a\": \"xy\", \"flags\": {\"f_x\": 1}}",
+            "{\"a\": \"xy\", \"flags\": {\"x\": true}}",
+    };
+
+    @Test
+    public void testCompiledSchemaAgreesWithInterpretedOne() {
+        final Schema interpreted = SchemaLoader.builder()
+                .schemaJson(new JSONObject(SCHEMA))
+                .addFormatValidator(new RFC3339DateTimeValidator())
+                .build()
+                .load()
+                .build();
+        final JsonSchemaCompiler.CompiledSchema compiled = compile(SCHEMA).get();
+
+        for (final String event : VALID_EVENTS) {
+            Assert.assertTrue(event, compiled.conforms(StrictJsonParser.parseLazyObject(event)));
+            interpreted.validate(new JSONObject(event));
+        }
+        for (final String event : INVALID_EVENTS) {
+            Assert.assertFalse(event, compiled.conforms(StrictJsonParser.parseLazyObject(event)));
+            try {
+                interpreted.validate(new JSONObject(event));
+                Assert.fail("Event is expected to be invalid: " + event);
+            } catch (final ValidationException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testUnsupportedSchemasAreNotCompiled() {
+        Assert.assertFalse(compile("{\"not\": {\"type\": \"string\"}}").isPresent());
+        Assert.assertFalse(compile("{\"properties\": {\"a\": {\"format\": \"email\"}}}").isPresent());
+        Assert.assertFalse(compile("{\"$ref\": \"http://example.com/schema.json\"}").isPresent());
+    }
+
+    private static Optional<JsonSchemaCompiler.CompiledSchema> compile(final String schema) {
+        return JsonSchemaCompiler.compile(new JSONObject(schema), new RFC3339DateTimeValidator());
+    }
+}